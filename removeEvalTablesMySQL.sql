@@ -26,6 +26,8 @@ drop table if exists  EVAL_ADHOC_GROUP;
 drop table if exists  EVAL_ADHOC_USER;
 drop table if exists  EVAL_CONFIG;
 drop table if exists  EVAL_LOCK;
+drop table if exists  EVAL_IMPORT_CHECKPOINT;
+drop table if exists  EVAL_IMPORT_HASH;
 drop table if exists  EVAL_TAGS;
 drop table if exists  EVAL_TAGS_META;
 drop table if exists  EVAL_TRANSLATION;
@@ -46,5 +48,7 @@ drop table if exists  EVAL_GROUPNODES_GROUPS;
 drop table if exists  EVAL_ASSIGN_HIERARCHY;
 drop table if exists  EVAL_HIERARCHY_RULE;
 drop table if exists  EVAL_EMAIL_PROCESSING_QUEUE;
+drop table if exists  EVAL_EMAIL_OUTBOX;
+drop table if exists  EVAL_JOB_METRIC;
 drop table if exists  EVAL_ADMIN;
 set FOREIGN_KEY_CHECKS=1;
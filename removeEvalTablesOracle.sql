@@ -25,6 +25,8 @@ drop table EVAL_ADHOC_GROUP cascade constraints;
 drop table EVAL_ADHOC_USER;
 drop table EVAL_CONFIG;
 drop table EVAL_LOCK;
+drop table EVAL_IMPORT_CHECKPOINT;
+drop table EVAL_IMPORT_HASH;
 drop table EVAL_TAGS;
 drop table EVAL_TAGS_META;
 drop table EVAL_TRANSLATION;
@@ -45,4 +47,6 @@ drop table EVAL_GROUPNODES_GROUPS;
 drop table EVAL_ASSIGN_HIERARCHY;
 drop table EVAL_HIERARCHY_RULE;
 drop table EVAL_EMAIL_PROCESSING_QUEUE;
+drop table EVAL_EMAIL_OUTBOX;
+drop table EVAL_JOB_METRIC;
 drop table EVAL_ADMIN;
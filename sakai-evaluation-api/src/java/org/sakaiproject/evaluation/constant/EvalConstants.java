@@ -788,6 +788,53 @@ public class EvalConstants {
      */
     public static final String JOB_TYPE_REMINDER = "scheduledReminder";
 
+    /**
+     * Report job status: waiting for a free report worker
+     */
+    public static final String REPORT_JOB_STATUS_QUEUED = "queued";
+    /**
+     * Report job status: the report is being generated
+     */
+    public static final String REPORT_JOB_STATUS_RUNNING = "running";
+    /**
+     * Report job status: the report is complete and can be downloaded
+     */
+    public static final String REPORT_JOB_STATUS_COMPLETE = "complete";
+    /**
+     * Report job status: generating the report failed
+     */
+    public static final String REPORT_JOB_STATUS_FAILED = "failed";
+    /**
+     * Report job status: the job was cancelled before it completed
+     */
+    public static final String REPORT_JOB_STATUS_CANCELLED = "cancelled";
+
+    /**
+     * Email outbox status: waiting to be sent (or to be retried)
+     */
+    public static final String EMAIL_OUTBOX_STATUS_PENDING = "pending";
+    /**
+     * Email outbox status: handed off to the mail server
+     */
+    public static final String EMAIL_OUTBOX_STATUS_SENT = "sent";
+    /**
+     * Email outbox status: sending failed too many times, the email will not be retried (dead letter)
+     */
+    public static final String EMAIL_OUTBOX_STATUS_FAILED = "failed";
+
+    /**
+     * Job metric status: the phase of the job is still being processed
+     */
+    public static final String JOB_METRIC_STATUS_RUNNING = "running";
+    /**
+     * Job metric status: the phase of the job is done
+     */
+    public static final String JOB_METRIC_STATUS_FINISHED = "finished";
+    /**
+     * Job metric status: the job failed during this phase
+     */
+    public static final String JOB_METRIC_STATUS_FAILED = "failed";
+
     /**
 	 * ExternalScheduler: When a cron job is created or retrieved through EvalScheduler, a name and group 
 	 * for the trigger and for the job is to be specified in the dataMap. Also the cron expression is to be
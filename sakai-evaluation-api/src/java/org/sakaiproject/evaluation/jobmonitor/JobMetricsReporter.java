@@ -0,0 +1,54 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.jobmonitor;
+
+import java.util.List;
+
+import org.sakaiproject.evaluation.model.EvalJobMetric;
+
+/**
+ * A JobStatusReporter which also keeps structured progress (counts, throughput and ETA) for each run
+ * of a job, the progress is sampled to the database so it can be followed while a long job is running
+ * and compared between runs
+ */
+public interface JobMetricsReporter extends JobStatusReporter
+{
+	/**
+	 * Report the progress of a phase of a job run, this is cheap enough to call for every batch of items
+	 * since the counts are only written out every so often (and when the phase changes or the job finishes)
+	 * 
+	 * @param jobId the id returned by {@link #reportStarted(String)}
+	 * @param phase the part of the run the counts are for (e.g. reminders), reporting a new phase ends the last one
+	 * @param total the number of items this phase has to process, 0 or less if not known
+	 * @param processed the number of items processed in this phase so far
+	 * @param sent the number of items successfully handled (e.g. emails sent) in this phase so far
+	 * @param errors the number of items which failed in this phase so far
+	 */
+	public void reportCounts(String jobId, String phase, int total, int processed, int sent, int errors);
+
+	/**
+	 * @param jobId the id of a job run
+	 * @return all the progress samples for the run, oldest first (empty if there are none)
+	 */
+	public List<EvalJobMetric> getJobMetrics(String jobId);
+
+	/**
+	 * @param jobName the name of a job (e.g. Email)
+	 * @return the most recent progress sample for each phase of the last run of the job, in the order
+	 * the phases were run (empty if the job has not been run)
+	 */
+	public List<EvalJobMetric> getLatestJobMetrics(String jobName);
+
+}
@@ -554,6 +554,26 @@ public interface EvalAuthoringService {
     */
    public Long copyTemplate(Long templateId, String title, String ownerId, boolean hidden, boolean includeChildren);
 
+   /**
+    * Makes complete copies of a set of templates in one go (e.g. for a term rollover),
+    * this is the same as calling {@link #copyTemplate(Long, String, String, boolean, boolean)} for each
+    * template (with a generated title) but each kind of entity is saved for all the templates at once
+    * and items and scales used in more than one of the templates are only copied once
+    * <br/>
+    * Permission checks should be performed to ensure that the current user can view the entities that they want to copy,
+    * there is no need to check if they can modify them though as the original entities will not be changed
+    *
+    * @param templateIds the unique ids of the {@link EvalTemplate} objects to make copies of
+    * @param ownerId the internal user id of the user who will be the owner of the copies
+    * @param hidden if this true then the copies will be hidden from control views by default,
+    * else they will be shown in control views (internal copies should be hidden, user triggered copies should not)
+    * @param includeChildren if true then all items and scales are also copied (templateItems are always copied),
+    * if false the ids are used but copies are not made
+    * @return the map of original template id -> the unique id of the copy (in the order of the templateIds)
+    * @throws IllegalArgumentException if any of the template ids are invalid
+    */
+   public Map<Long, Long> copyTemplates(Long[] templateIds, String ownerId, boolean hidden, boolean includeChildren);
+
    /**
     * Makes a copy of a set of template items,
     * also copies all related items and scales if specified
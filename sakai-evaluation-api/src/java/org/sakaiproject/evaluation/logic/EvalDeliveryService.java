@@ -17,9 +17,11 @@ package org.sakaiproject.evaluation.logic;
 import java.util.List;
 
 import org.sakaiproject.evaluation.logic.exceptions.ResponseSaveException;
+import org.sakaiproject.evaluation.logic.model.EvalSavedAnswers;
 import org.sakaiproject.evaluation.model.EvalAnswer;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
 import org.sakaiproject.evaluation.model.EvalResponse;
+import org.sakaiproject.evaluation.utils.EvalFormModel;
 
 
 /**
@@ -58,6 +60,33 @@ public interface EvalDeliveryService {
     */
    public void saveResponse(EvalResponse response, String userId);
 
+   /**
+    * Saves only the changed answers for a response which is still in progress (e.g. autosave while
+    * the user is taking the evaluation), answers are matched to the saved ones by
+    * template item + associated type + associated id, new answers are added, changed answers
+    * are updated and answers with no value (no numeric, text or multiple answers and not NA)
+    * remove the saved answer<br/>
+    * The answers are written before this returns, the returned version is the new version of the saved response<br/>
+    * Bursts of saves are coalesced: answers which have not changed since the last save are not written again
+    * (nothing is written if none changed) and a save made against the same version as the save just before it
+    * (e.g. a retry) is merged into that save instead of being rejected as stale<br/>
+    * <b>Note:</b> This does not check for required answers or complete the response,
+    * use {@link #saveResponse(EvalResponse, String)} to submit it
+    * 
+    * @param responseId the id of an incomplete {@link EvalResponse}
+    * @param version the version of the response these changes were made to,
+    * this is the version returned by the last call to this method or the last modified time of the response
+    * @param answers the changed answers, the templateItem must be set on each one
+    * @param userId the internal user id (not username)
+    * @return the new version of the response
+    * @throws IllegalArgumentException if the inputs are invalid or an answer is not part of the evaluation form
+    * @throws IllegalStateException if the response is complete or the evaluation is not active
+    * @throws SecurityException if the user cannot modify this response
+    * @throws ResponseSaveException with {@link ResponseSaveException#TYPE_STALE_RESPONSE} if the response
+    * was changed since the version the changes were made to
+    */
+   public long saveResponseAnswers(Long responseId, long version, List<EvalAnswer> answers, String userId);
+
    /**
     * Get a response by its unique id<br/>
     * A response represents a single user response to an evaluation in a specific evalGroupId<br/>
@@ -156,6 +185,40 @@ public interface EvalDeliveryService {
     */
    public List<EvalAnswer> getAnswersForEval(Long evaluationId, String[] evalGroupIds, Long[] templateItemIds);
 
+   /**
+    * Get the saved answers of a single response (normally one which is in progress) without loading
+    * the response, answer, template item or item entities, this is the fast way to find out
+    * what the user has answered already when showing the evaluation form again
+    * 
+    * @param responseId the id of an {@link EvalResponse}
+    * @return the saved answers keyed by template item and associated type and id (empty if there are none)
+    * @throws IllegalArgumentException if the responseId is null
+    */
+   public EvalSavedAnswers getSavedAnswersForResponse(Long responseId);
+
+
+   // FORMS
+
+   /**
+    * Get the structure of the evaluation form for an eval group (items, associates, required items),
+    * this is shared between all users taking the evaluation in that group and is cached,
+    * it is rebuilt when the evaluation or its assignments change and after a short time otherwise<br/>
+    * <b>NOTE:</b> The returned form is shared so it must not be changed
+    * 
+    * @param evaluationId the id of an {@link EvalEvaluation} object
+    * @param evalGroupId the internal eval group id (represents a site or group)
+    * @return the form model
+    * @throws IllegalArgumentException if the evaluation does not exist or has no items
+    */
+   public EvalFormModel getEvaluationFormModel(Long evaluationId, String evalGroupId);
+
+   /**
+    * Remove the cached form models for an evaluation so they are rebuilt the next time they are used
+    * 
+    * @param evaluationId the id of an {@link EvalEvaluation} object, if null then all cached forms are removed
+    */
+   public void clearEvaluationFormModels(Long evaluationId);
+
 
    // PERMISSIONS
 
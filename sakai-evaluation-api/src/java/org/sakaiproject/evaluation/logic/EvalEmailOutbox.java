@@ -0,0 +1,101 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic;
+
+import java.util.Map;
+
+/**
+ * A durable outbox for the notification emails, the emails are stored (one per user) and sent
+ * in the background so a failure of the mail server only delays them instead of losing them<br/>
+ * Each email is identified by its evaluation, type, round and user so queueing the same notification
+ * again (e.g. when a job is rerun) does not send it twice, failed emails are retried with an
+ * increasing delay and are kept as failed (dead letters) once they have been tried too many times
+ */
+public interface EvalEmailOutbox {
+
+    /**
+     * Metric: the number of emails waiting to be sent (or retried)
+     */
+    public static final String METRIC_PENDING = "pending";
+    /**
+     * Metric: the number of sent emails which are still kept in the outbox
+     */
+    public static final String METRIC_SENT = "sent";
+    /**
+     * Metric: the number of emails which failed too many times and will not be retried
+     */
+    public static final String METRIC_FAILED = "failed";
+    /**
+     * Metric: the number of emails sent by this server since it started
+     */
+    public static final String METRIC_SENT_SINCE_STARTUP = "sentSinceStartup";
+    /**
+     * Metric: the number of failed attempts which were scheduled for a retry by this server since it started
+     */
+    public static final String METRIC_RETRIES_SINCE_STARTUP = "retriesSinceStartup";
+    /**
+     * Metric: the number of emails this server gave up on since it started
+     */
+    public static final String METRIC_DEAD_LETTERS_SINCE_STARTUP = "deadLettersSinceStartup";
+    /**
+     * Metric: the number of emails per second sent by the last run of the outbox on this server
+     */
+    public static final String METRIC_LAST_RUN_EMAILS_PER_SECOND = "lastRunEmailsPerSecond";
+
+    /**
+     * @return true if the notification emails should go through the outbox,
+     * false if they should be sent directly
+     */
+    public boolean isEnabled();
+
+    /**
+     * Store an email to each of the given users in the outbox, users who were already queued the same
+     * notification (same evaluation, type and round) are skipped
+     *
+     * @param from the email address this email appears to come from
+     * @param toUserIds the internal userIds this email should be sent to
+     * @param subject the email subject
+     * @param message the email message
+     * @param evaluationId (OPTIONAL) the unique id of the evaluation this notification is for
+     * @param emailType the type of notification (e.g. {@link org.sakaiproject.evaluation.constant.EvalConstants#EMAIL_TEMPLATE_AVAILABLE})
+     * @param round (OPTIONAL) identifies this sending of the notification (e.g. the day of a reminder),
+     * the same notification in a different round is sent again
+     * @return the email addresses of the users who were queued
+     */
+    public String[] queueEmails(String from, String[] toUserIds, String subject, String message,
+            Long evaluationId, String emailType, String round);
+
+    /**
+     * Send all the emails in the outbox which are due now, this normally happens in the background
+     * but can be called to send the emails right away (does nothing if another server or thread is sending them)
+     *
+     * @return the number of emails sent
+     */
+    public int sendQueuedEmails();
+
+    /**
+     * Put the failed emails (dead letters) back in the outbox so they are tried again
+     *
+     * @param evaluationId (OPTIONAL) only retry the emails for this evaluation, null for all failed emails
+     * @return the number of emails which will be retried
+     */
+    public int retryFailedEmails(Long evaluationId);
+
+    /**
+     * @return the current backlog and throughput of the outbox, the keys are the METRIC_* constants
+     */
+    public Map<String, Number> getOutboxMetrics();
+
+}
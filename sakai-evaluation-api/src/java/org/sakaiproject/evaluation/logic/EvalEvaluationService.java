@@ -69,6 +69,17 @@ public interface EvalEvaluationService {
      */
     public boolean checkEvaluationExists(Long evaluationId);
 
+    /**
+     * Get a version marker for the data of an evaluation, this changes whenever the evaluation
+     * is modified or any response for it is saved or removed, 
+     * so anything generated from the results (like reports) can be safely reused while it stays the same
+     * 
+     * @param evaluationId the unique id of an {@link EvalEvaluation} object
+     * @return the data version string
+     * @throws IllegalArgumentException if the evaluation does not exist
+     */
+    public String getEvaluationDataVersion(Long evaluationId);
+
     /**
      * Get the evaluation associated with this external id<br/>
      * Note: An evaluation eid is null except when the evaluation
@@ -288,6 +299,19 @@ public interface EvalEvaluationService {
      */
     public int countParticipantsForEval(Long evaluationId, String[] evalGroupIds);
 
+    /**
+     * Get the evaluators of an evaluation grouped by eval group in one pass, this is the same as calling
+     * {@link #getParticipantsForEval(Long, String, String[], String, String, String, String)} with the
+     * includeConstant for each group of the evaluation but only runs a single query so it should be used
+     * when processing all the groups of an evaluation (e.g. sending reminders)
+     * 
+     * @param evaluationId the unique id of an {@link EvalEvaluation} object
+     * @param includeConstant a constant to indicate what users should be retrieved, EVAL_INCLUDE_* from {@link EvalConstants}
+     * @return a map of evalGroupId -> the set of userIds (internal IDs) in that group,
+     * groups without any matching users are not included
+     */
+    public Map<String, Set<String>> getParticipantUserIdsByGroup(Long evaluationId, String includeConstant);
+
     /**
      * Get the list of users who are taking an evaluation in a specific group
      * or leave out the group to get all users in the evaluation
@@ -678,8 +702,19 @@ public interface EvalEvaluationService {
 	public List<Map<String, Object>> getConsolidatedEmailMapping(boolean sendingAvailableEmails, int pageSize, int page);
 
 	/**
-	 * Retrieve the email processing queue by adding one record for each evalAssignUser record 
-	 * matching the search criteria.  Search criteria are determined based on the values of 
+	 * Record that the consolidated emails from the email processing queue were sent to these users,
+	 * sets the available (or reminder) email sent date on all their queued evalAssignUser records for the template.
+	 * Only call this once the emails have been handed off, anything not marked is picked up again by the next run.
+	 * @param sendingAvailableEmails true for available emails, false for reminders
+	 * @param emailTemplateId the id of the email template which was sent
+	 * @param userIds the users who were sent the email
+	 * @return the number of evalAssignUser records marked
+	 */
+	public int markConsolidatedEmailsSent(boolean sendingAvailableEmails, Long emailTemplateId, Collection<String> userIds);
+
+	/**
+	 * Mark the users in the email processing queue who are due an email in this run, 
+	 * search criteria are determined based on the values of 
 	 * EvalAssignUser.availableEmailSent, EvalAssignUser.reminderEmailSent and 
 	 * EvalEmailTemplate.emailTemplateType.   
 	 * @param useAvailableEmailSent Should be true if the availableEmailSent date should be used in selecting records.
@@ -697,6 +732,13 @@ public interface EvalEvaluationService {
 	 * @return count
 	 */
 	public int countDistinctGroupsInConsolidatedEmailMapping();
+
+	/**
+	 * Reports the number of mappings (user and email template) which are currently due in the email processing queue,
+	 * this is the number of consolidated emails which will be rendered
+	 * @return count
+	 */
+	public int countConsolidatedEmailMapping();
 	
    /**
     * getInProgressEvaluationOwners returns a set of Owner ID that have a saved
@@ -706,11 +748,21 @@ public interface EvalEvaluationService {
 	public Set<String> getInProgressEvaluationOwners();
 
 	/**
-	 * Remove all records from the the email processing queue and report the number of items removed.
+	 * Clear the due marks from the email processing queue and report the number of items cleared,
+	 * the users stay queued for the next run.
 	 * @return 
 	 */
 	public int resetConsolidatedEmailRecipients();
 
+	/**
+	 * Bring the email processing queue up to date with the user assignments of an evaluation (or all evaluations),
+	 * only the queued users which changed are added or removed. This is done automatically when assignments,
+	 * responses or the evaluation change so it is only needed to repair the queue.
+	 * @param evaluationId (OPTIONAL) the unique id of an evaluation, null to update the queue for all evaluations
+	 * @return the number of users added to the queue
+	 */
+	public int updateConsolidatedEmailRecipients(Long evaluationId);
+
 	/* Method used to get access to the ToolAPI */
     public void setToolApi(ToolApi t);
 
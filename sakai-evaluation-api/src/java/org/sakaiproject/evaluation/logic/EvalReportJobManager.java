@@ -0,0 +1,70 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic;
+
+import java.io.File;
+
+import org.sakaiproject.evaluation.logic.model.EvalReportJob;
+
+/**
+ * Generates evaluation reports in the background so large reports do not have to be
+ * produced inside a single request,
+ * the finished report is written to a local file which can be downloaded until it expires<br/>
+ * Submitting the same report (same evaluation, groups, type, user and data) while an earlier
+ * job for it is still queued, running or available returns the earlier job instead of starting a new one
+ */
+public interface EvalReportJobManager {
+
+    /**
+     * Submit a report to be generated as the current user
+     *
+     * @param evaluationId the unique id of an evaluation
+     * @param groupIds the eval groups to include, null or empty for all groups the user can view results for
+     * @param evaluateeId the evaluatee for individual reports (EvalEvaluationService.PDF_RESULTS_REPORT_INDIVIDUAL), otherwise null
+     * @param exportType the type of report, one of the EvalEvaluationService.*_REPORT constants
+     * @return the id of the report job (which may be an existing job for the same report)
+     * @throws IllegalArgumentException if the evaluation does not exist or the type is invalid
+     * @throws IllegalStateException if the report queue is full
+     */
+    public String submitReportJob(Long evaluationId, String[] groupIds, String evaluateeId, String exportType);
+
+    /**
+     * Get the current state of a report job
+     *
+     * @param jobId the id of a report job
+     * @return a copy of the report job OR null if it does not exist (or has expired)
+     * @throws SecurityException if the current user did not submit the job
+     */
+    public EvalReportJob getReportJob(String jobId);
+
+    /**
+     * Cancel a report job, a queued job will not run and a running job will stop at the next write
+     *
+     * @param jobId the id of a report job
+     * @return true if the job was cancelled, false if it does not exist or had already finished
+     * @throws SecurityException if the current user did not submit the job
+     */
+    public boolean cancelReportJob(String jobId);
+
+    /**
+     * Get the generated report file for a job
+     *
+     * @param jobId the id of a report job
+     * @return the report file OR null if the job does not exist or is not complete
+     * @throws SecurityException if the current user did not submit the job
+     */
+    public File getReportJobArtifact(String jobId);
+
+}
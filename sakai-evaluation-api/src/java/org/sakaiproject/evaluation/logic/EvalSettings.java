@@ -340,7 +340,8 @@ public interface EvalSettings {
      */
     public static final String EMAIL_BATCH_SIZE = "EMAIL_BATCH_SIZE:java.lang.Integer";
     /**
-     * CONSTANT: The number of seconds to wait before processing another EMAIL_BATCH_SIZE emails. 0 causes no wait between batches. - {@link Integer},default 0}
+     * CONSTANT: The number of seconds to wait before processing another EMAIL_BATCH_SIZE emails. 0 causes no wait between batches.
+     * Consolidated emails are sent evenly at the same average rate (EMAIL_BATCH_SIZE every EMAIL_WAIT_INTERVAL seconds) instead of pausing. - {@link Integer},default 0}
      */
     public static final String EMAIL_WAIT_INTERVAL = "EMAIL_WAIT_INTERVAL:java.lang.Integer";
     /**
@@ -28,6 +28,7 @@ public class ResponseSaveException extends RuntimeException {
     public static String TYPE_CANNOT_TAKE_EVAL = "userCannotTakeEval";
     public static String TYPE_BLANK_RESPONSE = "blankResponse";
     public static String TYPE_CANNOT_SAVE = "cannotSave";
+    public static String TYPE_STALE_RESPONSE = "staleResponse";
 
     public String type;
     public String[] missingItemAnswerKeys;
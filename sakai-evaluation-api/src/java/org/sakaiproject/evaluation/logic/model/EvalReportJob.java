@@ -0,0 +1,107 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.model;
+
+import java.util.Date;
+
+/**
+ * A pea which represents a report which is being (or has been) generated in the background,
+ * these are handed out as copies so changing one has no effect on the job itself
+ */
+public class EvalReportJob {
+
+    /**
+     * The unique id for this job
+     */
+    public String id;
+    /**
+     * The evaluation the report is for
+     */
+    public Long evaluationId;
+    /**
+     * The eval group ids included in the report, null or empty for all groups the user can view
+     */
+    public String[] groupIds;
+    /**
+     * The evaluatee for individual reports, null otherwise
+     */
+    public String evaluateeId;
+    /**
+     * The type of report (from EvalEvaluationService.*_REPORT)
+     */
+    public String exportType;
+    /**
+     * The user who requested the report
+     */
+    public String userId;
+    /**
+     * The version of the evaluation data the report was generated from,
+     * see EvalEvaluationService#getEvaluationDataVersion(Long)
+     */
+    public String dataVersion;
+    /**
+     * The status of this job (from EvalConstants.REPORT_JOB_STATUS_*)
+     */
+    public String status;
+    /**
+     * The number of bytes of the report written so far
+     */
+    public long bytesWritten;
+    /**
+     * When the job was submitted
+     */
+    public Date created;
+    /**
+     * When the job started running, null if it has not started
+     */
+    public Date started;
+    /**
+     * When the job completed, failed or was cancelled, null if it has not finished
+     */
+    public Date finished;
+    /**
+     * The failure message if the job failed, null otherwise
+     */
+    public String message;
+
+    public EvalReportJob() { }
+
+    /**
+     * Copy constructor
+     * @param job the job to copy
+     */
+    public EvalReportJob(EvalReportJob job) {
+        this.id = job.id;
+        this.evaluationId = job.evaluationId;
+        this.groupIds = job.groupIds == null ? null : job.groupIds.clone();
+        this.evaluateeId = job.evaluateeId;
+        this.exportType = job.exportType;
+        this.userId = job.userId;
+        this.dataVersion = job.dataVersion;
+        this.status = job.status;
+        this.bytesWritten = job.bytesWritten;
+        this.created = job.created;
+        this.started = job.started;
+        this.finished = job.finished;
+        this.message = job.message;
+    }
+
+    @Override
+    public String toString() {
+        return "report job (" + id + "): eval=" + evaluationId + ", type=" + exportType + ", status=" + status
+                + ", bytes=" + bytesWritten;
+    }
+
+}
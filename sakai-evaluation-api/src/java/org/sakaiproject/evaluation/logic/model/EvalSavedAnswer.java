@@ -0,0 +1,116 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.model;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.model.EvalAnswer;
+import org.sakaiproject.evaluation.utils.EvalUtils;
+import org.sakaiproject.evaluation.utils.TemplateItemUtils;
+
+/**
+ * The saved values of an {@link EvalAnswer} without the answer entity (or its response, template item
+ * and item), this is all that is needed to show the answers of a response which is in progress
+ */
+public class EvalSavedAnswer {
+
+    private final Long answerId;
+    private final Long templateItemId;
+    private final String associatedType;
+    private final String associatedId;
+    private final Integer numeric;
+    private final String text;
+    private final String multiAnswerCode;
+    private final String comment;
+
+    public EvalSavedAnswer(Long answerId, Long templateItemId, String associatedType, String associatedId,
+            Integer numeric, String text, String multiAnswerCode, String comment) {
+        if (templateItemId == null) {
+            throw new IllegalArgumentException("templateItemId must be set");
+        }
+        this.answerId = answerId;
+        this.templateItemId = templateItemId;
+        this.associatedType = associatedType;
+        this.associatedId = associatedId;
+        this.numeric = numeric;
+        this.text = text;
+        this.multiAnswerCode = multiAnswerCode;
+        this.comment = comment;
+    }
+
+    /**
+     * @return the id of the {@link EvalAnswer} these values are from
+     */
+    public Long getAnswerId() {
+        return answerId;
+    }
+
+    public Long getTemplateItemId() {
+        return templateItemId;
+    }
+
+    public String getAssociatedType() {
+        return associatedType;
+    }
+
+    public String getAssociatedId() {
+        return associatedId;
+    }
+
+    public Integer getNumeric() {
+        return numeric;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getMultiAnswerCode() {
+        return multiAnswerCode;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    /**
+     * @return the decoded multiple answers (empty if there are none)
+     * @see EvalUtils#decodeMultipleAnswers(String)
+     */
+    public Integer[] getMultipleAnswers() {
+        return EvalUtils.decodeMultipleAnswers(multiAnswerCode);
+    }
+
+    /**
+     * @return true if this answer was marked as not applicable
+     * @see EvalUtils#decodeAnswerNA(EvalAnswer)
+     */
+    public boolean isNA() {
+        return EvalConstants.NA_VALUE.equals(numeric);
+    }
+
+    /**
+     * @return the answer key for this answer
+     * @see TemplateItemUtils#makeTemplateItemAnswerKey(Long, String, String)
+     */
+    public String getKey() {
+        return TemplateItemUtils.makeTemplateItemAnswerKey(templateItemId, associatedType, associatedId);
+    }
+
+    @Override
+    public String toString() {
+        return "answer(" + answerId + "):" + getKey() + ":" + numeric + ":" + text + ":" + multiAnswerCode;
+    }
+
+}
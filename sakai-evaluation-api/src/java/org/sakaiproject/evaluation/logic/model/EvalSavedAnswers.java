@@ -0,0 +1,108 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+
+/**
+ * The saved answers of a response looked up by template item and associated type and id,
+ * the same matching as the answer keys made by
+ * {@link org.sakaiproject.evaluation.utils.TemplateItemUtils#makeTemplateItemAnswerKey(Long, String, String)}
+ * without making a key string for every answer and lookup
+ */
+public class EvalSavedAnswers {
+
+    private static final EvalSavedAnswer[] NONE = new EvalSavedAnswer[0];
+
+    private final List<EvalSavedAnswer> answers;
+    // templateItemId -> the answers for that template item (usually only one)
+    private final Map<Long, EvalSavedAnswer[]> byTemplateItemId;
+
+    /**
+     * @param answers the saved answers of a single response
+     */
+    public EvalSavedAnswers(List<EvalSavedAnswer> answers) {
+        if (answers == null) {
+            throw new IllegalArgumentException("answers cannot be null");
+        }
+        this.answers = Collections.unmodifiableList(new ArrayList<>(answers));
+        this.byTemplateItemId = new HashMap<>(answers.size());
+        for (EvalSavedAnswer answer : this.answers) {
+            EvalSavedAnswer[] current = byTemplateItemId.get(answer.getTemplateItemId());
+            if (current == null) {
+                byTemplateItemId.put(answer.getTemplateItemId(), new EvalSavedAnswer[] {answer});
+            } else {
+                EvalSavedAnswer[] more = new EvalSavedAnswer[current.length + 1];
+                System.arraycopy(current, 0, more, 0, current.length);
+                more[current.length] = answer;
+                byTemplateItemId.put(answer.getTemplateItemId(), more);
+            }
+        }
+    }
+
+    /**
+     * @param templateItemId a unique id for an {@link org.sakaiproject.evaluation.model.EvalTemplateItem}
+     * @param associatedType the type associated with the answer (can be null)
+     * @param associatedId the id of the thing associated with the answer (can be null)
+     * @return the saved answer OR null if there is none
+     */
+    public EvalSavedAnswer get(Long templateItemId, String associatedType, String associatedId) {
+        EvalSavedAnswer[] candidates = byTemplateItemId.getOrDefault(templateItemId, NONE);
+        if (EvalConstants.ITEM_CATEGORY_COURSE.equals(associatedType)) {
+            associatedType = null;
+            associatedId = null;
+        }
+        for (EvalSavedAnswer answer : candidates) {
+            String type = answer.getAssociatedType();
+            String id = answer.getAssociatedId();
+            if (EvalConstants.ITEM_CATEGORY_COURSE.equals(type)) {
+                type = null;
+                id = null;
+            }
+            if (Objects.equals(associatedType, type) && Objects.equals(associatedId, id)) {
+                return answer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return all the saved answers (read only)
+     */
+    public List<EvalSavedAnswer> getAnswers() {
+        return answers;
+    }
+
+    public int size() {
+        return answers.size();
+    }
+
+    public boolean isEmpty() {
+        return answers.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return answers.toString();
+    }
+
+}
@@ -20,4 +20,10 @@ public interface ConsolidatedNotificationsJob extends Job {
 
 	public static final String BEAN_NAME = "org.sakaiproject.evaluation.logic.scheduling.ConsolidatedNotificationsJob";
 
+	/**
+	 * The name the job reports its status under, the progress of the last run can be found with
+	 * {@link org.sakaiproject.evaluation.jobmonitor.JobMetricsReporter#getLatestJobMetrics(String)}
+	 */
+	public static final String JOB_NAME = "Email";
+
 }
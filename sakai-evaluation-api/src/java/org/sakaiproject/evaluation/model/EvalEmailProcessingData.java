@@ -28,6 +28,12 @@ public class EvalEmailProcessingData implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Processing status of a queued user who is due an email in the current run,
+     * users who are only queued (waiting to become due) have a null status
+     */
+    public static final Byte STATUS_DUE = 1;
+
     protected Long id;
 	protected Long eauId;
 	protected String userId;
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.model;
+
+import java.util.Date;
+
+/**
+ * This records how far an XML data import got through one stage (type of element) of a file
+ * so an interrupted import of the same file can resume from there
+ */
+public class EvalImportCheckpoint implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    private Date lastModified;
+
+    /**
+     * The content hash of the imported file
+     */
+    private String fileHash;
+
+    /**
+     * The stage of the import (e.g. EvalScale)
+     */
+    private String stage;
+
+    /**
+     * The number of elements of this stage (from the start of the file) which have been processed
+     */
+    private Integer elementIndex;
+
+    /**
+     * True if every element of this stage has been processed
+     */
+    private Boolean complete;
+
+    // Constructors
+
+    /** default constructor */
+    public EvalImportCheckpoint() {
+    }
+
+    /** full constructor
+     * @param fileHash
+     * @param stage
+     * @param elementIndex
+     * @param complete */
+    public EvalImportCheckpoint(String fileHash, String stage, Integer elementIndex, Boolean complete) {
+        this.lastModified = new Date();
+        this.fileHash = fileHash;
+        this.stage = stage;
+        this.elementIndex = elementIndex;
+        this.complete = complete;
+    }
+
+    // Property accessors
+    public Long getId() {
+        return this.id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Date getLastModified() {
+        return this.lastModified;
+    }
+
+    public void setLastModified(Date lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getFileHash() {
+        return fileHash;
+    }
+
+    public void setFileHash(String fileHash) {
+        this.fileHash = fileHash;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public Integer getElementIndex() {
+        return elementIndex;
+    }
+
+    public void setElementIndex(Integer elementIndex) {
+        this.elementIndex = elementIndex;
+    }
+
+    public Boolean getComplete() {
+        return complete;
+    }
+
+    public void setComplete(Boolean complete) {
+        this.complete = complete;
+    }
+
+}
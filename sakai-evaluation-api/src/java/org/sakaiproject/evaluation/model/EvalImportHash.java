@@ -0,0 +1,104 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.model;
+
+import java.util.Date;
+
+/**
+ * This holds the content hash of the XML element an entity was last imported from
+ * so importing the same element again can be skipped
+ */
+public class EvalImportHash implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    private Date lastModified;
+
+    /**
+     * The type of the imported entity (e.g. EvalScale)
+     */
+    private String entityType;
+
+    /**
+     * The eid of the imported entity
+     */
+    private String eid;
+
+    /**
+     * The hash of the XML element the entity was last imported from
+     */
+    private String contentHash;
+
+    // Constructors
+
+    /** default constructor */
+    public EvalImportHash() {
+    }
+
+    /** full constructor
+     * @param entityType
+     * @param eid
+     * @param contentHash */
+    public EvalImportHash(String entityType, String eid, String contentHash) {
+        this.lastModified = new Date();
+        this.entityType = entityType;
+        this.eid = eid;
+        this.contentHash = contentHash;
+    }
+
+    // Property accessors
+    public Long getId() {
+        return this.id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Date getLastModified() {
+        return this.lastModified;
+    }
+
+    public void setLastModified(Date lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public void setEntityType(String entityType) {
+        this.entityType = entityType;
+    }
+
+    public String getEid() {
+        return eid;
+    }
+
+    public void setEid(String eid) {
+        this.eid = eid;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.model;
+
+import java.util.Date;
+
+/**
+ * A progress sample for one phase of a job run (e.g. the reminders of an email job run),
+ * the counts are totals for the phase so far and the rate is averaged over the recent samples
+ */
+public class EvalJobMetric implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    /**
+     * Identifies the run of the job this sample is from
+     */
+    private String jobId;
+
+    /**
+     * The name of the job (the same for every run)
+     */
+    private String jobName;
+
+    /**
+     * The part of the run this sample is for (e.g. announcements or reminders)
+     */
+    private String phase;
+
+    private Date sampleTime;
+
+    /**
+     * One of the EvalConstants.JOB_METRIC_STATUS_* constants
+     */
+    private String status;
+
+    /**
+     * (OPTIONAL) the number of items this phase has to process, null if not known
+     */
+    private Integer totalCount;
+
+    private Integer processedCount;
+
+    private Integer sentCount;
+
+    private Integer errorCount;
+
+    /**
+     * (OPTIONAL) the number of items processed per second recently, null if not known yet
+     */
+    private Double rate;
+
+    /**
+     * (OPTIONAL) the estimated number of seconds until this phase is done, null if not known
+     */
+    private Long etaSeconds;
+
+    /**
+     * (OPTIONAL) the last message reported for this phase
+     */
+    private String detail;
+
+    // Constructors
+
+    /** default constructor */
+    public EvalJobMetric() {
+    }
+
+    /** full constructor
+     * @param jobId
+     * @param jobName
+     * @param phase
+     * @param sampleTime
+     * @param status
+     * @param totalCount
+     * @param processedCount
+     * @param sentCount
+     * @param errorCount
+     * @param rate
+     * @param etaSeconds */
+    public EvalJobMetric(String jobId, String jobName, String phase, Date sampleTime, String status,
+            Integer totalCount, Integer processedCount, Integer sentCount, Integer errorCount, Double rate, Long etaSeconds) {
+        this.jobId = jobId;
+        this.jobName = jobName;
+        this.phase = phase;
+        this.sampleTime = sampleTime;
+        this.status = status;
+        this.totalCount = totalCount;
+        this.processedCount = processedCount;
+        this.sentCount = sentCount;
+        this.errorCount = errorCount;
+        this.rate = rate;
+        this.etaSeconds = etaSeconds;
+    }
+
+    // Property accessors
+    public Long getId() {
+        return this.id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public void setJobName(String jobName) {
+        this.jobName = jobName;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public void setPhase(String phase) {
+        this.phase = phase;
+    }
+
+    public Date getSampleTime() {
+        return sampleTime;
+    }
+
+    public void setSampleTime(Date sampleTime) {
+        this.sampleTime = sampleTime;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Integer getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(Integer totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    public Integer getProcessedCount() {
+        return processedCount;
+    }
+
+    public void setProcessedCount(Integer processedCount) {
+        this.processedCount = processedCount;
+    }
+
+    public Integer getSentCount() {
+        return sentCount;
+    }
+
+    public void setSentCount(Integer sentCount) {
+        this.sentCount = sentCount;
+    }
+
+    public Integer getErrorCount() {
+        return errorCount;
+    }
+
+    public void setErrorCount(Integer errorCount) {
+        this.errorCount = errorCount;
+    }
+
+    public Double getRate() {
+        return rate;
+    }
+
+    public void setRate(Double rate) {
+        this.rate = rate;
+    }
+
+    public Long getEtaSeconds() {
+        return etaSeconds;
+    }
+
+    public void setEtaSeconds(Long etaSeconds) {
+        this.etaSeconds = etaSeconds;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    public void setDetail(String detail) {
+        this.detail = detail;
+    }
+
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.model;
+
+import java.util.Date;
+
+/**
+ * A notification email to one user which is waiting to be sent (or has been sent or given up on),
+ * the idempotency key makes sure the same notification is only ever queued once
+ */
+public class EvalOutboxEmail implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    private Date lastModified;
+
+    /**
+     * Identifies the notification (evaluation, type, round and user), unique
+     */
+    private String idempotencyKey;
+
+    /**
+     * (OPTIONAL) the evaluation this notification is about
+     */
+    private Long evaluationId;
+
+    /**
+     * The internal user id of the recipient
+     */
+    private String userId;
+
+    /**
+     * The type of notification (the email template type constant)
+     */
+    private String emailType;
+
+    private String fromAddress;
+
+    private String subject;
+
+    private String message;
+
+    /**
+     * One of the EvalConstants.EMAIL_OUTBOX_STATUS_* constants
+     */
+    private String status;
+
+    /**
+     * The number of times sending this email has been tried
+     */
+    private Integer attempts;
+
+    /**
+     * Do not try to send this email again before this date
+     */
+    private Date nextAttempt;
+
+    /**
+     * The failure from the last attempt (if there was one)
+     */
+    private String lastError;
+
+    private Date sentDate;
+
+    // Constructors
+
+    /** default constructor */
+    public EvalOutboxEmail() {
+    }
+
+    /** full constructor
+     * @param idempotencyKey
+     * @param evaluationId
+     * @param userId
+     * @param emailType
+     * @param fromAddress
+     * @param subject
+     * @param message
+     * @param status */
+    public EvalOutboxEmail(String idempotencyKey, Long evaluationId, String userId, String emailType,
+            String fromAddress, String subject, String message, String status) {
+        this.lastModified = new Date();
+        this.idempotencyKey = idempotencyKey;
+        this.evaluationId = evaluationId;
+        this.userId = userId;
+        this.emailType = emailType;
+        this.fromAddress = fromAddress;
+        this.subject = subject;
+        this.message = message;
+        this.status = status;
+        this.attempts = 0;
+        this.nextAttempt = this.lastModified;
+    }
+
+    // Property accessors
+    public Long getId() {
+        return this.id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Date getLastModified() {
+        return this.lastModified;
+    }
+
+    public void setLastModified(Date lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public Long getEvaluationId() {
+        return evaluationId;
+    }
+
+    public void setEvaluationId(Long evaluationId) {
+        this.evaluationId = evaluationId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getEmailType() {
+        return emailType;
+    }
+
+    public void setEmailType(String emailType) {
+        this.emailType = emailType;
+    }
+
+    public String getFromAddress() {
+        return fromAddress;
+    }
+
+    public void setFromAddress(String fromAddress) {
+        this.fromAddress = fromAddress;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public void setNextAttempt(Date nextAttempt) {
+        this.nextAttempt = nextAttempt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public Date getSentDate() {
+        return sentDate;
+    }
+
+    public void setSentDate(Date sentDate) {
+        this.sentDate = sentDate;
+    }
+
+}
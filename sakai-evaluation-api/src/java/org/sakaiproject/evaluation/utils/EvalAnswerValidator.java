@@ -0,0 +1,236 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+
+/**
+ * Checks which required answers are missing from a response to an evaluation form,
+ * every answerable item (template item + associate) in the form gets a dense index and the
+ * requireable, compulsory and selection filtered items are held as bitsets over that index,
+ * so checking a response is a few bit operations instead of building sets of answer keys<br/>
+ * This is compiled once per form and is safe to share between threads,
+ * the required items for each set of selections are worked out the first time they are seen and kept
+ */
+public class EvalAnswerValidator {
+
+    /**
+     * The maximum number of selection profiles to keep for one form,
+     * anything beyond this is worked out on each check
+     */
+    public static final int MAX_SELECTION_PROFILES = 64;
+
+    private static final String[] NO_KEYS = new String[0];
+
+    private final int size;
+    private final String[] associateTypes;
+    private final String[] associateIds;
+    private final String[] keys;
+    /**
+     * templateItemId -> the indexes of that template item (one for each associate)
+     */
+    private final Map<Long, int[]> indexes;
+    private final BitSet requireable;
+    private final BitSet compulsory;
+    /**
+     * selections -> [requireable, compulsory] with the items for unselected associates removed
+     */
+    private final Map<Map<String, Set<String>>, BitSet[]> selectionProfiles = new ConcurrentHashMap<>();
+
+    /**
+     * All arrays must be the same length, one entry for each answerable item in the form
+     *
+     * @param templateItemIds the template item id of each item
+     * @param associateTypes the associate type of each item (e.g. {@link EvalConstants#ITEM_CATEGORY_INSTRUCTOR}), null or course for none
+     * @param associateIds the associate id of each item, null if there is no associate
+     * @param requireable true for each item which must be answered when blank responses are not allowed
+     * @param compulsory true for each item which must always be answered
+     */
+    public EvalAnswerValidator(Long[] templateItemIds, String[] associateTypes, String[] associateIds,
+            boolean[] requireable, boolean[] compulsory) {
+        if (templateItemIds == null || associateTypes == null || associateIds == null
+                || requireable == null || compulsory == null) {
+            throw new IllegalArgumentException("None of the item arrays can be null");
+        }
+        this.size = templateItemIds.length;
+        if (associateTypes.length != size || associateIds.length != size
+                || requireable.length != size || compulsory.length != size) {
+            throw new IllegalArgumentException("All the item arrays must be the same length (" + size + ")");
+        }
+        this.associateTypes = new String[size];
+        this.associateIds = new String[size];
+        this.keys = new String[size];
+        this.requireable = new BitSet(size);
+        this.compulsory = new BitSet(size);
+        Map<Long, int[]> indexMap = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (templateItemIds[i] == null) {
+                throw new IllegalArgumentException("templateItemId must be set for item " + i);
+            }
+            // course items have no associate, same as the answer keys
+            if (! EvalConstants.ITEM_CATEGORY_COURSE.equals(associateTypes[i])) {
+                this.associateTypes[i] = associateTypes[i];
+                this.associateIds[i] = associateIds[i];
+            }
+            this.keys[i] = TemplateItemUtils.makeTemplateItemAnswerKey(templateItemIds[i], associateTypes[i], associateIds[i]);
+            if (requireable[i]) {
+                this.requireable.set(i);
+            }
+            if (compulsory[i]) {
+                this.compulsory.set(i);
+            }
+            int[] current = indexMap.get(templateItemIds[i]);
+            int[] updated;
+            if (current == null) {
+                updated = new int[] {i};
+            } else {
+                updated = new int[current.length + 1];
+                System.arraycopy(current, 0, updated, 0, current.length);
+                updated[current.length] = i;
+            }
+            indexMap.put(templateItemIds[i], updated);
+        }
+        this.indexes = indexMap;
+    }
+
+    /**
+     * @return the number of answerable items in the form
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the index of an item
+     * @return the answer key for the item (see {@link TemplateItemUtils#makeTemplateItemAnswerKey(Long, String, String)})
+     */
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Find the index of an answer in this form
+     *
+     * @param templateItemId the template item the answer is for
+     * @param associateType the associate type of the answer (null or course for none)
+     * @param associateId the associate id of the answer
+     * @return the index of the answered item OR -1 if it is not an answerable item in this form
+     */
+    public int indexOf(Long templateItemId, String associateType, String associateId) {
+        int[] candidates = indexes.get(templateItemId);
+        if (candidates == null) {
+            return -1;
+        }
+        if (EvalConstants.ITEM_CATEGORY_COURSE.equals(associateType)) {
+            associateType = null;
+            associateId = null;
+        }
+        for (int index : candidates) {
+            if (equals(associateTypes[index], associateType) && equals(associateIds[index], associateId)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the answer keys for all the required items which have not been answered
+     *
+     * @param answered the indexes of the answered items (from {@link #indexOf(Long, String, String)})
+     * @param allRequireable if true then all requireable items must be answered (blank responses are not allowed),
+     * otherwise only the compulsory items
+     * @param selections the map of associate type -> selected associate ids,
+     * items for associates of these types which were not selected do not have to be answered,
+     * null or empty if there are no selections
+     * @return the answer keys of the missing required items, empty if nothing is missing
+     */
+    public String[] getMissingRequiredKeys(BitSet answered, boolean allRequireable, Map<String, Set<String>> selections) {
+        BitSet required = getRequired(allRequireable, selections);
+        int missing = 0;
+        for (int i = required.nextSetBit(0); i >= 0; i = required.nextSetBit(i + 1)) {
+            if (! answered.get(i)) {
+                missing++;
+            }
+        }
+        if (missing == 0) {
+            return NO_KEYS;
+        }
+        String[] missingKeys = new String[missing];
+        int pos = 0;
+        for (int i = required.nextSetBit(0); i >= 0; i = required.nextSetBit(i + 1)) {
+            if (! answered.get(i)) {
+                missingKeys[pos++] = keys[i];
+            }
+        }
+        return missingKeys;
+    }
+
+    /**
+     * @return the required items for these settings, the returned bitset is shared and must not be changed
+     */
+    private BitSet getRequired(boolean allRequireable, Map<String, Set<String>> selections) {
+        if (selections == null || selections.isEmpty()) {
+            return allRequireable ? requireable : compulsory;
+        }
+        BitSet[] profile = selectionProfiles.get(selections);
+        if (profile == null) {
+            profile = compileSelectionProfile(selections);
+            if (selectionProfiles.size() < MAX_SELECTION_PROFILES) {
+                // copy the key so later changes to the passed in map cannot affect it
+                Map<String, Set<String>> key = new HashMap<>();
+                for (Entry<String, Set<String>> entry : selections.entrySet()) {
+                    key.put(entry.getKey(), new HashSet<>(entry.getValue()));
+                }
+                selectionProfiles.putIfAbsent(key, profile);
+            }
+        }
+        return allRequireable ? profile[0] : profile[1];
+    }
+
+    /**
+     * Only include items where the associate type is not in the selections OR
+     * (the associate type is in the selections AND the id was selected)
+     */
+    private BitSet[] compileSelectionProfile(Map<String, Set<String>> selections) {
+        BitSet included = new BitSet(size);
+        included.set(0, size);
+        for (int i = 0; i < size; i++) {
+            if (associateTypes[i] != null) {
+                Set<String> ids = selections.get(associateTypes[i]);
+                if (ids != null && ! ids.contains(associateIds[i])) {
+                    included.clear(i);
+                }
+            }
+        }
+        BitSet selectedRequireable = (BitSet) requireable.clone();
+        selectedRequireable.and(included);
+        BitSet selectedCompulsory = (BitSet) compulsory.clone();
+        selectedCompulsory.and(included);
+        return new BitSet[] {selectedRequireable, selectedCompulsory};
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+}
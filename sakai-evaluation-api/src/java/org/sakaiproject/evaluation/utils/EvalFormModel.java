@@ -0,0 +1,170 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sakaiproject.evaluation.utils.TemplateItemDataList.DataTemplateItem;
+
+/**
+ * The structure of an evaluation form as seen by everyone taking it in one eval group
+ * (the ordered items, the associates they are repeated for and which of them can or must be answered),
+ * this is the same for every user in the group so one copy is shared by all of them<br/>
+ * The form never contains answers and is read only, anything which needs a {@link TemplateItemDataList}
+ * to work with (e.g. for rendering) gets its own copy from {@link #makeTemplateItemDataList()}
+ */
+public class EvalFormModel {
+
+    private final Long evaluationId;
+    private final String evalGroupId;
+    private final long version;
+    private final TemplateItemDataList templateItemDataList;
+    private final List<DataTemplateItem> dataTemplateItems;
+    private final Set<Long> answerableTemplateItemIds;
+    private final Set<String> requireableKeys;
+    private final Set<Long> compulsoryTemplateItemIds;
+    private final Map<String, List<String>> associates;
+    private final EvalAnswerValidator answerValidator;
+
+    /**
+     * @param evaluationId the id of the evaluation
+     * @param evalGroupId the id of the eval group
+     * @param version the version of the evaluation this form was built from (normally the last modified time)
+     * @param templateItemDataList the TIDL for the evaluation and group, built without answers
+     * @param compulsoryTemplateItemIds the ids of the template items which must be answered in this evaluation
+     */
+    public EvalFormModel(Long evaluationId, String evalGroupId, long version,
+            TemplateItemDataList templateItemDataList, Set<Long> compulsoryTemplateItemIds) {
+        if (templateItemDataList == null) {
+            throw new IllegalArgumentException("templateItemDataList cannot be null");
+        }
+        this.evaluationId = evaluationId;
+        this.evalGroupId = evalGroupId;
+        this.version = version;
+        this.templateItemDataList = templateItemDataList;
+        this.dataTemplateItems = Collections.unmodifiableList(templateItemDataList.getFlatListOfDataTemplateItems(true));
+        Set<Long> answerable = new HashSet<>();
+        Set<String> requireable = new HashSet<>();
+        for (DataTemplateItem dti : dataTemplateItems) {
+            if (dti.isAnswerable()) {
+                answerable.add(dti.templateItem.getId());
+            }
+            if (dti.isRequireable()) {
+                requireable.add(dti.getKey());
+            }
+        }
+        this.answerableTemplateItemIds = Collections.unmodifiableSet(answerable);
+        this.requireableKeys = Collections.unmodifiableSet(requireable);
+        this.compulsoryTemplateItemIds = Collections.unmodifiableSet(
+                compulsoryTemplateItemIds == null ? new HashSet<>() : new HashSet<>(compulsoryTemplateItemIds));
+        Map<String, List<String>> associatesCopy = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : templateItemDataList.getAssociates().entrySet()) {
+            associatesCopy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+        }
+        this.associates = Collections.unmodifiableMap(associatesCopy);
+        int size = dataTemplateItems.size();
+        Long[] templateItemIds = new Long[size];
+        String[] associateTypes = new String[size];
+        String[] associateIds = new String[size];
+        boolean[] requireableItems = new boolean[size];
+        boolean[] compulsoryItems = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            DataTemplateItem dti = dataTemplateItems.get(i);
+            templateItemIds[i] = dti.templateItem.getId();
+            associateTypes[i] = dti.associateType;
+            associateIds[i] = dti.associateId;
+            requireableItems[i] = requireable.contains(dti.getKey());
+            compulsoryItems[i] = this.compulsoryTemplateItemIds.contains(dti.templateItem.getId());
+        }
+        this.answerValidator = new EvalAnswerValidator(templateItemIds, associateTypes, associateIds, requireableItems, compulsoryItems);
+    }
+
+    public Long getEvaluationId() {
+        return evaluationId;
+    }
+
+    public String getEvalGroupId() {
+        return evalGroupId;
+    }
+
+    /**
+     * @return the version of the evaluation this form was built from
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Makes a TIDL for working with this form in one request (e.g. for rendering it),
+     * this is a copy of the shared one so it can be used without affecting anyone else
+     * and does not need any lookups
+     * 
+     * @return a new TIDL for this form (without answers)
+     */
+    public TemplateItemDataList makeTemplateItemDataList() {
+        return new TemplateItemDataList(templateItemDataList);
+    }
+
+    /**
+     * @return the DISPLAYORDERED list of all DTIs (including block children)
+     */
+    public List<DataTemplateItem> getDataTemplateItems() {
+        return dataTemplateItems;
+    }
+
+    /**
+     * @return the ids of all template items which can be answered in this form
+     */
+    public Set<Long> getAnswerableTemplateItemIds() {
+        return answerableTemplateItemIds;
+    }
+
+    /**
+     * @return the answer keys (see {@link TemplateItemUtils#makeTemplateItemAnswerKey(Long, String, String)})
+     * of all the items which can be required
+     */
+    public Set<String> getRequireableKeys() {
+        return requireableKeys;
+    }
+
+    /**
+     * @param templateItemId the id of a template item
+     * @return true if the template item must be answered in this evaluation
+     */
+    public boolean isCompulsory(Long templateItemId) {
+        return compulsoryTemplateItemIds.contains(templateItemId);
+    }
+
+    /**
+     * @return the validator for checking the required answers in responses to this form
+     */
+    public EvalAnswerValidator getAnswerValidator() {
+        return answerValidator;
+    }
+
+    /**
+     * @return the map of associate type -> ids of that type
+     */
+    public Map<String, List<String>> getAssociates() {
+        return associates;
+    }
+
+}
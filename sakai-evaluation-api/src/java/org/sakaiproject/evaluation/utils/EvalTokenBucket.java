@@ -0,0 +1,119 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket rate limiter, used to keep the email sending at a steady rate instead of sending
+ * a batch as fast as possible and then sleeping<br/>
+ * The bucket holds up to burst tokens and is refilled at the given rate, every send takes one token
+ * and waits if there are none, waiting callers reserve their token so they are served in the order
+ * they arrived and the rate holds across any number of threads
+ */
+public class EvalTokenBucket {
+
+    private final double permitsPerSecond;
+    private final double burst;
+
+    // guarded by this
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param permitsPerSecond the steady rate (must be greater than 0)
+     * @param burst the most tokens which can build up while idle (at least 1)
+     */
+    public EvalTokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0d) {
+            throw new IllegalArgumentException("permitsPerSecond must be greater than 0: " + permitsPerSecond);
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.lastRefill = nanoTime();
+    }
+
+    /**
+     * Take one token, waiting until it is available
+     *
+     * @return the time waited in nanoseconds (0 if a token was available)
+     * @throws InterruptedException if interrupted while waiting (the token is still used up)
+     */
+    public long acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) {
+            sleepNanos(wait);
+        }
+        return wait;
+    }
+
+    /**
+     * Take one token only if one is available right now
+     *
+     * @return true if a token was taken, false otherwise
+     */
+    public synchronized boolean tryAcquire() {
+        refill(nanoTime());
+        if (tokens >= 1d) {
+            tokens -= 1d;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the steady rate of this bucket
+     */
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Take a token (going into debt if there are none) and work out how long the caller must wait for it
+     *
+     * @return the time to wait in nanoseconds
+     */
+    protected synchronized long reserve() {
+        refill(nanoTime());
+        tokens -= 1d;
+        if (tokens >= 0d) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / permitsPerSecond * 1000000000d);
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerSecond / 1000000000d);
+            lastRefill = now;
+        }
+    }
+
+    /**
+     * @return the current time in nanoseconds (overridden for testing)
+     */
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Wait for the given time (overridden for testing)
+     */
+    protected void sleepNanos(long nanos) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(nanos);
+    }
+
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.logic.model.EvalUser;
+
+/**
+ * A bounded cache of users with a time to live, this allows the email jobs and reports to resolve
+ * the same users over and over without going back to the user directory every time<br/>
+ * Lookups are coalesced: a user who is already being fetched is not fetched again by other threads
+ * (they wait for the running fetch), and all the users requested while a fetch is running are collected
+ * and fetched together in the next bulk call, so many threads asking for single users end up making
+ * a few bulk calls instead of one call each<br/>
+ * Only real (external and internal) users are cached, invalid and anonymous users are fetched every time<br/>
+ * <b>NOTE:</b> the loader must not use this cache (it would wait on itself)
+ */
+public class EvalUserCache {
+
+    /**
+     * Fetches users for the cache
+     */
+    public interface Loader {
+        /**
+         * @param userIds the unique ids of the users to fetch (never empty)
+         * @return a map of userId -> user, ids which are not in the map are returned as null
+         */
+        Map<String, EvalUser> loadUsers(List<String> userIds);
+    }
+
+    private final Loader loader;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final int maxBatchSize;
+    private final long batchWindowMillis;
+
+    // all of these are guarded by the lock
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, CachedUser> users = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<EvalUser>> inflight = new HashMap<>();
+    private final LinkedHashSet<String> pending = new LinkedHashSet<>();
+    private boolean loading = false;
+    private long loadCount = 0;
+
+    /**
+     * @param loader fetches the users which are not cached
+     * @param ttlMillis how long a user is cached for, 0 or less to disable the cache (lookups are still coalesced)
+     * @param maxEntries the maximum number of users to keep, the least recently used are removed first
+     * @param maxBatchSize the maximum number of users to fetch in one call to the loader
+     * @param batchWindowMillis how long to wait for more users to be requested before fetching (0 to not wait),
+     * users requested while a fetch is running are always collected into the next fetch
+     */
+    public EvalUserCache(Loader loader, long ttlMillis, int maxEntries, int maxBatchSize, long batchWindowMillis) {
+        if (loader == null) {
+            throw new IllegalArgumentException("loader cannot be null");
+        }
+        this.loader = loader;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = Math.max(0, maxEntries);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.batchWindowMillis = Math.max(0, batchWindowMillis);
+    }
+
+    /**
+     * Get a single user, this will wait for the user to be fetched if they are not cached
+     *
+     * @param userId the internal user id
+     * @return a copy of the user OR null if the loader did not return the user
+     */
+    public EvalUser getUser(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        List<String> userIds = new ArrayList<>(1);
+        userIds.add(userId);
+        return getUsers(userIds).get(userId);
+    }
+
+    /**
+     * Get a set of users, the ones which are not cached are fetched in as few calls as possible
+     *
+     * @param userIds the internal user ids (duplicates and nulls are ignored)
+     * @return a map of userId -> copy of the user, users the loader did not return are mapped to null
+     */
+    public Map<String, EvalUser> getUsers(Collection<String> userIds) {
+        Map<String, EvalUser> found = new LinkedHashMap<>();
+        if (userIds == null || userIds.isEmpty()) {
+            return found;
+        }
+        Map<String, CompletableFuture<EvalUser>> waiting = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            for (String userId : userIds) {
+                if (userId == null || found.containsKey(userId) || waiting.containsKey(userId)) {
+                    continue;
+                }
+                CachedUser cached = users.get(userId);
+                if (cached != null) {
+                    if (now < cached.expires) {
+                        found.put(userId, copy(cached.user));
+                        continue;
+                    }
+                    users.remove(userId);
+                }
+                CompletableFuture<EvalUser> future = inflight.get(userId);
+                if (future == null) {
+                    future = new CompletableFuture<>();
+                    inflight.put(userId, future);
+                    pending.add(userId);
+                }
+                waiting.put(userId, future);
+            }
+        }
+        for (Map.Entry<String, CompletableFuture<EvalUser>> entry : waiting.entrySet()) {
+            found.put(entry.getKey(), copy(await(entry.getValue())));
+        }
+        return found;
+    }
+
+    /**
+     * Remove a user from the cache (e.g. after they were changed)
+     *
+     * @param userId the internal user id
+     */
+    public void remove(String userId) {
+        synchronized (lock) {
+            users.remove(userId);
+        }
+    }
+
+    /**
+     * Remove all users from the cache
+     */
+    public void clear() {
+        synchronized (lock) {
+            users.clear();
+        }
+    }
+
+    /**
+     * @return the number of users currently cached (including expired ones which were not removed yet)
+     */
+    public int size() {
+        synchronized (lock) {
+            return users.size();
+        }
+    }
+
+    /**
+     * @return the number of calls made to the loader so far
+     */
+    public long getLoadCount() {
+        synchronized (lock) {
+            return loadCount;
+        }
+    }
+
+    /**
+     * Wait for the user to be fetched, if nobody is fetching then this thread fetches the next
+     * batch of pending users (which may or may not include this user)
+     */
+    private EvalUser await(CompletableFuture<EvalUser> future) {
+        while (! future.isDone()) {
+            synchronized (lock) {
+                if (future.isDone()) {
+                    break;
+                }
+                if (loading || pending.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for users to be fetched", e);
+                    }
+                    continue;
+                }
+                loading = true;
+            }
+            try {
+                if (batchWindowMillis > 0) {
+                    try {
+                        Thread.sleep(batchWindowMillis);
+                    } catch (InterruptedException e) {
+                        // fetch what we have now, other threads are waiting on it
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                List<String> batch = new ArrayList<>();
+                synchronized (lock) {
+                    Iterator<String> it = pending.iterator();
+                    while (it.hasNext() && batch.size() < maxBatchSize) {
+                        batch.add(it.next());
+                        it.remove();
+                    }
+                }
+                load(batch);
+            } finally {
+                synchronized (lock) {
+                    loading = false;
+                    lock.notifyAll();
+                }
+            }
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Failure fetching users: " + cause, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for users to be fetched", e);
+        }
+    }
+
+    /**
+     * Fetch a batch of users and complete everyone waiting on them,
+     * the futures are always completed (even if the loader throws an Error) or the waiters would never wake up
+     */
+    private void load(List<String> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Map<String, EvalUser> loaded = null;
+        Throwable failure = null;
+        try {
+            loaded = loader.loadUsers(batch);
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            long expires = System.currentTimeMillis() + ttlMillis;
+            synchronized (lock) {
+                loadCount++;
+                for (String userId : batch) {
+                    CompletableFuture<EvalUser> future = inflight.remove(userId);
+                    if (future == null) {
+                        continue;
+                    }
+                    if (failure != null) {
+                        future.completeExceptionally(failure);
+                        continue;
+                    }
+                    EvalUser user = loaded == null ? null : loaded.get(userId);
+                    if (user != null && ttlMillis > 0 && maxEntries > 0 && isCacheable(user)) {
+                        users.put(userId, new CachedUser(user, expires));
+                    }
+                    future.complete(user);
+                }
+                Iterator<String> it = users.keySet().iterator();
+                while (users.size() > maxEntries && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+        }
+        if (failure instanceof Error) {
+            // the waiters have it as well but the loading thread should not carry on as if nothing happened
+            throw (Error) failure;
+        }
+    }
+
+    private boolean isCacheable(EvalUser user) {
+        return EvalConstants.USER_TYPE_EXTERNAL.equals(user.type)
+                || EvalConstants.USER_TYPE_INTERNAL.equals(user.type);
+    }
+
+    /**
+     * Users are mutable so everyone gets their own copy
+     */
+    private EvalUser copy(EvalUser user) {
+        if (user == null) {
+            return null;
+        }
+        EvalUser copy = new EvalUser();
+        copy.userId = user.userId;
+        copy.type = user.type;
+        copy.email = user.email;
+        copy.username = user.username;
+        copy.displayName = user.displayName;
+        copy.sortName = user.sortName;
+        copy.displayId = user.displayId;
+        return copy;
+    }
+
+    private static class CachedUser {
+        final EvalUser user;
+        final long expires;
+        CachedUser(EvalUser user, long expires) {
+            this.user = user;
+            this.expires = expires;
+        }
+    }
+
+}
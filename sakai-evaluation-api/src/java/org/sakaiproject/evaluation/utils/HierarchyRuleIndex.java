@@ -0,0 +1,268 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.logic.model.HierarchyNodeRule;
+
+/**
+ * A compiled, read-only index over a set of {@link HierarchyNodeRule}s which allows a site
+ * (and its sections) to be matched against all the rules without scanning them one by one.<br/>
+ * Exact rules are hashed, "starts with" rules are held in a trie, "ends with" rules in a trie of the
+ * reversed rule text and "contains" rules in an Aho-Corasick automaton, so the cost of a lookup
+ * depends on the length of the titles and not on the number of rules.<br/>
+ * When more than one rule matches, the rule which appears last in the list used to build the index wins,
+ * which is the same result the old linear scan over all rules produced.<br/>
+ * Instances are immutable once built and are safe to share between threads,
+ * build a new index when the rules change
+ */
+public class HierarchyRuleIndex {
+
+    private static final int NO_MATCH = -1;
+
+    private final HierarchyNodeRule[] rules;
+    private final TitleMatcher siteRules = new TitleMatcher();
+    private final TitleMatcher sectionRules = new TitleMatcher();
+    private final Map<Long, List<HierarchyNodeRule>> nodeRules = new HashMap<>();
+
+    /**
+     * Compile an index for the given rules
+     *
+     * @param rules the rules to index (normally all rules in the system), order is significant
+     */
+    public HierarchyRuleIndex(List<HierarchyNodeRule> rules) {
+        if (rules == null) {
+            throw new IllegalArgumentException("rules cannot be null");
+        }
+        this.rules = rules.toArray(new HierarchyNodeRule[rules.size()]);
+        for (int i = 0; i < this.rules.length; i++) {
+            HierarchyNodeRule rule = this.rules[i];
+            if (rule == null || rule.getRule() == null) {
+                continue;
+            }
+            List<HierarchyNodeRule> forNode = nodeRules.get(rule.getNodeID());
+            if (forNode == null) {
+                forNode = new ArrayList<>();
+                nodeRules.put(rule.getNodeID(), forNode);
+            }
+            forNode.add(rule);
+            TitleMatcher matcher = EvalConstants.HIERARCHY_RULE_SECTION.equals(rule.getOption()) ? sectionRules : siteRules;
+            matcher.add(getQualifier(rule.getRule()), getRawRuleText(rule.getRule()), i);
+        }
+        siteRules.compile();
+        sectionRules.compile();
+    }
+
+    /**
+     * @return the number of rules in this index
+     */
+    public int size() {
+        return rules.length;
+    }
+
+    /**
+     * @param nodeID the id of a hierarchy node
+     * @return the rules assigned to that node (in index order), empty list if there are none
+     */
+    public List<HierarchyNodeRule> getRulesForNode(Long nodeID) {
+        List<HierarchyNodeRule> forNode = nodeRules.get(nodeID);
+        if (forNode == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(forNode);
+    }
+
+    /**
+     * Find the rule which applies to an eval group,
+     * section rules are only matched against the section titles if the eval group is a section,
+     * otherwise every rule is matched against the site title
+     *
+     * @param siteTitle the title of the site the eval group belongs to
+     * @param sectionTitles the titles of the sections provided to the site (may be null or empty)
+     * @param sectionBased true if the eval group identifies a section in a site
+     * @return the matching rule OR null if no rule matches
+     */
+    public HierarchyNodeRule findRule(String siteTitle, Collection<String> sectionTitles, boolean sectionBased) {
+        int best = NO_MATCH;
+        if (siteTitle != null) {
+            best = siteRules.match(siteTitle);
+            if (! sectionBased) {
+                best = Math.max(best, sectionRules.match(siteTitle));
+            }
+        }
+        if (sectionBased && sectionTitles != null) {
+            for (String sectionTitle : sectionTitles) {
+                if (sectionTitle != null) {
+                    best = Math.max(best, sectionRules.match(sectionTitle));
+                }
+            }
+        }
+        return best == NO_MATCH ? null : rules[best];
+    }
+
+    /**
+     * Same rules as ExternalHierarchyLogic#determineQualifierFromRuleText(String)
+     */
+    static String getQualifier(String ruleText) {
+        if (ruleText.startsWith("%") && ruleText.endsWith("%")) {
+            return EvalConstants.HIERARCHY_QUALIFIER_CONTAINS;
+        } else if (ruleText.startsWith("%")) {
+            return EvalConstants.HIERARCHY_QUALIFIER_ENDS_WITH;
+        } else if (ruleText.endsWith("%")) {
+            return EvalConstants.HIERARCHY_QUALIFIER_STARTS_WITH;
+        } else {
+            return EvalConstants.HIERARCHY_QUALIFIER_IS;
+        }
+    }
+
+    /**
+     * Same rules as ExternalHierarchyLogic#removeQualifierFromRuleText(String)
+     */
+    static String getRawRuleText(String ruleText) {
+        String rule = ruleText;
+        if (rule.startsWith("%")) {
+            rule = rule.substring(1);
+        }
+        if (rule.endsWith("%")) {
+            rule = rule.substring(0, rule.length() - 1);
+        }
+        return rule;
+    }
+
+
+    /**
+     * Matches titles against all the rules of a single option (site or section)
+     */
+    private static class TitleMatcher {
+        private final Map<String, Integer> exact = new HashMap<>();
+        private final Node prefixes = new Node();
+        private final Node suffixes = new Node();
+        private final Node contains = new Node();
+
+        void add(String qualifier, String text, int ordinal) {
+            if (EvalConstants.HIERARCHY_QUALIFIER_CONTAINS.equals(qualifier)) {
+                contains.insert(text, false, ordinal);
+            } else if (EvalConstants.HIERARCHY_QUALIFIER_ENDS_WITH.equals(qualifier)) {
+                suffixes.insert(text, true, ordinal);
+            } else if (EvalConstants.HIERARCHY_QUALIFIER_STARTS_WITH.equals(qualifier)) {
+                prefixes.insert(text, false, ordinal);
+            } else {
+                Integer current = exact.get(text);
+                exact.put(text, current == null ? ordinal : Math.max(current, ordinal));
+            }
+        }
+
+        /**
+         * Builds the failure links for the contains automaton (Aho-Corasick),
+         * each node ends up holding the best ordinal of every rule which ends at that point in the text
+         */
+        void compile() {
+            Deque<Node> queue = new ArrayDeque<>();
+            for (Node child : contains.children.values()) {
+                child.fail = contains;
+                child.best = Math.max(child.best, contains.best);
+                queue.add(child);
+            }
+            while (! queue.isEmpty()) {
+                Node current = queue.poll();
+                for (Map.Entry<Character, Node> entry : current.children.entrySet()) {
+                    char c = entry.getKey();
+                    Node child = entry.getValue();
+                    Node fail = current.fail;
+                    while (fail != contains && ! fail.children.containsKey(c)) {
+                        fail = fail.fail;
+                    }
+                    Node target = fail.children.get(c);
+                    child.fail = (target != null && target != child) ? target : contains;
+                    child.best = Math.max(child.best, child.fail.best);
+                    queue.add(child);
+                }
+            }
+        }
+
+        int match(String title) {
+            int best = NO_MATCH;
+            Integer exactMatch = exact.get(title);
+            if (exactMatch != null) {
+                best = exactMatch;
+            }
+            best = Math.max(best, prefixes.walk(title, false));
+            best = Math.max(best, suffixes.walk(title, true));
+            // contains (Aho-Corasick)
+            Node state = contains;
+            best = Math.max(best, state.best);
+            for (int i = 0; i < title.length(); i++) {
+                char c = title.charAt(i);
+                while (state != contains && ! state.children.containsKey(c)) {
+                    state = state.fail;
+                }
+                Node next = state.children.get(c);
+                state = next == null ? contains : next;
+                best = Math.max(best, state.best);
+            }
+            return best;
+        }
+    }
+
+    /**
+     * A trie node, also used as an automaton state for the contains rules
+     */
+    private static class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        Node fail;
+        int best = NO_MATCH;
+
+        void insert(String text, boolean reversed, int ordinal) {
+            Node node = this;
+            int length = text.length();
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(reversed ? length - 1 - i : i);
+                Node child = node.children.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.best = Math.max(node.best, ordinal);
+        }
+
+        /**
+         * @return the best ordinal of all rules which are a prefix (or suffix when reversed) of the text
+         */
+        int walk(String text, boolean reversed) {
+            int best = this.best;
+            Node node = this;
+            int length = text.length();
+            for (int i = 0; i < length && node != null; i++) {
+                node = node.children.get(text.charAt(reversed ? length - 1 - i : i));
+                if (node != null) {
+                    best = Math.max(best, node.best);
+                }
+            }
+            return best;
+        }
+    }
+
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sakaiproject.evaluation.logic.model.EvalHierarchyNode;
+
+/**
+ * An immutable, in-memory copy of the evaluation hierarchy which answers the common
+ * ancestor and descendant questions without going back to the hierarchy service.<br/>
+ * The nodes are numbered with an Euler tour (entry and exit order of a depth first walk from the root)
+ * so checking if one node is below another is O(1), a subtree is a contiguous run of the tour
+ * and the ancestors of a node (root first) are found in O(depth).<br/>
+ * Nodes with more than one parent are placed in the tour under the first parent found,
+ * membership checks for those fall back to the node ids stored on the nodes themselves.<br/>
+ * Build a new snapshot when the hierarchy changes
+ */
+public class HierarchyTreeSnapshot {
+
+    private final String rootId;
+    private final Map<String, EvalHierarchyNode> nodes = new HashMap<>();
+    private final Map<String, Integer> entry = new HashMap<>();
+    private final Map<String, Integer> exit = new HashMap<>();
+    private final Map<String, Integer> depths = new HashMap<>();
+    private final Map<String, String> tourParents = new HashMap<>();
+    /**
+     * the node ids in tour (entry) order, the subtree of a node is tour[entry + 1 .. exit]
+     */
+    private final String[] tour;
+    private final boolean singleParents;
+
+    /**
+     * Build a snapshot of a hierarchy
+     *
+     * @param rootId the id of the root node of the hierarchy
+     * @param allNodes all the nodes in the hierarchy (including the root node),
+     * nodes which cannot be reached from the root are ignored
+     */
+    public HierarchyTreeSnapshot(String rootId, Collection<EvalHierarchyNode> allNodes) {
+        if (rootId == null || allNodes == null) {
+            throw new IllegalArgumentException("rootId and allNodes cannot be null");
+        }
+        this.rootId = rootId;
+        Map<String, EvalHierarchyNode> given = new HashMap<>();
+        for (EvalHierarchyNode node : allNodes) {
+            if (node != null && node.id != null) {
+                given.put(node.id, node);
+            }
+        }
+        if (! given.containsKey(rootId)) {
+            throw new IllegalArgumentException("The root node (" + rootId + ") must be included in the nodes");
+        }
+
+        // iterative depth first walk, a node is entered when first pushed and exited once all children are done
+        List<String> order = new ArrayList<>();
+        boolean onlySingleParents = true;
+        Deque<Iterator<String>> stack = new ArrayDeque<>();
+        Deque<String> path = new ArrayDeque<>();
+        enter(rootId, null, 0, given, order);
+        path.push(rootId);
+        stack.push(childIds(given.get(rootId)));
+        while (! stack.isEmpty()) {
+            Iterator<String> children = stack.peek();
+            if (children.hasNext()) {
+                String childId = children.next();
+                if (! given.containsKey(childId)) {
+                    continue;
+                }
+                if (nodes.containsKey(childId)) {
+                    // already placed under another parent
+                    onlySingleParents = false;
+                    continue;
+                }
+                String parentId = path.peek();
+                enter(childId, parentId, depths.get(parentId) + 1, given, order);
+                path.push(childId);
+                stack.push(childIds(given.get(childId)));
+            } else {
+                stack.pop();
+                exit.put(path.pop(), order.size() - 1);
+            }
+        }
+        for (EvalHierarchyNode node : nodes.values()) {
+            if (node.directParentNodeIds != null && node.directParentNodeIds.size() > 1) {
+                onlySingleParents = false;
+            }
+        }
+        this.tour = order.toArray(new String[order.size()]);
+        this.singleParents = onlySingleParents;
+    }
+
+    private void enter(String nodeId, String parentId, int depth, Map<String, EvalHierarchyNode> given, List<String> order) {
+        nodes.put(nodeId, given.get(nodeId));
+        entry.put(nodeId, order.size());
+        depths.put(nodeId, depth);
+        if (parentId != null) {
+            tourParents.put(nodeId, parentId);
+        }
+        order.add(nodeId);
+    }
+
+    private Iterator<String> childIds(EvalHierarchyNode node) {
+        if (node.directChildNodeIds == null) {
+            return Collections.<String>emptyList().iterator();
+        }
+        return node.directChildNodeIds.iterator();
+    }
+
+    /**
+     * @return the id of the root node
+     */
+    public String getRootId() {
+        return rootId;
+    }
+
+    /**
+     * @return the number of nodes in the snapshot
+     */
+    public int size() {
+        return tour.length;
+    }
+
+    /**
+     * @param nodeId the id of a node
+     * @return true if the node is in this snapshot
+     */
+    public boolean contains(String nodeId) {
+        return nodes.containsKey(nodeId);
+    }
+
+    /**
+     * @param nodeId the id of a node
+     * @return the node OR null if it is not in this snapshot
+     */
+    public EvalHierarchyNode getNode(String nodeId) {
+        return nodes.get(nodeId);
+    }
+
+    /**
+     * @param nodeId the id of a node
+     * @return the depth of the node (the root is 0) OR -1 if the node is not in this snapshot
+     */
+    public int getDepth(String nodeId) {
+        Integer depth = depths.get(nodeId);
+        return depth == null ? -1 : depth;
+    }
+
+    /**
+     * Check if a node is somewhere below another node
+     *
+     * @param ancestorId the id of the possible ancestor
+     * @param nodeId the id of the node to check
+     * @return true if nodeId is a descendant of ancestorId, false otherwise (including if they are the same node)
+     */
+    public boolean isDescendant(String ancestorId, String nodeId) {
+        Integer ancestorEntry = entry.get(ancestorId);
+        Integer nodeEntry = entry.get(nodeId);
+        if (ancestorEntry == null || nodeEntry == null) {
+            return false;
+        }
+        if (nodeEntry > ancestorEntry && nodeEntry <= exit.get(ancestorId)) {
+            return true;
+        }
+        if (! singleParents) {
+            EvalHierarchyNode node = nodes.get(nodeId);
+            return node.parentNodeIds != null && node.parentNodeIds.contains(ancestorId);
+        }
+        return false;
+    }
+
+    /**
+     * Get the ancestors of a node in order from the root down
+     *
+     * @param nodeId the id of a node
+     * @param includeSelf if true the node itself is included as the last entry
+     * @return the list of ancestor nodes (root first), empty if the node is not in this snapshot
+     */
+    public List<EvalHierarchyNode> getAncestors(String nodeId, boolean includeSelf) {
+        if (! nodes.containsKey(nodeId)) {
+            return new ArrayList<>();
+        }
+        List<String> ids = new ArrayList<>();
+        if (singleParents) {
+            for (String current = nodeId; current != null; current = tourParents.get(current)) {
+                ids.add(current);
+            }
+            Collections.reverse(ids);
+        } else {
+            EvalHierarchyNode node = nodes.get(nodeId);
+            if (node.parentNodeIds != null) {
+                for (String parentId : node.parentNodeIds) {
+                    if (nodes.containsKey(parentId)) {
+                        ids.add(parentId);
+                    }
+                }
+            }
+            ids.sort((a, b) -> Integer.compare(depths.get(a), depths.get(b)));
+            ids.add(nodeId);
+        }
+        if (! includeSelf) {
+            ids.remove(ids.size() - 1);
+        }
+        List<EvalHierarchyNode> ancestors = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            ancestors.add(nodes.get(id));
+        }
+        return ancestors;
+    }
+
+    /**
+     * Get the nodes below a node
+     *
+     * @param nodeId the id of a node
+     * @param directOnly if true then only the direct children are returned, otherwise all descendants
+     * @return the set of child nodes, empty if there are none or the node is not in this snapshot
+     */
+    public Set<EvalHierarchyNode> getChildNodes(String nodeId, boolean directOnly) {
+        Set<EvalHierarchyNode> children = new HashSet<>();
+        EvalHierarchyNode node = nodes.get(nodeId);
+        if (node == null) {
+            return children;
+        }
+        Collection<String> ids;
+        if (directOnly) {
+            ids = node.directChildNodeIds;
+        } else if (singleParents) {
+            int start = entry.get(nodeId) + 1;
+            int end = exit.get(nodeId);
+            for (int i = start; i <= end; i++) {
+                children.add(nodes.get(tour[i]));
+            }
+            return children;
+        } else {
+            ids = node.childNodeIds;
+        }
+        if (ids != null) {
+            for (String id : ids) {
+                EvalHierarchyNode child = nodes.get(id);
+                if (child != null) {
+                    children.add(child);
+                }
+            }
+        }
+        return children;
+    }
+
+}
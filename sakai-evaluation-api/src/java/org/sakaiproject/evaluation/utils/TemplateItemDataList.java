@@ -301,6 +301,77 @@ public class TemplateItemDataList {
         construct(evalTemplateItems, evalHierarchyNodes, evalAssociates, evalAnswers);
     }
 
+    /**
+     * Makes a copy of a structure (without any answers) which can be used separately from the original,
+     * e.g. when the original is shared by several requests<br/>
+     * The template items are copied so the changes made while working with the copy stay in the copy,
+     * the items, scales and hierarchy nodes they refer to are still shared and must only be read<br/>
+     * No lookups are done, the associates keep the order they have in the original
+     * 
+     * @param original the structure to copy
+     */
+    public TemplateItemDataList(TemplateItemDataList original) {
+        if (original == null) {
+            throw new IllegalArgumentException("original cannot be null");
+        }
+
+        List<EvalTemplateItem> templateItems = new ArrayList<>(original.allTemplateItems.size());
+        for (EvalTemplateItem templateItem : original.allTemplateItems) {
+            templateItems.add(copyTemplateItem(templateItem));
+        }
+
+        // the associates with items in the order of the original groups, then the rest
+        Map<String, List<String>> orderedAssociates = new HashMap<>();
+        for (Entry<String, List<String>> entry : original.associates.entrySet()) {
+            Set<String> ordered = new LinkedHashSet<>();
+            for (TemplateItemGroup tig : original.templateItemGroups) {
+                if (entry.getKey().equals(tig.associateType)) {
+                    ordered.add(tig.associateId);
+                }
+            }
+            ordered.addAll(entry.getValue());
+            orderedAssociates.put(entry.getKey(), new ArrayList<>(ordered));
+        }
+
+        construct(templateItems, new ArrayList<>(original.hierarchyNodes), orderedAssociates, null);
+
+        // set after the structure is built so the ordering above is kept, used for later lookups
+        this.evaluationId = original.evaluationId;
+        this.evalGroupId = original.evalGroupId;
+        this.evaluationService = original.evaluationService;
+    }
+
+    /**
+     * @param original a template item
+     * @return a copy of the template item with all the same values (and the same item and template)
+     */
+    private static EvalTemplateItem copyTemplateItem(EvalTemplateItem original) {
+        EvalTemplateItem copy = new EvalTemplateItem();
+        copy.setId(original.getId());
+        copy.setEid(original.getEid());
+        copy.setLastModified(original.getLastModified());
+        copy.setOwner(original.getOwner());
+        copy.setTemplate(original.getTemplate());
+        copy.setItem(original.getItem());
+        copy.setDisplayOrder(original.getDisplayOrder());
+        copy.setCategory(original.getCategory());
+        copy.setHierarchyLevel(original.getHierarchyLevel());
+        copy.setHierarchyNodeId(original.getHierarchyNodeId());
+        copy.setUsesNA(original.getUsesNA());
+        copy.setUsesComment(original.getUsesComment());
+        copy.setDisplayRows(original.getDisplayRows());
+        copy.setScaleDisplaySetting(original.getScaleDisplaySetting());
+        copy.setBlockParent(original.getBlockParent());
+        copy.setBlockId(original.getBlockId());
+        copy.setResultsSharing(original.getResultsSharing());
+        copy.setCopyOf(original.getCopyOf());
+        copy.setHidden(original.isHidden());
+        copy.setAutoUseTag(original.getAutoUseTag());
+        copy.setAutoUseInsertionTag(original.getAutoUseInsertionTag());
+        copy.setCompulsory(original.isCompulsory());
+        return copy;
+    }
+
     /**
      * Constructs the TIDL
      * @param allTemplateItems (REQUIRED)
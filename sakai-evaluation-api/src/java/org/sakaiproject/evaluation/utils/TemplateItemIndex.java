@@ -0,0 +1,136 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.model.EvalTemplateItem;
+
+/**
+ * An indexed view of a list of template items (id to item, block parent to children and the
+ * sorted non-child and parent items), build this once for an operation which needs the block
+ * structure of many items instead of scanning the list for every block parent<br/>
+ * The index is a snapshot of the list and the block fields and display order of the items at the
+ * time it was made, make a new one if those change
+ */
+public class TemplateItemIndex {
+
+    private final List<EvalTemplateItem> templateItems;
+    private final Map<Long, EvalTemplateItem> byId;
+    private final Map<Long, List<EvalTemplateItem>> childrenByParentId;
+    private final List<EvalTemplateItem> nonChildItems;
+    private final List<EvalTemplateItem> parentItems;
+
+    /**
+     * @param templateItemsList a List of {@link EvalTemplateItem} objects (normally all the items in a template)
+     */
+    public TemplateItemIndex(List<EvalTemplateItem> templateItemsList) {
+        if (templateItemsList == null) {
+            throw new IllegalArgumentException("templateItemsList cannot be null");
+        }
+        int size = templateItemsList.size();
+        this.templateItems = Collections.unmodifiableList(new ArrayList<>(templateItemsList));
+        this.byId = new HashMap<>(size);
+        this.childrenByParentId = new HashMap<>();
+        List<EvalTemplateItem> nonChildren = new ArrayList<>(size);
+        List<EvalTemplateItem> parents = new ArrayList<>();
+        for (EvalTemplateItem templateItem : templateItems) {
+            if (templateItem.getId() != null) {
+                byId.put(templateItem.getId(), templateItem);
+            }
+            if (! EvalConstants.ITEM_TYPE_BLOCK_CHILD.equals(TemplateItemUtils.getTemplateItemType(templateItem))) {
+                nonChildren.add(templateItem);
+            }
+            if (TemplateItemUtils.isBlockParent(templateItem)) {
+                parents.add(templateItem);
+            }
+            if (TemplateItemUtils.isBlockChild(templateItem)) {
+                List<EvalTemplateItem> children = childrenByParentId.get(templateItem.getBlockId());
+                if (children == null) {
+                    children = new ArrayList<>();
+                    childrenByParentId.put(templateItem.getBlockId(), children);
+                }
+                children.add(templateItem);
+            }
+        }
+        ComparatorsUtils.TemplateItemComparatorByOrder comparator = new ComparatorsUtils.TemplateItemComparatorByOrder();
+        Collections.sort(nonChildren, comparator);
+        Collections.sort(parents, comparator);
+        for (List<EvalTemplateItem> children : childrenByParentId.values()) {
+            Collections.sort(children, comparator);
+        }
+        this.nonChildItems = Collections.unmodifiableList(nonChildren);
+        this.parentItems = Collections.unmodifiableList(parents);
+    }
+
+    /**
+     * @return all the template items in the order of the list the index was made from
+     */
+    public List<EvalTemplateItem> getTemplateItems() {
+        return templateItems;
+    }
+
+    /**
+     * @param templateItemId the unique id of an {@link EvalTemplateItem}
+     * @return the template item OR null if it is not in the index
+     */
+    public EvalTemplateItem getTemplateItem(Long templateItemId) {
+        return byId.get(templateItemId);
+    }
+
+    /**
+     * @param blockParentId a unique identifier for an {@link EvalTemplateItem} which is a block parent
+     * @return the child items of the block in display order (read only) or empty if none found
+     * @see TemplateItemUtils#getChildItems(List, Long)
+     */
+    public List<EvalTemplateItem> getChildItems(Long blockParentId) {
+        List<EvalTemplateItem> children = childrenByParentId.get(blockParentId);
+        if (children == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(children);
+    }
+
+    /**
+     * @return all items except block children in display order (read only)
+     * @see TemplateItemUtils#getNonChildItems(List)
+     */
+    public List<EvalTemplateItem> getNonChildItems() {
+        return nonChildItems;
+    }
+
+    /**
+     * @return all block parent items in display order (read only)
+     * @see TemplateItemUtils#getParentItems(List)
+     */
+    public List<EvalTemplateItem> getParentItems() {
+        return parentItems;
+    }
+
+    /**
+     * @return a new identity based set for tracking which of the indexed items have been handled
+     */
+    public static Set<EvalTemplateItem> makeIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+}
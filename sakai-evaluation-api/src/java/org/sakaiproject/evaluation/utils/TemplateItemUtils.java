@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.model.EvalItem;
@@ -150,36 +151,53 @@ public class TemplateItemUtils {
      * @return a List of {@link EvalTemplateItem} objects
      */
     public static List<EvalTemplateItem> orderTemplateItems(List<EvalTemplateItem> templateItemsList, boolean fixOrder) {
+        return orderTemplateItems(new TemplateItemIndex(templateItemsList), fixOrder);
+    }
+
+    /**
+     * Reorder the indexed templateItems to be in the correct displayOrder,
+     * same as {@link #orderTemplateItems(List, boolean)} but uses an existing index
+     * 
+     * @param index the index of all the templateItems in a template
+     * @param fixOrder if true then this will correct the displayOrder (but not save it)
+     * @return a List of {@link EvalTemplateItem} objects
+     */
+    public static List<EvalTemplateItem> orderTemplateItems(TemplateItemIndex index, boolean fixOrder) {
         List<EvalTemplateItem> orderedItemsList = new ArrayList<>();
+        Set<EvalTemplateItem> orderedItems = TemplateItemIndex.makeIdentitySet();
 
         // get the ordered list of all non-children
-        List<EvalTemplateItem> nonChildrenItems = getNonChildItems(templateItemsList);
+        List<EvalTemplateItem> nonChildrenItems = index.getNonChildItems();
         for (int i=0; i<nonChildrenItems.size(); i++) {
-            EvalTemplateItem templateItem = (EvalTemplateItem) nonChildrenItems.get(i);
+            EvalTemplateItem templateItem = nonChildrenItems.get(i);
             String type = getTemplateItemType(templateItem);
             if (fixOrder) {
                 templateItem.setDisplayOrder(i + 1);
             }
             orderedItemsList.add(templateItem);
+            orderedItems.add(templateItem);
             if (EvalConstants.ITEM_TYPE_BLOCK_PARENT.equals(type)) {
                 // get the ordered list of all non-children
-                List<EvalTemplateItem> childrenItems = getChildItems(templateItemsList, templateItem.getId());
+                List<EvalTemplateItem> childrenItems = index.getChildItems(templateItem.getId());
                 for (int j=0; j<childrenItems.size(); j++) {
-                    EvalTemplateItem childItem = (EvalTemplateItem) childrenItems.get(j);
+                    EvalTemplateItem childItem = childrenItems.get(j);
                     if (fixOrder) {
                         childItem.setDisplayOrder(j + 1);
                     }
                     orderedItemsList.add(childItem);
+                    orderedItems.add(childItem);
                 }
             }
         }
 
         // need to have a special case here which will keep this method 
         // from losing child items when the parent is not included
+        List<EvalTemplateItem> templateItemsList = index.getTemplateItems();
         if (orderedItemsList.size() < templateItemsList.size()) {
             for (EvalTemplateItem templateItem : templateItemsList) {
-                if (! orderedItemsList.contains(templateItem)) {
+                if (! orderedItems.contains(templateItem)) {
                     orderedItemsList.add(templateItem);
+                    orderedItems.add(templateItem);
                 }
             }
         }
@@ -210,9 +228,20 @@ public class TemplateItemUtils {
      * @return a List of {@link EvalTemplateItem} objects
      */
     public static List<EvalTemplateItem> getAnswerableTemplateItems(List<EvalTemplateItem> templateItemsList) {		
+        return getAnswerableTemplateItems(new TemplateItemIndex(templateItemsList));
+    }
+
+    /**
+     * Return a list of answerable items only in the correct order,
+     * same as {@link #getAnswerableTemplateItems(List)} but uses an existing index
+     * 
+     * @param index the index of the templateItems from a template
+     * @return a List of {@link EvalTemplateItem} objects
+     */
+    public static List<EvalTemplateItem> getAnswerableTemplateItems(TemplateItemIndex index) {		
         List<EvalTemplateItem> answerableItemsList = new ArrayList<>();
 
-        List<EvalTemplateItem> orderedItems = orderTemplateItems(templateItemsList, false);
+        List<EvalTemplateItem> orderedItems = orderTemplateItems(index, false);
 
         for (int i=0; i<orderedItems.size(); i++) {
             EvalTemplateItem templateItem = (EvalTemplateItem) orderedItems.get(i);
@@ -258,9 +287,20 @@ public class TemplateItemUtils {
      * @see #isRequireable(EvalTemplateItem)
      */
     public static List<EvalTemplateItem> getRequireableTemplateItems(List<EvalTemplateItem> templateItemsList) {       
+        return getRequireableTemplateItems(new TemplateItemIndex(templateItemsList));
+    }
+
+    /**
+     * Get the list of all templateItems which are requireable,
+     * same as {@link #getRequireableTemplateItems(List)} but uses an existing index
+     * 
+     * @param index the index of the templateItems from a template
+     * @return a List of {@link EvalTemplateItem} objects
+     */
+    public static List<EvalTemplateItem> getRequireableTemplateItems(TemplateItemIndex index) {       
         List<EvalTemplateItem> requireableItemsList = new ArrayList<>();
 
-        List<EvalTemplateItem> orderedItems = orderTemplateItems(templateItemsList, false);
+        List<EvalTemplateItem> orderedItems = orderTemplateItems(index, false);
 
         for (int i=0; i<orderedItems.size(); i++) {
             EvalTemplateItem templateItem = (EvalTemplateItem) orderedItems.get(i);
@@ -335,7 +375,9 @@ public class TemplateItemUtils {
 
     /**
      * return the child items which are associated with a block parent Id in the correct
-     * display order
+     * display order<br/>
+     * <b>NOTE</b> this scans the whole list, use {@link TemplateItemIndex#getChildItems(Long)}
+     * when getting the children for many block parents
      * 
      * @param templateItemsList a List of {@link EvalTemplateItem} objects in a template
      * @param blockParentId a unique identifier for an {@link EvalTemplateItem} which is a block parent
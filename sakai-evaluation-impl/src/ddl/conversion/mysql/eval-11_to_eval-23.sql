@@ -0,0 +1,88 @@
+--
+-- Copyright 2003 Sakai Foundation Licensed under the
+-- Educational Community License, Version 2.0 (the "License"); you may
+-- not use this file except in compliance with the License. You may
+-- obtain a copy of the License at
+--
+-- http://www.osedu.org/licenses/ECL-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an "AS IS"
+-- BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+-- or implied. See the License for the specific language governing
+-- permissions and limitations under the License.
+--
+
+-- MySQL conversion script - 11 to 23
+
+create table EVAL_IMPORT_CHECKPOINT (
+    ID bigint not null auto_increment,
+    LAST_MODIFIED datetime not null,
+    FILE_HASH varchar(64) not null,
+    STAGE varchar(255) not null,
+    ELEMENT_INDEX integer not null,
+    COMPLETE bit not null,
+    primary key (ID)
+) ENGINE=InnoDB;
+
+create index eval_impchk_file on EVAL_IMPORT_CHECKPOINT (FILE_HASH);
+
+create table EVAL_IMPORT_HASH (
+    ID bigint not null auto_increment,
+    LAST_MODIFIED datetime not null,
+    ENTITY_TYPE varchar(255) not null,
+    EID varchar(255) not null,
+    CONTENT_HASH varchar(64) not null,
+    primary key (ID),
+    unique (ENTITY_TYPE, EID)
+) ENGINE=InnoDB;
+
+create index eval_imphash_eid on EVAL_IMPORT_HASH (EID);
+
+create table EVAL_EMAIL_OUTBOX (
+    ID bigint not null auto_increment,
+    LAST_MODIFIED datetime not null,
+    IDEMPOTENCY_KEY varchar(255) not null unique,
+    EVALUATION_ID bigint,
+    USER_ID varchar(255) not null,
+    EMAIL_TYPE varchar(255) not null,
+    FROM_ADDRESS varchar(255) not null,
+    SUBJECT text not null,
+    MESSAGE text not null,
+    STATUS varchar(32) not null,
+    ATTEMPTS integer not null,
+    NEXT_ATTEMPT datetime not null,
+    LAST_ERROR varchar(255),
+    SENT_DATE datetime,
+    primary key (ID)
+) ENGINE=InnoDB;
+
+create index eval_outbox_evalid on EVAL_EMAIL_OUTBOX (EVALUATION_ID);
+
+create index eval_outbox_status on EVAL_EMAIL_OUTBOX (STATUS, NEXT_ATTEMPT);
+
+create table EVAL_JOB_METRIC (
+    ID bigint not null auto_increment,
+    JOB_ID varchar(255) not null,
+    JOB_NAME varchar(255) not null,
+    PHASE varchar(255) not null,
+    SAMPLE_TIME datetime not null,
+    STATUS varchar(32) not null,
+    TOTAL_COUNT integer,
+    PROCESSED_COUNT integer not null,
+    SENT_COUNT integer not null,
+    ERROR_COUNT integer not null,
+    RATE double precision,
+    ETA_SECONDS bigint,
+    DETAIL varchar(255),
+    primary key (ID)
+) ENGINE=InnoDB;
+
+create index eval_jobmetric_jobid on EVAL_JOB_METRIC (JOB_ID);
+
+create index eval_jobmetric_name on EVAL_JOB_METRIC (JOB_NAME);
+
+create index eval_jobmetric_time on EVAL_JOB_METRIC (SAMPLE_TIME);
+
+-- the email processing queue is now kept between runs, clear the rows of the old per run queue so it is filled again
+delete from EVAL_EMAIL_PROCESSING_QUEUE;
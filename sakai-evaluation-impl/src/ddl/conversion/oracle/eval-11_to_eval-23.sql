@@ -0,0 +1,88 @@
+--
+-- Copyright 2003 Sakai Foundation Licensed under the
+-- Educational Community License, Version 2.0 (the "License"); you may
+-- not use this file except in compliance with the License. You may
+-- obtain a copy of the License at
+--
+-- http://www.osedu.org/licenses/ECL-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an "AS IS"
+-- BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+-- or implied. See the License for the specific language governing
+-- permissions and limitations under the License.
+--
+
+-- Oracle conversion script - 11 to 23
+
+create table EVAL_IMPORT_CHECKPOINT (
+    ID number(19,0) not null,
+    LAST_MODIFIED timestamp not null,
+    FILE_HASH varchar2(64 char) not null,
+    STAGE varchar2(255 char) not null,
+    ELEMENT_INDEX number(10,0) not null,
+    COMPLETE number(1,0) not null,
+    primary key (ID)
+);
+
+create index eval_impchk_file on EVAL_IMPORT_CHECKPOINT (FILE_HASH);
+
+create table EVAL_IMPORT_HASH (
+    ID number(19,0) not null,
+    LAST_MODIFIED timestamp not null,
+    ENTITY_TYPE varchar2(255 char) not null,
+    EID varchar2(255 char) not null,
+    CONTENT_HASH varchar2(64 char) not null,
+    primary key (ID),
+    unique (ENTITY_TYPE, EID)
+);
+
+create index eval_imphash_eid on EVAL_IMPORT_HASH (EID);
+
+create table EVAL_EMAIL_OUTBOX (
+    ID number(19,0) not null,
+    LAST_MODIFIED timestamp not null,
+    IDEMPOTENCY_KEY varchar2(255 char) not null unique,
+    EVALUATION_ID number(19,0),
+    USER_ID varchar2(255 char) not null,
+    EMAIL_TYPE varchar2(255 char) not null,
+    FROM_ADDRESS varchar2(255 char) not null,
+    SUBJECT clob not null,
+    MESSAGE clob not null,
+    STATUS varchar2(32 char) not null,
+    ATTEMPTS number(10,0) not null,
+    NEXT_ATTEMPT timestamp not null,
+    LAST_ERROR varchar2(255 char),
+    SENT_DATE timestamp,
+    primary key (ID)
+);
+
+create index eval_outbox_evalid on EVAL_EMAIL_OUTBOX (EVALUATION_ID);
+
+create index eval_outbox_status on EVAL_EMAIL_OUTBOX (STATUS, NEXT_ATTEMPT);
+
+create table EVAL_JOB_METRIC (
+    ID number(19,0) not null,
+    JOB_ID varchar2(255 char) not null,
+    JOB_NAME varchar2(255 char) not null,
+    PHASE varchar2(255 char) not null,
+    SAMPLE_TIME timestamp not null,
+    STATUS varchar2(32 char) not null,
+    TOTAL_COUNT number(10,0),
+    PROCESSED_COUNT number(10,0) not null,
+    SENT_COUNT number(10,0) not null,
+    ERROR_COUNT number(10,0) not null,
+    RATE double precision,
+    ETA_SECONDS number(19,0),
+    DETAIL varchar2(255 char),
+    primary key (ID)
+);
+
+create index eval_jobmetric_jobid on EVAL_JOB_METRIC (JOB_ID);
+
+create index eval_jobmetric_name on EVAL_JOB_METRIC (JOB_NAME);
+
+create index eval_jobmetric_time on EVAL_JOB_METRIC (SAMPLE_TIME);
+
+-- the email processing queue is now kept between runs, clear the rows of the old per run queue so it is filled again
+delete from EVAL_EMAIL_PROCESSING_QUEUE;
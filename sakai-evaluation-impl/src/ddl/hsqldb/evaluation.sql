@@ -130,6 +130,24 @@
         unique (NAME)
     );
 
+    create table EVAL_EMAIL_OUTBOX (
+        ID bigint generated by default as identity (start with 1),
+        LAST_MODIFIED timestamp not null,
+        IDEMPOTENCY_KEY varchar(255) not null unique,
+        EVALUATION_ID bigint,
+        USER_ID varchar(255) not null,
+        EMAIL_TYPE varchar(255) not null,
+        FROM_ADDRESS varchar(255) not null,
+        SUBJECT longvarchar not null,
+        MESSAGE longvarchar not null,
+        STATUS varchar(32) not null,
+        ATTEMPTS integer not null,
+        NEXT_ATTEMPT timestamp not null,
+        LAST_ERROR varchar(255),
+        SENT_DATE timestamp,
+        primary key (ID)
+    );
+
     create table EVAL_EMAIL_PROCESSING_QUEUE (
         ID bigint generated by default as identity (start with 1),
         EAU_ID bigint,
@@ -221,6 +239,26 @@
         primary key (ID)
     );
 
+    create table EVAL_IMPORT_CHECKPOINT (
+        ID bigint generated by default as identity (start with 1),
+        LAST_MODIFIED timestamp not null,
+        FILE_HASH varchar(64) not null,
+        STAGE varchar(255) not null,
+        ELEMENT_INDEX integer not null,
+        COMPLETE bit not null,
+        primary key (ID)
+    );
+
+    create table EVAL_IMPORT_HASH (
+        ID bigint generated by default as identity (start with 1),
+        LAST_MODIFIED timestamp not null,
+        ENTITY_TYPE varchar(255) not null,
+        EID varchar(255) not null,
+        CONTENT_HASH varchar(64) not null,
+        primary key (ID),
+        unique (ENTITY_TYPE, EID)
+    );
+
     create table EVAL_ITEM (
         ID bigint generated by default as identity (start with 1),
         EID varchar(255),
@@ -259,6 +297,23 @@
         primary key (ID)
     );
 
+    create table EVAL_JOB_METRIC (
+        ID bigint generated by default as identity (start with 1),
+        JOB_ID varchar(255) not null,
+        JOB_NAME varchar(255) not null,
+        PHASE varchar(255) not null,
+        SAMPLE_TIME timestamp not null,
+        STATUS varchar(32) not null,
+        TOTAL_COUNT integer,
+        PROCESSED_COUNT integer not null,
+        SENT_COUNT integer not null,
+        ERROR_COUNT integer not null,
+        RATE double,
+        ETA_SECONDS bigint,
+        DETAIL varchar(255),
+        primary key (ID)
+    );
+
     create table EVAL_LOCK (
         ID bigint generated by default as identity (start with 1),
         LAST_MODIFIED timestamp not null,
@@ -454,6 +509,10 @@
 
     create index eval_config_name on EVAL_CONFIG (NAME);
 
+    create index eval_outbox_evalid on EVAL_EMAIL_OUTBOX (EVALUATION_ID);
+
+    create index eval_outbox_status on EVAL_EMAIL_OUTBOX (STATUS, NEXT_ATTEMPT);
+
     create index eval_user_temp_map on EVAL_EMAIL_PROCESSING_QUEUE (USER_ID, EMAIL_TEMPLATE_ID);
 
     create index eval_emailq_duedate on EVAL_EMAIL_PROCESSING_QUEUE (EVAL_DUE_DATE);
@@ -510,6 +569,10 @@
         foreign key (ID) 
         references EVAL_GROUPNODES;
 
+    create index eval_impchk_file on EVAL_IMPORT_CHECKPOINT (FILE_HASH);
+
+    create index eval_imphash_eid on EVAL_IMPORT_HASH (EID);
+
     create index eval_item_owner on EVAL_ITEM (OWNER);
 
     create index eval_item_sharing on EVAL_ITEM (SHARING);
@@ -539,6 +602,12 @@
         foreign key (GROUP_PARENT_FK) 
         references EVAL_ITEMGROUP;
 
+    create index eval_jobmetric_jobid on EVAL_JOB_METRIC (JOB_ID);
+
+    create index eval_jobmetric_name on EVAL_JOB_METRIC (JOB_NAME);
+
+    create index eval_jobmetric_time on EVAL_JOB_METRIC (SAMPLE_TIME);
+
     create index eval_lock_name on EVAL_LOCK (NAME);
 
     create index eval_response_groupid on EVAL_RESPONSE (GROUP_ID);
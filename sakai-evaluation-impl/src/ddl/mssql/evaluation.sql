@@ -127,6 +127,24 @@
         primary key (ID)
     );
 
+    create table EVAL_EMAIL_OUTBOX (
+        ID numeric(19,0) identity not null,
+        LAST_MODIFIED datetime not null,
+        IDEMPOTENCY_KEY varchar(255) not null unique,
+        EVALUATION_ID numeric(19,0) null,
+        USER_ID varchar(255) not null,
+        EMAIL_TYPE varchar(255) not null,
+        FROM_ADDRESS varchar(255) not null,
+        SUBJECT text not null,
+        MESSAGE text not null,
+        STATUS varchar(32) not null,
+        ATTEMPTS int not null,
+        NEXT_ATTEMPT datetime not null,
+        LAST_ERROR varchar(255) null,
+        SENT_DATE datetime null,
+        primary key (ID)
+    );
+
     create table EVAL_EMAIL_PROCESSING_QUEUE (
         ID numeric(19,0) identity not null,
         EAU_ID numeric(19,0) null,
@@ -218,6 +236,26 @@
         primary key (ID)
     );
 
+    create table EVAL_IMPORT_CHECKPOINT (
+        ID numeric(19,0) identity not null,
+        LAST_MODIFIED datetime not null,
+        FILE_HASH varchar(64) not null,
+        STAGE varchar(255) not null,
+        ELEMENT_INDEX int not null,
+        COMPLETE tinyint not null,
+        primary key (ID)
+    );
+
+    create table EVAL_IMPORT_HASH (
+        ID numeric(19,0) identity not null,
+        LAST_MODIFIED datetime not null,
+        ENTITY_TYPE varchar(255) not null,
+        EID varchar(255) not null,
+        CONTENT_HASH varchar(64) not null,
+        primary key (ID),
+        unique (ENTITY_TYPE, EID)
+    );
+
     create table EVAL_ITEM (
         ID numeric(19,0) identity not null,
         EID varchar(255) null,
@@ -256,6 +294,23 @@
         primary key (ID)
     );
 
+    create table EVAL_JOB_METRIC (
+        ID numeric(19,0) identity not null,
+        JOB_ID varchar(255) not null,
+        JOB_NAME varchar(255) not null,
+        PHASE varchar(255) not null,
+        SAMPLE_TIME datetime not null,
+        STATUS varchar(32) not null,
+        TOTAL_COUNT int null,
+        PROCESSED_COUNT int not null,
+        SENT_COUNT int not null,
+        ERROR_COUNT int not null,
+        RATE double precision null,
+        ETA_SECONDS numeric(19,0) null,
+        DETAIL varchar(255) null,
+        primary key (ID)
+    );
+
     create table EVAL_LOCK (
         ID numeric(19,0) identity not null,
         LAST_MODIFIED datetime not null,
@@ -450,6 +505,10 @@
 
     create index eval_config_name on EVAL_CONFIG (NAME);
 
+    create index eval_outbox_evalid on EVAL_EMAIL_OUTBOX (EVALUATION_ID);
+
+    create index eval_outbox_status on EVAL_EMAIL_OUTBOX (STATUS, NEXT_ATTEMPT);
+
     create index eval_user_temp_map on EVAL_EMAIL_PROCESSING_QUEUE (USER_ID, EMAIL_TEMPLATE_ID);
 
     create index eval_emailq_duedate on EVAL_EMAIL_PROCESSING_QUEUE (EVAL_DUE_DATE);
@@ -506,6 +565,10 @@
         foreign key (ID) 
         references EVAL_GROUPNODES;
 
+    create index eval_impchk_file on EVAL_IMPORT_CHECKPOINT (FILE_HASH);
+
+    create index eval_imphash_eid on EVAL_IMPORT_HASH (EID);
+
     create index eval_item_owner on EVAL_ITEM (OWNER);
 
     create index eval_item_sharing on EVAL_ITEM (SHARING);
@@ -535,6 +598,12 @@
         foreign key (GROUP_PARENT_FK) 
         references EVAL_ITEMGROUP;
 
+    create index eval_jobmetric_jobid on EVAL_JOB_METRIC (JOB_ID);
+
+    create index eval_jobmetric_name on EVAL_JOB_METRIC (JOB_NAME);
+
+    create index eval_jobmetric_time on EVAL_JOB_METRIC (SAMPLE_TIME);
+
     create index eval_lock_name on EVAL_LOCK (NAME);
 
     create index eval_response_groupid on EVAL_RESPONSE (GROUP_ID);
@@ -127,6 +127,24 @@
         primary key (ID)
     ) ENGINE=InnoDB;
 
+    create table EVAL_EMAIL_OUTBOX (
+        ID bigint not null auto_increment,
+        LAST_MODIFIED datetime not null,
+        IDEMPOTENCY_KEY varchar(255) not null unique,
+        EVALUATION_ID bigint,
+        USER_ID varchar(255) not null,
+        EMAIL_TYPE varchar(255) not null,
+        FROM_ADDRESS varchar(255) not null,
+        SUBJECT text not null,
+        MESSAGE text not null,
+        STATUS varchar(32) not null,
+        ATTEMPTS integer not null,
+        NEXT_ATTEMPT datetime not null,
+        LAST_ERROR varchar(255),
+        SENT_DATE datetime,
+        primary key (ID)
+    ) ENGINE=InnoDB;
+
     create table EVAL_EMAIL_PROCESSING_QUEUE (
         ID bigint not null auto_increment,
         EAU_ID bigint,
@@ -218,6 +236,26 @@
         primary key (ID)
     ) ENGINE=InnoDB;
 
+    create table EVAL_IMPORT_CHECKPOINT (
+        ID bigint not null auto_increment,
+        LAST_MODIFIED datetime not null,
+        FILE_HASH varchar(64) not null,
+        STAGE varchar(255) not null,
+        ELEMENT_INDEX integer not null,
+        COMPLETE bit not null,
+        primary key (ID)
+    ) ENGINE=InnoDB;
+
+    create table EVAL_IMPORT_HASH (
+        ID bigint not null auto_increment,
+        LAST_MODIFIED datetime not null,
+        ENTITY_TYPE varchar(255) not null,
+        EID varchar(255) not null,
+        CONTENT_HASH varchar(64) not null,
+        primary key (ID),
+        unique (ENTITY_TYPE, EID)
+    ) ENGINE=InnoDB;
+
     create table EVAL_ITEM (
         ID bigint not null auto_increment,
         EID varchar(255),
@@ -256,6 +294,23 @@
         primary key (ID)
     ) ENGINE=InnoDB;
 
+    create table EVAL_JOB_METRIC (
+        ID bigint not null auto_increment,
+        JOB_ID varchar(255) not null,
+        JOB_NAME varchar(255) not null,
+        PHASE varchar(255) not null,
+        SAMPLE_TIME datetime not null,
+        STATUS varchar(32) not null,
+        TOTAL_COUNT integer,
+        PROCESSED_COUNT integer not null,
+        SENT_COUNT integer not null,
+        ERROR_COUNT integer not null,
+        RATE double precision,
+        ETA_SECONDS bigint,
+        DETAIL varchar(255),
+        primary key (ID)
+    ) ENGINE=InnoDB;
+
     create table EVAL_LOCK (
         ID bigint not null auto_increment,
         LAST_MODIFIED datetime not null,
@@ -458,6 +513,10 @@
 
     create index eval_config_name on EVAL_CONFIG (NAME);
 
+    create index eval_outbox_evalid on EVAL_EMAIL_OUTBOX (EVALUATION_ID);
+
+    create index eval_outbox_status on EVAL_EMAIL_OUTBOX (STATUS, NEXT_ATTEMPT);
+
     create index eval_user_temp_map on EVAL_EMAIL_PROCESSING_QUEUE (USER_ID, EMAIL_TEMPLATE_ID);
 
     create index eval_emailq_duedate on EVAL_EMAIL_PROCESSING_QUEUE (EVAL_DUE_DATE);
@@ -518,6 +577,10 @@
         foreign key (ID) 
         references EVAL_GROUPNODES (ID);
 
+    create index eval_impchk_file on EVAL_IMPORT_CHECKPOINT (FILE_HASH);
+
+    create index eval_imphash_eid on EVAL_IMPORT_HASH (EID);
+
     create index eval_item_owner on EVAL_ITEM (OWNER);
 
     create index eval_item_sharing on EVAL_ITEM (SHARING);
@@ -550,6 +613,12 @@
         foreign key (GROUP_PARENT_FK) 
         references EVAL_ITEMGROUP (ID);
 
+    create index eval_jobmetric_jobid on EVAL_JOB_METRIC (JOB_ID);
+
+    create index eval_jobmetric_name on EVAL_JOB_METRIC (JOB_NAME);
+
+    create index eval_jobmetric_time on EVAL_JOB_METRIC (SAMPLE_TIME);
+
     create index eval_lock_name on EVAL_LOCK (NAME);
 
     create index eval_response_groupid on EVAL_RESPONSE (GROUP_ID);
@@ -127,6 +127,24 @@
         primary key (ID)
     );
 
+    create table EVAL_EMAIL_OUTBOX (
+        ID number(19,0) not null,
+        LAST_MODIFIED timestamp not null,
+        IDEMPOTENCY_KEY varchar2(255 char) not null unique,
+        EVALUATION_ID number(19,0),
+        USER_ID varchar2(255 char) not null,
+        EMAIL_TYPE varchar2(255 char) not null,
+        FROM_ADDRESS varchar2(255 char) not null,
+        SUBJECT clob not null,
+        MESSAGE clob not null,
+        STATUS varchar2(32 char) not null,
+        ATTEMPTS number(10,0) not null,
+        NEXT_ATTEMPT timestamp not null,
+        LAST_ERROR varchar2(255 char),
+        SENT_DATE timestamp,
+        primary key (ID)
+    );
+
     create table EVAL_EMAIL_PROCESSING_QUEUE (
         ID number(19,0) not null,
         EAU_ID number(19,0),
@@ -218,6 +236,26 @@
         primary key (ID)
     );
 
+    create table EVAL_IMPORT_CHECKPOINT (
+        ID number(19,0) not null,
+        LAST_MODIFIED timestamp not null,
+        FILE_HASH varchar2(64 char) not null,
+        STAGE varchar2(255 char) not null,
+        ELEMENT_INDEX number(10,0) not null,
+        COMPLETE number(1,0) not null,
+        primary key (ID)
+    );
+
+    create table EVAL_IMPORT_HASH (
+        ID number(19,0) not null,
+        LAST_MODIFIED timestamp not null,
+        ENTITY_TYPE varchar2(255 char) not null,
+        EID varchar2(255 char) not null,
+        CONTENT_HASH varchar2(64 char) not null,
+        primary key (ID),
+        unique (ENTITY_TYPE, EID)
+    );
+
     create table EVAL_ITEM (
         ID number(19,0) not null,
         EID varchar2(255 char),
@@ -256,6 +294,23 @@
         primary key (ID)
     );
 
+    create table EVAL_JOB_METRIC (
+        ID number(19,0) not null,
+        JOB_ID varchar2(255 char) not null,
+        JOB_NAME varchar2(255 char) not null,
+        PHASE varchar2(255 char) not null,
+        SAMPLE_TIME timestamp not null,
+        STATUS varchar2(32 char) not null,
+        TOTAL_COUNT number(10,0),
+        PROCESSED_COUNT number(10,0) not null,
+        SENT_COUNT number(10,0) not null,
+        ERROR_COUNT number(10,0) not null,
+        RATE double precision,
+        ETA_SECONDS number(19,0),
+        DETAIL varchar2(255 char),
+        primary key (ID)
+    );
+
     create table EVAL_LOCK (
         ID number(19,0) not null,
         LAST_MODIFIED timestamp not null,
@@ -450,6 +505,10 @@
 
     create index eval_config_name on EVAL_CONFIG (NAME);
 
+    create index eval_outbox_evalid on EVAL_EMAIL_OUTBOX (EVALUATION_ID);
+
+    create index eval_outbox_status on EVAL_EMAIL_OUTBOX (STATUS, NEXT_ATTEMPT);
+
     create index eval_user_temp_map on EVAL_EMAIL_PROCESSING_QUEUE (USER_ID, EMAIL_TEMPLATE_ID);
 
     create index eval_emailq_duedate on EVAL_EMAIL_PROCESSING_QUEUE (EVAL_DUE_DATE);
@@ -506,6 +565,10 @@
         foreign key (ID) 
         references EVAL_GROUPNODES;
 
+    create index eval_impchk_file on EVAL_IMPORT_CHECKPOINT (FILE_HASH);
+
+    create index eval_imphash_eid on EVAL_IMPORT_HASH (EID);
+
     create index eval_item_owner on EVAL_ITEM (OWNER);
 
     create index eval_item_sharing on EVAL_ITEM (SHARING);
@@ -535,6 +598,12 @@
         foreign key (GROUP_PARENT_FK) 
         references EVAL_ITEMGROUP;
 
+    create index eval_jobmetric_jobid on EVAL_JOB_METRIC (JOB_ID);
+
+    create index eval_jobmetric_name on EVAL_JOB_METRIC (JOB_NAME);
+
+    create index eval_jobmetric_time on EVAL_JOB_METRIC (SAMPLE_TIME);
+
     create index eval_lock_name on EVAL_LOCK (NAME);
 
     create index eval_response_groupid on EVAL_RESPONSE (GROUP_ID);
@@ -14,18 +14,21 @@
  */
 package org.sakaiproject.evaluation.dao;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.logic.model.EvalSavedAnswer;
 import org.sakaiproject.evaluation.model.EvalAdhocGroup;
 import org.sakaiproject.evaluation.model.EvalAnswer;
 import org.sakaiproject.evaluation.model.EvalAssignUser;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
 import org.sakaiproject.evaluation.model.EvalItem;
 import org.sakaiproject.evaluation.model.EvalItemGroup;
+import org.sakaiproject.evaluation.model.EvalOutboxEmail;
 import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.model.EvalScale;
 import org.sakaiproject.evaluation.model.EvalTemplate;
@@ -98,6 +101,22 @@ public interface EvaluationDao extends GeneralGenericDao {
             String[] evalGroupIds, String assignTypeConstant, String assignStatusConstant, 
             String includeConstant, String evalStateConstant);
 
+    /**
+     * Get the evaluators of an evaluation grouped by the eval group they take it in, this gets the
+     * users for every group of the evaluation in a single query (the response filtering is done
+     * in the database) so it should be used instead of calling
+     * {@link #getParticipantsForEval(Long, String, String[], String, String, String, String)} for each group<br/>
+     * Will not include any assignments with {@link EvalAssignUser#STATUS_REMOVED}
+     * 
+     * @param evaluationId the unique id of an {@link EvalEvaluation} object
+     * @param includeConstant a constant to indicate what users should be retrieved, 
+     * EVAL_INCLUDE_* from {@link EvalConstants}, null is the same as {@link EvalConstants#EVAL_INCLUDE_ALL}
+     * @return a map of evalGroupId -> the set of internal userIds in that group (in order),
+     * groups without any matching users are not included
+     * @throws IllegalArgumentException if the evaluationId is null or the includeConstant is invalid
+     */
+    public Map<String, Set<String>> getParticipantUserIdsByGroup(Long evaluationId, String includeConstant);
+
     /**
      * Returns all evaluations which the given user can take,
      * can also include anonymous evaluations and filter on active/approved
@@ -317,6 +336,40 @@ public interface EvaluationDao extends GeneralGenericDao {
      */
     public void removeResponses(Long[] responseIds);
 
+    /**
+     * Get a marker which changes whenever any response for an evaluation is saved, created or removed,
+     * this is made from the number of responses and the most recent response modification time
+     * 
+     * @param evalId the id of an {@link EvalEvaluation}
+     * @return a version string for the response data of this evaluation
+     */
+    public String getResponseDataVersion(Long evalId);
+
+    /**
+     * Saves changed answers for a response in a single transaction, only if the response has not been
+     * changed since the given version (its last modified time), the answers are matched to the saved ones
+     * by template item + associated type + associated id<br/>
+     * <b>WARNING:</b> This does not check permissions or the validity of the answers
+     * 
+     * @param responseId the id of an {@link EvalResponse}
+     * @param version the last modified time the response must still have
+     * @param newVersion the new last modified time for the response
+     * @param saveAnswers the answers to add or update (all fields must be filled in for saving)
+     * @param removeAnswers the answers to remove if they were saved
+     * @return true if the answers were saved, false if the response was changed (or removed) since the version
+     */
+    public boolean saveResponseAnswers(Long responseId, Date version, Date newVersion,
+            Collection<EvalAnswer> saveAnswers, Collection<EvalAnswer> removeAnswers);
+
+    /**
+     * Get the saved values of all the answers for a response without loading the answer entities,
+     * this only selects the answer columns so the response, template items and items are not touched
+     * 
+     * @param responseId the id of an {@link EvalResponse}
+     * @return the list of saved answer values (empty if there are none)
+     */
+    public List<EvalSavedAnswer> getSavedAnswersForResponse(Long responseId);
+
     /**
      * Get a list of evaluation categories
      * 
@@ -501,26 +554,63 @@ public interface EvaluationDao extends GeneralGenericDao {
     public List<Map<String,Object>> getConsolidatedEmailMapping(boolean sendingAvailableEmails, int pageSize, int page);
 
     /**
-     * Build the email processing queue by adding one record for each evalAssignUser record 
-     * matching the search criteria.  Search criteria are determined based on the values of 
-     * EvalAssignUser.availableEmailSent, EvalAssignUser.reminderEmailSent and 
-     * EvalEmailTemplate.emailTemplateType.   
+     * Mark the assigned users who are due in the email processing queue as sent (available or reminder email sent date),
+     * this is done with one update per batch of users rather than one per user,
+     * call this only after the emails were handed off so a failed run leaves the rest unmarked
+     * 
+     * @param sendingAvailableEmails true to set the available email sent date, false to set the reminder email sent date
+     * @param emailTemplateId the id of the email template the users were sent
+     * @param userIds the ids of the users the email was sent to
+     * @return the number of assigned users marked
+     */
+    public int markConsolidatedEmailsSent(boolean sendingAvailableEmails, Long emailTemplateId, Collection<String> userIds);
+
+    /**
+     * Mark the users in the email processing queue who are due an email in this run, 
+     * search criteria are determined based on the values of EvalAssignUser.availableEmailSent, 
+     * EvalAssignUser.reminderEmailSent and EvalEmailTemplate.emailTemplateType. 
+     * Only the due users are touched, the queue itself is kept up to date by
+     * {@link #updateConsolidatedEmailRecipients(Long)} (it is filled from the assignments if it is empty)
      * @param useAvailableEmailSent Should be true if the availableEmailSent date should be used in selecting records.
      * @param availableEmailSent The date to use if querying by availableEmailSent.
      * @param useReminderEmailSent Should be true if the reminderEmailSent date should be used in selecting records.
      * @param reminderEmailSent The date to use if querying by reminderEmailSent.
      * @param emailTemplateType The type of template (ConsolidatedAvailable or ConsolidateReminder) to find.
-     * @return
+     * @return the number of queued records which are now due
      */
     public int selectConsolidatedEmailRecipients(boolean useAvailableEmailSent,
             Date availableEmailSent, boolean useReminderEmailSent, Date reminderEmailSent, String emailTemplateType);
 
     /**
-     * Remove all records from the the email processing queue and report the number of items removed.
-     * @return 
+     * Clear the due marks from the email processing queue (the users stay queued) and report the number of items cleared.
+     * @return the number of records which were due
      */
     public int resetConsolidatedEmailRecipients();
 
+    /**
+     * Bring the email processing queue up to date with the user assignments, this removes the records 
+     * which no longer match an assignment (removed or completed assignments, evaluations which are closed
+     * or had their email templates or due date changed) and adds the evaluators who are missing,
+     * records which are still valid are not touched. 
+     * This should be called whenever the assignments or state of an evaluation change
+     * 
+     * @param evaluationId (OPTIONAL) the unique id of an {@link EvalEvaluation}, 
+     * if null then the queue is updated for all evaluations
+     * @return the number of records added
+     */
+    public int updateConsolidatedEmailRecipients(Long evaluationId);
+
+    /**
+     * Record that a user completed an evaluation in a group, this sets the completed date of the
+     * assignment and removes the user from the email processing queue for that evaluation and group
+     * 
+     * @param evaluationId the unique id of an {@link EvalEvaluation}
+     * @param evalGroupId the unique id of the eval group the response was made in
+     * @param userId the internal user id of the user who completed the evaluation
+     * @return the number of assignments marked as completed
+     */
+    public int completeConsolidatedEmailRecipient(Long evaluationId, String evalGroupId, String userId);
+
     /**
      * Returns a list of evaluation responses that have been saved but not 
      * submitted (completed)
@@ -533,11 +623,18 @@ public interface EvaluationDao extends GeneralGenericDao {
     public List<EvalResponse> getResponsesSavedInProgress(boolean activeEvaluationsOnly);
 
     /**
-     * Reports the number of distinct eval groups for which mappings are currently in the email processing queue. 
+     * Reports the number of distinct eval groups for which mappings are currently due in the email processing queue. 
      * @return
      */
     public int countDistinctGroupsInConsolidatedEmailMapping();
 
+    /**
+     * Reports the number of mappings (user and email template) which are currently due in the email processing queue,
+     * this is the total number of entries {@link #getConsolidatedEmailMapping(boolean, int, int)} will return
+     * @return the number of due mappings
+     */
+    public int countConsolidatedEmailMapping();
+
     /**
      * Get a list of site IDs that have a section attached that matches the section title provided
      * 
@@ -553,4 +650,79 @@ public interface EvaluationDao extends GeneralGenericDao {
      * @return a list of site IDs that match the criteria
      */
     public Set<String> getAllSiteIDsMatchingSiteTitle( String siteTitleWithWildcards );
+
+    /**
+     * Bulk version of {@link #getAllSiteIDsMatchingSectionTitle(String)},
+     * runs a single query per distinct title using one session
+     * 
+     * @param sectionTitlesWithWildcards - the section titles to match on
+     * @return a map of section title (as given) to the set of site IDs which have a section attached with that title,
+     * every distinct title given is a key in the map
+     */
+    public Map<String, Set<String>> getAllSiteIDsMatchingSectionTitles( Collection<String> sectionTitlesWithWildcards );
+
+    /**
+     * Bulk version of {@link #getAllSiteIDsMatchingSiteTitle(String)},
+     * runs a single query per distinct title using one session
+     * 
+     * @param siteTitlesWithWildcards - the site titles to match on, with wildcards in place
+     * @return a map of site title (as given) to the set of site IDs that match it,
+     * every distinct title given is a key in the map
+     */
+    public Map<String, Set<String>> getAllSiteIDsMatchingSiteTitles( Collection<String> siteTitlesWithWildcards );
+
+    /**
+     * Find which of the given idempotency keys are already in the email outbox
+     * 
+     * @param idempotencyKeys the keys to check
+     * @return the set of keys which are already queued (in any status)
+     */
+    public Set<String> getExistingOutboxKeys(Collection<String> idempotencyKeys);
+
+    /**
+     * Get the pending outbox emails which are due to be sent (or retried), oldest first
+     * 
+     * @param now emails with a next attempt after this are not due yet
+     * @param maxEmails the most emails to return
+     * @return the list of due outbox emails
+     */
+    public List<EvalOutboxEmail> getOutboxEmailsToSend(Date now, int maxEmails);
+
+    /**
+     * Mark outbox emails as sent with one update per batch of emails
+     * 
+     * @param outboxEmailIds the ids of the outbox emails which were sent
+     * @return the number of outbox emails marked
+     */
+    public int markOutboxEmailsSent(Collection<Long> outboxEmailIds);
+
+    /**
+     * @return the number of outbox emails in each status (EvalConstants.EMAIL_OUTBOX_STATUS_*),
+     * statuses with no emails are not included
+     */
+    public Map<String, Long> countOutboxEmailsByStatus();
+
+    /**
+     * Put failed (dead letter) outbox emails back into the pending status so they are tried again
+     * 
+     * @param evaluationId (OPTIONAL) only requeue the emails for this evaluation, null for all failed emails
+     * @return the number of outbox emails requeued
+     */
+    public int requeueFailedOutboxEmails(Long evaluationId);
+
+    /**
+     * Remove sent outbox emails, the idempotency keys of the removed emails can be queued again
+     * 
+     * @param sentBefore only remove emails which were sent before this date
+     * @return the number of outbox emails removed
+     */
+    public int removeSentOutboxEmails(Date sentBefore);
+
+    /**
+     * Remove old job progress samples
+     * 
+     * @param sampledBefore only remove samples taken before this date
+     * @return the number of samples removed
+     */
+    public int removeJobMetrics(Date sampledBefore);
 }
@@ -16,13 +16,17 @@ package org.sakaiproject.evaluation.dao;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
@@ -39,14 +43,17 @@ import org.hibernate.query.Query;
 import org.hibernate.type.DateType;
 import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.logic.EvalEvaluationService;
+import org.sakaiproject.evaluation.logic.model.EvalSavedAnswer;
 import org.sakaiproject.evaluation.model.EvalAdhocGroup;
 import org.sakaiproject.evaluation.model.EvalAnswer;
 import org.sakaiproject.evaluation.model.EvalAssignGroup;
 import org.sakaiproject.evaluation.model.EvalAssignUser;
+import org.sakaiproject.evaluation.model.EvalEmailProcessingData;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
 import org.sakaiproject.evaluation.model.EvalItem;
 import org.sakaiproject.evaluation.model.EvalItemGroup;
 import org.sakaiproject.evaluation.model.EvalLock;
+import org.sakaiproject.evaluation.model.EvalOutboxEmail;
 import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.model.EvalScale;
 import org.sakaiproject.evaluation.model.EvalTemplate;
@@ -54,6 +61,7 @@ import org.sakaiproject.evaluation.model.EvalTemplateItem;
 import org.sakaiproject.evaluation.utils.ArrayUtils;
 import org.sakaiproject.evaluation.utils.ComparatorsUtils;
 import org.sakaiproject.evaluation.utils.EvalUtils;
+import org.sakaiproject.evaluation.utils.TemplateItemUtils;
 import org.sakaiproject.genericdao.api.search.Restriction;
 import org.sakaiproject.genericdao.api.search.Search;
 import org.sakaiproject.genericdao.hibernate.HibernateGeneralGenericDao;
@@ -83,6 +91,12 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
 
     protected static final int MAX_UPDATE_SIZE = 999;
 
+    /**
+     * The evaluations in these states keep their evaluators in the email processing queue
+     */
+    private static final String[] EMAIL_QUEUE_EVAL_STATES = new String[] {EvalConstants.EVALUATION_STATE_INQUEUE, 
+        EvalConstants.EVALUATION_STATE_ACTIVE, EvalConstants.EVALUATION_STATE_GRACEPERIOD};
+
     private static final String SQL_SELECT_SITE_IDS_MATCHING_SECTION_TITLE = "SELECT DISTINCT realm.realm_id "
             + "FROM SAKAI_REALM realm "
             + "JOIN SAKAI_REALM_PROVIDER provider "
@@ -340,6 +354,55 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
         return assignments;
     }
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getParticipantUserIdsByGroup(java.lang.Long, java.lang.String)
+     */
+    public Map<String, Set<String>> getParticipantUserIdsByGroup(Long evaluationId, String includeConstant) {
+        if (evaluationId == null) {
+            throw new IllegalArgumentException("evaluationId must be set");
+        }
+        if (includeConstant == null) {
+            includeConstant = EvalConstants.EVAL_INCLUDE_ALL;
+        }
+        EvalUtils.validateEmailIncludeConstant(includeConstant);
+
+        // match the responses of each user in the group they are assigned to
+        String responseHQL = "";
+        String existsHQL = "select response.id from EvalResponse response where response.evaluation.id = :evalId"
+            + " and response.evalGroupId = eau.evalGroupId and response.owner = eau.userId";
+        if (EvalConstants.EVAL_INCLUDE_NONTAKERS.equals(includeConstant)) {
+            // users who have not responded either way
+            responseHQL = " and not exists (" + existsHQL + ")";
+        } else if (EvalConstants.EVAL_INCLUDE_RESPONDENTS.equals(includeConstant)) {
+            responseHQL = " and exists (" + existsHQL + " and response.endTime is not null)";
+        } else if (EvalConstants.EVAL_INCLUDE_IN_PROGRESS.equals(includeConstant)) {
+            responseHQL = " and exists (" + existsHQL + " and response.endTime is null)";
+        }
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("evalId", evaluationId);
+        params.put("assignType", EvalAssignUser.TYPE_EVALUATOR);
+        params.put("assignStatus", EvalAssignUser.STATUS_REMOVED);
+        String hql = "select eau.evalGroupId, eau.userId from EvalAssignUser eau where eau.evaluation.id = :evalId"
+            + " and eau.type = :assignType and eau.status <> :assignStatus" + responseHQL
+            + " order by eau.evalGroupId, eau.userId";
+        List<?> results = executeHqlQuery(hql, params, 0, 0);
+
+        Map<String, Set<String>> groupUserIds = new LinkedHashMap<>();
+        for (Object object : results) {
+            Object[] row = (Object[]) object;
+            String evalGroupId = (String) row[0];
+            Set<String> userIds = groupUserIds.get(evalGroupId);
+            if (userIds == null) {
+                userIds = new LinkedHashSet<>();
+                groupUserIds.put(evalGroupId, userIds);
+            }
+            userIds.add((String) row[1]);
+        }
+        log.debug("ParticipantUserIdsByGroup(eval:{}, include:{}): {} users in {} groups", evaluationId, includeConstant, results.size(), groupUserIds.size());
+        return groupUserIds;
+    }
+
     /*  SELECT * FROM eval_evaluation as EVAL
         LEFT join eval_assign_user as AU on EVAL.ID = AU.EVALUATION_FK 
         WHERE AU.ID IS NULL
@@ -1130,6 +1193,118 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
     }
 
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getResponseDataVersion(java.lang.Long)
+     */
+    public String getResponseDataVersion(Long evalId) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("evalId", evalId);
+        String hql = "SELECT count(response.id), max(response.lastModified) from EvalResponse as response "
+            + "where response.evaluation.id = :evalId";
+        List<?> results = executeHqlQuery(hql, params, 0, 0);
+        long count = 0;
+        long lastModified = 0;
+        if (! results.isEmpty()) {
+            Object[] row = (Object[]) results.get(0);
+            if (row[0] != null) {
+                count = ((Number) row[0]).longValue();
+            }
+            if (row[1] != null) {
+                lastModified = ((Date) row[1]).getTime();
+            }
+        }
+        return count + "-" + lastModified;
+    }
+
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#saveResponseAnswers(java.lang.Long, java.util.Date, java.util.Date, java.util.Collection, java.util.Collection)
+     */
+    @SuppressWarnings("unchecked")
+    public boolean saveResponseAnswers(Long responseId, Date version, Date newVersion,
+            Collection<EvalAnswer> saveAnswers, Collection<EvalAnswer> removeAnswers) {
+        return getHibernateTemplate().execute(session -> {
+            // claim the response first, this fails if anything else saved it since the version
+            int updated = session.createQuery("update EvalResponse response set response.lastModified = :newVersion "
+                    + "where response.id = :responseId and response.lastModified = :version")
+                    .setParameter("newVersion", newVersion)
+                    .setParameter("responseId", responseId)
+                    .setParameter("version", version)
+                    .executeUpdate();
+            if (updated == 0) {
+                return false;
+            }
+
+            Query query = session.createQuery("from EvalAnswer answer where answer.response.id = :responseId");
+            query.setParameter("responseId", responseId);
+            Map<String, EvalAnswer> savedAnswers = new HashMap<>();
+            for (EvalAnswer answer : (List<EvalAnswer>) query.list()) {
+                savedAnswers.put(makeAnswerKey(answer), answer);
+            }
+
+            EvalResponse response = session.load(EvalResponse.class, responseId);
+            // the bulk update does not change a response already loaded in this session so keep it in step
+            response.setLastModified(newVersion);
+            int saved = 0;
+            for (EvalAnswer answer : saveAnswers) {
+                EvalAnswer current = savedAnswers.get(makeAnswerKey(answer));
+                if (current == null) {
+                    answer.setResponse(response);
+                    answer.setLastModified(newVersion);
+                    session.save(answer);
+                    saved++;
+                } else if (! Objects.equals(current.getNumeric(), answer.getNumeric())
+                        || ! Objects.equals(current.getText(), answer.getText())
+                        || ! Objects.equals(current.getMultiAnswerCode(), answer.getMultiAnswerCode())
+                        || ! Objects.equals(current.getComment(), answer.getComment())) {
+                    current.setNumeric(answer.getNumeric());
+                    current.setText(answer.getText());
+                    current.setMultiAnswerCode(answer.getMultiAnswerCode());
+                    current.setComment(answer.getComment());
+                    current.setLastModified(newVersion);
+                    saved++;
+                }
+            }
+            int removed = 0;
+            for (EvalAnswer answer : removeAnswers) {
+                EvalAnswer current = savedAnswers.get(makeAnswerKey(answer));
+                if (current != null) {
+                    session.delete(current);
+                    removed++;
+                }
+            }
+            log.debug("Saved " + saved + " and removed " + removed + " answers for response (" + responseId + ")");
+            return true;
+        });
+    }
+
+    private String makeAnswerKey(EvalAnswer answer) {
+        return TemplateItemUtils.makeTemplateItemAnswerKey(answer.getTemplateItem().getId(), 
+                answer.getAssociatedType(), answer.getAssociatedId());
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getSavedAnswersForResponse(java.lang.Long)
+     */
+    @SuppressWarnings("unchecked")
+    public List<EvalSavedAnswer> getSavedAnswersForResponse(Long responseId) {
+        // the template item id is the foreign key column so this does not join to the template items
+        String hql = "select answer.id, answer.templateItem.id, answer.associatedType, answer.associatedId, "
+                + "answer.numeric, answer.text, answer.multiAnswerCode, answer.comment "
+                + "from EvalAnswer answer where answer.response.id = :responseId order by answer.id";
+        List<Object[]> results = getHibernateTemplate().execute(session -> session
+                .createQuery(hql)
+                .setParameter("responseId", responseId)
+                .list());
+        List<EvalSavedAnswer> answers = new ArrayList<>(results.size());
+        for (Object[] result : results) {
+            answers.add( new EvalSavedAnswer((Long) result[0], (Long) result[1], (String) result[2], (String) result[3],
+                    (Integer) result[4], (String) result[5], (String) result[6], (String) result[7]) );
+        }
+        return answers;
+    }
+
+
     /**
      * Removes an array of responses and all their associated answers at
      * the same time (in a single transaction)<br/>
@@ -1818,17 +1993,35 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
      */
     @SuppressWarnings("rawtypes")
 	public int countDistinctGroupsInConsolidatedEmailMapping() {
-    	String hql = "select count(distinct groupId) from EvalEmailProcessingData";
+    	String hql = "select count(distinct groupId) from EvalEmailProcessingData where processingStatus = :dueStatus";
     	Session session = currentSession();
     	
         Query query = session.createQuery(hql);
+        query.setParameter("dueStatus", EvalEmailProcessingData.STATUS_DUE);
     	
         List results = query.list();
         int count = 0;
         if(results == null || results.isEmpty()) {
         	// log error
         } else {
-        	count = ((Integer) results.get(0));
+        	count = ((Number) results.get(0)).intValue();
+        }
+        return count;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#countConsolidatedEmailMapping()
+     */
+    @SuppressWarnings("rawtypes")
+    public int countConsolidatedEmailMapping() {
+        // counted per template since a distinct count of two columns is not portable
+        Query query = currentSession().createQuery("select emailTemplateId, count(distinct userId) from EvalEmailProcessingData "
+                + "where processingStatus = :dueStatus and userId is not null and emailTemplateId is not null group by emailTemplateId");
+        query.setParameter("dueStatus", EvalEmailProcessingData.STATUS_DUE);
+        int count = 0;
+        for (Object result : query.list()) {
+            count += ((Number) ((Object[]) result)[1]).intValue();
         }
         return count;
     }
@@ -1837,7 +2030,9 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
      * Access one page of summary info needed to render consolidated email templates. 
      * The summary info consists of a user-id, a user-eid, a template-id (EmailTemplate.ID) 
      * and the earliest due date of Active evals which use the email template and which the 
-     * referenced user can take.
+     * referenced user can take.<br/>
+     * This does not change the queue or mark anything as sent so the pages are stable,
+     * use {@link #markConsolidatedEmailsSent(boolean, Long, Collection)} once the emails are sent
      * @param pageSize The maximum number of mappings to return. A mapping consists of a user-id, an email template
      * 		id and a date.
      * @param page The zero-based starting page. In other words, return a page of items beginning at index 
@@ -1846,7 +2041,8 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
      */
     @SuppressWarnings("rawtypes")
 	public List<Map<String,Object>>  getConsolidatedEmailMapping(boolean sendingAvailableEmails, int pageSize, int page) {
-    	String query1 = "select userId,emailTemplateId,min(evalDueDate) from EvalEmailProcessingData group by emailTemplateId,userId order by emailTemplateId,userId";
+    	String query1 = "select userId,emailTemplateId,min(evalDueDate) from EvalEmailProcessingData where processingStatus = :dueStatus "
+    			+ "group by emailTemplateId,userId order by emailTemplateId,userId";
     	
     	if(log.isDebugEnabled()) {
     		log.debug("getConsolidatedEmailMapping(" + sendingAvailableEmails + ", " + pageSize + ", " + page + ")");
@@ -1854,16 +2050,11 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
     	
     	List<Map<String,Object>> rv = new ArrayList<>();
     	
-    	Session session = currentSession();
-    	
-        Query query = session.createQuery(query1);
+        Query query = currentSession().createQuery(query1);
+        query.setParameter("dueStatus", EvalEmailProcessingData.STATUS_DUE);
         query.setFirstResult(pageSize * page);
         query.setMaxResults(pageSize);
         
-    	List<String> userIdList = new ArrayList<>();
-    	Long previousTemplateId = null;
-    	Long templateId = null;
-    	
         List results = query.list();
 
         if(results != null) {
@@ -1872,14 +2063,11 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
             for(int i = 0; i < results.size(); i++) {
                 Object[] row = (Object[]) results.get(i);
                 String userId = (String) row[0];
-                templateId = (Long) row[1];
+                Long templateId = (Long) row[1];
                 Date earliestDueDate = (Date)row[2];
                 if(userId == null || templateId == null) {
                     continue;
                 }
-                if(previousTemplateId == null ) {
-                    previousTemplateId = templateId;
-                }
 
                 Map<String,Object> map = new HashMap<>();
 
@@ -1887,80 +2075,65 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
                 map.put(EvalConstants.KEY_EMAIL_TEMPLATE_ID,templateId);
                 map.put(EvalConstants.KEY_EARLIEST_DUE_DATE,earliestDueDate);
                 rv.add(map);
-                log.info("added email-processing entry for user: " + userId + " templateId: " + templateId);
-                if(templateId.longValue() != previousTemplateId.longValue() || userIdList.size() > MAX_UPDATE_SIZE) {
-                    // mark eval_assign_user records as sent 
-                    markRecordsAsSent(session, sendingAvailableEmails, templateId,
-                            userIdList);
+                if(log.isDebugEnabled()) {
+                    log.debug("added email-processing entry for user: " + userId + " templateId: " + templateId);
                 }
-                userIdList.add(userId);
-                //updates.add((Long) row[0]);
             }
         }
-
-		if(templateId == null || userIdList.isEmpty() ) {
-			log.info("Can't mark EvalAssignUser records due to null values: userId == " + userIdList + "   templateId == " + templateId);
-    	} else {
-			// mark eval_assign_user records as sent 
-	    	markRecordsAsSent(session, sendingAvailableEmails, templateId,
-					userIdList);
-
-    	}
         
     	return rv;
     }
 
-	/**
-	 * 
-	 * @param session
-	 * @param sendingAvailableEmails
-	 * @param templateId
-	 * @param userIdList
-	 */
-	protected void markRecordsAsSent(Session session,
-			boolean sendingAvailableEmails, Long templateId,
-			List<String> userIdList) {
-		
-		
-		StringBuilder hqlBuffer = new StringBuilder();
-		
-		hqlBuffer.append("update EvalAssignUser ");
-		if(sendingAvailableEmails) {
-			hqlBuffer.append("set availableEmailSent = :dateSent ");
-		} else {
-			hqlBuffer.append("set reminderEmailSent = :dateSent ");
-		}
-		hqlBuffer.append("where id in (select eauId from EvalEmailProcessingData where emailTemplateId = :emailTemplateId and userId = :userId)");
-		
-		Query updateQuery = session.createQuery(hqlBuffer.toString());
-		
-		updateQuery.setParameter("dateSent", new Date());
-		updateQuery.setParameter("emailTemplateId", templateId);
-		
-		for(String userId : userIdList) {
-			try {
-				
-				updateQuery.setParameter("userId", userId);
-				updateQuery.executeUpdate();
-				
-			} catch (HibernateException e) {
-				log.warn("Error trying to update evalAssignUser. " + userId, e);
-			}
-		}
-		if(log.isDebugEnabled()) {
-			log.debug("         --> marked entries for users: " + userIdList);
-		}
-		session.flush();
-		userIdList.clear();
-	}
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#markConsolidatedEmailsSent(boolean, java.lang.Long, java.util.Collection)
+     */
+    public int markConsolidatedEmailsSent(boolean sendingAvailableEmails, Long emailTemplateId, Collection<String> userIds) {
+        if (emailTemplateId == null || userIds == null) {
+            throw new IllegalArgumentException("emailTemplateId and userIds must be set");
+        }
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+
+        StringBuilder hql = new StringBuilder();
+        hql.append("update EvalAssignUser ");
+        if(sendingAvailableEmails) {
+            hql.append("set availableEmailSent = :dateSent ");
+        } else {
+            hql.append("set reminderEmailSent = :dateSent ");
+        }
+        // one update for the whole batch of users instead of one per user, only the assignments due in this run
+        hql.append("where id in (select eauId from EvalEmailProcessingData where processingStatus = :dueStatus ");
+        hql.append("and emailTemplateId = :emailTemplateId and userId in (:userIds))");
+        Query updateQuery = currentSession().createQuery(hql.toString());
+
+        Date dateSent = new Date();
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(userIds));
+        int count = 0;
+        // keep the in clause within the limits of all the databases
+        for (int start = 0; start < ids.size(); start += MAX_UPDATE_SIZE) {
+            updateQuery.setParameter("dateSent", dateSent);
+            updateQuery.setParameter("dueStatus", EvalEmailProcessingData.STATUS_DUE);
+            updateQuery.setParameter("emailTemplateId", emailTemplateId);
+            updateQuery.setParameterList("userIds", ids.subList(start, Math.min(ids.size(), start + MAX_UPDATE_SIZE)));
+            count += updateQuery.executeUpdate();
+        }
+        if(log.isDebugEnabled()) {
+            log.debug("Marked " + count + " assigned users as sent for email template (" + emailTemplateId + ") and users: " + ids);
+        }
+        return count;
+    }
 
     /*
      * (non-Javadoc)
      * @see org.sakaiproject.evaluation.dao.EvaluationDao#resetConsolidatedEmailRecipients()
      */
 	public int resetConsolidatedEmailRecipients() {
-		String deleteHql = "delete from EvalEmailProcessingData";
-		Query query = currentSession().createQuery(deleteHql);
+		// the users stay in the queue, only the marks from the last run are cleared
+		String resetHql = "update EvalEmailProcessingData set processingStatus = null where processingStatus = :dueStatus";
+		Query query = currentSession().createQuery(resetHql);
+		query.setParameter("dueStatus", EvalEmailProcessingData.STATUS_DUE);
 		return query.executeUpdate();
 	}
 	
@@ -1971,67 +2144,157 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
 	public int selectConsolidatedEmailRecipients(boolean useAvailableEmailSent, Date availableEmailSent, boolean useReminderEmailSent, Date reminderEmailSent, String emailTemplateType) {
 		int count = 0;
 		try {
-    	StringBuilder queryBuf = new StringBuilder();
-    	Map<String,Object> params = new HashMap<>();
-    	
-	    	queryBuf.append("insert into EvalEmailProcessingData (eauId,userId,groupId,emailTemplateId,evalId,evalDueDate) ");
-	    	queryBuf.append("select user.id as eauId,user.userId as userId,user.evalGroupId as groupId, ");
-    	if(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE.equalsIgnoreCase(emailTemplateType)) {
-    		queryBuf.append("eval.availableEmailTemplate.id as emailTemplateId");
-    	} else if(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER.equalsIgnoreCase(emailTemplateType)) {
-    		queryBuf.append("eval.reminderEmailTemplate.id as emailTemplateId");
-    	} else {
-    		queryBuf.append("'' as emailTemplateId");
-    	}
-	    	queryBuf.append(",eval.id as evalId, eval.dueDate as evalDueDate ");
-	    	queryBuf.append("from EvalAssignUser as user ");
-		queryBuf.append("inner join user.evaluation as eval ");
-			queryBuf.append("where user.type = :userType and eval.startDate <= current_timestamp() and user.completedDate is null ");
-		params.put("userType", EvalAssignUser.TYPE_EVALUATOR);
-    	if(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE.equalsIgnoreCase(emailTemplateType)) {
-    		queryBuf.append("and eval.availableEmailTemplate.type = :emailTemplateType ");
-    		params.put("emailTemplateType", emailTemplateType);
-    		
-    	} else if(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER.equalsIgnoreCase(emailTemplateType)) {
-    		queryBuf.append("and eval.reminderEmailTemplate.type = :emailTemplateType ");
-    		params.put("emailTemplateType", emailTemplateType);
-    	} 
-    	
-    	if(useAvailableEmailSent) {
-    		if(availableEmailSent == null) {
-    			queryBuf.append("and user.availableEmailSent is null ");
-    		} else {
-    			queryBuf.append("and (user.availableEmailSent is null or user.availableEmailSent < :availableEmailSent) ");
-    			params.put("availableEmailSent", availableEmailSent);
-    		}
-    	}
-   	
-    	if(useReminderEmailSent) {
-    		if(reminderEmailSent == null) {
-    			queryBuf.append("and user.reminderEmailSent is null ");
-    		} else {
-    			queryBuf.append("and (user.reminderEmailSent is null or user.reminderEmailSent < :reminderEmailSent) ");
-    			params.put("reminderEmailSent", reminderEmailSent);
-    		}
-    	}
-		
-    	Query query = currentSession().createQuery(queryBuf.toString());
-    	
-    	for(Map.Entry<String,Object> entry : params.entrySet()) {
-    		if(entry.getValue() instanceof Date) {
-    			query.setParameter(entry.getKey(), (Date) entry.getValue(), DateType.INSTANCE);
-    		} else if(entry.getValue() instanceof String) {
-    			query.setParameter(entry.getKey(), (String) entry.getValue());
-    		}
-    	}
-    	
-	    	count = query.executeUpdate();
-    	log.debug("Rows inserted into EVAL_EMAIL_PROCESSING_QUEUE: " + count);
+			if (countAll(EvalEmailProcessingData.class) == 0) {
+				// nothing queued yet (new install or upgrade) so fill the queue from the assignments once
+				updateConsolidatedEmailRecipients(null);
+			}
+
+			StringBuilder queryBuf = new StringBuilder();
+			Map<String,Object> params = new HashMap<>();
+
+			// only the queued users who are due are marked, everyone else in the queue is left alone
+			queryBuf.append("update EvalEmailProcessingData set processingStatus = :dueStatus where processingStatus is null ");
+			queryBuf.append("and emailTemplateId in (select template.id from EvalEmailTemplate as template where template.type = :emailTemplateType) ");
+			queryBuf.append("and eauId in (select user.id from EvalAssignUser as user, EvalEvaluation as eval ");
+			queryBuf.append("where eval.id = user.evaluation.id and user.type = :userType and eval.startDate <= current_timestamp() and user.completedDate is null ");
+			params.put("dueStatus", EvalEmailProcessingData.STATUS_DUE);
+			params.put("emailTemplateType", emailTemplateType);
+			params.put("userType", EvalAssignUser.TYPE_EVALUATOR);
+
+			if(useAvailableEmailSent) {
+				if(availableEmailSent == null) {
+					queryBuf.append("and user.availableEmailSent is null ");
+				} else {
+					queryBuf.append("and (user.availableEmailSent is null or user.availableEmailSent < :availableEmailSent) ");
+					params.put("availableEmailSent", availableEmailSent);
+				}
+			}
+
+			if(useReminderEmailSent) {
+				if(reminderEmailSent == null) {
+					queryBuf.append("and user.reminderEmailSent is null ");
+				} else {
+					queryBuf.append("and (user.reminderEmailSent is null or user.reminderEmailSent < :reminderEmailSent) ");
+					params.put("reminderEmailSent", reminderEmailSent);
+				}
+			}
+			queryBuf.append(")");
+
+			count = executeEmailQueueUpdate(queryBuf.toString(), params);
+			log.debug("Rows marked as due in EVAL_EMAIL_PROCESSING_QUEUE: " + count);
 		} catch(DataAccessResourceFailureException | IllegalStateException | HibernateException e) {
 			log.warn("error processing consolidated-email query: " + e);
 		}
-		
-    	return count;
+
+		return count;
+	}
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#updateConsolidatedEmailRecipients(java.lang.Long)
+     */
+	public int updateConsolidatedEmailRecipients(Long evaluationId) {
+		String evalHQL = "";
+		if (evaluationId != null) {
+			evalHQL = "and eval.id = :evalId ";
+		}
+
+		// remove the records which do not match their assignment anymore
+		StringBuilder removeBuf = new StringBuilder();
+		Map<String,Object> params = new HashMap<>();
+		removeBuf.append("delete from EvalEmailProcessingData as queue where ");
+		if (evaluationId != null) {
+			removeBuf.append("queue.evalId = :evalId and ");
+			params.put("evalId", evaluationId);
+		}
+		removeBuf.append("not exists (select user.id from EvalAssignUser as user, EvalEvaluation as eval ");
+		removeBuf.append("where user.id = queue.eauId and eval.id = user.evaluation.id ");
+		removeBuf.append("and user.type = :userType and user.completedDate is null and eval.state in (:evalStates) ");
+		removeBuf.append("and (eval.availableEmailTemplate.id = queue.emailTemplateId or eval.reminderEmailTemplate.id = queue.emailTemplateId) ");
+		removeBuf.append("and (eval.dueDate = queue.evalDueDate or (eval.dueDate is null and queue.evalDueDate is null)))");
+		params.put("userType", EvalAssignUser.TYPE_EVALUATOR);
+		params.put("evalStates", EMAIL_QUEUE_EVAL_STATES);
+		int removed = executeEmailQueueUpdate(removeBuf.toString(), params);
+
+		// add the evaluators who are not queued yet, once for each consolidated template
+		int added = 0;
+		String[][] templates = new String[][] {
+			{"availableEmailTemplate", EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE},
+			{"reminderEmailTemplate", EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER}};
+		for (String[] template : templates) {
+			StringBuilder queryBuf = new StringBuilder();
+			params = new HashMap<>();
+			queryBuf.append("insert into EvalEmailProcessingData (eauId,userId,groupId,emailTemplateId,evalId,evalDueDate) ");
+			queryBuf.append("select user.id as eauId,user.userId as userId,user.evalGroupId as groupId, ");
+			queryBuf.append("eval.").append(template[0]).append(".id as emailTemplateId,eval.id as evalId, eval.dueDate as evalDueDate ");
+			queryBuf.append("from EvalAssignUser as user ");
+			queryBuf.append("inner join user.evaluation as eval ");
+			queryBuf.append("where user.type = :userType and user.completedDate is null and eval.state in (:evalStates) ");
+			queryBuf.append("and eval.").append(template[0]).append(".type = :emailTemplateType ").append(evalHQL);
+			queryBuf.append("and not exists (select queue.id from EvalEmailProcessingData as queue ");
+			queryBuf.append("where queue.eauId = user.id and queue.emailTemplateId = eval.").append(template[0]).append(".id)");
+			params.put("userType", EvalAssignUser.TYPE_EVALUATOR);
+			params.put("evalStates", EMAIL_QUEUE_EVAL_STATES);
+			params.put("emailTemplateType", template[1]);
+			if (evaluationId != null) {
+				params.put("evalId", evaluationId);
+			}
+			added += executeEmailQueueUpdate(queryBuf.toString(), params);
+		}
+		log.debug("Updated EVAL_EMAIL_PROCESSING_QUEUE for eval ({}): removed {} rows, added {} rows", evaluationId, removed, added);
+		return added;
+	}
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#completeConsolidatedEmailRecipient(java.lang.Long, java.lang.String, java.lang.String)
+     */
+	public int completeConsolidatedEmailRecipient(Long evaluationId, String evalGroupId, String userId) {
+		if (evaluationId == null || evalGroupId == null || userId == null) {
+			throw new IllegalArgumentException("evaluationId, evalGroupId and userId must be set");
+		}
+		Query updateQuery = currentSession().createQuery("update EvalAssignUser set completedDate = :completedDate "
+				+ "where evaluation.id = :evalId and evalGroupId = :evalGroupId and userId = :userId and type = :userType");
+		updateQuery.setParameter("completedDate", new Date());
+		updateQuery.setParameter("evalId", evaluationId);
+		updateQuery.setParameter("evalGroupId", evalGroupId);
+		updateQuery.setParameter("userId", userId);
+		updateQuery.setParameter("userType", EvalAssignUser.TYPE_EVALUATOR);
+		int count = updateQuery.executeUpdate();
+
+		Map<String,Object> params = new HashMap<>();
+		params.put("evalId", evaluationId);
+		params.put("evalGroupId", evalGroupId);
+		params.put("userId", userId);
+		int removed = executeEmailQueueUpdate("delete from EvalEmailProcessingData where evalId = :evalId "
+				+ "and groupId = :evalGroupId and userId = :userId", params);
+		if (log.isDebugEnabled()) {
+			log.debug("Completed " + count + " assignments and removed " + removed + " queued emails for user (" + userId 
+					+ ") in eval (" + evaluationId + ") and group (" + evalGroupId + ")");
+		}
+		return count;
+	}
+
+	/**
+	 * Run a bulk update on the email processing queue, the params must match the named parameters of the query exactly
+	 * 
+	 * @param hql the update, insert or delete HQL
+	 * @param params the named parameters (arrays are bound as parameter lists, dates are compared by day)
+	 * @return the number of rows changed
+	 */
+	private int executeEmailQueueUpdate(String hql, Map<String,Object> params) {
+		Query query = currentSession().createQuery(hql);
+		for (Map.Entry<String,Object> entry : params.entrySet()) {
+			Object value = entry.getValue();
+			if (value instanceof Object[]) {
+				query.setParameterList(entry.getKey(), (Object[]) value);
+			} else if (value instanceof Date) {
+				query.setParameter(entry.getKey(), (Date) value, DateType.INSTANCE);
+			} else {
+				query.setParameter(entry.getKey(), value);
+			}
+		}
+		return query.executeUpdate();
 	}
 
     /*
@@ -2040,12 +2303,7 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
      */
     public Set<String> getAllSiteIDsMatchingSectionTitle( String sectionTitleWithWildcards )
     {
-        Session session = getSessionFactory().openSession();
-        NativeQuery query = session.createSQLQuery( SQL_SELECT_SITE_IDS_MATCHING_SECTION_TITLE );
-        query.setParameter( "title", sectionTitleWithWildcards );
-        Set<String> results = new HashSet<>( query.list() );
-        session.close();
-        return results;
+        return getAllSiteIDsMatchingSectionTitles( Collections.singleton( sectionTitleWithWildcards ) ).get( sectionTitleWithWildcards );
     }
 
     /*
@@ -2054,14 +2312,176 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
      */
     public Set<String> getAllSiteIDsMatchingSiteTitle( String siteTitleWithWildcards )
     {
+        return getAllSiteIDsMatchingSiteTitles( Collections.singleton( siteTitleWithWildcards ) ).get( siteTitleWithWildcards );
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getAllSiteIDsMatchingSectionTitles(java.util.Collection)
+     */
+    public Map<String, Set<String>> getAllSiteIDsMatchingSectionTitles( Collection<String> sectionTitlesWithWildcards )
+    {
+        return getSiteIDsMatchingTitles( SQL_SELECT_SITE_IDS_MATCHING_SECTION_TITLE, sectionTitlesWithWildcards );
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getAllSiteIDsMatchingSiteTitles(java.util.Collection)
+     */
+    public Map<String, Set<String>> getAllSiteIDsMatchingSiteTitles( Collection<String> siteTitlesWithWildcards )
+    {
+        return getSiteIDsMatchingTitles( SQL_SELECT_SITE_IDS_MATCHING_SITE_TITLE, siteTitlesWithWildcards );
+    }
+
+    /**
+     * Runs a title matching query once for each distinct title, all in the same session
+     * 
+     * @param sql the native query to run, must have a :title parameter
+     * @param titles the titles (with wildcards) to match
+     * @return the map of title -> matching site IDs
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Set<String>> getSiteIDsMatchingTitles( String sql, Collection<String> titles )
+    {
+        Map<String, Set<String>> results = new HashMap<>();
+        if( titles == null || titles.isEmpty() )
+        {
+            return results;
+        }
+
         Session session = getSessionFactory().openSession();
-        NativeQuery query = session.createSQLQuery( SQL_SELECT_SITE_IDS_MATCHING_SITE_TITLE );
-        query.setParameter( "title", siteTitleWithWildcards );
-        Set<String> results = new HashSet<>( query.list() );
-        session.close();
+        try
+        {
+            NativeQuery query = session.createSQLQuery( sql );
+            for( String title : new HashSet<>( titles ) )
+            {
+                query.setParameter( "title", title );
+                results.put( title, new HashSet<>( query.list() ) );
+            }
+        }
+        finally
+        {
+            session.close();
+        }
         return results;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getExistingOutboxKeys(java.util.Collection)
+     */
+    @SuppressWarnings("unchecked")
+    public Set<String> getExistingOutboxKeys(Collection<String> idempotencyKeys) {
+        Set<String> existing = new HashSet<>();
+        if (idempotencyKeys == null || idempotencyKeys.isEmpty()) {
+            return existing;
+        }
+        Query query = currentSession().createQuery(
+                "select idempotencyKey from EvalOutboxEmail where idempotencyKey in (:keys)");
+        List<String> keys = new ArrayList<>(new LinkedHashSet<>(idempotencyKeys));
+        for (int start = 0; start < keys.size(); start += MAX_UPDATE_SIZE) {
+            query.setParameterList("keys", keys.subList(start, Math.min(keys.size(), start + MAX_UPDATE_SIZE)));
+            existing.addAll(query.list());
+        }
+        return existing;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getOutboxEmailsToSend(java.util.Date, int)
+     */
+    @SuppressWarnings("unchecked")
+    public List<EvalOutboxEmail> getOutboxEmailsToSend(Date now, int maxEmails) {
+        Query query = currentSession().createQuery(
+                "from EvalOutboxEmail where status = :status and nextAttempt <= :now order by id");
+        query.setParameter("status", EvalConstants.EMAIL_OUTBOX_STATUS_PENDING);
+        query.setParameter("now", now);
+        query.setMaxResults(maxEmails);
+        return query.list();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#markOutboxEmailsSent(java.util.Collection)
+     */
+    public int markOutboxEmailsSent(Collection<Long> outboxEmailIds) {
+        if (outboxEmailIds == null || outboxEmailIds.isEmpty()) {
+            return 0;
+        }
+        Query updateQuery = currentSession().createQuery(
+                "update EvalOutboxEmail set status = :status, sentDate = :dateSent, lastModified = :dateSent, "
+                + "attempts = attempts + 1, lastError = null where id in (:ids)");
+        Date dateSent = new Date();
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(outboxEmailIds));
+        int count = 0;
+        for (int start = 0; start < ids.size(); start += MAX_UPDATE_SIZE) {
+            updateQuery.setParameter("status", EvalConstants.EMAIL_OUTBOX_STATUS_SENT);
+            updateQuery.setParameter("dateSent", dateSent);
+            updateQuery.setParameterList("ids", ids.subList(start, Math.min(ids.size(), start + MAX_UPDATE_SIZE)));
+            count += updateQuery.executeUpdate();
+        }
+        return count;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#countOutboxEmailsByStatus()
+     */
+    @SuppressWarnings("rawtypes")
+    public Map<String, Long> countOutboxEmailsByStatus() {
+        Map<String, Long> counts = new HashMap<>();
+        List results = currentSession().createQuery(
+                "select status, count(*) from EvalOutboxEmail group by status").list();
+        for (Object result : results) {
+            Object[] row = (Object[]) result;
+            counts.put((String) row[0], ((Number) row[1]).longValue());
+        }
+        return counts;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#requeueFailedOutboxEmails(java.lang.Long)
+     */
+    public int requeueFailedOutboxEmails(Long evaluationId) {
+        String hql = "update EvalOutboxEmail set status = :pending, attempts = 0, nextAttempt = :now, lastModified = :now "
+                + "where status = :failed";
+        if (evaluationId != null) {
+            hql += " and evaluationId = :evaluationId";
+        }
+        Query updateQuery = currentSession().createQuery(hql);
+        updateQuery.setParameter("pending", EvalConstants.EMAIL_OUTBOX_STATUS_PENDING);
+        updateQuery.setParameter("failed", EvalConstants.EMAIL_OUTBOX_STATUS_FAILED);
+        updateQuery.setParameter("now", new Date());
+        if (evaluationId != null) {
+            updateQuery.setParameter("evaluationId", evaluationId);
+        }
+        return updateQuery.executeUpdate();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#removeSentOutboxEmails(java.util.Date)
+     */
+    public int removeSentOutboxEmails(Date sentBefore) {
+        Query deleteQuery = currentSession().createQuery(
+                "delete from EvalOutboxEmail where status = :status and sentDate < :sentBefore");
+        deleteQuery.setParameter("status", EvalConstants.EMAIL_OUTBOX_STATUS_SENT);
+        deleteQuery.setParameter("sentBefore", sentBefore);
+        return deleteQuery.executeUpdate();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#removeJobMetrics(java.util.Date)
+     */
+    public int removeJobMetrics(Date sampledBefore) {
+        Query deleteQuery = currentSession().createQuery(
+                "delete from EvalJobMetric where sampleTime < :sampledBefore");
+        deleteQuery.setParameter("sampledBefore", sampledBefore);
+        return deleteQuery.executeUpdate();
+    }
+
     /**
      * Cleans up lock if there was a failure
      * 
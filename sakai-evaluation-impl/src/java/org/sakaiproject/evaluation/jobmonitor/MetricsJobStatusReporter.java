@@ -0,0 +1,311 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.jobmonitor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.dao.EvaluationDao;
+import org.sakaiproject.evaluation.logic.EvalCommonLogic;
+import org.sakaiproject.evaluation.model.EvalJobMetric;
+import org.sakaiproject.genericdao.api.search.Order;
+import org.sakaiproject.genericdao.api.search.Restriction;
+import org.sakaiproject.genericdao.api.search.Search;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Logs the job status like the {@link LoggingJobStatusReporter} and keeps the counts for each run in memory,
+ * the rate is worked out from the counts reported within a sliding window so it follows the current throughput,
+ * a sample is written to the EVAL_JOB_METRIC table at most once per sample interval for each run
+ * (and when a phase or the run ends) so reporting every batch does not add database writes
+ */
+@Slf4j
+public class MetricsJobStatusReporter extends LoggingJobStatusReporter implements JobMetricsReporter {
+
+	/**
+	 * The sakai.properties setting for the least number of seconds between the progress samples written for a run
+	 */
+	public static final String SETTING_SAMPLE_SECONDS = "eval.job.metrics.sampleSeconds";
+	/**
+	 * The sakai.properties setting for the number of seconds of recent progress the rate (and ETA) is worked out from
+	 */
+	public static final String SETTING_RATE_WINDOW_SECONDS = "eval.job.metrics.rateWindowSeconds";
+	/**
+	 * The sakai.properties setting for the number of days the progress samples are kept
+	 */
+	public static final String SETTING_KEEP_DAYS = "eval.job.metrics.keepDays";
+
+	private static final long ONE_DAY = 24L * 60L * 60L * 1000L;
+	private static final int MAX_WINDOW_COUNTS = 1000;
+	private static final int MAX_DETAIL_LENGTH = 255;
+
+	private EvaluationDao dao;
+	public void setDao(EvaluationDao dao) {
+		this.dao = dao;
+	}
+
+	private EvalCommonLogic commonLogic;
+	public void setCommonLogic(EvalCommonLogic commonLogic) {
+		this.commonLogic = commonLogic;
+	}
+
+	private long sampleMillis = 30000L;
+	private long windowMillis = 300000L;
+	private long keepMillis = 30L * ONE_DAY;
+
+	/**
+	 * The runs on this server which have not finished yet
+	 */
+	private final Map<String, JobRun> runs = new ConcurrentHashMap<>();
+
+	public void init() {
+		sampleMillis = Math.max(0, commonLogic.getConfigurationSetting(SETTING_SAMPLE_SECONDS, 30)) * 1000L;
+		windowMillis = Math.max(1, commonLogic.getConfigurationSetting(SETTING_RATE_WINDOW_SECONDS, 300)) * 1000L;
+		keepMillis = Math.max(1, commonLogic.getConfigurationSetting(SETTING_KEEP_DAYS, 30)) * ONE_DAY;
+		log.info("Init job metrics: sampleSeconds=" + (sampleMillis / 1000L) + ", rateWindowSeconds=" + (windowMillis / 1000L)
+				+ ", keepDays=" + (keepMillis / ONE_DAY));
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.evaluation.jobmonitor.LoggingJobStatusReporter#reportStarted(java.lang.String)
+	 */
+	@Override
+	public String reportStarted(String jobName) {
+		super.reportStarted(jobName);
+		long now = currentTimeMillis();
+		String jobId = jobName + "-" + now;
+		// forget runs which never reported that they finished
+		runs.values().removeIf(run -> now - run.lastReported > ONE_DAY);
+		runs.put(jobId, new JobRun(jobId, jobName, now));
+		try {
+			int removed = dao.removeJobMetrics(new Date(now - keepMillis));
+			if (removed > 0) {
+				log.info("Removed " + removed + " job progress samples older than " + (keepMillis / ONE_DAY) + " days");
+			}
+		} catch (Exception e) {
+			log.warn("Could not remove the old job progress samples: " + e);
+		}
+		return jobId;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.evaluation.jobmonitor.LoggingJobStatusReporter#reportProgress(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void reportProgress(String jobId, String milestone, String detail) {
+		super.reportProgress(jobId, milestone, detail);
+		JobRun run = getRun(jobId);
+		synchronized (run) {
+			run.detail = milestone + ": " + detail;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.evaluation.jobmonitor.LoggingJobStatusReporter#reportError(java.lang.String, boolean, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void reportError(String jobId, boolean jobFailed, String milestone, String detail) {
+		super.reportError(jobId, jobFailed, milestone, detail);
+		if (jobFailed) {
+			JobRun run = getRun(jobId);
+			synchronized (run) {
+				run.detail = milestone + ": " + detail;
+				save(run.makeSample(currentTimeMillis(), EvalConstants.JOB_METRIC_STATUS_FAILED));
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.evaluation.jobmonitor.LoggingJobStatusReporter#reportFinished(java.lang.String, boolean, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void reportFinished(String jobId, boolean jobFailed, String milestone, String detail) {
+		super.reportFinished(jobId, jobFailed, milestone, detail);
+		JobRun run = getRun(jobId);
+		runs.remove(jobId);
+		synchronized (run) {
+			long now = currentTimeMillis();
+			if (run.phase == null) {
+				// nothing was counted, still record the run
+				run.startPhase(milestone, now);
+			}
+			run.detail = detail;
+			save(run.makeSample(now,
+					jobFailed ? EvalConstants.JOB_METRIC_STATUS_FAILED : EvalConstants.JOB_METRIC_STATUS_FINISHED));
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.evaluation.jobmonitor.JobMetricsReporter#reportCounts(java.lang.String, java.lang.String, int, int, int, int)
+	 */
+	public void reportCounts(String jobId, String phase, int total, int processed, int sent, int errors) {
+		if (phase == null) {
+			throw new IllegalArgumentException("phase cannot be null");
+		}
+		JobRun run = getRun(jobId);
+		synchronized (run) {
+			long now = currentTimeMillis();
+			if (! phase.equals(run.phase)) {
+				if (run.phase != null) {
+					// a new phase ends the last one
+					save(run.makeSample(now, EvalConstants.JOB_METRIC_STATUS_FINISHED));
+				}
+				run.startPhase(phase, now);
+			}
+			run.update(total, processed, sent, errors, now, windowMillis);
+			if (run.lastWritten < 0L || now - run.lastWritten >= sampleMillis) {
+				save(run.makeSample(now, EvalConstants.JOB_METRIC_STATUS_RUNNING));
+				run.lastWritten = now;
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.evaluation.jobmonitor.JobMetricsReporter#getJobMetrics(java.lang.String)
+	 */
+	public List<EvalJobMetric> getJobMetrics(String jobId) {
+		return dao.findBySearch(EvalJobMetric.class, new Search(
+				new Restriction("jobId", jobId), 
+				new Order("id") ) );
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.evaluation.jobmonitor.JobMetricsReporter#getLatestJobMetrics(java.lang.String)
+	 */
+	public List<EvalJobMetric> getLatestJobMetrics(String jobName) {
+		Search search = new Search(new Restriction("jobName", jobName), new Order("id", false));
+		search.setLimit(1);
+		List<EvalJobMetric> last = dao.findBySearch(EvalJobMetric.class, search);
+		if (last.isEmpty()) {
+			return new ArrayList<>();
+		}
+		// the phases stay in the order they were first sampled
+		Map<String, EvalJobMetric> phases = new LinkedHashMap<>();
+		for (EvalJobMetric metric : getJobMetrics(last.get(0).getJobId())) {
+			phases.put(metric.getPhase(), metric);
+		}
+		return new ArrayList<>(phases.values());
+	}
+
+	/**
+	 * @return the current time, can be overridden for testing
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	private JobRun getRun(String jobId) {
+		// runs which were not started through this reporter are named by their id
+		return runs.computeIfAbsent(jobId, id -> new JobRun(id, id, currentTimeMillis()));
+	}
+
+	private void save(EvalJobMetric metric) {
+		try {
+			dao.save(metric);
+		} catch (Exception e) {
+			log.warn("Could not save the progress of job (" + metric.getJobId() + "): " + e);
+		}
+	}
+
+	/**
+	 * The counts for the current phase of a run, the recent counts are kept as (time, processed) pairs
+	 * for working out the rate
+	 */
+	private static class JobRun {
+		final String jobId;
+		final String jobName;
+		String phase;
+		String detail;
+		long phaseStarted;
+		long lastReported;
+		long lastWritten = -1L;
+		int total;
+		int processed;
+		int sent;
+		int errors;
+		final Deque<long[]> window = new ArrayDeque<>();
+
+		JobRun(String jobId, String jobName, long now) {
+			this.jobId = jobId;
+			this.jobName = jobName;
+			this.lastReported = now;
+		}
+
+		void startPhase(String phase, long now) {
+			this.phase = phase;
+			this.phaseStarted = now;
+			this.lastWritten = -1L;
+			this.total = 0;
+			this.processed = 0;
+			this.sent = 0;
+			this.errors = 0;
+			window.clear();
+		}
+
+		void update(int total, int processed, int sent, int errors, long now, long windowMillis) {
+			this.total = total;
+			this.processed = processed;
+			this.sent = sent;
+			this.errors = errors;
+			this.lastReported = now;
+			window.addLast(new long[] {now, processed});
+			while (window.size() > 2 
+					&& (now - window.peekFirst()[0] > windowMillis || window.size() > MAX_WINDOW_COUNTS)) {
+				window.removeFirst();
+			}
+		}
+
+		/**
+		 * @param now the sample time
+		 * @param status the EvalConstants.JOB_METRIC_STATUS_* for the sample
+		 * @return a sample of the current counts, the rate of a finished phase is the average for the whole phase
+		 */
+		EvalJobMetric makeSample(long now, String status) {
+			boolean running = EvalConstants.JOB_METRIC_STATUS_RUNNING.equals(status);
+			Double rate = null;
+			if (running) {
+				long[] first = window.peekFirst();
+				if (window.size() > 1 && now > first[0]) {
+					rate = (processed - first[1]) * 1000d / (now - first[0]);
+				}
+			} else if (phase != null && now > phaseStarted) {
+				rate = processed * 1000d / (now - phaseStarted);
+			}
+			Long eta = null;
+			if (total > 0) {
+				if (processed >= total) {
+					eta = 0L;
+				} else if (running && rate != null && rate > 0d) {
+					eta = (long) Math.ceil((total - processed) / rate);
+				}
+			}
+			EvalJobMetric metric = new EvalJobMetric(jobId, jobName, phase == null ? "none" : phase, new Date(now), status,
+					total > 0 ? total : null, processed, sent, errors, rate, eta);
+			if (detail != null) {
+				metric.setDetail(detail.length() > MAX_DETAIL_LENGTH ? detail.substring(0, MAX_DETAIL_LENGTH) : detail);
+			}
+			return metric;
+		}
+	}
+
+}
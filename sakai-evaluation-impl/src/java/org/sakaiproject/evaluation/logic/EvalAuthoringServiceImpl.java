@@ -15,11 +15,13 @@
 package org.sakaiproject.evaluation.logic;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +42,7 @@ import org.sakaiproject.evaluation.model.EvalTemplateItem;
 import org.sakaiproject.evaluation.utils.ArrayUtils;
 import org.sakaiproject.evaluation.utils.ComparatorsUtils;
 import org.sakaiproject.evaluation.utils.EvalUtils;
+import org.sakaiproject.evaluation.utils.TemplateItemIndex;
 import org.sakaiproject.evaluation.utils.TemplateItemUtils;
 import org.sakaiproject.genericdao.api.search.Order;
 import org.sakaiproject.genericdao.api.search.Restriction;
@@ -1728,8 +1731,9 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
             }
         }
 
-        // sort the list of template items
+        // sort the list of template items and index the blocks once for the whole copy
         templateItemsList = TemplateItemUtils.orderTemplateItems(templateItemsList, false);
+        TemplateItemIndex index = new TemplateItemIndex(templateItemsList);
 
         int itemCount = 1; // start at display order 1
         if (toTemplateId == null && toTemplate != null) {
@@ -1738,35 +1742,85 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
             itemCount = getItemCountForTemplate(toTemplate.getId()) + 1;
         }
 
-        /* http://bugs.sakaiproject.org/jira/browse/EVALSYS-689
-         * need to track the copied items and scales to avoid copying them more than once
-         */
-        LinkedHashSet<EvalTemplateItem> copiedTemplateItems = new LinkedHashSet<>(templateItemsList.size());
-
         // shallow copy all block parents first so we can know their new IDs, then later we will update them
-        List<EvalTemplateItem> parentItems = TemplateItemUtils.getParentItems(templateItemsList);
-        HashMap<Long, EvalTemplateItem> parentIdToCopy = new HashMap<>(parentItems.size());
-        if (! parentItems.isEmpty()) {
-            for (EvalTemplateItem original : parentItems) {
-                Long originalBlockParentId = original.getId();
-                List<EvalTemplateItem> childItems = TemplateItemUtils.getChildItems(templateItemsList, originalBlockParentId);
-                if (childItems.size() > 0) {
-                    // only copy this if it has children, lone parents do not get copied
-                    EvalTemplateItem copy = copyTemplateItem(original, toTemplate, ownerId, hidden);
-                    parentIdToCopy.put(originalBlockParentId, copy);
-                }
-            }
+        Map<Long, EvalTemplateItem> parentIdToCopy = makeBlockParentCopies(index, toTemplate, ownerId, hidden);
+        if (! parentIdToCopy.isEmpty()) {
             HashSet<EvalTemplateItem> parentItemsToSave = new HashSet<>( parentIdToCopy.values() );
             dao.saveSet( parentItemsToSave );
         }
 
-        // check for block items
-        List<EvalTemplateItem> nonChildItems = TemplateItemUtils.getNonChildItems(templateItemsList);
+        LinkedHashSet<EvalTemplateItem> copiedTemplateItems = makeTemplateItemCopies(templateItemsList, index, 
+                parentIdToCopy, itemCount, toTemplate, ownerId, hidden);
+
+        if (includeChildren) {
+            copyItemsForTemplateItems(copiedTemplateItems, ownerId, hidden);
+        }
+        // save the template items
+        dao.saveSet(copiedTemplateItems);
+
+        Long[] copiedIds = new Long[copiedTemplateItems.size()];
+        int counter = 0;
+        for (EvalTemplateItem copiedTemplateItem : copiedTemplateItems) {
+            copiedIds[counter] = copiedTemplateItem.getId();
+            counter++;
+        }
+        return copiedIds;
+    }
+
+    /**
+     * Makes shallow non-persistent copies of the block parents which have children in the index,
+     * lone parents do not get copied, the copies must be saved before the children are copied
+     * so the children can be pointed at the new parent ids
+     * 
+     * @param index the index of the template items being copied
+     * @param toTemplate the template to copy the block parents to
+     * @param ownerId set as the owner of the copies
+     * @param hidden if true then the copies will be marked as hidden
+     * @return the map of original block parent id -> copy (not persisted)
+     */
+    private Map<Long, EvalTemplateItem> makeBlockParentCopies(TemplateItemIndex index, EvalTemplate toTemplate,
+            String ownerId, boolean hidden) {
+        List<EvalTemplateItem> parentItems = index.getParentItems();
+        HashMap<Long, EvalTemplateItem> parentIdToCopy = new HashMap<>(parentItems.size());
+        for (EvalTemplateItem original : parentItems) {
+            Long originalBlockParentId = original.getId();
+            if (index.getChildItems(originalBlockParentId).size() > 0) {
+                // only copy this if it has children, lone parents do not get copied
+                EvalTemplateItem copy = copyTemplateItem(original, toTemplate, ownerId, hidden);
+                parentIdToCopy.put(originalBlockParentId, copy);
+            }
+        }
+        return parentIdToCopy;
+    }
+
+    /**
+     * Makes non-persistent copies of a set of template items in display order, block children are
+     * assigned to the copies of their parents and orphaned block children become normal items
+     * 
+     * @param templateItemsList the template items to copy ordered by {@link TemplateItemUtils#orderTemplateItems(List, boolean)}
+     * @param index the index of the same template items
+     * @param parentIdToCopy the block parent copies from {@link #makeBlockParentCopies(TemplateItemIndex, EvalTemplate, String, boolean)},
+     * these must already be saved
+     * @param itemCount the display order to start the copies at
+     * @param toTemplate the template to copy the template items to
+     * @param ownerId set as the owner of the copies
+     * @param hidden if true then the copies will be marked as hidden
+     * @return the copies (including the block parent copies) in display order
+     */
+    private LinkedHashSet<EvalTemplateItem> makeTemplateItemCopies(List<EvalTemplateItem> templateItemsList, TemplateItemIndex index,
+            Map<Long, EvalTemplateItem> parentIdToCopy, int itemCount, EvalTemplate toTemplate, String ownerId, boolean hidden) {
+        // the originals which have been copied
+        Set<EvalTemplateItem> handledItems = TemplateItemIndex.makeIdentitySet();
+
+        /* http://bugs.sakaiproject.org/jira/browse/EVALSYS-689
+         * need to track the copied items and scales to avoid copying them more than once
+         */
+        LinkedHashSet<EvalTemplateItem> copiedTemplateItems = new LinkedHashSet<>(templateItemsList.size());
 
         // iterate though in display order and copy the template items
         int displayOrder = 0;
-        for (EvalTemplateItem original : nonChildItems) {
-            templateItemsList.remove(original); // take this out of the list
+        for (EvalTemplateItem original : index.getNonChildItems()) {
+            handledItems.add(original); // take this out of the remaining items
             if (TemplateItemUtils.isBlockParent(original)) {
                 // this is a block parent so copy it and its children
                 Long originalBlockParentId = original.getId();
@@ -1775,21 +1829,24 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
                     copyParent.setDisplayOrder(itemCount + displayOrder); // fix up display order
                     copyParent.setBlockId(null);
                     copyParent.setBlockParent(true);
-                    //dao.save(copyParent);
                     copiedTemplateItems.add(copyParent);
                     Long blockParentId = copyParent.getId();
 
-                    // loop through and copy all the children and assign them to the parent
-                    List<EvalTemplateItem> childItems = TemplateItemUtils.getChildItems(templateItemsList, originalBlockParentId);
+                    // loop through and copy all the children (which were not already copied) and assign them to the parent
+                    List<EvalTemplateItem> childItems = new ArrayList<>();
+                    for (EvalTemplateItem child : index.getChildItems(originalBlockParentId)) {
+                        if (! handledItems.contains(child)) {
+                            childItems.add(child);
+                        }
+                    }
                     for (int j = 0; j < childItems.size(); j++) {
                         EvalTemplateItem child = childItems.get(j);
-                        templateItemsList.remove(child); // take this out of the list
+                        handledItems.add(child); // take this out of the remaining items
                         // copy the child item
                         EvalTemplateItem copy = copyTemplateItem(child, toTemplate, ownerId, hidden);
                         copy.setDisplayOrder(j); // fix up display order
                         copy.setBlockId(blockParentId);
                         copy.setBlockParent(false);
-                        //dao.save(copy);
                         copiedTemplateItems.add(copy);
                     }
                 }
@@ -1797,7 +1854,6 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
                 // not a block parent
                 EvalTemplateItem copy = copyTemplateItem(original, toTemplate, ownerId, hidden);
                 copy.setDisplayOrder(itemCount + displayOrder); // fix up display order
-                //dao.save(copy);
                 copiedTemplateItems.add(copy);
             }
             displayOrder++;
@@ -1805,50 +1861,51 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
 
         // now copy any remaining orphaned block children into normal items
         for (EvalTemplateItem original : templateItemsList) {
+            if (handledItems.contains(original)) {
+                continue;
+            }
             displayOrder++;
             EvalTemplateItem copy = copyTemplateItem(original, toTemplate, ownerId, hidden);
             copy.setDisplayOrder(itemCount + displayOrder); // fix up display order
-            //dao.save(copy);
             copiedTemplateItems.add(copy);
         }
+        return copiedTemplateItems;
+    }
 
-        if (includeChildren) {
-            // make a copy of all items and put them into the TIs to replace the originals
-            HashSet<Long> itemIdSet = new HashSet<>();
-            for (EvalTemplateItem eti : copiedTemplateItems) {
-                if (eti.getItem() != null) {
-                    Long itemId = eti.getItem().getId();
-                    itemIdSet.add(itemId);
-                }
-            }
-            Long[] itemIds = itemIdSet.toArray(new Long[itemIdSet.size()]);
-            // do the items copy
-            Set<EvalItem> copiedItems = copyItemsInternal(itemIds, ownerId, hidden, includeChildren);
-            HashMap<Long, EvalItem> originalIdToCopy = new HashMap<>(copiedItems.size());
-            for (EvalItem evalItem : copiedItems) {
-                originalIdToCopy.put(evalItem.getCopyOf(), evalItem);
-            }
-            // insert the copied items into the copied template items (update the foreign keys when we save)
-            for (EvalTemplateItem eti : copiedTemplateItems) {
-                if (eti.getItem() != null) {
-                    Long itemId = eti.getItem().getId(); // original id
-                    EvalItem copy = originalIdToCopy.get(itemId);
-                    if (copy != null) {
-                        eti.setItem(copy);
-                    }
+    /**
+     * Make a copy of all items (and their scales) used in the copied template items
+     * and put them into the template items to replace the originals,
+     * each item is only copied once no matter how many template items use it
+     * 
+     * @param copiedTemplateItems the copied template items (not saved yet)
+     * @param ownerId set as the owner of the copies
+     * @param hidden if true then the copied items will be marked as hidden
+     */
+    private void copyItemsForTemplateItems(Collection<EvalTemplateItem> copiedTemplateItems, String ownerId, boolean hidden) {
+        HashSet<Long> itemIdSet = new HashSet<>();
+        for (EvalTemplateItem eti : copiedTemplateItems) {
+            if (eti.getItem() != null) {
+                Long itemId = eti.getItem().getId();
+                itemIdSet.add(itemId);
+            }
+        }
+        Long[] itemIds = itemIdSet.toArray(new Long[itemIdSet.size()]);
+        // do the items copy
+        Set<EvalItem> copiedItems = copyItemsInternal(itemIds, ownerId, hidden, true);
+        HashMap<Long, EvalItem> originalIdToCopy = new HashMap<>(copiedItems.size());
+        for (EvalItem evalItem : copiedItems) {
+            originalIdToCopy.put(evalItem.getCopyOf(), evalItem);
+        }
+        // insert the copied items into the copied template items (update the foreign keys when we save)
+        for (EvalTemplateItem eti : copiedTemplateItems) {
+            if (eti.getItem() != null) {
+                Long itemId = eti.getItem().getId(); // original id
+                EvalItem copy = originalIdToCopy.get(itemId);
+                if (copy != null) {
+                    eti.setItem(copy);
                 }
             }
         }
-        // save the template items
-        dao.saveSet(copiedTemplateItems);
-
-        Long[] copiedIds = new Long[copiedTemplateItems.size()];
-        int counter = 0;
-        for (EvalTemplateItem copiedTemplateItem : copiedTemplateItems) {
-            copiedIds[counter] = copiedTemplateItem.getId();
-            counter++;
-        }
-        return copiedIds;
     }
 
     /**
@@ -1882,32 +1939,134 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
             throw new IllegalArgumentException("Invalid templateId submitted ("+templateId+"), could not retrieve the template");
         }
 
-        String newTitle = title;
-        if (newTitle == null || newTitle.length() == 0) {
-            newTitle = original.getTitle() + " (copy)";
+        Map<Long, EvalTemplate> copies = copyTemplatesInternal(new Long[] {templateId}, title, ownerId, hidden, includeChildren);
+        return copies.get(templateId).getId();
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalAuthoringService#copyTemplates(java.lang.Long[], java.lang.String, boolean, boolean)
+     */
+    public Map<Long, Long> copyTemplates(Long[] templateIds, String ownerId, boolean hidden, boolean includeChildren) {
+        if (ownerId == null || ownerId.length() == 0) {
+            throw new IllegalArgumentException("Invalid ownerId, cannot be null or empty string");         
+        }
+        if (templateIds == null || templateIds.length == 0) {
+            throw new IllegalArgumentException("Invalid templateIds array, cannot be null or empty");
+        }
+
+        Map<Long, EvalTemplate> copies = copyTemplatesInternal(templateIds, null, ownerId, hidden, includeChildren);
+        Map<Long, Long> copiedIds = new LinkedHashMap<>(copies.size());
+        for (Entry<Long, EvalTemplate> entry : copies.entrySet()) {
+            copiedIds.put(entry.getKey(), entry.getValue().getId());
+        }
+        return copiedIds;
+    }
+
+    /**
+     * Internal method: copies a set of templates and all their template items (and optionally items and scales),
+     * every level is saved for all the templates at once (one save for the templates, the block parents,
+     * the scales, the items and the template items) instead of one template at a time
+     * 
+     * @param templateIds the ids of the templates to copy
+     * @param title the title for the copies, if null or empty then the original title + " (copy)" is used
+     * @param ownerId set as the owner of all the copies
+     * @param hidden if true then the template copies will be marked as hidden
+     * @param includeChildren if true then the items and scales are copied as well
+     * @return the map of original template id -> copy (persisted) in the order of the ids
+     */
+    private Map<Long, EvalTemplate> copyTemplatesInternal(Long[] templateIds, String title, String ownerId,
+            boolean hidden, boolean includeChildren) {
+        long startTime = System.currentTimeMillis();
+        templateIds = ArrayUtils.unique(templateIds);
+        List<EvalTemplate> originals = dao.findBySearch(EvalTemplate.class, new Search("id", templateIds));
+        if (originals.size() != templateIds.length) {
+            throw new IllegalArgumentException("Invalid templateIds in array, only found " + originals.size() 
+                    + " of " + templateIds.length + " templates");
+        }
+        HashMap<Long, EvalTemplate> originalsById = new HashMap<>(originals.size());
+        for (EvalTemplate original : originals) {
+            originalsById.put(original.getId(), original);
+        }
+
+        // copy the templates themselves
+        LinkedHashMap<Long, EvalTemplate> originalIdToCopy = new LinkedHashMap<>(templateIds.length);
+        for (Long templateId : templateIds) {
+            EvalTemplate original = originalsById.get(templateId);
+            String newTitle = title;
+            if (newTitle == null || newTitle.length() == 0) {
+                newTitle = original.getTitle() + " (copy)";
+            }
+            EvalTemplate copy = new EvalTemplate(ownerId, original.getType(), newTitle, 
+                    original.getDescription(), EvalConstants.SHARING_PRIVATE, false, 
+                    null, null, false, false);
+            // set the other copy fields
+            copy.setCopyOf(original.getId());
+            copy.setHidden(hidden);
+            originalIdToCopy.put(templateId, copy);
+        }
+        dao.saveSet(new HashSet<>(originalIdToCopy.values()));
+
+        // fetch the template items for all the templates at once and split them up by template
+        List<EvalTemplateItem> allTemplateItems = dao.findBySearch(EvalTemplateItem.class, new Search("template.id", templateIds));
+        HashMap<Long, List<EvalTemplateItem>> templateItemsByTemplateId = new HashMap<>();
+        for (EvalTemplateItem templateItem : allTemplateItems) {
+            Long templateId = templateItem.getTemplate().getId();
+            List<EvalTemplateItem> l = templateItemsByTemplateId.get(templateId);
+            if (l == null) {
+                l = new ArrayList<>();
+                templateItemsByTemplateId.put(templateId, l);
+            }
+            l.add(templateItem);
         }
-        EvalTemplate copy = new EvalTemplate(ownerId, original.getType(), newTitle, 
-                original.getDescription(), EvalConstants.SHARING_PRIVATE, false, 
-                null, null, false, false);
-        // set the other copy fields
-        copy.setCopyOf(original.getId());
-        copy.setHidden(hidden);
 
-        dao.save(copy);
+        // https://bugs.caret.cam.ac.uk/browse/CTL-1531 - hide all the internal things which are copied (do not pass through the hidden variable)
+        // shallow copy the block parents of all the templates first so we know their new IDs
+        HashMap<Long, List<EvalTemplateItem>> orderedByTemplateId = new HashMap<>(templateItemsByTemplateId.size());
+        HashMap<Long, TemplateItemIndex> indexByTemplateId = new HashMap<>(templateItemsByTemplateId.size());
+        HashMap<Long, EvalTemplateItem> parentIdToCopy = new HashMap<>();
+        for (Entry<Long, List<EvalTemplateItem>> entry : templateItemsByTemplateId.entrySet()) {
+            List<EvalTemplateItem> ordered = TemplateItemUtils.orderTemplateItems(entry.getValue(), false);
+            TemplateItemIndex index = new TemplateItemIndex(ordered);
+            orderedByTemplateId.put(entry.getKey(), ordered);
+            indexByTemplateId.put(entry.getKey(), index);
+            parentIdToCopy.putAll( makeBlockParentCopies(index, originalIdToCopy.get(entry.getKey()), ownerId, true) );
+        }
+        if (! parentIdToCopy.isEmpty()) {
+            dao.saveSet(new HashSet<>(parentIdToCopy.values()));
+        }
+
+        // copy the rest of the template items for all the templates
+        HashMap<Long, Set<EvalTemplateItem>> copiesByTemplateId = new HashMap<>(templateItemsByTemplateId.size());
+        LinkedHashSet<EvalTemplateItem> copiedTemplateItems = new LinkedHashSet<>(allTemplateItems.size());
+        for (Long templateId : orderedByTemplateId.keySet()) {
+            LinkedHashSet<EvalTemplateItem> copies = makeTemplateItemCopies(orderedByTemplateId.get(templateId), 
+                    indexByTemplateId.get(templateId), parentIdToCopy, 1, originalIdToCopy.get(templateId), ownerId, true);
+            copiesByTemplateId.put(templateId, copies);
+            copiedTemplateItems.addAll(copies);
+        }
+        if (! copiedTemplateItems.isEmpty()) {
+            if (includeChildren) {
+                // items shared between the templates are only copied once
+                copyItemsForTemplateItems(copiedTemplateItems, ownerId, true);
+            }
+            dao.saveSet(copiedTemplateItems);
 
-        if (original.getTemplateItems() != null 
-                && original.getTemplateItems().size() > 0) {
-            // now copy the template items and save the new linkages
-            Long[] originalTIIds = TemplateItemUtils.makeTemplateItemsIdsArray(original.getTemplateItems());
-            // https://bugs.caret.cam.ac.uk/browse/CTL-1531 - hide all the internal things which are copied (do not pass through the hidden variable)
-            Long[] templateItemIds = copyTemplateItems(originalTIIds, ownerId, true, copy.getId(), includeChildren);
-            List<EvalTemplateItem> templateItemsList = dao.findBySearch(EvalTemplateItem.class, 
-                    new Search("id", templateItemIds));
-            copy.setTemplateItems( new HashSet<>(templateItemsList) );
-            dao.save(copy);
+            // save the new linkages
+            for (Entry<Long, Set<EvalTemplateItem>> entry : copiesByTemplateId.entrySet()) {
+                originalIdToCopy.get(entry.getKey()).setTemplateItems( new HashSet<>(entry.getValue()) );
+            }
+            dao.saveSet(new HashSet<>(originalIdToCopy.values()));
         }
 
-        return copy.getId();
+        long time = System.currentTimeMillis() - startTime;
+        String msg = "Copied " + originalIdToCopy.size() + " templates (" + copiedTemplateItems.size() + " template items) in " 
+                + time + " ms (" + (originalIdToCopy.size() * 1000l / Math.max(time, 1)) + " templates/sec)";
+        if (originalIdToCopy.size() > 1) {
+            log.info(msg);
+        } else {
+            log.debug(msg);
+        }
+        return originalIdToCopy;
     }
 
 
@@ -2040,17 +2199,14 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
                     copiedTIIds = ArrayUtils.appendArrays(copiedTIIds, copiedIds);
                 }
                 // fetch the new copies based on the ids
-                List<EvalTemplateItem> templateItemsList = dao.findBySearch(EvalTemplateItem.class, 
-                        new Search("id", copiedTIIds) );
+                TemplateItemIndex copiedIndex = new TemplateItemIndex( dao.findBySearch(EvalTemplateItem.class, 
+                        new Search("id", copiedTIIds) ) );
                 // now put the copied items into the list in the order of the copied ids
                 for( Long id : copiedTIIds )
                 {
-                    for (EvalTemplateItem templateItem : templateItemsList) {
-                        if (id.equals(templateItem.getId())) {
-                            insertionItems.add(templateItem);
-                            templateItemsList.remove(templateItem);
-                            break;
-                        }
+                    EvalTemplateItem templateItem = copiedIndex.getTemplateItem(id);
+                    if (templateItem != null) {
+                        insertionItems.add(templateItem);
                     }
                 }
                 // save all unsaved items
@@ -43,6 +43,7 @@ import org.sakaiproject.evaluation.model.EvalAdhocUser;
 import org.sakaiproject.evaluation.model.EvalAdmin;
 import org.sakaiproject.evaluation.providers.EvalGroupsProvider;
 import org.sakaiproject.evaluation.utils.ArrayUtils;
+import org.sakaiproject.evaluation.utils.EvalUserCache;
 import org.sakaiproject.evaluation.utils.EvalUtils;
 
 import lombok.extern.slf4j.Slf4j;
@@ -67,6 +68,23 @@ public class EvalCommonLogicImpl implements EvalCommonLogic {
 
     public static String UNKNOWN_TITLE = "--------"; 
 
+    /**
+     * The sakai.properties setting which controls how long (in seconds) users are cached for,
+     * 0 disables the cache (concurrent lookups are still fetched together)
+     */
+    public static final String SETTING_USER_CACHE_TTL = "eval.users.cache.ttlSeconds";
+    public static final String SETTING_USER_CACHE_MAX_ENTRIES = "eval.users.cache.maxEntries";
+    /**
+     * The sakai.properties setting which controls the maximum number of users fetched in one bulk call
+     */
+    public static final String SETTING_USER_CACHE_BATCH_SIZE = "eval.users.cache.batchSize";
+    /**
+     * The sakai.properties setting which controls how long (in ms) a lookup waits for other lookups
+     * to join it before the users are fetched, 0 only batches the lookups made while a fetch is running
+     */
+    public static final String SETTING_USER_CACHE_BATCH_WINDOW = "eval.users.cache.batchWindowMillis";
+    private EvalUserCache userCache;
+
     private EvalExternalLogic externalLogic;
     public void setExternalLogic(EvalExternalLogic externalLogic) {
         this.externalLogic = externalLogic;
@@ -111,6 +129,12 @@ public class EvalCommonLogicImpl implements EvalCommonLogic {
         } else {
             log.debug("No EvalGroupsProvider found...");
         }
+
+        int ttlSeconds = externalLogic.getConfigurationSetting(SETTING_USER_CACHE_TTL, 300);
+        int maxEntries = externalLogic.getConfigurationSetting(SETTING_USER_CACHE_MAX_ENTRIES, 10000);
+        int batchSize = externalLogic.getConfigurationSetting(SETTING_USER_CACHE_BATCH_SIZE, 500);
+        int batchWindow = externalLogic.getConfigurationSetting(SETTING_USER_CACHE_BATCH_WINDOW, 0);
+        userCache = new EvalUserCache(this::loadEvalUsers, ttlSeconds * 1000l, maxEntries, batchSize, batchWindow);
     }
 
     public String getCurrentUserId() {
@@ -128,25 +152,61 @@ public class EvalCommonLogicImpl implements EvalCommonLogic {
     /**
      * INTERNAL METHOD<br/>
      * Get the user or return null if user cannot be found,
-     * attempts to retrieve the user from the internal set and from sakai
+     * attempts to retrieve the user from the internal set and from sakai (users are cached)
      * 
      * @param userId
      * @return user or null if none found
      */
     protected EvalUser getEvalUserOrNull(String userId) {
-        EvalUser user = externalLogic.getEvalUserById(userId);
-        if (user == null) {
-            // try to get internal user from eval
-            EvalAdhocUser adhocUser = adhocSupportLogic.getAdhocUserById(EvalAdhocUser.getIdFromAdhocUserId(userId));
-            if (adhocUser != null) {
-                user = new EvalUser(userId, EvalConstants.USER_TYPE_INTERNAL,
-                        adhocUser.getEmail(), adhocUser.getUsername(), 
-                        adhocUser.getDisplayName() == null ? adhocUser.getEmail() : adhocUser.getDisplayName());
-            }
+        EvalUser user = userCache.getUser(userId);
+        if (user != null && EvalConstants.USER_TYPE_INVALID.equals(user.type)) {
+            user = null;
         }
         return user;
     }
 
+    /**
+     * INTERNAL METHOD<br/>
+     * Fetch a set of users for the user cache, the users are fetched from sakai in bulk
+     * and then the internal set, the users neither of those find (e.g. anonymous users)
+     * are looked up one at a time
+     * 
+     * @param userIds the user ids to fetch
+     * @return a map of userId -> user (users which cannot be found are invalid users)
+     */
+    protected Map<String, EvalUser> loadEvalUsers(List<String> userIds) {
+        Map<String, EvalUser> users = new HashMap<>();
+        Map<String, EvalUser> externalUsers = externalLogic.getEvalUsersByIds(userIds);
+        List<String> missingUserIds = new ArrayList<>();
+        for (String userId : userIds) {
+            EvalUser user = externalUsers.get(userId);
+            if (user != null && ! EvalConstants.USER_TYPE_INVALID.equals(user.type)) {
+                users.put(userId, user);
+            } else {
+                missingUserIds.add(userId);
+            }
+        }
+        if (! missingUserIds.isEmpty()) {
+            Map<String, EvalAdhocUser> adhocUsers = adhocSupportLogic.getAdhocUsersByUserIds(missingUserIds);
+            for (String userId : missingUserIds) {
+                EvalUser user;
+                EvalAdhocUser adhocUser = adhocUsers.get(userId);
+                if (adhocUser != null) {
+                    user = new EvalUser(adhocUser.getUserId(), EvalConstants.USER_TYPE_INTERNAL,
+                            adhocUser.getEmail(), adhocUser.getUsername(), 
+                            adhocUser.getDisplayName() == null ? adhocUser.getEmail() : adhocUser.getDisplayName());
+                } else {
+                    user = externalLogic.getEvalUserById(userId);
+                }
+                if (user == null) {
+                    user = makeInvalidUser(userId, null);
+                }
+                users.put(userId, user);
+            }
+        }
+        return users;
+    }
+
     /**
      * INTERNAL METHOD<br/>
      * Generate an invalid user with fields filled out correctly,
@@ -236,56 +296,25 @@ public class EvalCommonLogicImpl implements EvalCommonLogic {
         return user;
     }
 
-    @SuppressWarnings("null")
     public List<EvalUser> getEvalUsersByIds(List<String> userIds) {
         List<EvalUser> users = new ArrayList<>();
-        boolean foundAll = false;
-        if (userIds == null || userIds.size() == 0) {
-            foundAll = true;
-        }
-
-        Map<String, EvalUser> externalUsers = new HashMap<>();
-        if (! foundAll) {
-            // get users from external
-            externalUsers = externalLogic.getEvalUsersByIds(userIds);
-            if (externalUsers.size() == userIds.size()) {
-                foundAll = true;
-            }
-        }
-
-        Map<String, EvalAdhocUser> adhocUsers = new HashMap<>();
-        if (! foundAll) {
-            // get as many internal users as possible
-            adhocUsers = adhocSupportLogic.getAdhocUsersByUserIds(userIds);
+        if (userIds == null || userIds.isEmpty()) {
+            return users;
         }
-
-        /* now put the users into the list in the original order of the array 
+        /* put the users into the list in the original order of the array 
          * with INVALID EvalUser objects in place of not-found users
          */
-        if (userIds != null && userIds.size() > 0) {
-            for( String userId : userIds ) {
-                EvalUser user;
-                if (adhocUsers.containsKey(userId)) {
-                    EvalAdhocUser adhocUser = adhocUsers.get(userId);
-                    user = new EvalUser(adhocUser.getUserId(), EvalConstants.USER_TYPE_INTERNAL,
-                            adhocUser.getEmail(), adhocUser.getUsername(), 
-                            adhocUser.getDisplayName() == null ? adhocUser.getEmail() : adhocUser.getDisplayName());
-                } else if (externalUsers.containsKey(userId)) {
-                    user = externalUsers.get(userId);
-                } else {
-                    user = makeInvalidUser(userId, null);
-                }
-                users.add(user);
+        Map<String, EvalUser> found = userCache.getUsers(userIds);
+        for (String userId : userIds) {
+            EvalUser user = found.get(userId);
+            if (user == null) {
+                user = makeInvalidUser(userId, null);
             }
+            users.add(user);
         }
-        //    original not very efficient version -AZ
-        //    for (int i = 0; i < userIds.length; i++) {
-        //    String userId = userIds[i];
-        //    users.add( getEvalUserById(userId) );
-        //    }
         return users;
     }
-    
+
     // sakai and eval admin logic
     
     public boolean isUserAdmin(String userId) {
@@ -818,6 +847,9 @@ public class EvalCommonLogicImpl implements EvalCommonLogic {
             }
         }
         adhocSupportLogic.saveAdhocUser(user);
+        if (user.getUserId() != null) {
+            userCache.remove(user.getUserId());
+        }
     }
 
     public void deleteAdhocGroup(Long adhocGroupId) {
@@ -14,11 +14,14 @@
  */
 package org.sakaiproject.evaluation.logic;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -28,15 +31,17 @@ import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.dao.EvaluationDao;
 import org.sakaiproject.evaluation.logic.exceptions.ResponseSaveException;
 import org.sakaiproject.evaluation.logic.externals.ExternalHierarchyLogic;
+import org.sakaiproject.evaluation.logic.model.EvalSavedAnswers;
 import org.sakaiproject.evaluation.model.EvalAnswer;
 import org.sakaiproject.evaluation.model.EvalAssignGroup;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
 import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.model.EvalTemplateItem;
 import org.sakaiproject.evaluation.utils.ArrayUtils;
+import org.sakaiproject.evaluation.utils.EvalAnswerValidator;
+import org.sakaiproject.evaluation.utils.EvalFormModel;
 import org.sakaiproject.evaluation.utils.EvalUtils;
 import org.sakaiproject.evaluation.utils.TemplateItemDataList;
-import org.sakaiproject.evaluation.utils.TemplateItemDataList.DataTemplateItem;
 import org.sakaiproject.evaluation.utils.TemplateItemUtils;
 import org.sakaiproject.genericdao.api.search.Order;
 import org.sakaiproject.genericdao.api.search.Restriction;
@@ -91,9 +96,34 @@ public class EvalDeliveryServiceImpl implements EvalDeliveryService {
        this.emailsLogic = emailsLogic;
     }
 
+    public static final String SETTING_FORM_MODEL_MAX_AGE = "eval.delivery.formModel.maxAgeSeconds";
+    public static final String SETTING_FORM_MODEL_MAX_ENTRIES = "eval.delivery.formModel.maxEntries";
+
+    private long formModelMaxAgeMillis = 300 * 1000l;
+    private int formModelMaxEntries = 1000;
+    /**
+     * (evaluationId + "/" + evalGroupId) -> cached form, least recently used first, guarded by itself
+     */
+    private final LinkedHashMap<String, CachedFormModel> formModels = new LinkedHashMap<>(16, 0.75f, true);
+
+    public static final String SETTING_AUTOSAVE_COALESCE_MILLIS = "eval.delivery.autosave.coalesceMillis";
+    private static final int MAX_ANSWER_WRITES = 10000;
+
+    private long autosaveCoalesceMillis = 60 * 1000l;
+    /**
+     * responseId -> the last answers written for that response by this server, oldest first, guarded by itself<br/>
+     * this only remembers what is already in the database so nothing is lost if it is dropped
+     */
+    private final LinkedHashMap<Long, AnswersWrite> answerWrites = new LinkedHashMap<>();
+
     // INIT method
     public void init() {
         log.debug("Init");
+        Integer maxAgeSeconds = commonLogic.getConfigurationSetting(SETTING_FORM_MODEL_MAX_AGE, 300);
+        formModelMaxAgeMillis = maxAgeSeconds * 1000l;
+        formModelMaxEntries = commonLogic.getConfigurationSetting(SETTING_FORM_MODEL_MAX_ENTRIES, 1000);
+        Integer coalesceMillis = commonLogic.getConfigurationSetting(SETTING_AUTOSAVE_COALESCE_MILLIS, 60 * 1000);
+        autosaveCoalesceMillis = coalesceMillis;
     }
 
     /* (non-Javadoc)
@@ -108,6 +138,10 @@ public class EvalDeliveryServiceImpl implements EvalDeliveryService {
         boolean newResponse = true;
         if (response.getId() != null) {
             newResponse = false;
+            // the full save replaces the answers so forget the last autosave
+            synchronized (answerWrites) {
+                answerWrites.remove(response.getId());
+            }
             // TODO - existing response, don't allow change to any setting
             // except starttime, endtime, and answers
         }
@@ -197,6 +231,8 @@ public class EvalDeliveryServiceImpl implements EvalDeliveryService {
                 log.info("Locking evaluation (" + response.getEvaluation().getId() + ") and associated entities");
                 EvalEvaluation evaluation = (EvalEvaluation) dao.findById(EvalEvaluation.class, response.getEvaluation().getId());
                 dao.lockEvaluation(evaluation, true);
+                // no more emails about this evaluation for this user in this group
+                dao.completeConsolidatedEmailRecipient(evaluationId, evalGroupId, response.getOwner());
                 completeMessage = ", response is complete";
             }
 
@@ -227,6 +263,156 @@ public class EvalDeliveryServiceImpl implements EvalDeliveryService {
                 + "), evalGroupId: " + response.getEvalGroupId());
     }
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalDeliveryService#saveResponseAnswers(java.lang.Long, long, java.util.List, java.lang.String)
+     */
+    public long saveResponseAnswers(Long responseId, long version, List<EvalAnswer> answers, String userId) {
+        if (responseId == null || answers == null) {
+            throw new IllegalArgumentException("responseId and answers must be set");
+        }
+        EvalResponse response = getResponseById(responseId);
+        if (response == null) {
+            throw new IllegalArgumentException("Invalid response id, cannot find response: " + responseId);
+        }
+        if (response.getEndTime() != null) {
+            throw new IllegalStateException("Response (" + responseId + ") is complete, only responses in progress can have answers saved");
+        }
+        checkUserModifyResponse(userId, response);
+        Long evaluationId = response.getEvaluation().getId();
+        String evalGroupId = response.getEvalGroupId();
+        if (! evaluationService.canTakeEvaluation(userId, evaluationId, evalGroupId)) {
+            throw new ResponseSaveException("User (" + userId + ") cannot take this evaluation (" + evaluationId
+                    + ") in this evalGroupId (" + evalGroupId + ") right now", ResponseSaveException.TYPE_CANNOT_TAKE_EVAL);
+        }
+
+        // check the answers are part of the form and get them ready for saving
+        EvalFormModel form = getFormModel(response.getEvaluation(), evalGroupId);
+        EvalAnswerValidator validator = form.getAnswerValidator();
+        Map<String, EvalAnswer> changes = new LinkedHashMap<>();
+        for (EvalAnswer answer : answers) {
+            EvalTemplateItem templateItem = answer.getTemplateItem();
+            if (templateItem == null || templateItem.getId() == null) {
+                throw new IllegalArgumentException("Answers must have the templateItem set");
+            }
+            if (EvalConstants.ITEM_CATEGORY_COURSE.equals(templateItem.getCategory())) {
+                answer.setAssociatedId(null);
+                answer.setAssociatedType(null);
+            } else if (answer.getAssociatedType() == null) {
+                answer.setAssociatedType(templateItem.getCategory());
+            }
+            int index = validator.indexOf(templateItem.getId(), answer.getAssociatedType(), answer.getAssociatedId());
+            if (index < 0 || ! form.getAnswerableTemplateItemIds().contains(templateItem.getId())) {
+                throw new IllegalArgumentException("This answer (" + TemplateItemUtils.makeTemplateItemAnswerKey(templateItem.getId(), 
+                        answer.getAssociatedType(), answer.getAssociatedId()) + ") is not part of the form for this evaluation ("
+                        + evaluationId + ") in this evalGroupId (" + evalGroupId + ")");
+            }
+            answer.setItem(templateItem.getItem());
+            answer.setMultiAnswerCode(EvalUtils.encodeMultipleAnswers(answer.multipleAnswers));
+            EvalUtils.encodeAnswerNA(answer);
+            if (answer.getNumeric() != null || ! EvalUtils.isBlank(answer.getText()) || answer.getMultiAnswerCode() != null) {
+                // same fixup as saveResponse so the batch updates do not fail
+                if (answer.getNumeric() == null) {
+                    answer.setNumeric(EvalConstants.NO_NUMERIC_ANSWER);
+                }
+                if (EvalUtils.isBlank(answer.getText())) {
+                    answer.setText(EvalConstants.NO_TEXT_ANSWER);
+                }
+                if (answer.getMultiAnswerCode() == null) {
+                    answer.setMultiAnswerCode(EvalConstants.NO_MULTIPLE_ANSWER);
+                }
+            }
+            // the last change to an item wins
+            changes.put(validator.getKey(index), answer);
+        }
+
+        long currentVersion = response.getLastModified() == null ? 0l : response.getLastModified().getTime();
+        // the answers this server wrote for the current version of the response (these are in the database)
+        AnswersWrite last = getAnswersWrite(responseId, currentVersion, userId);
+        if (version != currentVersion) {
+            // a burst of saves made against the same version as the last write are merged into that write
+            if (last == null || last.version != version) {
+                throw new ResponseSaveException("Response (" + responseId + ") has been changed since version (" + version 
+                        + "), current version is (" + currentVersion + ")", ResponseSaveException.TYPE_STALE_RESPONSE);
+            }
+        }
+        Map<String, List<Object>> written = last == null ? new HashMap<>() : new HashMap<>(last.values);
+        List<EvalAnswer> saveAnswers = new ArrayList<>();
+        List<EvalAnswer> removeAnswers = new ArrayList<>();
+        for (Entry<String, EvalAnswer> change : changes.entrySet()) {
+            EvalAnswer answer = change.getValue();
+            List<Object> value = makeAnswerValue(answer);
+            if (value.equals(written.get(change.getKey()))) {
+                // unchanged since the last write
+                continue;
+            }
+            written.put(change.getKey(), value);
+            if (value == REMOVED_ANSWER) {
+                removeAnswers.add(answer);
+            } else {
+                saveAnswers.add(answer);
+            }
+        }
+        if (saveAnswers.isEmpty() && removeAnswers.isEmpty()) {
+            log.debug("User (" + userId + ") saved no changed answers for response (" + responseId + "), version: " + currentVersion);
+            return currentVersion;
+        }
+
+        // versions are whole seconds so they are not changed by databases which do not store milliseconds
+        long newVersion = Math.max((System.currentTimeMillis() / 1000l) * 1000l, (currentVersion / 1000l + 1) * 1000l);
+        // the DAO checks the version again while claiming the response so a save from another request or server is not lost
+        if (! dao.saveResponseAnswers(responseId, new Date(currentVersion), new Date(newVersion), saveAnswers, removeAnswers)) {
+            throw new ResponseSaveException("Response (" + responseId + ") has been changed since version (" + version 
+                    + ")", ResponseSaveException.TYPE_STALE_RESPONSE);
+        }
+        synchronized (answerWrites) {
+            answerWrites.remove(responseId);
+            answerWrites.put(responseId, new AnswersWrite(userId, version, newVersion, written, System.currentTimeMillis()));
+            Iterator<AnswersWrite> it = answerWrites.values().iterator();
+            while (answerWrites.size() > MAX_ANSWER_WRITES && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        log.debug("User (" + userId + ") saved " + saveAnswers.size() + " and removed " + removeAnswers.size() 
+                + " answers for response (" + responseId + "), version: " + newVersion);
+        return newVersion;
+    }
+
+    /**
+     * @param responseId the id of a response
+     * @param currentVersion the version of the response in the database
+     * @param userId the user saving answers
+     * @return the last answers written by this server by the user within the coalescing window,
+     * only if they are still the current version of the response, otherwise null
+     */
+    private AnswersWrite getAnswersWrite(Long responseId, long currentVersion, String userId) {
+        synchronized (answerWrites) {
+            AnswersWrite last = answerWrites.get(responseId);
+            if (last == null) {
+                return null;
+            }
+            if (last.newVersion != currentVersion || ! last.userId.equals(userId)
+                    || System.currentTimeMillis() - last.written > autosaveCoalesceMillis) {
+                answerWrites.remove(responseId);
+                return null;
+            }
+            return last;
+        }
+    }
+
+    private static final List<Object> REMOVED_ANSWER = new ArrayList<>();
+
+    /**
+     * @param answer an answer ready to save
+     * @return the saved values of the answer or {@link #REMOVED_ANSWER} if the answer removes the saved one
+     */
+    private List<Object> makeAnswerValue(EvalAnswer answer) {
+        if (answer.getNumeric() == null && EvalUtils.isBlank(answer.getText()) && answer.getMultiAnswerCode() == null) {
+            return REMOVED_ANSWER;
+        }
+        return Arrays.asList(answer.getNumeric(), answer.getText(), answer.getMultiAnswerCode(), answer.getComment());
+    }
+
     /* (non-Javadoc)
      * @see org.sakaiproject.evaluation.logic.EvalDeliveryService#getResponseById(java.lang.Long)
      */
@@ -389,6 +575,17 @@ public class EvalDeliveryServiceImpl implements EvalDeliveryService {
         return answers;
     }
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalDeliveryService#getSavedAnswersForResponse(java.lang.Long)
+     */
+    public EvalSavedAnswers getSavedAnswersForResponse(Long responseId) {
+        if (responseId == null) {
+            throw new IllegalArgumentException("responseId must be set");
+        }
+        log.debug("responseId: " + responseId);
+        return new EvalSavedAnswers( dao.getSavedAnswersForResponse(responseId) );
+    }
+
 
 
     // PERMISSIONS
@@ -509,54 +706,16 @@ public class EvalDeliveryServiceImpl implements EvalDeliveryService {
             }
         }
 
-        // make the TI data structure and get the flat list of DTIs
-        TemplateItemDataList tidl = new TemplateItemDataList(evaluationId, evalGroupId, 
-                evaluationService, authoringService, hierarchyLogic, null);
-
-        List<DataTemplateItem> allDTIs = tidl.getFlatListOfDataTemplateItems(true);
+        // get the (shared) form structure for this group
+        EvalFormModel form = getFormModel(eval, evalGroupId);
 
-        // create the set of answerable items
-        Set<Long> answerableTemplateItemIds = new HashSet<>();
-        Set<String> requiredAnswerKeys = new HashSet<>();
-        for (DataTemplateItem dti : allDTIs) {
-            if (dti.isAnswerable()) {
-                answerableTemplateItemIds.add(dti.templateItem.getId());
-            }
-            if (checkRequiredAnswers) {
-                boolean required;
-                if (requireNonBlankAnswerableItemsForEval) {
-                    // all items which can be answered must be
-                    required = dti.isRequireable();
-                } else {
-                    // only items marked as compulsory must be answered
-                    required = authoringService.isCompulsory(dti.templateItem, eval);
-                }
-                // if the item is required then add it to the required keys listing
-                if (required) {
-                    boolean filteredOut = false;
-                    if (selectionsEnabled 
-                            && typeToIdsFilter.size() > 0) {
-                        /* Do a selection filter check here,
-                         * Only include dtis where the associateType is not matched OR
-                         * (the associateType is matched AND the id is also matched)
-                         */
-                        Set<String> ids = typeToIdsFilter.get(dti.associateType);
-                        if (ids != null) {
-                            // check the id as well
-                            if (! ids.contains(dti.associateId)) {
-                                filteredOut = true;
-                            }
-                        }
-                    }
-                    if (! filteredOut) {
-                        requiredAnswerKeys.add(dti.getKey());
-                    }
-                }
-            }
-        }
+        // the set of answerable items
+        Set<Long> answerableTemplateItemIds = form.getAnswerableTemplateItemIds();
+        EvalAnswerValidator validator = form.getAnswerValidator();
 
         // check the validity of all answers (just making sure they are not invalid)
-        Set<String> answeredAnswerKeys = new HashSet<>();
+        BitSet answered = new BitSet(validator.size());
+        int answeredCount = 0;
         for (EvalAnswer answer : response.getAnswers()) {
 
             // check the answer for correctness
@@ -579,7 +738,7 @@ public class EvalDeliveryServiceImpl implements EvalDeliveryService {
             String type =TemplateItemUtils.getTemplateItemType(templateItem);
             if (EvalConstants.ITEM_TYPE_TEXT.equals(type) &&
                    EvalConstants.NO_TEXT_ANSWER.equals(answer.getText()) && !answer.NA &&
-                   authoringService.isCompulsory(templateItem, eval)) {
+                   form.isCompulsory(templateItem.getId())) {
                 // this answer is for a required text question but has been left blank, so do not consider this answer valid by skipping it.
                 continue;
        	    }
@@ -635,34 +794,155 @@ public class EvalDeliveryServiceImpl implements EvalDeliveryService {
 
             // TODO - check if numerical answers are valid? (i.e. within the size of the scale)
 
-            // add the unique answer key (TIId + assocType + assocId) for this answer to the answered keys set
-            answeredAnswerKeys.add( TemplateItemUtils.makeTemplateItemAnswerKey(answer.getTemplateItem().getId(), 
-                    answer.getAssociatedType(), answer.getAssociatedId()) );
+            // mark the item (TIId + assocType + assocId) for this answer as answered
+            int index = validator.indexOf(answer.getTemplateItem().getId(), answer.getAssociatedType(), answer.getAssociatedId());
+            if (index >= 0) {
+                answered.set(index);
+            }
+            answeredCount++;
         }
 
         if (checkRequiredAnswers) {
-            // check if required answers are filled in
-            if (! requiredAnswerKeys.isEmpty()) {
-                // remove all the answered keys from the required keys and if everything was answered then there will be nothing left in the required keys set
-                requiredAnswerKeys.removeAll(answeredAnswerKeys);
-                if (requiredAnswerKeys.size() > 0) {
-                    String[] reqAnsKeysArray = requiredAnswerKeys.toArray(new String[requiredAnswerKeys.size()]);
-                    String failureType = ResponseSaveException.TYPE_MISSING_REQUIRED_ANSWERS;
-                    if (answeredAnswerKeys.isEmpty()) {
-                        failureType = ResponseSaveException.TYPE_BLANK_RESPONSE;
-                    }
-                    throw new ResponseSaveException("Missing " + requiredAnswerKeys.size() 
-                            + " answers for required items (received "+answeredAnswerKeys.size()+" answers) for this evaluation"
-                            + " response (" + response.getId() + ") for user (" + response.getOwner() + ")"
-                            + " :: missing keys=" + ArrayUtils.arrayToString(reqAnsKeysArray) 
-                            + " :: received keys=" + ArrayUtils.arrayToString(answeredAnswerKeys.toArray(new String[answeredAnswerKeys.size()])),
-                            failureType,
-                            reqAnsKeysArray );
+            // check if required answers are filled in, items for unselected associates are filtered out
+            String[] reqAnsKeysArray = validator.getMissingRequiredKeys(answered, requireNonBlankAnswerableItemsForEval, 
+                    selectionsEnabled ? typeToIdsFilter : null);
+            if (reqAnsKeysArray.length > 0) {
+                String failureType = ResponseSaveException.TYPE_MISSING_REQUIRED_ANSWERS;
+                if (answeredCount == 0) {
+                    failureType = ResponseSaveException.TYPE_BLANK_RESPONSE;
                 }
+                throw new ResponseSaveException("Missing " + reqAnsKeysArray.length 
+                        + " answers for required items (received "+answeredCount+" answers) for this evaluation"
+                        + " response (" + response.getId() + ") for user (" + response.getOwner() + ")"
+                        + " :: missing keys=" + ArrayUtils.arrayToString(reqAnsKeysArray) 
+                        + " :: received keys=" + ArrayUtils.arrayToString(makeAnswerKeys(response, form)),
+                        failureType,
+                        reqAnsKeysArray );
             }
         }
 
         return true;
     }
 
+
+    /**
+     * @return the answer keys for all the answers in the response which would be counted as answered
+     */
+    private String[] makeAnswerKeys(EvalResponse response, EvalFormModel form) {
+        List<String> keys = new ArrayList<>();
+        for (EvalAnswer answer : response.getAnswers()) {
+            if (EvalConstants.ITEM_TYPE_TEXT.equals(TemplateItemUtils.getTemplateItemType(answer.getTemplateItem()))
+                    && EvalConstants.NO_TEXT_ANSWER.equals(answer.getText()) && !answer.NA
+                    && form.isCompulsory(answer.getTemplateItem().getId())) {
+                continue;
+            }
+            keys.add( TemplateItemUtils.makeTemplateItemAnswerKey(answer.getTemplateItem().getId(), 
+                    answer.getAssociatedType(), answer.getAssociatedId()) );
+        }
+        return keys.toArray(new String[keys.size()]);
+    }
+
+
+    // FORMS
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalDeliveryService#getEvaluationFormModel(java.lang.Long, java.lang.String)
+     */
+    public EvalFormModel getEvaluationFormModel(Long evaluationId, String evalGroupId) {
+        EvalEvaluation eval = evaluationService.getEvaluationById(evaluationId);
+        if (eval == null) {
+            throw new IllegalArgumentException("Invalid evaluation id, cannot find evaluation: " + evaluationId);
+        }
+        return getFormModel(eval, evalGroupId);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalDeliveryService#clearEvaluationFormModels(java.lang.Long)
+     */
+    public void clearEvaluationFormModels(Long evaluationId) {
+        synchronized (formModels) {
+            if (evaluationId == null) {
+                formModels.clear();
+            } else {
+                formModels.values().removeIf(cached -> evaluationId.equals(cached.form.getEvaluationId()));
+            }
+        }
+    }
+
+    /**
+     * Get the form for an evaluation and group from the cache or build it,
+     * a cached form is only used if it was built from the current version of the evaluation and is not too old
+     * 
+     * @param eval the evaluation
+     * @param evalGroupId the eval group id
+     * @return the form model
+     */
+    protected EvalFormModel getFormModel(EvalEvaluation eval, String evalGroupId) {
+        String key = eval.getId() + "/" + evalGroupId;
+        long version = eval.getLastModified() == null ? 0l : eval.getLastModified().getTime();
+        long now = System.currentTimeMillis();
+        synchronized (formModels) {
+            CachedFormModel cached = formModels.get(key);
+            if (cached != null 
+                    && cached.form.getVersion() == version 
+                    && now - cached.created < formModelMaxAgeMillis) {
+                return cached.form;
+            }
+        }
+
+        // built outside the lock, two threads may build the same form at the same time which is harmless
+        TemplateItemDataList tidl = new TemplateItemDataList(eval.getId(), evalGroupId, 
+                evaluationService, authoringService, hierarchyLogic, null);
+        Set<Long> compulsoryTemplateItemIds = new HashSet<>();
+        for (EvalTemplateItem templateItem : tidl.getAllTemplateItems()) {
+            if (authoringService.isCompulsory(templateItem, eval)) {
+                compulsoryTemplateItemIds.add(templateItem.getId());
+            }
+            // the form outlives this session so load the scale options now
+            if (templateItem.getItem() != null && templateItem.getItem().getScale() != null
+                    && templateItem.getItem().getScale().getOptions() != null) {
+                templateItem.getItem().getScale().getOptions().size();
+            }
+        }
+        EvalFormModel form = new EvalFormModel(eval.getId(), evalGroupId, version, tidl, compulsoryTemplateItemIds);
+        synchronized (formModels) {
+            formModels.put(key, new CachedFormModel(form, now));
+            Iterator<CachedFormModel> it = formModels.values().iterator();
+            while (formModels.size() > formModelMaxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        return form;
+    }
+
+    /**
+     * The answers written for a response by one call to saveResponseAnswers
+     */
+    private static class AnswersWrite {
+        final String userId;
+        // the version the save was made against and the version it wrote
+        final long version;
+        final long newVersion;
+        // answer key -> saved values of all the answers written since the first write in the window
+        final Map<String, List<Object>> values;
+        final long written;
+        AnswersWrite(String userId, long version, long newVersion, Map<String, List<Object>> values, long written) {
+            this.userId = userId;
+            this.version = version;
+            this.newVersion = newVersion;
+            this.values = values;
+            this.written = written;
+        }
+    }
+
+    private static class CachedFormModel {
+        final EvalFormModel form;
+        final long created;
+        CachedFormModel(EvalFormModel form, long created) {
+            this.form = form;
+            this.created = created;
+        }
+    }
+
 }
@@ -0,0 +1,512 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.dao.EvaluationDao;
+import org.sakaiproject.evaluation.logic.externals.EvalExternalLogic;
+import org.sakaiproject.evaluation.logic.model.EvalUser;
+import org.sakaiproject.evaluation.model.EvalOutboxEmail;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stores the notification emails in the EVAL_EMAIL_OUTBOX table and sends them from a background thread,
+ * only one server in the cluster sends at a time (the others just queue)<br/>
+ * Due emails are taken in batches, emails in a batch with the same from, subject and message are sent
+ * together (the recipients only go on the envelope) and the groups are sent in parallel, a group which
+ * fails is retried one user at a time so a single bad address does not hold up the rest
+ */
+@Slf4j
+public class EvalEmailOutboxImpl implements EvalEmailOutbox {
+
+    /**
+     * The sakai.properties setting which sends all notification emails through the outbox,
+     * off by default since it needs the EVAL_EMAIL_OUTBOX table
+     */
+    public static final String SETTING_ENABLED = "eval.email.outbox.enabled";
+    /**
+     * The sakai.properties setting for the number of threads sending the outbox emails
+     */
+    public static final String SETTING_THREADS = "eval.email.outbox.threads";
+    /**
+     * The sakai.properties setting for the number of due emails taken from the outbox at a time
+     */
+    public static final String SETTING_BATCH_SIZE = "eval.email.outbox.batchSize";
+    /**
+     * The sakai.properties setting for the most users who can be sent one email when their emails are identical
+     */
+    public static final String SETTING_MAX_RECIPIENTS = "eval.email.outbox.maxRecipients";
+    /**
+     * The sakai.properties setting for the number of times an email is tried before it is kept as failed
+     */
+    public static final String SETTING_MAX_ATTEMPTS = "eval.email.outbox.maxAttempts";
+    /**
+     * The sakai.properties setting for the delay before the first retry, this doubles for every further retry
+     */
+    public static final String SETTING_RETRY_SECONDS = "eval.email.outbox.retrySeconds";
+    /**
+     * The sakai.properties setting for the longest delay between retries
+     */
+    public static final String SETTING_MAX_RETRY_SECONDS = "eval.email.outbox.maxRetrySeconds";
+    /**
+     * The sakai.properties setting for how often the outbox is checked for due emails
+     */
+    public static final String SETTING_POLL_SECONDS = "eval.email.outbox.pollSeconds";
+    /**
+     * The sakai.properties setting for the number of days sent emails are kept (this is how long
+     * the same notification cannot be sent again)
+     */
+    public static final String SETTING_KEEP_DAYS = "eval.email.outbox.keepDays";
+
+    protected static final String LOCK_EMAIL_OUTBOX = "eval_email_outbox";
+    private static final long LOCK_MILLIS = 10L * 60L * 1000L;
+    private static final long PURGE_INTERVAL_MILLIS = 60L * 60L * 1000L;
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private EvaluationDao dao;
+    public void setDao(EvaluationDao dao) {
+        this.dao = dao;
+    }
+
+    private EvalCommonLogic commonLogic;
+    public void setCommonLogic(EvalCommonLogic commonLogic) {
+        this.commonLogic = commonLogic;
+    }
+
+    private EvalSettings settings;
+    public void setSettings(EvalSettings settings) {
+        this.settings = settings;
+    }
+
+    private boolean enabled = false;
+    private int batchSize = 200;
+    private int maxRecipients = 20;
+    private int maxAttempts = 8;
+    private long retryMillis = 60L * 1000L;
+    private long maxRetryMillis = 6L * 60L * 60L * 1000L;
+    private long keepMillis = 30L * 24L * 60L * 60L * 1000L;
+
+    // null when the outbox is not enabled, the emails are then sent on the calling thread
+    private ThreadPoolExecutor senders;
+    private ScheduledExecutorService drainer;
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final AtomicLong sentTotal = new AtomicLong();
+    private final AtomicLong retryTotal = new AtomicLong();
+    private final AtomicLong deadTotal = new AtomicLong();
+    private volatile double lastRunRate = 0;
+    private volatile long lastPurge = 0;
+
+    public void init() {
+        enabled = commonLogic.getConfigurationSetting(SETTING_ENABLED, false);
+        int threads = Math.max(1, commonLogic.getConfigurationSetting(SETTING_THREADS, 2));
+        batchSize = Math.max(1, commonLogic.getConfigurationSetting(SETTING_BATCH_SIZE, 200));
+        maxRecipients = Math.max(1, commonLogic.getConfigurationSetting(SETTING_MAX_RECIPIENTS, 20));
+        maxAttempts = Math.max(1, commonLogic.getConfigurationSetting(SETTING_MAX_ATTEMPTS, 8));
+        retryMillis = Math.max(1, commonLogic.getConfigurationSetting(SETTING_RETRY_SECONDS, 60)) * 1000L;
+        maxRetryMillis = Math.max(retryMillis, commonLogic.getConfigurationSetting(SETTING_MAX_RETRY_SECONDS, 21600) * 1000L);
+        keepMillis = Math.max(1, commonLogic.getConfigurationSetting(SETTING_KEEP_DAYS, 30)) * 24L * 60L * 60L * 1000L;
+        int pollSeconds = Math.max(1, commonLogic.getConfigurationSetting(SETTING_POLL_SECONDS, 60));
+        if (! enabled) {
+            log.info("Init email outbox: disabled, notification emails are sent directly");
+            return;
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory senderFactory = (Runnable r) -> {
+            Thread t = new Thread(r, "eval-email-outbox-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        senders = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), senderFactory);
+        drainer = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread t = new Thread(r, "eval-email-outbox-drain");
+            t.setDaemon(true);
+            return t;
+        });
+        drainer.scheduleWithFixedDelay(this::drainQuietly, pollSeconds, pollSeconds, TimeUnit.SECONDS);
+        log.info("Init email outbox: threads=" + threads + ", batchSize=" + batchSize + ", maxAttempts=" + maxAttempts
+                + ", retrySeconds=" + (retryMillis / 1000) + ", pollSeconds=" + pollSeconds);
+    }
+
+    public void destroy() {
+        if (drainer != null) {
+            drainer.shutdownNow();
+        }
+        if (senders != null) {
+            senders.shutdownNow();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEmailOutbox#isEnabled()
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEmailOutbox#queueEmails(java.lang.String, java.lang.String[], java.lang.String, java.lang.String, java.lang.Long, java.lang.String, java.lang.String)
+     */
+    public String[] queueEmails(String from, String[] toUserIds, String subject, String message,
+            Long evaluationId, String emailType, String round) {
+        if (from == null || toUserIds == null || subject == null || message == null || emailType == null) {
+            throw new IllegalArgumentException("from, toUserIds, subject, message and emailType must all be set");
+        }
+        // key -> userId
+        Map<String, String> keys = new LinkedHashMap<>();
+        for (String userId : toUserIds) {
+            if (userId != null && ! "".equals(userId)) {
+                keys.put(makeIdempotencyKey(evaluationId, emailType, round, userId), userId);
+            }
+        }
+        if (keys.isEmpty()) {
+            return new String[] {};
+        }
+
+        Set<String> existing = dao.getExistingOutboxKeys(keys.keySet());
+        Set<EvalOutboxEmail> emails = new HashSet<>();
+        List<String> queuedUserIds = new ArrayList<>();
+        for (Map.Entry<String, String> entry : keys.entrySet()) {
+            if (existing.contains(entry.getKey())) {
+                continue;
+            }
+            emails.add(new EvalOutboxEmail(entry.getKey(), evaluationId, entry.getValue(), emailType, from,
+                    subject, message, EvalConstants.EMAIL_OUTBOX_STATUS_PENDING));
+            queuedUserIds.add(entry.getValue());
+        }
+        if (! existing.isEmpty()) {
+            log.info("Skipped " + existing.size() + " users who were already queued the " + emailType
+                    + " email for evaluation (" + evaluationId + ") round (" + round + ")");
+        }
+        if (emails.isEmpty()) {
+            return new String[] {};
+        }
+        dao.saveSet(emails);
+        requestDrain();
+
+        List<String> addresses = new ArrayList<>();
+        for (EvalUser user : commonLogic.getEvalUsersByIds(queuedUserIds)) {
+            if (user.email != null && ! "".equals(user.email)) {
+                addresses.add(user.email);
+            }
+        }
+        return addresses.toArray(new String[addresses.size()]);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEmailOutbox#sendQueuedEmails()
+     */
+    public int sendQueuedEmails() {
+        if (! draining.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            String serverId = commonLogic.getConfigurationSetting(EvalExternalLogic.SETTING_SERVER_ID, "UNKNOWN_SERVER_ID");
+            Boolean locked = dao.obtainLock(LOCK_EMAIL_OUTBOX, serverId, LOCK_MILLIS);
+            if (locked == null || ! locked) {
+                log.debug("Another server is sending the outbox emails");
+                return 0;
+            }
+            try {
+                return drain(serverId);
+            } finally {
+                dao.releaseLock(LOCK_EMAIL_OUTBOX, serverId);
+            }
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEmailOutbox#retryFailedEmails(java.lang.Long)
+     */
+    public int retryFailedEmails(Long evaluationId) {
+        int count = dao.requeueFailedOutboxEmails(evaluationId);
+        if (count > 0) {
+            log.info("Requeued " + count + " failed outbox emails" + (evaluationId == null ? "" : " for evaluation (" + evaluationId + ")"));
+            requestDrain();
+        }
+        return count;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEmailOutbox#getOutboxMetrics()
+     */
+    public Map<String, Number> getOutboxMetrics() {
+        Map<String, Long> counts = dao.countOutboxEmailsByStatus();
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put(METRIC_PENDING, countOf(counts, EvalConstants.EMAIL_OUTBOX_STATUS_PENDING));
+        metrics.put(METRIC_SENT, countOf(counts, EvalConstants.EMAIL_OUTBOX_STATUS_SENT));
+        metrics.put(METRIC_FAILED, countOf(counts, EvalConstants.EMAIL_OUTBOX_STATUS_FAILED));
+        metrics.put(METRIC_SENT_SINCE_STARTUP, sentTotal.get());
+        metrics.put(METRIC_RETRIES_SINCE_STARTUP, retryTotal.get());
+        metrics.put(METRIC_DEAD_LETTERS_SINCE_STARTUP, deadTotal.get());
+        metrics.put(METRIC_LAST_RUN_EMAILS_PER_SECOND, lastRunRate);
+        return metrics;
+    }
+
+    /**
+     * Send the emails in the outbox until there are none due, the caller must hold the outbox lock
+     * @param serverId the id of this server (the lock holder)
+     * @return the number of emails sent
+     */
+    private int drain(String serverId) {
+        long start = System.currentTimeMillis();
+        String deliveryOption = (String) settings.get(EvalSettings.EMAIL_DELIVERY_OPTION);
+        int sent = 0;
+        int retries = 0;
+        int dead = 0;
+        // an email is only tried once per run even if it is due again before the run ends
+        Set<Long> tried = new HashSet<>();
+        while (true) {
+            List<EvalOutboxEmail> due = dao.getOutboxEmailsToSend(new Date(), batchSize);
+            due.removeIf(email -> ! tried.add(email.getId()));
+            if (due.isEmpty()) {
+                break;
+            }
+
+            List<Future<SendResult>> futures = new ArrayList<>();
+            List<SendResult> results = new ArrayList<>();
+            for (List<EvalOutboxEmail> group : groupIdentical(due)) {
+                if (senders != null) {
+                    futures.add(senders.submit(() -> send(group, deliveryOption)));
+                } else {
+                    results.add(send(group, deliveryOption));
+                }
+            }
+            for (Future<SendResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while sending the outbox emails", e);
+                } catch (ExecutionException e) {
+                    // send() catches the failures so this should not happen, the emails are retried next run
+                    log.error("Failure sending outbox emails: " + e.getCause(), e.getCause());
+                }
+            }
+
+            List<Long> sentIds = new ArrayList<>();
+            Set<EvalOutboxEmail> failed = new HashSet<>();
+            Date now = new Date();
+            for (SendResult result : results) {
+                sentIds.addAll(result.sentIds);
+                for (Map.Entry<EvalOutboxEmail, String> entry : result.failures.entrySet()) {
+                    EvalOutboxEmail email = entry.getKey();
+                    int attempts = (email.getAttempts() == null ? 0 : email.getAttempts()) + 1;
+                    email.setAttempts(attempts);
+                    email.setLastError(truncate(entry.getValue()));
+                    email.setLastModified(now);
+                    if (attempts >= maxAttempts) {
+                        email.setStatus(EvalConstants.EMAIL_OUTBOX_STATUS_FAILED);
+                        log.warn("Giving up on the " + email.getEmailType() + " email to user (" + email.getUserId()
+                                + ") for evaluation (" + email.getEvaluationId() + ") after " + attempts + " attempts: " + entry.getValue());
+                        dead++;
+                    } else {
+                        email.setNextAttempt(new Date(now.getTime() + getRetryDelay(attempts)));
+                        retries++;
+                    }
+                    failed.add(email);
+                }
+            }
+            sent += dao.markOutboxEmailsSent(sentIds);
+            if (! failed.isEmpty()) {
+                dao.saveSet(failed);
+            }
+            // keep hold of the lock during long runs
+            dao.obtainLock(LOCK_EMAIL_OUTBOX, serverId, LOCK_MILLIS);
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - lastPurge > PURGE_INTERVAL_MILLIS) {
+            lastPurge = now;
+            int removed = dao.removeSentOutboxEmails(new Date(now - keepMillis));
+            if (removed > 0) {
+                log.info("Removed " + removed + " sent emails from the outbox");
+            }
+        }
+
+        sentTotal.addAndGet(sent);
+        retryTotal.addAndGet(retries);
+        deadTotal.addAndGet(dead);
+        long millis = Math.max(1, now - start);
+        if (sent + retries + dead > 0) {
+            lastRunRate = sent * 1000d / millis;
+            log.info("Email outbox sent " + sent + " emails in " + millis + " ms (" + Math.round(lastRunRate) + "/s), "
+                    + retries + " to retry, " + dead + " failed");
+        }
+        return sent;
+    }
+
+    /**
+     * Send one group of identical emails, falls back to sending to one user at a time if the group send fails
+     * @return the ids of the sent emails and the failed emails with the reason
+     */
+    private SendResult send(List<EvalOutboxEmail> group, String deliveryOption) {
+        SendResult result = new SendResult();
+        EvalOutboxEmail first = group.get(0);
+        if (group.size() > 1) {
+            String[] userIds = new String[group.size()];
+            for (int i = 0; i < userIds.length; i++) {
+                userIds[i] = group.get(i).getUserId();
+            }
+            try {
+                sendEmails(first.getFromAddress(), userIds, first.getSubject(), first.getMessage(), deliveryOption);
+                for (EvalOutboxEmail email : group) {
+                    result.sentIds.add(email.getId());
+                }
+                return result;
+            } catch (RuntimeException e) {
+                log.debug("Sending the " + first.getEmailType() + " email to " + userIds.length
+                        + " users failed, sending to each user: " + e);
+            }
+        }
+        for (EvalOutboxEmail email : group) {
+            try {
+                sendEmails(email.getFromAddress(), new String[] { email.getUserId() }, email.getSubject(),
+                        email.getMessage(), deliveryOption);
+                result.sentIds.add(email.getId());
+            } catch (RuntimeException e) {
+                result.failures.put(email, e.getMessage() == null ? e.getClass().getName() : e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Hand one email off to the mail server
+     * @throws RuntimeException if the email could not be sent
+     */
+    protected void sendEmails(String from, String[] toUserIds, String subject, String message, String deliveryOption) {
+        commonLogic.sendEmailsToUsers(from, toUserIds, subject, message, false, deliveryOption);
+    }
+
+    /**
+     * @param attempts the number of failed attempts so far (at least 1)
+     * @return the time to wait before the next attempt, doubles with each attempt (plus up to 10% so retries spread out)
+     */
+    protected long getRetryDelay(int attempts) {
+        long delay = retryMillis << Math.min(30, attempts - 1);
+        if (delay <= 0 || delay > maxRetryMillis) {
+            delay = maxRetryMillis;
+        }
+        return delay + ThreadLocalRandom.current().nextLong(delay / 10 + 1);
+    }
+
+    /**
+     * @return the due emails grouped by from, subject and message (in groups no larger than maxRecipients)
+     */
+    private List<List<EvalOutboxEmail>> groupIdentical(List<EvalOutboxEmail> emails) {
+        Map<String, List<EvalOutboxEmail>> identical = new LinkedHashMap<>();
+        for (EvalOutboxEmail email : emails) {
+            String key = email.getFromAddress() + "\u0000" + email.getSubject() + "\u0000" + email.getMessage();
+            identical.computeIfAbsent(key, k -> new ArrayList<>()).add(email);
+        }
+        List<List<EvalOutboxEmail>> groups = new ArrayList<>();
+        for (List<EvalOutboxEmail> same : identical.values()) {
+            for (int start = 0; start < same.size(); start += maxRecipients) {
+                groups.add(same.subList(start, Math.min(same.size(), start + maxRecipients)));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Wake the background sender shortly, after the queued emails have been committed
+     */
+    private void requestDrain() {
+        if (drainer != null && drainScheduled.compareAndSet(false, true)) {
+            drainer.schedule(() -> {
+                drainScheduled.set(false);
+                drainQuietly();
+            }, 2, TimeUnit.SECONDS);
+        }
+    }
+
+    private void drainQuietly() {
+        try {
+            sendQueuedEmails();
+        } catch (Exception e) {
+            log.error("Failure sending the outbox emails (they will be tried again): " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the unique key for one notification to one user, hashed if it would be too long for the column
+     */
+    protected static String makeIdempotencyKey(Long evaluationId, String emailType, String round, String userId) {
+        String key = evaluationId + "/" + emailType + "/" + (round == null ? "" : round) + "/" + userId;
+        if (key.length() <= MAX_KEY_LENGTH) {
+            return key;
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder("sha256:");
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0x0f, 16));
+                sb.append(Character.forDigit(b & 0x0f, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+
+    private static long countOf(Map<String, Long> counts, String status) {
+        Long count = counts.get(status);
+        return count == null ? 0 : count;
+    }
+
+    private static String truncate(String error) {
+        return error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    /**
+     * The outcome of sending one group of emails
+     */
+    private static class SendResult {
+        final List<Long> sentIds = new ArrayList<>();
+        final Map<EvalOutboxEmail, String> failures = new LinkedHashMap<>();
+    }
+
+}
@@ -15,18 +15,27 @@
 package org.sakaiproject.evaluation.logic;
 
 import java.text.DateFormat;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
 import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.jobmonitor.JobMetricsReporter;
 import org.sakaiproject.evaluation.jobmonitor.JobStatusReporter;
 import org.sakaiproject.evaluation.logic.entity.EvalReportsEntityProvider;
 import org.sakaiproject.evaluation.logic.model.EvalEmailMessage;
@@ -38,7 +47,9 @@ import org.sakaiproject.evaluation.model.EvalAssignUser;
 import org.sakaiproject.evaluation.model.EvalEmailTemplate;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
 import org.sakaiproject.evaluation.utils.ArrayUtils;
+import org.sakaiproject.evaluation.utils.EvalTokenBucket;
 import org.sakaiproject.evaluation.utils.EvalUtils;
+import org.sakaiproject.evaluation.utils.PreparedTextTemplate;
 import org.sakaiproject.evaluation.utils.TextTemplateLogicUtils;
 import org.sakaiproject.util.ResourceLoader;
 
@@ -65,6 +76,46 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
 
     protected static final int MIN_BATCH_SIZE = 10;
 	protected static final long MILLISECONDS_PER_DAY = 24L * 60L * 60L * 1000L;
+    /**
+     * The outbox email type for the messages sent with {@link #sendEmailMessages(String, String, Long, String[], String)}
+     */
+    protected static final String OUTBOX_TYPE_MESSAGE = "Message";
+
+    /**
+     * The sakai.properties setting for the steady rate (emails per second) of the consolidated emails,
+     * 0 (the default) uses the average rate from the EMAIL_BATCH_SIZE and EMAIL_WAIT_INTERVAL settings
+     * (no limit if there is no wait interval)
+     */
+    public static final String SETTING_CONSOLIDATED_EMAIL_RATE = "eval.email.consolidated.ratePerSecond";
+    /**
+     * The sakai.properties setting for the most consolidated emails which can go out at once after
+     * the sending was idle, 0 (the default) allows one second worth of emails
+     */
+    public static final String SETTING_CONSOLIDATED_EMAIL_BURST = "eval.email.consolidated.burst";
+    /**
+     * The sakai.properties setting for the number of threads sending the consolidated emails
+     */
+    public static final String SETTING_CONSOLIDATED_EMAIL_THREADS = "eval.email.consolidated.senderThreads";
+    /**
+     * The sakai.properties setting for the most users who can be sent one consolidated email when their
+     * rendered emails are identical, the users only go on the envelope (like BCC) so they never see each other,
+     * 1 sends every user their own email
+     */
+    public static final String SETTING_CONSOLIDATED_EMAIL_MAX_RECIPIENTS = "eval.email.consolidated.maxRecipients";
+    /**
+     * The sakai.properties setting which makes each consolidated email run check the whole email processing
+     * queue against the user assignments first, the queue is normally kept up to date as the assignments,
+     * responses and evaluations change so this is only needed if the assignments are changed outside of the tool
+     */
+    public static final String SETTING_CONSOLIDATED_EMAIL_FULL_SYNC = "eval.email.consolidated.fullSync";
+    /**
+     * The phase the consolidated available emails are counted under when the job progress is kept
+     */
+    public static final String JOB_PHASE_ANNOUNCEMENTS = "announcements";
+    /**
+     * The phase the consolidated reminder emails are counted under when the job progress is kept
+     */
+    public static final String JOB_PHASE_REMINDERS = "reminders";
 
     private EvalCommonLogic commonLogic;
     public void setCommonLogic(EvalCommonLogic commonLogic) {
@@ -81,6 +132,11 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
         this.evaluationService = evaluationService;
     }
 
+    private EvalEmailOutbox emailOutbox;
+    public void setEmailOutbox(EvalEmailOutbox emailOutbox) {
+        this.emailOutbox = emailOutbox;
+    }
+
     // INIT method
     public void init() {
         log.debug("Init");
@@ -150,7 +206,8 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
             }
 
             // send the actual emails for this evalGroupId
-            String[] emailAddresses = sendUsersEmails(from, toUserIds, em.subject, em.message);
+            String[] emailAddresses = sendUsersEmails(from, toUserIds, em.subject, em.message,
+                    evaluationId, EvalConstants.EMAIL_TEMPLATE_CREATED, null);
             log.info("Sent evaluation created message to " + emailAddresses.length + " users (attempted to send to "+toUserIds.length+")");
             // store sent emails to return
             sentEmails.addAll( Arrays.asList( emailAddresses ) );
@@ -191,6 +248,11 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
             evaluationService.getAssignGroupsForEvals(new Long[] { evaluationId }, true, null);
         List<EvalAssignGroup> assignGroups = evalAssignGroups.get(evaluationId);
 
+        // the emails are only rendered once for the whole evaluation, each group fills in its own values
+        GroupEmailRenderer renderer = new GroupEmailRenderer(emailTemplate, eval, null);
+        GroupEmailRenderer optInRenderer = new GroupEmailRenderer(emailOptInTemplate, eval, null);
+        GroupEmailRenderer evaluateeRenderer = new GroupEmailRenderer(emailTemplateEvaluatee, eval, null);
+
         String sampleEmail = null;
         List<String> sentEmails = new ArrayList<>();
         // loop through groups and send emails to correct users group
@@ -246,23 +308,25 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
             }
 
             // choose from 2 templates
-            EvalEmailTemplate currentTemplate = emailTemplate;
+            GroupEmailRenderer currentRenderer = renderer;
             if (! studentNotification) {
-                currentTemplate = emailOptInTemplate;
+                currentRenderer = optInRenderer;
             }
-            EvalEmailMessage em = makeEmailMessage(currentTemplate.getMessage(), currentTemplate.getSubject(), eval, group);
+            EvalEmailMessage em = currentRenderer.render(group);
             if (sampleEmail == null && em.message != null) {
                 sampleEmail = em.message;
             }
 
             // send the actual emails for this evalGroupId
-            String[] emailAddresses = sendUsersEmails(from, toUserIds, em.subject, em.message);
+            String[] emailAddresses = sendUsersEmails(from, toUserIds, em.subject, em.message, evaluationId,
+                    studentNotification ? EvalConstants.EMAIL_TEMPLATE_AVAILABLE : EvalConstants.EMAIL_TEMPLATE_AVAILABLE_OPT_IN,
+                    getAvailableRound(eval));
             log.info("Sent evaluation available message to " + emailAddresses.length + " users (attempted to send to "+toUserIds.length+")");
             // store sent emails to return
             sentEmails.addAll( Arrays.asList( emailAddresses ) );
 
             if (evaluateeNotification) {
-            	em = makeEmailMessage(emailTemplateEvaluatee.getMessage(), emailTemplateEvaluatee.getSubject(), eval, group);
+            	em = evaluateeRenderer.render(group);
             	List<EvalAssignUser> userAssignments = evaluationService.getParticipantsForEval(evaluationId, null, 
             			new String[] {group.evalGroupId}, EvalAssignUser.TYPE_EVALUATEE, null, null, null);
             	userIdsSet = EvalUtils.getUserIdsFromUserAssignments(userAssignments);
@@ -273,7 +337,8 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
                 			+ EvalConstants.EMAIL_TEMPLATE_CREATED + " notification to for available evaluation ("
                 			+ evaluationId + ") and group (" + group.evalGroupId + ")");
                 }
-            	emailAddresses = sendUsersEmails(from, toUserIds, em.subject, em.message);
+            	emailAddresses = sendUsersEmails(from, toUserIds, em.subject, em.message,
+            	        evaluationId, EvalConstants.EMAIL_TEMPLATE_AVAILABLE_EVALUATEE, getAvailableRound(eval));
                 sentEmails.addAll( Arrays.asList( emailAddresses ) );
             	log.info("Sent evaluation available evaluatee message to " + emailAddresses.length + " users (attempted to send to "+toUserIds.length+")");
             }
@@ -327,7 +392,8 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
             }
 
             // send the actual emails for this evalGroupId
-            String[] emailAddresses = sendUsersEmails(from, toUserIds, em.subject, em.message);
+            String[] emailAddresses = sendUsersEmails(from, toUserIds, em.subject, em.message,
+                    evaluationId, EvalConstants.EMAIL_TEMPLATE_AVAILABLE, getAvailableRound(eval));
             log.info("Sent evaluation available group message to " + emailAddresses.length + " users (attempted to send to "+toUserIds.length+")");
             // store sent emails to return
             sentEmails.addAll( Arrays.asList( emailAddresses ) );
@@ -357,6 +423,8 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
         EvalEvaluation eval = getEvaluationOrFail(evaluationId);
         String from = getFromEmailOrFail(eval);
         EvalEmailTemplate emailTemplate = getEmailTemplateOrFail(EvalConstants.EMAIL_TEMPLATE_REMINDER, evaluationId);
+        // users are sent at most one reminder of each kind a day
+        String reminderRound = new SimpleDateFormat("yyyyMMdd").format(new Date()) + "-" + includeConstant;
 
         // get the associated eval groups for this evaluation
         // NOTE: this only returns the groups that should get emails, there is no need to do an additional check
@@ -376,6 +444,13 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
             log.debug("Found " + groups.size() + " groups for available evaluation: " + evaluationId);
         }
 
+        // the emails are only rendered once for the whole evaluation, each group fills in its own values
+        GroupEmailRenderer renderer = new GroupEmailRenderer(emailTemplate, eval, includeConstant);
+
+        // get the users to remind in all groups at once instead of running the response queries for each group,
+        // this is fully read before sending since updating the reminder status commits along the way
+        Map<String, Set<String>> groupUserIds = evaluationService.getParticipantUserIdsByGroup(evaluationId, includeConstant);
+
         String sampleEmail = null;
         List<String> sentEmails = new ArrayList<>();
         // loop through groups and send emails to correct users in each
@@ -406,15 +481,9 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
                 continue; // skip processing for groups that are not published?
             }
 
-            String[] limitGroupIds = null;
-            if (evalGroupId != null) {
-                limitGroupIds = new String[] {evalGroupId};
-            }
-
-            List<EvalAssignUser> participants = evaluationService.getParticipantsForEval(evaluationId, null, limitGroupIds, null, null, includeConstant, null);
-            Set<String> userIdsSet = EvalUtils.getUserIdsFromUserAssignments(participants);
+            Set<String> userIdsSet = groupUserIds.get(evalGroupId);
 
-            if (userIdsSet.size() > 0) {
+            if (userIdsSet != null && userIdsSet.size() > 0) {
                 // turn the set into an array
                 String[] toUserIds = (String[]) userIdsSet.toArray(new String[] {});
                 if (log.isDebugEnabled()) {
@@ -423,13 +492,14 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
                             + " notification to for available evaluation ("+ evaluationId + ") and group (" + group.evalGroupId + ")");
                 }
 
-                EvalEmailMessage em = makeEmailMessage(emailTemplate.getMessage(), emailTemplate.getSubject(), eval, group, includeConstant);
+                EvalEmailMessage em = renderer.render(group);
                 if (sampleEmail == null && em.message != null) {
                     sampleEmail = em.message;
                 }
 
                 // send the actual emails for this evalGroupId
-                String[] emailAddresses = sendUsersEmails(from, toUserIds, em.subject, em.message);
+                String[] emailAddresses = sendUsersEmails(from, toUserIds, em.subject, em.message,
+                        evaluationId, EvalConstants.EMAIL_TEMPLATE_REMINDER, reminderRound);
                 log.info("Sent evaluation reminder message for eval ("+evaluationId+") and group ("+group.evalGroupId+") to " + emailAddresses.length + " users (attempted to send to "+toUserIds.length+")");
                 // store sent emails to return
                 sentEmails.addAll( Arrays.asList( emailAddresses ) );
@@ -507,6 +577,9 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
             log.debug("Found " + assignGroups.size() + " assign groups for available evaluation: " + evaluationId);
         }
 
+        // the emails are only rendered once for the whole evaluation, each group fills in its own values
+        GroupEmailRenderer renderer = new GroupEmailRenderer(emailTemplate, eval, null);
+
         String sampleEmail = null;
         List<String> sentEmails = new ArrayList<>();
         // loop through groups and send emails to correct users in each evalGroupId
@@ -563,13 +636,14 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
                         + EvalConstants.EMAIL_TEMPLATE_RESULTS + " notification to for available evaluation ("
                         + evaluationId + ") and group (" + evalGroupId + ")");
 
-                EvalEmailMessage em = makeEmailMessage(emailTemplate.getMessage(), emailTemplate.getSubject(), eval, group);
+                EvalEmailMessage em = renderer.render(group);
                 if (sampleEmail == null && em.message != null) {
                     sampleEmail = em.message;
                 }
 
                 // send the actual emails for this evalGroupId
-                String[] emailAddresses = sendUsersEmails(from, toUserIds, em.subject, em.message);
+                String[] emailAddresses = sendUsersEmails(from, toUserIds, em.subject, em.message,
+                        evaluationId, EvalConstants.EMAIL_TEMPLATE_RESULTS, jobType);
                 log.info("Sent evaluation results message to " + emailAddresses.length + " users (attempted to send to "+toUserIds.length+")");
                 // store sent emails to return
                 sentEmails.addAll( Arrays.asList( emailAddresses ) );
@@ -682,6 +756,8 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
 
         EvalEvaluation eval = getEvaluationOrFail(evaluationId);
         String from = getFromEmailOrFail(eval);
+        // every message sent is new
+        String messageRound = Long.toString(System.currentTimeMillis());
 
         // get the associated eval groups for this evaluation
         // NOTE: this only returns the groups that should get emails, there is no need to do an additional check
@@ -730,7 +806,8 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
                 replacementValues.put("HelpdeskEmail", from);
 
                 // send the actual emails for this evalGroupId
-                String[] emailAddresses = sendUsersEmails(from, toUserIds, subject, message);
+                String[] emailAddresses = sendUsersEmails(from, toUserIds, subject, message,
+                        evaluationId, OUTBOX_TYPE_MESSAGE, messageRound);
                 log.info("Sent evaluation reminder message to " + emailAddresses.length + " users (attempted to send to "+toUserIds.length+")");
                 // store sent emails to return
                 sentEmails.addAll( Arrays.asList( emailAddresses ) );
@@ -759,6 +836,33 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
     public EvalEmailMessage makeEmailMessage(String messageTemplate, String subjectTemplate, EvalEvaluation eval,
     		EvalGroup group, String includeConstant) {
         // replace the text of the template with real values
+        Map<String, String> replacementValues = makeEvalReplacementValues(eval, includeConstant);
+        replacementValues.putAll(makeGroupReplacementValues(eval, group, null));
+
+        String message = TextTemplateLogicUtils.processTextTemplate(messageTemplate, replacementValues);
+        String subject = null;
+        if (subjectTemplate != null) {
+            subject = TextTemplateLogicUtils.processTextTemplate(subjectTemplate, replacementValues);
+        }
+        return new EvalEmailMessage(subjectTemplate, messageTemplate, subject, message);
+    }
+
+    /**
+     * The names of the email template replacement values which are different for each group,
+     * see {@link #makeGroupReplacementValues(EvalEvaluation, EvalGroup, Map)}
+     */
+    protected static final List<String> GROUP_REPLACEMENT_NAMES = Collections.unmodifiableList(Arrays.asList(
+            "EvalGroupTitle", "EvalSite", "URLtoTakeEval", "URLtoAddItems", "URLtoOptIn", "URLtoOptOut", "MyWorkspaceDashboard"));
+
+    /**
+     * INTERNAL METHOD<br/>
+     * Builds the email template replacement values which are the same for all the groups in an evaluation
+     * 
+     * @param eval
+     * @param includeConstant [OPTIONAL] the EVAL_INCLUDE constant for the users the email is for
+     * @return the replacement values
+     */
+    protected Map<String, String> makeEvalReplacementValues(EvalEvaluation eval, String includeConstant) {
     	Map<String, String> replacementValues = new HashMap<>();
         replacementValues.put("EvalTitle", eval.getTitle());
 
@@ -787,16 +891,6 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
             viewDate = dueDate;
         }
         replacementValues.put("EvalResultsDate", viewDate);
-        // https://bugs.caret.cam.ac.uk/browse/CTL-1505 - no titles for empty or adhoc groups
-        String groupTitle;
-        if (group == null || group.title == null || EvalConstants.GROUP_TYPE_ADHOC.equals(group.type)) {
-            groupTitle = "";
-        } else if (EvalConstants.GROUP_TYPE_ADHOC.equals(group.type)) {
-            groupTitle = "Adhoc Group";
-        } else {
-            groupTitle = group.title;
-        }
-        replacementValues.put("EvalGroupTitle", groupTitle);
         
         replacementValues.put("HelpdeskEmail", getFromEmailOrFail(eval));
 
@@ -847,27 +941,6 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
         	replacementValues.put("InProgress", (EvalConstants.EVAL_INCLUDE_IN_PROGRESS.equals(includeConstant) ? "true" : "false"));
         }
 
-        // generate URLs to the evaluation
-        // generate URLs to the evaluation
-        String evalEntityURL = null;
-        if (group != null && group.evalGroupId != null) {
-            // get the URL directly to the evaluation with group context included
-            EvalAssignGroup assignGroup = evaluationService.getAssignGroupByEvalAndGroupId(eval.getId(), group.evalGroupId);
-            if (assignGroup != null) {
-                evalEntityURL = commonLogic.getEntityURL(assignGroup);
-            }
-        }
-
-        if (evalEntityURL == null) {
-            // just get the URL to the evaluation without group context
-            evalEntityURL = commonLogic.getEntityURL(eval);
-        }
-
-        // all URLs are identical because the user permissions determine access uniquely
-        replacementValues.put("URLtoTakeEval", evalEntityURL);
-        replacementValues.put("URLtoAddItems", evalEntityURL);
-        replacementValues.put("URLtoOptIn", evalEntityURL);
-        replacementValues.put("URLtoOptOut", evalEntityURL);
         replacementValues.put("URLtoViewResults", 
                 commonLogic.getEntityURL(EvalReportsEntityProvider.ENTITY_PREFIX, eval.getId().toString()) );
         replacementValues.put("URLtoSystem", commonLogic.getServerUrl());
@@ -876,8 +949,6 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
         replacementValues.put("EarliestEvalDueDate", dueDate);
         replacementValues.put("EvalCLE", commonLogic.getConfigurationSetting("ui.service", "Sakai"));
         replacementValues.put("EvalToolTitle", "Evaluation System");
-        replacementValues.put("EvalSite", groupTitle);
-        replacementValues.put("MyWorkspaceDashboard", evalEntityURL);
         
 		String timeStamp =  df.format(new Date());
 		replacementValues.put("TimeStamp", timeStamp);
@@ -892,13 +963,115 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
 			//not populating the username variable with anything proper. We could not get a valid user.
 		}
 		replacementValues.put("UserName", name);
-		
-        String message = TextTemplateLogicUtils.processTextTemplate(messageTemplate, replacementValues);
-        String subject = null;
-        if (subjectTemplate != null) {
-            subject = TextTemplateLogicUtils.processTextTemplate(subjectTemplate, replacementValues);
+		return replacementValues;
+    }
+
+    /**
+     * INTERNAL METHOD<br/>
+     * Builds the email template replacement values which are different for each group (see {@link #GROUP_REPLACEMENT_NAMES})
+     * 
+     * @param eval
+     * @param group [OPTIONAL] the group the email is for
+     * @param assignGroups [OPTIONAL] all the assign groups for the evaluation by evalGroupId,
+     * if this is null then the assign group is looked up
+     * @return the replacement values
+     */
+    protected Map<String, String> makeGroupReplacementValues(EvalEvaluation eval, EvalGroup group, Map<String, EvalAssignGroup> assignGroups) {
+    	Map<String, String> replacementValues = new HashMap<>();
+        // https://bugs.caret.cam.ac.uk/browse/CTL-1505 - no titles for empty or adhoc groups
+        String groupTitle;
+        if (group == null || group.title == null || EvalConstants.GROUP_TYPE_ADHOC.equals(group.type)) {
+            groupTitle = "";
+        } else if (EvalConstants.GROUP_TYPE_ADHOC.equals(group.type)) {
+            groupTitle = "Adhoc Group";
+        } else {
+            groupTitle = group.title;
+        }
+        replacementValues.put("EvalGroupTitle", groupTitle);
+
+        // generate URLs to the evaluation
+        String evalEntityURL = null;
+        if (group != null && group.evalGroupId != null) {
+            // get the URL directly to the evaluation with group context included
+            EvalAssignGroup assignGroup;
+            if (assignGroups != null) {
+                assignGroup = assignGroups.get(group.evalGroupId);
+            } else {
+                assignGroup = evaluationService.getAssignGroupByEvalAndGroupId(eval.getId(), group.evalGroupId);
+            }
+            if (assignGroup != null) {
+                evalEntityURL = commonLogic.getEntityURL(assignGroup);
+            }
+        }
+
+        if (evalEntityURL == null) {
+            // just get the URL to the evaluation without group context
+            evalEntityURL = commonLogic.getEntityURL(eval);
+        }
+
+        // all URLs are identical because the user permissions determine access uniquely
+        replacementValues.put("URLtoTakeEval", evalEntityURL);
+        replacementValues.put("URLtoAddItems", evalEntityURL);
+        replacementValues.put("URLtoOptIn", evalEntityURL);
+        replacementValues.put("URLtoOptOut", evalEntityURL);
+        replacementValues.put("EvalSite", groupTitle);
+        replacementValues.put("MyWorkspaceDashboard", evalEntityURL);
+        return replacementValues;
+    }
+
+    /**
+     * INTERNAL CLASS<br/>
+     * Renders the emails for each group of an evaluation from one email template, the values which are
+     * the same for every group (titles, dates, settings, urls) are worked out and the templates processed
+     * once, then each group only fills in its own values (see {@link PreparedTextTemplate}),
+     * the assign groups for the evaluation are loaded once as well
+     */
+    protected class GroupEmailRenderer {
+
+        protected final EvalEvaluation eval;
+        private final String includeConstant;
+        private final String messageTemplate;
+        private final String subjectTemplate;
+        // prepared when the first email is rendered
+        private PreparedTextTemplate message;
+        private PreparedTextTemplate subject;
+        private Map<String, EvalAssignGroup> assignGroups;
+
+        /**
+         * @param emailTemplate the email template to render
+         * @param eval
+         * @param includeConstant [OPTIONAL] the EVAL_INCLUDE constant for the users the emails are for
+         */
+        protected GroupEmailRenderer(EvalEmailTemplate emailTemplate, EvalEvaluation eval, String includeConstant) {
+            this.eval = eval;
+            this.includeConstant = includeConstant;
+            this.messageTemplate = emailTemplate.getMessage();
+            this.subjectTemplate = emailTemplate.getSubject();
+        }
+
+        /**
+         * @param group
+         * @return the email for the group, the same as {@link EvalEmailsLogicImpl#makeEmailMessage(String, String, EvalEvaluation, EvalGroup, String)}
+         */
+        protected EvalEmailMessage render(EvalGroup group) {
+            if (message == null) {
+                Map<String, String> replacementValues = makeEvalReplacementValues(eval, includeConstant);
+                message = new PreparedTextTemplate(messageTemplate, replacementValues, GROUP_REPLACEMENT_NAMES);
+                if (subjectTemplate != null) {
+                    subject = new PreparedTextTemplate(subjectTemplate, replacementValues, GROUP_REPLACEMENT_NAMES);
+                }
+                assignGroups = new HashMap<>();
+                List<EvalAssignGroup> l = evaluationService.getAssignGroupsForEvals(new Long[] {eval.getId()}, true, null).get(eval.getId());
+                if (l != null) {
+                    for (EvalAssignGroup assignGroup : l) {
+                        assignGroups.put(assignGroup.getEvalGroupId(), assignGroup);
+                    }
+                }
+            }
+            Map<String, String> groupValues = makeGroupReplacementValues(eval, group, assignGroups);
+            return new EvalEmailMessage(subjectTemplate, messageTemplate,
+                    subject == null ? null : subject.fill(groupValues), message.fill(groupValues));
         }
-        return new EvalEmailMessage(subjectTemplate, messageTemplate, subject, message);
     }
 
     /*
@@ -923,6 +1096,7 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
 		
 		Date startTime = new Date();
 
+		prepareConsolidatedEmailRecipients();
 		int count = this.evaluationService.selectConsoliatedEmailRecipients(true, null, true, null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
 		if(log.isDebugEnabled()) {
 			log.debug("Number of evalAssignUser entities selected for available emails: " + count);
@@ -935,18 +1109,26 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
         		jobStatusReporter.reportProgress(jobId, "announcementGroups", Integer.toString(this.evaluationService.countDistinctGroupsInConsolidatedEmailMapping()));
         	}
 
-	    	int page = 0;
-	    	List<String> userIds;
-	    	do {
-		    	List<Map<String,Object>> userMap = this.evaluationService.getConsolidatedEmailMapping(true, batchSize, page++);
-		    	userIds = processConsolidatedEmails(jobId, userMap, jobStatusReporter);
-		    	if(userIds != null) {
-		    		recipients.addAll(userIds);
-		    	}
-	    		takeShortBreak(waitInterval);
-	    	} while(userIds != null && !userIds.isEmpty());
+	    	ConsolidatedEmailContext context = new ConsolidatedEmailContext(true);
+	    	context.startCounts(jobStatusReporter, jobId);
+	    	ConsolidatedEmailSender sender = new ConsolidatedEmailSender(batchSize, waitInterval);
+	    	try {
+		    	int page = 0;
+		    	List<String> userIds;
+		    	do {
+			    	List<Map<String,Object>> userMap = this.evaluationService.getConsolidatedEmailMapping(true, batchSize, page++);
+			    	userIds = processConsolidatedEmails(jobId, userMap, jobStatusReporter, context, sender);
+			    	if(userIds != null) {
+			    		recipients.addAll(userIds);
+			    	}
+		    	} while(userIds != null && !userIds.isEmpty());
+	    	} finally {
+	    		sender.shutdown();
+	    	}
 	    	
 	    	this.evaluationService.resetConsolidatedEmailRecipients();
+		} else {
+			reportConsolidatedEmailCounts(jobStatusReporter, jobId, JOB_PHASE_ANNOUNCEMENTS, 0, 0, 0, 0);
 		}
     	
 		if(jobId != null && jobStatusReporter != null) {
@@ -1008,6 +1190,7 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
     	}
 		Date reminderEmailSent = new Date();
 		
+		prepareConsolidatedEmailRecipients();
 		int count = this.evaluationService.selectConsoliatedEmailRecipients(availableEmailEnabled, availableEmailSent , true, reminderEmailSent , EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
     	log.debug("Number of evalAssignUser entities selected for reminder emails: " + count);
     	if(count > 0) {
@@ -1015,15 +1198,23 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
         		jobStatusReporter.reportProgress(jobId, "sendingReminders", Integer.toString(count));
         		jobStatusReporter.reportProgress(jobId, "reminderGroups", Integer.toString(this.evaluationService.countDistinctGroupsInConsolidatedEmailMapping()));
         	}
-        	int page = 0;
-        	List<String> userIds;
-	    	do {
-	    		List<Map<String,Object>> userMap = this.evaluationService.getConsolidatedEmailMapping(false, batchSize, page++);
-	    		userIds = processConsolidatedEmails(jobId, userMap, jobStatusReporter);
-	    		if(userIds != null)
-	    		recipients.addAll(userIds);
-	    		takeShortBreak(waitInterval);
-	    	} while(userIds != null && !userIds.isEmpty());
+        	ConsolidatedEmailContext context = new ConsolidatedEmailContext(false);
+        	context.startCounts(jobStatusReporter, jobId);
+        	ConsolidatedEmailSender sender = new ConsolidatedEmailSender(batchSize, waitInterval);
+        	try {
+	        	int page = 0;
+	        	List<String> userIds;
+		    	do {
+		    		List<Map<String,Object>> userMap = this.evaluationService.getConsolidatedEmailMapping(false, batchSize, page++);
+		    		userIds = processConsolidatedEmails(jobId, userMap, jobStatusReporter, context, sender);
+		    		if(userIds != null)
+		    		recipients.addAll(userIds);
+		    	} while(userIds != null && !userIds.isEmpty());
+        	} finally {
+        		sender.shutdown();
+        	}
+    	} else {
+    		reportConsolidatedEmailCounts(jobStatusReporter, jobId, JOB_PHASE_REMINDERS, 0, 0, 0, 0);
     	}
     	this.evaluationService.resetConsolidatedEmailRecipients();
     	
@@ -1037,6 +1228,31 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
    
 
     // INTERNAL METHODS
+
+	/**
+	 * INTERNAL METHOD<br/>
+	 * Get the email processing queue ready for a consolidated email run, the users stay queued between runs
+	 * and only the ones who are due are marked by each run
+	 */
+	protected void prepareConsolidatedEmailRecipients() {
+		// clear the marks left by a run which did not finish, the users it did send to are already marked as sent
+		this.evaluationService.resetConsolidatedEmailRecipients();
+		if (commonLogic.getConfigurationSetting(SETTING_CONSOLIDATED_EMAIL_FULL_SYNC, false)) {
+			int added = this.evaluationService.updateConsolidatedEmailRecipients(null);
+			log.info("Checked the whole email processing queue against the user assignments, added " + added + " users");
+		}
+	}
+
+	/**
+	 * INTERNAL METHOD<br/>
+	 * Report the counts for a phase of a consolidated email run if the reporter keeps structured progress
+	 */
+	protected void reportConsolidatedEmailCounts(JobStatusReporter jobStatusReporter, String jobId, String phase,
+			int total, int processed, int sent, int errors) {
+		if(jobId != null && jobStatusReporter instanceof JobMetricsReporter) {
+			((JobMetricsReporter) jobStatusReporter).reportCounts(jobId, phase, total, processed, sent, errors);
+		}
+	}
 	
 	/**
      * INTERNAL METHOD<br/>
@@ -1066,76 +1282,46 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
 		return msg;
 	}
 
-	/**
-     * INTERNAL METHOD<br/>
-	 * @param waitInterval
-	 */
-	protected void takeShortBreak(Integer waitInterval) {
-		if(waitInterval.longValue() > 0L) {
-			if(log.isDebugEnabled()) {
-				log.debug("Starting wait interval during email processing (in seconds): " + waitInterval);
-			}
-			try {
-				Thread.sleep(waitInterval.longValue() * 1000L);
-			} catch (InterruptedException e) {
-				log.warn("InterruptedException while waiting during email processing: " + e);
-			}
-		}
-	}
-     
     /**
      * INTERNAL METHOD<br/>
 	 * @param jobId 
      * @param userMap
      * @param jobStatusReporter 
+	 * @param context the render context for this run, the users who were sent an email are marked as sent as soon as their email is handed off
+	 * @param sender sends the rendered emails for this run (rate limited), this waits for all the sends in the page to finish
 	 * @return
 	 */
-	protected List<String> processConsolidatedEmails(String jobId, List<Map<String,Object>> userMap, JobStatusReporter jobStatusReporter) {
-		Integer reportingInterval = (Integer) this.settings.get(EvalSettings.LOG_PROGRESS_EVERY);
-		if(reportingInterval == null) {
-			// setting reportingInterval to zero results in no incremental reports.
-			reportingInterval = 0;
-		}
+	protected List<String> processConsolidatedEmails(String jobId, List<Map<String,Object>> userMap, JobStatusReporter jobStatusReporter,
+			ConsolidatedEmailContext context, ConsolidatedEmailSender sender) {
 		int userCounter = 0;
 		int emailCounter = 0;
 		List<String> recipients = new ArrayList<>();
-		Set<String> inProgressEvaluationOwners = new HashSet<>();
-		boolean saveWithoutSubmit = (Boolean) settings.get(EvalSettings.ENABLE_JOB_COMPLETION_EMAIL);
-		if (saveWithoutSubmit) {
-		    inProgressEvaluationOwners = evaluationService.getInProgressEvaluationOwners();
-		}
+		// users whose rendered emails are identical share one email (up to the max recipients)
+		Map<String, List<Map<String,Object>>> groups = new LinkedHashMap<>();
+		Map<String, String[]> groupContents = new HashMap<>();
+		List<List<Map<String,Object>>> sentEntries = new ArrayList<>();
+		List<Future<List<String>>> sends = new ArrayList<>();
+		context.loadUsers(userMap);
     	for(Map<String,Object> entry : userMap) {
     		String userId = (String) entry.get(EvalConstants.KEY_USER_ID);
     		Date earliestDueDate = (Date) entry.get(EvalConstants.KEY_EARLIEST_DUE_DATE);
     		Long emailTemplateId = (Long) entry.get(EvalConstants.KEY_EMAIL_TEMPLATE_ID);
     		
-    		EvalEmailTemplate template = evaluationService.getEmailTemplate(emailTemplateId);
+    		EvalEmailTemplate template = context.getTemplate(emailTemplateId);
+    		EvalUser user = context.getUser(userId);
     			
     		Map<String, String> replacementValues = new HashMap<>();
-    		EvalUser user = commonLogic.getEvalUserById(userId);
-    		// get user's locale
-    		Locale locale = commonLogic.getUserLocale(userId);
-    	    // use a date which is related to the current users locale
-    	    DateFormat df;
-    	    boolean useDateTime = (Boolean) settings.get(EvalSettings.EVAL_USE_DATE_TIME);
-    	    if (useDateTime) {
-	            // show date and time if date/time enabled
-	            df = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM, locale);
-    	    } else {
-	            df = DateFormat.getDateInstance(DateFormat.MEDIUM, locale);
-	        }
-			// add date to replacementValues
-			replacementValues.put("EarliestEvalDueDate",df.format(earliestDueDate));
-			replacementValues.put("EvalCLE", commonLogic.getConfigurationSetting("ui.service", "Sakai"));
+			// add date to replacementValues, use a date which is related to the current users locale
+			replacementValues.put("EarliestEvalDueDate", context.getDateFormat(context.getLocale(userId)).format(earliestDueDate));
+			replacementValues.put("EvalCLE", context.evalCLE);
 			// get eval tool title from settings? from message bundle?
 			replacementValues.put("EvalToolTitle", "Teaching Evaluations");
 			replacementValues.put("EvalSite", "MyWorkspace");
-			String from = (String) settings.get(EvalSettings.FROM_EMAIL_ADDRESS);
 			// we can get it from the eval if needed, but it should come from settings
-			replacementValues.put("HelpdeskEmail",from);
-			replacementValues.put("MyWorkspaceDashboard", commonLogic.getMyWorkspaceDashboard(userId));
-			replacementValues.put("InProgress", (inProgressEvaluationOwners.contains(userId) ? "true" : "false"));
-			replacementValues.put("URLtoSystem", commonLogic.getServerUrl());
+			replacementValues.put("HelpdeskEmail", context.from);
+			replacementValues.put("MyWorkspaceDashboard", context.getMyWorkspaceDashboard(userId));
+			replacementValues.put("InProgress", (context.inProgressEvaluationOwners.contains(userId) ? "true" : "false"));
+			replacementValues.put("URLtoSystem", context.serverUrl);
 			try {
 				String message = TextTemplateLogicUtils.processTextTemplate(template.getMessage(), replacementValues);
 				String subject = TextTemplateLogicUtils.processTextTemplate(template.getSubject(), replacementValues);
@@ -1145,9 +1331,16 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
 					}
 					log.warn("Error trying to send consolidated email to user " + user.displayId, new RuntimeException("\nsubject == " + subject + "\nmessage == " + message));
 				} else {
-					this.commonLogic.sendEmailsToUsers(from, new String[]{userId}, subject, message, false, EvalConstants.EMAIL_DELIVERY_DEFAULT);
-					emailCounter++;
-					recipients.add(user.displayId);
+					String key = subject + "\u0000" + message;
+					List<Map<String,Object>> group = groups.computeIfAbsent(key, k -> new ArrayList<>());
+					groupContents.putIfAbsent(key, new String[] {subject, message});
+					group.add(entry);
+					if (group.size() >= sender.maxRecipients) {
+						// this only queues the email, the send results are collected below
+						sends.add(sender.send(context.from, group, subject, message));
+						sentEntries.add(group);
+						groups.remove(key);
+					}
 				}
 			} catch (Exception e) {
 				if(jobStatusReporter != null) {
@@ -1155,19 +1348,319 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
 				}
 				log.warn("Error trying to send consolidated email to user " + user.displayId, e);
 			}
+    	}
+		for (Map.Entry<String, List<Map<String,Object>>> group : groups.entrySet()) {
+			String[] contents = groupContents.get(group.getKey());
+			sends.add(sender.send(context.from, group.getValue(), contents[0], contents[1]));
+			sentEntries.add(group.getValue());
+		}
+		int queued = 0;
+		for (List<Map<String,Object>> group : sentEntries) {
+			queued += group.size();
+		}
+		userCounter = userMap.size() - queued;
+		// the users whose emails could not be rendered are done (as errors)
+		int handled = userCounter;
+		for (int i = 0; i < sends.size(); i++) {
+			List<Map<String,Object>> group = sentEntries.get(i);
+			List<String> sentTo;
+			try {
+				sentTo = sends.get(i).get();
+			} catch (ExecutionException e) {
+				sentTo = new ArrayList<>();
+				if(jobStatusReporter != null) {
+					jobStatusReporter.reportError(jobId, false, "error", "Error attempting to send email to " + group.size() + " users. " + e.getCause());
+				}
+				log.warn("Error trying to send consolidated email to " + group.size() + " users", e.getCause());
+			} catch (InterruptedException e) {
+				// the emails which are not done yet are not marked so they will be found again by the next run
+				Thread.currentThread().interrupt();
+				log.warn("Interrupted while waiting for the consolidated emails to be sent, sent " + emailCounter + " of " + queued);
+				break;
+			}
+			handled += group.size();
+			Map<Long, List<String>> sentUserIds = new HashMap<>();
+			for (Map<String,Object> entry : group) {
+				String userId = (String) entry.get(EvalConstants.KEY_USER_ID);
+				if (sentTo.contains(userId)) {
+					Long emailTemplateId = (Long) entry.get(EvalConstants.KEY_EMAIL_TEMPLATE_ID);
+					emailCounter++;
+					recipients.add(context.getUser(userId).displayId);
+					sentUserIds.computeIfAbsent(emailTemplateId, k -> new ArrayList<>()).add(userId);
+				}
 
-    		if(jobId != null && reportingInterval > 0) {
-	    		userCounter++;
-	    		if(userCounter % reportingInterval == 0) {
-	    			if(jobStatusReporter != null) {
-	    				jobStatusReporter.reportProgress(jobId, "ProcessingEmails", "Processed " + userCounter + " of " + userMap.size() + " evaluatees and sent " + emailCounter + " emails.");
-	    			}
+	    		if(jobId != null && context.reportingInterval > 0) {
+		    		userCounter++;
+		    		if(userCounter % context.reportingInterval == 0) {
+		    			if(jobStatusReporter != null) {
+		    				jobStatusReporter.reportProgress(jobId, "ProcessingEmails", "Processed " + userCounter + " of " + userMap.size() + " evaluatees and sent " + emailCounter + " emails.");
+		    			}
+		    		}
 	    		}
-    		}
-    	}
+			}
+			// mark this group as soon as it is handed off so a failed run only sends the groups in flight again,
+			// the emails which were not handed off are not marked and will be found again by the next run
+			for (Map.Entry<Long, List<String>> sent : sentUserIds.entrySet()) {
+				try {
+					this.evaluationService.markConsolidatedEmailsSent(context.sendingAvailableEmails, sent.getKey(), sent.getValue());
+				} catch (Exception e) {
+					log.warn("Failed to mark consolidated emails for template (" + sent.getKey() + ") as sent to " + sent.getValue().size() + " users, they may be sent again: " + e);
+				}
+			}
+		}
+		context.countPage(handled, emailCounter);
 		return recipients;
 	}
 
+	/**
+	 * INTERNAL CLASS<br/>
+	 * Everything needed to render the consolidated emails which is the same for all the recipients in a run,
+	 * this is loaded once when the run starts (templates and date formats as they are first used),
+	 * the users, locales and dashboard urls are loaded for a whole page at a time
+	 */
+	protected class ConsolidatedEmailContext {
+
+		protected final boolean sendingAvailableEmails;
+		protected final int reportingInterval;
+		protected final boolean useDateTime;
+		protected final String from;
+		protected final String evalCLE;
+		protected final String serverUrl;
+		protected final Set<String> inProgressEvaluationOwners;
+
+		private JobStatusReporter jobStatusReporter;
+		private String jobId;
+		private int total;
+		private int processed;
+		private int sent;
+		private int errors;
+
+		private final Map<Long, EvalEmailTemplate> templates = new HashMap<>();
+		private final Map<Locale, DateFormat> dateFormats = new HashMap<>();
+		private final Map<String, EvalUser> users = new HashMap<>();
+		private final Map<String, Locale> locales = new HashMap<>();
+		private final Map<String, String> dashboards = new HashMap<>();
+
+		/**
+		 * @param sendingAvailableEmails true if these are available emails, false for reminders
+		 */
+		protected ConsolidatedEmailContext(boolean sendingAvailableEmails) {
+			this.sendingAvailableEmails = sendingAvailableEmails;
+			Integer interval = (Integer) settings.get(EvalSettings.LOG_PROGRESS_EVERY);
+			// setting reportingInterval to zero results in no incremental reports.
+			this.reportingInterval = interval == null ? 0 : interval;
+			this.useDateTime = (Boolean) settings.get(EvalSettings.EVAL_USE_DATE_TIME);
+			this.from = (String) settings.get(EvalSettings.FROM_EMAIL_ADDRESS);
+			this.evalCLE = commonLogic.getConfigurationSetting("ui.service", "Sakai");
+			this.serverUrl = commonLogic.getServerUrl();
+			boolean saveWithoutSubmit = (Boolean) settings.get(EvalSettings.ENABLE_JOB_COMPLETION_EMAIL);
+			if (saveWithoutSubmit) {
+				this.inProgressEvaluationOwners = evaluationService.getInProgressEvaluationOwners();
+			} else {
+				this.inProgressEvaluationOwners = new HashSet<>();
+			}
+		}
+
+		/**
+		 * Start counting the progress of this run, the total is the number of due mappings
+		 * @param jobStatusReporter the counts are only reported if this keeps structured progress
+		 * @param jobId
+		 */
+		protected void startCounts(JobStatusReporter jobStatusReporter, String jobId) {
+			this.jobStatusReporter = jobStatusReporter;
+			this.jobId = jobId;
+			if (jobId != null && jobStatusReporter instanceof JobMetricsReporter) {
+				this.total = evaluationService.countConsolidatedEmailMapping();
+				reportCounts();
+			}
+		}
+
+		/**
+		 * Add the results of a page to the counts for this run and report them
+		 * @param pageProcessed the number of mappings in the page which are done
+		 * @param pageSent the number of mappings in the page which were sent emails
+		 */
+		protected void countPage(int pageProcessed, int pageSent) {
+			processed += pageProcessed;
+			sent += pageSent;
+			errors += pageProcessed - pageSent;
+			reportCounts();
+		}
+
+		private void reportCounts() {
+			reportConsolidatedEmailCounts(jobStatusReporter, jobId,
+					sendingAvailableEmails ? JOB_PHASE_ANNOUNCEMENTS : JOB_PHASE_REMINDERS, total, processed, sent, errors);
+		}
+
+		/**
+		 * Load the users, locales and dashboard urls for all the users in a page of the mapping,
+		 * this replaces the ones from the previous page
+		 * @param userMap a page of the consolidated email mapping
+		 */
+		protected void loadUsers(List<Map<String,Object>> userMap) {
+			users.clear();
+			locales.clear();
+			dashboards.clear();
+			List<String> userIds = new ArrayList<>(userMap.size());
+			for (Map<String,Object> entry : userMap) {
+				String userId = (String) entry.get(EvalConstants.KEY_USER_ID);
+				if (! locales.containsKey(userId)) {
+					userIds.add(userId);
+					locales.put(userId, commonLogic.getUserLocale(userId));
+					dashboards.put(userId, commonLogic.getMyWorkspaceDashboard(userId));
+				}
+			}
+			for (EvalUser user : commonLogic.getEvalUsersByIds(userIds)) {
+				users.put(user.userId, user);
+			}
+		}
+
+		/**
+		 * @param emailTemplateId
+		 * @return the email template (only looked up once per run)
+		 */
+		protected EvalEmailTemplate getTemplate(Long emailTemplateId) {
+			return templates.computeIfAbsent(emailTemplateId, id -> evaluationService.getEmailTemplate(id));
+		}
+
+		/**
+		 * @param userId
+		 * @return the user from the current page (looked up on its own if it was not in the page)
+		 */
+		protected EvalUser getUser(String userId) {
+			EvalUser user = users.get(userId);
+			if (user == null) {
+				user = commonLogic.getEvalUserById(userId);
+				users.put(userId, user);
+			}
+			return user;
+		}
+
+		/**
+		 * @param userId
+		 * @return the locale of the user
+		 */
+		protected Locale getLocale(String userId) {
+			return locales.computeIfAbsent(userId, id -> commonLogic.getUserLocale(id));
+		}
+
+		/**
+		 * @param userId
+		 * @return the my workspace dashboard url for the user
+		 */
+		protected String getMyWorkspaceDashboard(String userId) {
+			if (! dashboards.containsKey(userId)) {
+				dashboards.put(userId, commonLogic.getMyWorkspaceDashboard(userId));
+			}
+			return dashboards.get(userId);
+		}
+
+		/**
+		 * @param locale
+		 * @return the date format for the locale (only made once per locale per run)
+		 */
+		protected DateFormat getDateFormat(Locale locale) {
+			return dateFormats.computeIfAbsent(locale, l -> useDateTime
+					// show date and time if date/time enabled
+					? DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM, l)
+					: DateFormat.getDateInstance(DateFormat.MEDIUM, l));
+		}
+	}
+
+	/**
+	 * INTERNAL CLASS<br/>
+	 * Sends the consolidated emails for a run from a small pool of threads, every send takes a token
+	 * from the rate limiter first (if the rate is limited) so the mail relay gets a steady stream of emails
+	 * instead of a whole batch followed by a pause, this must be shut down when the run is done
+	 */
+	protected class ConsolidatedEmailSender {
+
+		protected final EvalTokenBucket rateLimiter;
+		protected final int maxRecipients;
+		private final ExecutorService executor;
+
+		/**
+		 * @param batchSize the EMAIL_BATCH_SIZE setting
+		 * @param waitInterval the EMAIL_WAIT_INTERVAL setting (in seconds)
+		 */
+		protected ConsolidatedEmailSender(int batchSize, int waitInterval) {
+			int rate = commonLogic.getConfigurationSetting(SETTING_CONSOLIDATED_EMAIL_RATE, 0);
+			int burst = commonLogic.getConfigurationSetting(SETTING_CONSOLIDATED_EMAIL_BURST, 0);
+			int threads = commonLogic.getConfigurationSetting(SETTING_CONSOLIDATED_EMAIL_THREADS, 2);
+			maxRecipients = Math.max(1, commonLogic.getConfigurationSetting(SETTING_CONSOLIDATED_EMAIL_MAX_RECIPIENTS, 20));
+			double permitsPerSecond = rate;
+			if (permitsPerSecond <= 0d && waitInterval > 0) {
+				// the same average rate as sending a batch and then waiting
+				permitsPerSecond = batchSize / (double) waitInterval;
+			}
+			if (permitsPerSecond > 0d) {
+				rateLimiter = new EvalTokenBucket(permitsPerSecond, burst > 0 ? burst : (int) Math.ceil(permitsPerSecond));
+			} else {
+				rateLimiter = null;
+			}
+			final AtomicInteger threadCount = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(Math.max(1, threads), (Runnable r) -> {
+				Thread t = new Thread(r, "eval-email-" + threadCount.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+			if (log.isDebugEnabled()) {
+				log.debug("Sending consolidated emails with " + Math.max(1, threads) + " threads at "
+						+ (rateLimiter == null ? "no limit" : permitsPerSecond + " per second"));
+			}
+		}
+
+		/**
+		 * Queue an email to a group of users who all get the same email, the users only go on the envelope,
+		 * if the email cannot be sent to the whole group then it is sent to each user on their own
+		 * so one bad address does not hold back the rest
+		 * @param entries the consolidated email mapping entries for the users
+		 * @return the pending send, this gives the ids of the users the email was sent to
+		 */
+		protected Future<List<String>> send(String from, List<Map<String,Object>> entries, String subject, String message) {
+			final List<String> userIds = new ArrayList<>(entries.size());
+			for (Map<String,Object> entry : entries) {
+				userIds.add((String) entry.get(EvalConstants.KEY_USER_ID));
+			}
+			return executor.submit(() -> {
+				try {
+					send(from, userIds.toArray(new String[userIds.size()]), subject, message);
+					return userIds;
+				} catch (RuntimeException e) {
+					if (userIds.size() == 1) {
+						throw e;
+					}
+					log.warn("Failed to send consolidated email to " + userIds.size() + " users, sending to each user instead: " + e);
+				}
+				List<String> sentTo = new ArrayList<>();
+				for (String userId : userIds) {
+					try {
+						send(from, new String[] {userId}, subject, message);
+						sentTo.add(userId);
+					} catch (RuntimeException e) {
+						log.warn("Error trying to send consolidated email to user " + userId + ": " + e);
+					}
+				}
+				return sentTo;
+			});
+		}
+
+		private void send(String from, String[] userIds, String subject, String message) throws InterruptedException {
+			if (rateLimiter != null) {
+				// one token per email, however many users it goes to
+				rateLimiter.acquire();
+			}
+			commonLogic.sendEmailsToUsers(from, userIds, subject, message, false, EvalConstants.EMAIL_DELIVERY_DEFAULT);
+		}
+
+		/**
+		 * Stop the sending threads, any emails which were not sent yet are dropped
+		 */
+		protected void shutdown() {
+			executor.shutdownNow();
+		}
+	}
+
 
     /**
      * INTERNAL METHOD<br/>
@@ -1189,6 +1682,38 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
         String[] emails = commonLogic.sendEmailsToUsers(from, toUserIds, subject, message, true, deliveryOption);
         return emails;
     }
+
+    /**
+     * INTERNAL METHOD<br/>
+     * Send a notification email to a set of users, this goes through the email outbox when it is enabled
+     * (the emails are then sent in the background and retried if they fail),
+     * otherwise this is the same as {@link #sendUsersEmails(String, String[], String, String)}
+     * 
+     * @param from the email address this email appears to come from
+     * @param toUserIds the userIds this message should be sent to
+     * @param subject the message subject
+     * @param message the message to send
+     * @param evaluationId the evaluation this notification is for
+     * @param emailType the type of notification (the email template type)
+     * @param round (OPTIONAL) identifies this sending of the notification, users are only sent
+     * the same notification once per round
+     * @return an array of email addresses that this message was sent (or queued) to
+     */
+    public String[] sendUsersEmails(String from, String[] toUserIds, String subject, String message,
+            Long evaluationId, String emailType, String round) {
+        if (emailOutbox != null && emailOutbox.isEnabled()) {
+            return emailOutbox.queueEmails(from, toUserIds, subject, message, evaluationId, emailType, round);
+        }
+        return sendUsersEmails(from, toUserIds, subject, message);
+    }
+
+    /**
+     * @return the outbox round for the available emails of an evaluation, the emails are sent again
+     * if the start date of the evaluation changes
+     */
+    private String getAvailableRound(EvalEvaluation eval) {
+        return eval.getStartDate() == null ? null : Long.toString(eval.getStartDate().getTime());
+    }
     /**
      * INTERNAL METHOD<br/>
      * Get an email template by type and evaluationId or fail
@@ -1312,7 +1837,8 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
                 //make email and do the variable substitutions
                 EvalEmailMessage em = makeEmailMessage(message, subject, eval, null);
                 // send the actual email for this user
-                String[] emailAddresses = sendUsersEmails(from, new String[]{userId}, em.subject, em.message);
+                String[] emailAddresses = sendUsersEmails(from, new String[]{userId}, em.subject, em.message,
+                        evaluationId, EvalConstants.EMAIL_TEMPLATE_SUBMITTED, Long.toString(System.currentTimeMillis()));
                 if (emailAddresses.length > 0){
                     log.info("Sent Submission Confirmation email to " + userId + ". (attempted to send to "+emailAddresses.length+")");	                
                     commonLogic.registerEntityEvent(EVENT_EMAIL_SUBMISSION, EvalEvaluation.class, eval.getId().toString());
@@ -16,6 +16,7 @@ package org.sakaiproject.evaluation.logic;
 
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -131,6 +132,15 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
         return exists;
     }
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#getEvaluationDataVersion(java.lang.Long)
+     */
+    public String getEvaluationDataVersion(Long evaluationId) {
+        EvalEvaluation eval = getEvaluationOrFail(evaluationId);
+        long lastModified = eval.getLastModified() == null ? 0l : eval.getLastModified().getTime();
+        return lastModified + ":" + dao.getResponseDataVersion(evaluationId);
+    }
+
     /* (non-Javadoc)
      * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#getEvaluationByEid(java.lang.String)
      */
@@ -243,9 +253,15 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
     public String updateEvaluationState(Long evaluationId) {
         log.debug("evalId: " + evaluationId);
         EvalEvaluation eval = getEvaluationOrFail(evaluationId);
+        String currentState = eval.getState();
 
         // fix the state of this eval if needed, save it, and return the state constant 
-        return returnAndFixEvalState(eval, true);
+        String state = returnAndFixEvalState(eval, true);
+        if (! state.equals(currentState)) {
+            // users join or leave the email processing queue when the eval opens or closes
+            dao.updateConsolidatedEmailRecipients(evaluationId);
+        }
+        return state;
     }
 
     /* (non-Javadoc)
@@ -331,6 +347,13 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
         return dao.getParticipantsForEval(evaluationId, userId, evalGroupIds, assignTypeConstant, assignStatusConstant, includeConstant, evalStateConstant);
     }
 
+    public Map<String, Set<String>> getParticipantUserIdsByGroup(Long evaluationId, String includeConstant) {
+        if (evaluationId == null) {
+            throw new IllegalArgumentException("evaluationId must be set");
+        }
+        return dao.getParticipantUserIdsByGroup(evaluationId, includeConstant);
+    }
+
     public int countParticipantsForEval(Long evaluationId, String[] evalGroupIds) {
         int totalEnrollments = 0;
         EvalEvaluation eval = getEvaluationOrFail(evaluationId);
@@ -1112,6 +1135,14 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
 		
 		return this.dao.getConsolidatedEmailMapping(sendingAvailableEmails, pageSize, page);
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#markConsolidatedEmailsSent(boolean, java.lang.Long, java.util.Collection)
+	 */
+	public int markConsolidatedEmailsSent(boolean sendingAvailableEmails, Long emailTemplateId, Collection<String> userIds) {
+		return this.dao.markConsolidatedEmailsSent(sendingAvailableEmails, emailTemplateId, userIds);
+	}
     
 	/*
 	 * (non-Javadoc)
@@ -1129,6 +1160,14 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
 	public int resetConsolidatedEmailRecipients() {
 		return this.dao.resetConsolidatedEmailRecipients();
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#updateConsolidatedEmailRecipients(java.lang.Long)
+	 */
+	public int updateConsolidatedEmailRecipients(Long evaluationId) {
+		return this.dao.updateConsolidatedEmailRecipients(evaluationId);
+	}
 	
  	public Set<String> getInProgressEvaluationOwners() {
  		boolean activeEvaluationsOnly = true;
@@ -1148,6 +1187,14 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
 		return this.dao.countDistinctGroupsInConsolidatedEmailMapping();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#countConsolidatedEmailMapping()
+	 */
+	public int countConsolidatedEmailMapping() {
+		return this.dao.countConsolidatedEmailMapping();
+	}
+
 
     
 	public List<EvalEvaluation> getEvaluationsForEvalGroups(String[] evalGroupIds, int startResult, int maxResults){
@@ -136,6 +136,11 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
        this.evalBeanUtils = evalBeanUtils;
     }
 
+    private EvalDeliveryService deliveryService;
+    public void setDeliveryService(EvalDeliveryService deliveryService) {
+       this.deliveryService = deliveryService;
+    }
+
 
     // INIT method
     public void init() {
@@ -491,6 +496,8 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
                 commonLogic.registerEntityEvent(EVENT_EVAL_UPDATE, evaluation);
                 // call logic to manage Quartz scheduled jobs
                 evalJobLogic.processEvaluationStateChange(evaluation.getId(), EvalJobLogic.ACTION_UPDATE);
+                // the state, due date or email templates may have changed
+                dao.updateConsolidatedEmailRecipients(evaluation.getId());
             }
         }
 
@@ -572,6 +579,9 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
                 dao.delete(evaluation);
             }
 
+            // drop the users of this evaluation from the email processing queue
+            dao.updateConsolidatedEmailRecipients(evaluationId);
+
             // fire the evaluation deleted event
             commonLogic.registerEntityEvent(EVENT_EVAL_DELETE, evaluation);
 
@@ -977,6 +987,8 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
             // check permissions
             if ( securityChecks.checkRemoveAssignments(null, null, eval) ) {
                 dao.deleteSet(EvalAssignUser.class, userAssignmentIds);
+                dao.updateConsolidatedEmailRecipients(evaluationId);
+                clearFormModels(evaluationId);
             }
         }
     }
@@ -990,6 +1002,8 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
             // get an eval from the id
             EvalEvaluation eval = getEvaluationOrFail(evaluationId);
             saveEvalAssignUsers(eval, assignUsers);
+            dao.updateConsolidatedEmailRecipients(evaluationId);
+            clearFormModels(evaluationId);
         }
     }
 
@@ -1203,6 +1217,10 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
         }
 
         log.info(message);
+        if (! changedUserAssignments.isEmpty()) {
+            dao.updateConsolidatedEmailRecipients(evaluationId);
+            clearFormModels(evaluationId);
+        }
         return changedUserAssignments;
     }
 
@@ -1516,6 +1534,7 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
 	            // sync all the user assignments after the groups are saved
 	            synchronizeUserAssignmentsForced(eval, null, ! appendMode);
             }
+            clearFormModels(evaluationId);
 
             return results;
         }
@@ -1563,6 +1582,7 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
             dao.deleteMixedSet(new Set[] {eahs, groups});
             log.info("User (" + userId + ") deleted existing hierarchy assignments ("
                     + ArrayUtils.arrayToString(assignHierarchyIds) + ") and groups ("+groupListing.toString()+")");
+            clearFormModels(evaluationId);
 
             // sync all the user assignments after the groups are saved
             synchronizeUserAssignments(evaluationId, null);
@@ -1607,6 +1627,7 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
                 }
 
                 dao.save(assignGroup);
+                clearFormModels(eval.getId());
 
                 // if a late instructor opt-in, notify students in this group that an evaluation is available
                 if (EvalConstants.INSTRUCTOR_OPT_IN.equals(eval.getInstructorOpt())
@@ -1651,6 +1672,7 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
 
             // allow any other changes
             dao.save(assignGroup);
+            clearFormModels(eval.getId());
             log.info("User ("+userId+") updated existing assignGroup ("+assignGroup.getId()+") properties");
             
             Boolean syncUserAssignmentsOnGroupUpdate = (Boolean) this.settings.get(EvalSettings.SYNC_USER_ASSIGNMENTS_ON_GROUP_UPDATE);
@@ -1702,6 +1724,9 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
         Long assignGroupId = assignGroup.getId();
         dao.delete(assignGroup);
         log.info("User ("+userId+") deleted existing assign group ("+assignGroup.getId()+")");
+        if (assignGroup.getEvaluation() != null) {
+            clearFormModels(assignGroup.getEvaluation().getId());
+        }
 
         // also need to remove any user assignments related to this group
         List<EvalAssignUser> assignedUsers = dao.findBySearch(EvalAssignUser.class, new Search( new Restriction[] {
@@ -1713,6 +1738,16 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
         log.info("User assignments ("+assignedUsers.size()+") related to deleted assign group ("+assignGroup.getId()+") were removed for user ("+userId+")");
     }
 
+    /**
+     * The evaluation form depends on the assignments so cached copies must be dropped when they change
+     * @param evaluationId the evaluation which changed
+     */
+    private void clearFormModels(Long evaluationId) {
+        if (deliveryService != null) {
+            deliveryService.clearEvaluationFormModels(evaluationId);
+        }
+    }
+
     // EMAIL TEMPLATES
 
     public void saveEmailTemplate(EvalEmailTemplate emailTemplate, String userId) {
@@ -0,0 +1,379 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.logic.model.EvalReportJob;
+import org.sakaiproject.evaluation.logic.model.EvalUser;
+import org.sakaiproject.evaluation.model.EvalEvaluation;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs report jobs on a small bounded pool of worker threads and keeps the results as files
+ * in a local directory, jobs and their files are removed once they expire<br/>
+ * Reports are permission filtered for the user who asks for them so jobs are only ever shared
+ * between identical requests from the same user
+ */
+@Slf4j
+public class EvalReportJobManagerImpl implements EvalReportJobManager {
+
+    public static final String SETTING_WORKER_THREADS = "eval.reports.jobs.threads";
+    public static final String SETTING_QUEUE_SIZE = "eval.reports.jobs.queueSize";
+    public static final String SETTING_EXPIRE_SECONDS = "eval.reports.jobs.expireSeconds";
+    public static final String SETTING_ARTIFACT_DIRECTORY = "eval.reports.jobs.directory";
+
+    private EvalCommonLogic commonLogic;
+    public void setCommonLogic(EvalCommonLogic commonLogic) {
+        this.commonLogic = commonLogic;
+    }
+
+    private EvalEvaluationService evaluationService;
+    public void setEvaluationService(EvalEvaluationService evaluationService) {
+        this.evaluationService = evaluationService;
+    }
+
+    private SessionManager sessionManager;
+    public void setSessionManager(SessionManager sessionManager) {
+        this.sessionManager = sessionManager;
+    }
+
+    private ThreadPoolExecutor executor;
+    private File artifactDirectory;
+    private long expireMillis;
+
+    /**
+     * jobId -> job, guarded by this
+     */
+    private final Map<String, ReportJob> jobs = new HashMap<>();
+    /**
+     * dedupe key -> jobId, guarded by this
+     */
+    private final Map<String, String> jobKeys = new HashMap<>();
+
+    public void init() {
+        int threads = commonLogic.getConfigurationSetting(SETTING_WORKER_THREADS, 2);
+        int queueSize = commonLogic.getConfigurationSetting(SETTING_QUEUE_SIZE, 50);
+        int expireSeconds = commonLogic.getConfigurationSetting(SETTING_EXPIRE_SECONDS, 3600);
+        String directory = commonLogic.getConfigurationSetting(SETTING_ARTIFACT_DIRECTORY,
+                System.getProperty("java.io.tmpdir") + File.separator + "evaluation-reports");
+        expireMillis = expireSeconds * 1000l;
+        artifactDirectory = new File(directory);
+        if (! artifactDirectory.isDirectory() && ! artifactDirectory.mkdirs()) {
+            log.warn("Could not create the report job directory: " + artifactDirectory.getAbsolutePath());
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = (Runnable r) -> {
+            Thread t = new Thread(r, "eval-report-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), threadFactory);
+        log.info("Init report jobs: threads=" + threads + ", queue=" + queueSize + ", dir=" + artifactDirectory.getAbsolutePath());
+    }
+
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        synchronized (this) {
+            for (ReportJob job : jobs.values()) {
+                deleteArtifact(job);
+            }
+            jobs.clear();
+            jobKeys.clear();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalReportJobManager#submitReportJob(java.lang.Long, java.lang.String[], java.lang.String, java.lang.String)
+     */
+    public String submitReportJob(Long evaluationId, String[] groupIds, String evaluateeId, String exportType) {
+        if (! isValidExportType(exportType)) {
+            throw new IllegalArgumentException("Invalid report type: " + exportType);
+        }
+        EvalEvaluation evaluation = evaluationService.getEvaluationById(evaluationId);
+        if (evaluation == null) {
+            throw new IllegalArgumentException("Invalid evaluation id, cannot find evaluation: " + evaluationId);
+        }
+        String userId = commonLogic.getCurrentUserId();
+        EvalUser user = commonLogic.getEvalUserById(userId);
+        String[] groups = groupIds == null ? new String[0] : groupIds.clone();
+        Arrays.sort(groups);
+        String dataVersion = evaluationService.getEvaluationDataVersion(evaluationId);
+        String key = evaluationId + "|" + String.join(",", groups) + "|" + exportType + "|" + evaluateeId
+                + "|" + dataVersion + "|" + userId;
+
+        synchronized (this) {
+            purgeExpiredJobs();
+            String existingId = jobKeys.get(key);
+            if (existingId != null) {
+                ReportJob existing = jobs.get(existingId);
+                if (existing != null && existing.isReusable()) {
+                    log.debug("Reusing report job " + existingId + " for " + key);
+                    return existingId;
+                }
+            }
+            ReportJob job = new ReportJob();
+            job.info.id = UUID.randomUUID().toString();
+            job.info.evaluationId = evaluationId;
+            job.info.groupIds = groups;
+            job.info.evaluateeId = evaluateeId;
+            job.info.exportType = exportType;
+            job.info.userId = userId;
+            job.info.dataVersion = dataVersion;
+            job.info.status = EvalConstants.REPORT_JOB_STATUS_QUEUED;
+            job.info.created = new Date();
+            job.key = key;
+            job.userEid = user == null ? null : user.username;
+            job.evaluation = evaluation;
+            job.artifact = new File(artifactDirectory, job.info.id);
+            try {
+                job.future = executor.submit(() -> runJob(job));
+            } catch (RejectedExecutionException e) {
+                throw new IllegalStateException("The report queue is full, try again later", e);
+            }
+            jobs.put(job.info.id, job);
+            jobKeys.put(key, job.info.id);
+            return job.info.id;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalReportJobManager#getReportJob(java.lang.String)
+     */
+    public synchronized EvalReportJob getReportJob(String jobId) {
+        ReportJob job = getJobForCurrentUser(jobId);
+        if (job == null) {
+            return null;
+        }
+        EvalReportJob copy = new EvalReportJob(job.info);
+        copy.bytesWritten = job.bytesWritten;
+        return copy;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalReportJobManager#cancelReportJob(java.lang.String)
+     */
+    public synchronized boolean cancelReportJob(String jobId) {
+        ReportJob job = getJobForCurrentUser(jobId);
+        if (job == null || job.info.finished != null) {
+            return false;
+        }
+        job.cancelled = true;
+        if (job.future != null) {
+            job.future.cancel(false);
+        }
+        finish(job, EvalConstants.REPORT_JOB_STATUS_CANCELLED, null);
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalReportJobManager#getReportJobArtifact(java.lang.String)
+     */
+    public synchronized File getReportJobArtifact(String jobId) {
+        ReportJob job = getJobForCurrentUser(jobId);
+        if (job == null || ! EvalConstants.REPORT_JOB_STATUS_COMPLETE.equals(job.info.status)
+                || ! job.artifact.isFile()) {
+            return null;
+        }
+        return job.artifact;
+    }
+
+    /**
+     * Generates the report for a job in a worker thread as the user who submitted it
+     */
+    private void runJob(ReportJob job) {
+        synchronized (this) {
+            if (job.cancelled) {
+                return;
+            }
+            job.info.status = EvalConstants.REPORT_JOB_STATUS_RUNNING;
+            job.info.started = new Date();
+        }
+        try (OutputStream out = new JobOutputStream(job, new BufferedOutputStream(new FileOutputStream(job.artifact)))) {
+            generateReport(job.info.userId, job.userEid, job.evaluation, job.info.groupIds, job.info.evaluateeId,
+                    job.info.exportType, out);
+            out.flush();
+            synchronized (this) {
+                if (! job.cancelled) {
+                    finish(job, EvalConstants.REPORT_JOB_STATUS_COMPLETE, null);
+                }
+            }
+        } catch (Exception e) {
+            synchronized (this) {
+                if (! job.cancelled) {
+                    log.warn("Report job failed: " + job.info + ": " + e.getMessage(), e);
+                    finish(job, EvalConstants.REPORT_JOB_STATUS_FAILED, e.getMessage());
+                }
+            }
+        }
+        if (job.cancelled) {
+            deleteArtifact(job);
+        }
+    }
+
+    /**
+     * Writes the report for a job using the existing exporters, runs in the worker thread
+     * with the session set to the user who submitted the job
+     */
+    protected void generateReport(String userId, String userEid, EvalEvaluation evaluation, String[] groupIds,
+            String evaluateeId, String exportType, OutputStream out) {
+        Session session = sessionManager.getCurrentSession();
+        try {
+            session.setUserId(userId);
+            session.setUserEid(userEid);
+            evaluationService.exportReport(evaluation, groupIds, evaluateeId, out, exportType);
+        } finally {
+            session.clear();
+        }
+    }
+
+    /**
+     * Must hold the lock on this
+     */
+    private void finish(ReportJob job, String status, String message) {
+        job.info.status = status;
+        job.info.message = message;
+        job.info.finished = new Date();
+        if (! EvalConstants.REPORT_JOB_STATUS_COMPLETE.equals(status)) {
+            jobKeys.remove(job.key, job.info.id);
+        }
+    }
+
+    /**
+     * Must hold the lock on this
+     */
+    private ReportJob getJobForCurrentUser(String jobId) {
+        if (jobId == null) {
+            return null;
+        }
+        ReportJob job = jobs.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        String userId = commonLogic.getCurrentUserId();
+        if (! job.info.userId.equals(userId) && ! commonLogic.isUserAdmin(userId)) {
+            throw new SecurityException("User (" + userId + ") cannot access report job (" + jobId + ")");
+        }
+        return job;
+    }
+
+    /**
+     * Removes the jobs (and files) which finished longer ago than the expiry time,
+     * must hold the lock on this
+     */
+    private void purgeExpiredJobs() {
+        long cutoff = System.currentTimeMillis() - expireMillis;
+        for (Iterator<ReportJob> it = jobs.values().iterator(); it.hasNext();) {
+            ReportJob job = it.next();
+            if (job.info.finished != null && job.info.finished.getTime() < cutoff) {
+                it.remove();
+                jobKeys.remove(job.key, job.info.id);
+                deleteArtifact(job);
+            }
+        }
+    }
+
+    private void deleteArtifact(ReportJob job) {
+        if (job.artifact != null && job.artifact.exists() && ! job.artifact.delete()) {
+            log.warn("Could not delete report job file: " + job.artifact.getAbsolutePath());
+        }
+    }
+
+    private boolean isValidExportType(String exportType) {
+        return EvalEvaluationService.CSV_RESULTS_REPORT.equals(exportType)
+                || EvalEvaluationService.XLS_RESULTS_REPORT.equals(exportType)
+                || EvalEvaluationService.PDF_RESULTS_REPORT.equals(exportType)
+                || EvalEvaluationService.PDF_RESULTS_REPORT_INDIVIDUAL.equals(exportType)
+                || EvalEvaluationService.CSV_TAKERS_REPORT.equals(exportType);
+    }
+
+
+    /**
+     * The internal state of a job
+     */
+    private static class ReportJob {
+        final EvalReportJob info = new EvalReportJob();
+        String key;
+        String userEid;
+        EvalEvaluation evaluation;
+        File artifact;
+        Future<?> future;
+        volatile boolean cancelled = false;
+        volatile long bytesWritten = 0;
+
+        boolean isReusable() {
+            return info.finished == null
+                    || (EvalConstants.REPORT_JOB_STATUS_COMPLETE.equals(info.status) && artifact.isFile());
+        }
+    }
+
+    /**
+     * Counts the bytes written for progress reporting and stops the report once the job is cancelled
+     */
+    private static class JobOutputStream extends FilterOutputStream {
+        private final ReportJob job;
+
+        JobOutputStream(ReportJob job, OutputStream out) {
+            super(out);
+            this.job = job;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkCancelled();
+            out.write(b);
+            job.bytesWritten++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkCancelled();
+            out.write(b, off, len);
+            job.bytesWritten += len;
+        }
+
+        private void checkCancelled() throws IOException {
+            if (job.cancelled) {
+                throw new IOException("Report job cancelled: " + job.info.id);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.entity;
+
+import java.util.List;
+import java.util.Map;
+
+import org.sakaiproject.entitybroker.EntityView;
+import org.sakaiproject.entitybroker.entityprovider.CoreEntityProvider;
+import org.sakaiproject.entitybroker.entityprovider.annotations.EntityCustomAction;
+import org.sakaiproject.entitybroker.entityprovider.capabilities.ActionsExecutable;
+import org.sakaiproject.entitybroker.entityprovider.capabilities.AutoRegisterEntityProvider;
+import org.sakaiproject.entitybroker.entityprovider.capabilities.Describeable;
+import org.sakaiproject.entitybroker.entityprovider.capabilities.Outputable;
+import org.sakaiproject.entitybroker.entityprovider.extension.Formats;
+import org.sakaiproject.evaluation.jobmonitor.JobMetricsReporter;
+import org.sakaiproject.evaluation.logic.EvalCommonLogic;
+import org.sakaiproject.evaluation.logic.scheduling.ConsolidatedNotificationsJob;
+import org.sakaiproject.evaluation.model.EvalJobMetric;
+
+/**
+ * Implementation for the entity provider for the job progress, only admins can see it
+ */
+public class EvalJobMetricsEntityProviderImpl implements EvalJobMetricsEntityProvider, CoreEntityProvider, Describeable, AutoRegisterEntityProvider, ActionsExecutable, Outputable {
+
+    private EvalCommonLogic commonLogic;
+    public void setCommonLogic(EvalCommonLogic commonLogic) {
+        this.commonLogic = commonLogic;
+    }
+
+    private JobMetricsReporter jobMetricsReporter;
+    public void setJobMetricsReporter(JobMetricsReporter jobMetricsReporter) {
+        this.jobMetricsReporter = jobMetricsReporter;
+    }
+
+    public String getEntityPrefix() {
+        return ENTITY_PREFIX;
+    }
+
+    public boolean entityExists(String id) {
+        // the ids are the job run ids
+        return id != null && ! jobMetricsReporter.getJobMetrics(id).isEmpty();
+    }
+
+    /**
+     * Get the latest progress of each phase of the last run of a job, 
+     * GET /direct/eval-jobmetrics/latest/{jobName} (the consolidated email job if there is no job name)
+     */
+    @EntityCustomAction(action = "latest", viewKey = EntityView.VIEW_LIST)
+    public List<EvalJobMetric> getLatestJobMetrics(EntityView view, Map<String,Object> params) {
+        checkAdmin();
+        String jobName = view.getPathSegment(2);
+        if (jobName == null) {
+            jobName = ConsolidatedNotificationsJob.JOB_NAME;
+        }
+        return jobMetricsReporter.getLatestJobMetrics(jobName);
+    }
+
+    /**
+     * Get all the progress samples for a job run, GET /direct/eval-jobmetrics/run/{jobId}
+     */
+    @EntityCustomAction(action = "run", viewKey = EntityView.VIEW_LIST)
+    public List<EvalJobMetric> getJobMetrics(EntityView view, Map<String,Object> params) {
+        checkAdmin();
+        String jobId = view.getPathSegment(2);
+        if (jobId == null) {
+            throw new IllegalArgumentException("Must include the job id in the path: e.g. /direct/"+ENTITY_PREFIX+"/run/{jobId}");
+        }
+        return jobMetricsReporter.getJobMetrics(jobId);
+    }
+
+    private void checkAdmin() {
+        String currentUserId = commonLogic.getCurrentUserId();
+        if (! commonLogic.isUserAdmin(currentUserId)) {
+            throw new SecurityException("Only admins can see the job progress, user: " + currentUserId);
+        }
+    }
+
+    public String[] getHandledOutputFormats() {
+        return new String[] {Formats.JSON, Formats.XML};
+    }
+
+}
@@ -14,7 +14,10 @@
  */
 package org.sakaiproject.evaluation.logic.entity;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.Map;
 
 import org.sakaiproject.entitybroker.EntityView;
@@ -24,8 +27,12 @@ import org.sakaiproject.entitybroker.entityprovider.capabilities.ActionsExecutab
 import org.sakaiproject.entitybroker.entityprovider.capabilities.AutoRegisterEntityProvider;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Describeable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Outputable;
+import org.sakaiproject.entitybroker.entityprovider.extension.ActionReturn;
 import org.sakaiproject.entitybroker.entityprovider.extension.Formats;
+import org.sakaiproject.entitybroker.exception.EntityNotFoundException;
 import org.sakaiproject.evaluation.logic.EvalEvaluationService;
+import org.sakaiproject.evaluation.logic.EvalReportJobManager;
+import org.sakaiproject.evaluation.logic.model.EvalReportJob;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
 
 /**
@@ -40,6 +47,11 @@ public class EvalReportsEntityProviderImpl implements EvalReportsEntityProvider,
         this.evaluationService = evaluationService;
     }
 
+    private EvalReportJobManager reportJobManager;
+    public void setReportJobManager(EvalReportJobManager reportJobManager) {
+        this.reportJobManager = reportJobManager;
+    }
+
     public String getEntityPrefix() {
         return ENTITY_PREFIX;
     }
@@ -58,7 +70,75 @@ public class EvalReportsEntityProviderImpl implements EvalReportsEntityProvider,
     }
 
 	@EntityCustomAction(action = "CSVReport", viewKey = EntityView.VIEW_LIST) 
-    public String exportCSVReport(EntityView view, Map<String,Object> params) {
+    public ActionReturn exportCSVReport(EntityView view, OutputStream outputStream, Map<String,Object> params) {
+		Long evaluationId = getEvaluationId(view);
+		//This can be null, if not set it will get all groups
+		String groupIds = view.getPathSegment(3);
+		EvalEvaluation evaluation = evaluationService.getEvaluationById(evaluationId);
+		// write straight to the response rather than holding the whole report in memory
+		evaluationService.exportReport(evaluation,groupIds,outputStream,EvalEvaluationService.CSV_RESULTS_REPORT);
+		return new ActionReturn("UTF-8", "text/csv", outputStream);
+	}
+
+	/**
+	 * Queue a report to be generated in the background,
+	 * POST /direct/eval-reports/reportJob/{evaluationId}/{exportType}/{groupIds}
+	 * (evaluateeId can be passed as a parameter for individual reports)
+	 * @return the report job
+	 */
+	@EntityCustomAction(action = "reportJob", viewKey = EntityView.VIEW_NEW)
+	public EvalReportJob submitReportJob(EntityView view, Map<String,Object> params) {
+		Long evaluationId = getEvaluationId(view);
+		String exportType = view.getPathSegment(3);
+		if (exportType == null) {
+			exportType = EvalEvaluationService.CSV_RESULTS_REPORT;
+		}
+		String groupIds = view.getPathSegment(4);
+		String evaluateeId = params.get("evaluateeId") == null ? null : params.get("evaluateeId").toString();
+		String jobId = reportJobManager.submitReportJob(evaluationId, 
+				groupIds == null ? null : groupIds.split(","), evaluateeId, exportType);
+		return reportJobManager.getReportJob(jobId);
+	}
+
+	/**
+	 * Get the status and progress of a report job, GET /direct/eval-reports/reportJobStatus/{jobId}
+	 */
+	@EntityCustomAction(action = "reportJobStatus", viewKey = EntityView.VIEW_LIST)
+	public EvalReportJob getReportJob(EntityView view, Map<String,Object> params) {
+		return getJobOrFail(view.getPathSegment(2));
+	}
+
+	/**
+	 * Cancel a report job, POST /direct/eval-reports/reportJobCancel/{jobId}
+	 */
+	@EntityCustomAction(action = "reportJobCancel", viewKey = EntityView.VIEW_NEW)
+	public EvalReportJob cancelReportJob(EntityView view, Map<String,Object> params) {
+		String jobId = view.getPathSegment(2);
+		getJobOrFail(jobId);
+		reportJobManager.cancelReportJob(jobId);
+		return reportJobManager.getReportJob(jobId);
+	}
+
+	/**
+	 * Download the completed report for a job, GET /direct/eval-reports/reportJobDownload/{jobId}
+	 */
+	@EntityCustomAction(action = "reportJobDownload", viewKey = EntityView.VIEW_LIST)
+	public ActionReturn downloadReportJob(EntityView view, OutputStream outputStream, Map<String,Object> params) {
+		String jobId = view.getPathSegment(2);
+		EvalReportJob job = getJobOrFail(jobId);
+		File artifact = reportJobManager.getReportJobArtifact(jobId);
+		if (artifact == null) {
+			throw new IllegalStateException("Report job (" + jobId + ") is not complete, status: " + job.status);
+		}
+		try {
+			Files.copy(artifact.toPath(), outputStream);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to send report job (" + jobId + "): " + e.getMessage(), e);
+		}
+		return new ActionReturn(null, getMimeType(job.exportType), outputStream);
+	}
+
+	private Long getEvaluationId(EntityView view) {
 		Long evaluationId = null;
 		try {
 			evaluationId = Long.parseLong(view.getPathSegment(2));
@@ -77,13 +157,28 @@ public class EvalReportsEntityProviderImpl implements EvalReportsEntityProvider,
 							+ view
 							+ "): e.g. /direct/"+ENTITY_PREFIX+"/{evaluationId}/{groupIds}");
 		}
-					
-		//This can be null, if not set it will get all groups
-		String groupIds = view.getPathSegment(3);
-		EvalEvaluation evaluation = evaluationService.getEvaluationById(evaluationId);
-		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-		evaluationService.exportReport(evaluation,groupIds,outputStream,EvalEvaluationService.CSV_RESULTS_REPORT);
-		return outputStream.toString();
+		return evaluationId;
+	}
+
+	private EvalReportJob getJobOrFail(String jobId) {
+		if (jobId == null) {
+			throw new IllegalArgumentException("Must include the report job id in the path: e.g. /direct/"+ENTITY_PREFIX+"/reportJobStatus/{jobId}");
+		}
+		EvalReportJob job = reportJobManager.getReportJob(jobId);
+		if (job == null) {
+			throw new EntityNotFoundException("No report job found with id: " + jobId, jobId);
+		}
+		return job;
+	}
+
+	private String getMimeType(String exportType) {
+		if (EvalEvaluationService.XLS_RESULTS_REPORT.equals(exportType)) {
+			return "application/vnd.ms-excel";
+		} else if (EvalEvaluationService.PDF_RESULTS_REPORT.equals(exportType)
+				|| EvalEvaluationService.PDF_RESULTS_REPORT_INDIVIDUAL.equals(exportType)) {
+			return "application/pdf";
+		}
+		return "text/csv";
 	}
 
 	@Override
@@ -14,22 +14,51 @@
  */
 package org.sakaiproject.evaluation.logic.entity;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sakaiproject.entitybroker.EntityView;
 import org.sakaiproject.entitybroker.entityprovider.CoreEntityProvider;
+import org.sakaiproject.entitybroker.entityprovider.annotations.EntityCustomAction;
+import org.sakaiproject.entitybroker.entityprovider.capabilities.ActionsExecutable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.AutoRegisterEntityProvider;
+import org.sakaiproject.entitybroker.entityprovider.capabilities.Outputable;
+import org.sakaiproject.entitybroker.entityprovider.extension.Formats;
+import org.sakaiproject.entitybroker.exception.EntityNotFoundException;
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.logic.EvalCommonLogic;
+import org.sakaiproject.evaluation.logic.EvalDeliveryService;
 import org.sakaiproject.evaluation.logic.EvalEvaluationService;
+import org.sakaiproject.evaluation.model.EvalAnswer;
+import org.sakaiproject.evaluation.model.EvalResponse;
+import org.sakaiproject.evaluation.utils.EvalFormModel;
+import org.sakaiproject.evaluation.utils.TemplateItemDataList.DataTemplateItem;
+import org.sakaiproject.evaluation.utils.TemplateItemUtils;
 
 /**
  * Implementation for the entity provider for evaluations
  * 
  * @author Aaron Zeckoski (aaronz@vt.edu)
  */
-public class EvaluationEntityProviderImpl implements EvaluationEntityProvider, CoreEntityProvider, AutoRegisterEntityProvider {
+public class EvaluationEntityProviderImpl implements EvaluationEntityProvider, CoreEntityProvider, AutoRegisterEntityProvider, ActionsExecutable, Outputable {
 
     private EvalEvaluationService evaluationService;
     public void setEvaluationService(EvalEvaluationService evaluationService) {
         this.evaluationService = evaluationService;
     }
 
+    private EvalDeliveryService deliveryService;
+    public void setDeliveryService(EvalDeliveryService deliveryService) {
+        this.deliveryService = deliveryService;
+    }
+
+    private EvalCommonLogic commonLogic;
+    public void setCommonLogic(EvalCommonLogic commonLogic) {
+        this.commonLogic = commonLogic;
+    }
+
     public String getEntityPrefix() {
         return ENTITY_PREFIX;
     }
@@ -47,4 +76,90 @@ public class EvaluationEntityProviderImpl implements EvaluationEntityProvider, C
         return false;
     }
 
+    /**
+     * Save the changed answers for a response which is in progress (autosave),
+     * POST /direct/eval-evaluation/saveAnswers/{responseId} with the params:
+     * version (returned by the last save), {answerKey}={value} for each changed answer (an empty value removes it),
+     * {answerKey}.na=true for not applicable and {answerKey}.comment={comment}<br/>
+     * The answerKey is made by {@link TemplateItemUtils#makeTemplateItemAnswerKey(Long, String, String)},
+     * multiple answers are comma separated
+     * @return the response id and the new version of the response
+     */
+    @EntityCustomAction(action = "saveAnswers", viewKey = EntityView.VIEW_NEW)
+    public Map<String, Object> saveAnswers(EntityView view, Map<String, Object> params) {
+        Long responseId;
+        try {
+            responseId = new Long(view.getPathSegment(2));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid response id: " + view.getPathSegment(2));
+        }
+        EvalResponse response = deliveryService.getResponseById(responseId);
+        if (response == null) {
+            throw new EntityNotFoundException("No response found with id: " + responseId, responseId.toString());
+        }
+        String version = getParam(params, "version");
+        if (version == null) {
+            throw new IllegalArgumentException("The version param must be set to save answers");
+        }
+
+        EvalFormModel form = deliveryService.getEvaluationFormModel(response.getEvaluation().getId(), response.getEvalGroupId());
+        List<EvalAnswer> answers = new ArrayList<>();
+        try {
+            for (DataTemplateItem dti : form.getDataTemplateItems()) {
+                if (! dti.isAnswerable()) {
+                    continue;
+                }
+                String key = dti.getKey();
+                String value = getParam(params, key);
+                String na = getParam(params, key + ".na");
+                String comment = getParam(params, key + ".comment");
+                if (value == null && na == null && comment == null) {
+                    continue;
+                }
+                EvalAnswer answer = new EvalAnswer(null, dti.templateItem, dti.templateItem.getItem());
+                answer.setAssociatedType(dti.associateType);
+                answer.setAssociatedId(dti.associateId);
+                answer.NA = Boolean.parseBoolean(na);
+                if (comment != null && comment.trim().length() > 0) {
+                    answer.setComment(comment);
+                }
+                if (value != null && value.trim().length() > 0 && ! answer.NA) {
+                    String type = TemplateItemUtils.getTemplateItemType(dti.templateItem);
+                    if (EvalConstants.ITEM_TYPE_TEXT.equals(type)) {
+                        answer.setText(value);
+                    } else if (EvalConstants.ITEM_TYPE_MULTIPLEANSWER.equals(type)) {
+                        String[] parts = value.split(",");
+                        answer.multipleAnswers = new Integer[parts.length];
+                        for (int i = 0; i < parts.length; i++) {
+                            answer.multipleAnswers[i] = Integer.valueOf(parts[i].trim());
+                        }
+                    } else {
+                        answer.setNumeric(Integer.valueOf(value.trim()));
+                    }
+                }
+                answers.add(answer);
+            }
+            long newVersion = deliveryService.saveResponseAnswers(responseId, Long.parseLong(version), answers, commonLogic.getCurrentUserId());
+            Map<String, Object> result = new HashMap<>();
+            result.put("responseId", responseId);
+            result.put("version", newVersion);
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in the answers for response (" + responseId + "): " + e.getMessage(), e);
+        }
+    }
+
+    private String getParam(Map<String, Object> params, String name) {
+        Object value = params.get(name);
+        if (value instanceof String[]) {
+            String[] values = (String[]) value;
+            return values.length == 0 ? null : values[0];
+        }
+        return value == null ? null : value.toString();
+    }
+
+    public String[] getHandledOutputFormats() {
+        return new String[] {Formats.JSON, Formats.XML};
+    }
+
 }
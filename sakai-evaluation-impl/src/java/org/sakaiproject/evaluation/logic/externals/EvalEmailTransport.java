@@ -0,0 +1,48 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.externals;
+
+import java.util.List;
+
+import javax.mail.internet.InternetAddress;
+
+/**
+ * Hands the evaluation email messages to the mail relay for {@link EvalExternalLogicImpl},
+ * this allows the Sakai email service to be swapped for a transport which keeps connections open
+ * across a whole email job ({@link SmtpEmailTransport}) or a local stand-in ({@link LocalEmailTransport})
+ * when measuring or testing the email jobs without a mail relay<br/>
+ * Implementations must be thread safe, the email jobs send from more than one thread at once
+ */
+public interface EvalEmailTransport {
+
+    /**
+     * Send one message to a set of recipients, the recipients are only put on the envelope
+     * (the To header is the from address) so they never see each other
+     *
+     * @param from the address the message is from (also the reply to address)
+     * @param recipients the addresses to deliver to (at least one)
+     * @param subject the message subject
+     * @param message the plain text message body
+     * @param headers (OPTIONAL) extra headers in "Name: value" form
+     * @throws RuntimeException if the message could not be handed off
+     */
+    public void send(InternetAddress from, InternetAddress[] recipients, String subject, String message, List<String> headers);
+
+    /**
+     * Release anything held open by this transport (e.g. connections), called when the service shuts down
+     */
+    public void close();
+
+}
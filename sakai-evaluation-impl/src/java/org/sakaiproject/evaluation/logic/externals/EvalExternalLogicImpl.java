@@ -14,6 +14,7 @@
  */
 package org.sakaiproject.evaluation.logic.externals;
 
+import java.io.File;
 import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -150,6 +151,38 @@ public class EvalExternalLogicImpl implements EvalExternalLogic {
     private static final String EMAIL_BULK_FLAG = "Precedence: bulk";
     private List<String> emailHeaders;
 
+    /**
+     * The sakai.properties setting for the way the emails are sent:
+     * sakai (the default) uses the Sakai email service,
+     * smtp sends to the Sakai SMTP relay over pooled connections which are reused between messages,
+     * memory keeps the messages in memory only and file:/some/dir writes them to .eml files (both for offline testing)
+     */
+    public static final String SETTING_EMAIL_TRANSPORT = "eval.email.transport";
+    /**
+     * The sakai.properties setting for the most SMTP connections open at once (smtp transport only)
+     */
+    public static final String SETTING_EMAIL_SMTP_CONNECTIONS = "eval.email.smtp.connections";
+    /**
+     * The sakai.properties setting for the most messages sent on one SMTP connection before it is replaced (smtp transport only)
+     */
+    public static final String SETTING_EMAIL_SMTP_MESSAGES_PER_CONNECTION = "eval.email.smtp.messagesPerConnection";
+    /**
+     * The sakai.properties setting for how long an unused SMTP connection is kept open (smtp transport only)
+     */
+    public static final String SETTING_EMAIL_SMTP_IDLE = "eval.email.smtp.idleSeconds";
+    /**
+     * The sakai.properties setting for a delay added to every message to stand in for a real relay (memory and file transports only)
+     */
+    public static final String SETTING_EMAIL_LOCAL_LATENCY = "eval.email.local.latencyMillis";
+
+    private EvalEmailTransport emailTransport;
+    /**
+     * Use this transport for the emails instead of the one from the {@link #SETTING_EMAIL_TRANSPORT} setting
+     */
+    public void setEmailTransport(EvalEmailTransport emailTransport) {
+        this.emailTransport = emailTransport;
+    }
+
     /**
      * This must match the id of the bean which implements {@link EvalScheduledInvocation}
      */
@@ -250,6 +283,48 @@ public class EvalExternalLogicImpl implements EvalExternalLogic {
         // email bulk headers - http://bugs.sakaiproject.org/jira/browse/EVALSYS-620
         emailHeaders = new ArrayList<>();
         emailHeaders.add(EMAIL_BULK_FLAG);
+
+        if (emailTransport == null) {
+            emailTransport = makeEmailTransport();
+        }
+    }
+
+    public void destroy() {
+        if (emailTransport != null) {
+            emailTransport.close();
+        }
+    }
+
+    /**
+     * @return the email transport from the {@link #SETTING_EMAIL_TRANSPORT} setting
+     */
+    protected EvalEmailTransport makeEmailTransport() {
+        String setting = getConfigurationSetting(SETTING_EMAIL_TRANSPORT, "sakai").trim();
+        EvalEmailTransport transport;
+        if ("smtp".equalsIgnoreCase(setting)) {
+            // use the same relay as the Sakai email service
+            String host = serverConfigurationService.getString("smtp@org.sakaiproject.email.api.EmailService", null);
+            if (StringUtils.isBlank(host)) {
+                log.warn("No smtp@org.sakaiproject.email.api.EmailService set, using the Sakai email service for evaluation emails");
+                return new SakaiEmailTransport(emailService);
+            }
+            int port = serverConfigurationService.getInt("smtpPort@org.sakaiproject.email.api.EmailService", 25);
+            String username = StringUtils.trimToNull(serverConfigurationService.getString("smtpUser@org.sakaiproject.email.api.EmailService", null));
+            String password = serverConfigurationService.getString("smtpPassword@org.sakaiproject.email.api.EmailService", null);
+            transport = new SmtpEmailTransport(host, port, username, password,
+                    getConfigurationSetting(SETTING_EMAIL_SMTP_CONNECTIONS, 2),
+                    getConfigurationSetting(SETTING_EMAIL_SMTP_MESSAGES_PER_CONNECTION, 100),
+                    getConfigurationSetting(SETTING_EMAIL_SMTP_IDLE, 30));
+        } else if ("memory".equalsIgnoreCase(setting)) {
+            transport = new LocalEmailTransport(null, getConfigurationSetting(SETTING_EMAIL_LOCAL_LATENCY, 0), 1000);
+        } else if (setting.startsWith("file:")) {
+            transport = new LocalEmailTransport(new File(setting.substring(5)),
+                    getConfigurationSetting(SETTING_EMAIL_LOCAL_LATENCY, 0), 0);
+        } else {
+            transport = new SakaiEmailTransport(emailService);
+        }
+        log.info("Evaluation emails will be sent using: " + transport.getClass().getSimpleName() + " (" + setting + ")");
+        return transport;
     }
 
 
@@ -982,7 +1057,6 @@ public class EvalExternalLogicImpl implements EvalExternalLogic {
      */
     private String[] sendEmails(InternetAddress fromAddress, List<String> toEmails, String subject,
             String message, boolean deferExceptions, String exceptionTracker) {
-        InternetAddress[] replyTo = new InternetAddress[1];
         List<InternetAddress> listAddresses = new ArrayList<>();
         for (int i = 0; i < toEmails.size(); i++) {
             String email = toEmails.get(i);
@@ -1002,12 +1076,12 @@ public class EvalExternalLogicImpl implements EvalExternalLogic {
                 } 
             }
         }
-        replyTo[0] = fromAddress;
         InternetAddress[] toAddresses = listAddresses.toArray(new InternetAddress[listAddresses.size()]);
         // headers are set globally and used for all emails going out (see top of this file)
-        // added to ensure non-blank TO header: http://bugs.sakaiproject.org/jira/browse/EVALSYS-724
-        emailService.sendMail(fromAddress, toAddresses, subject, message, 
-                new InternetAddress[]{fromAddress}, replyTo, this.emailHeaders);
+        // the recipients only go on the envelope, the TO header is the from address (see the transports)
+        if (toAddresses.length > 0) {
+            emailTransport.send(fromAddress, toAddresses, subject, message, this.emailHeaders);
+        }
 
         if (deferExceptions && exceptionTracker != null) {
             // exceptions occurred so we have to die here
@@ -35,6 +35,8 @@ import org.sakaiproject.evaluation.logic.model.HierarchyNodeRule;
 import org.sakaiproject.evaluation.model.EvalGroupNodes;
 import org.sakaiproject.evaluation.model.EvalTemplateItem;
 import org.sakaiproject.evaluation.providers.EvalHierarchyProvider;
+import org.sakaiproject.evaluation.utils.HierarchyRuleIndex;
+import org.sakaiproject.evaluation.utils.HierarchyTreeSnapshot;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.genericdao.api.search.Order;
 import org.sakaiproject.genericdao.api.search.Restriction;
@@ -108,6 +110,30 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
 	}
     private final String CACHE_NAME = "org.sakaiproject.hierarchy.nodes";
 
+    /**
+     * Holds the titles of sites and their provided sections (used when resolving hierarchy rules)
+     */
+    private Cache groupTitlesCache;
+    private final String GROUP_TITLES_CACHE_NAME = "org.sakaiproject.evaluation.hierarchy.groupTitles";
+
+    /**
+     * The sakai.properties setting which controls how long (in seconds) the compiled rule index
+     * is trusted before it is rebuilt (rules may be changed by other servers in the cluster)
+     */
+    public static final String SETTING_RULE_INDEX_MAX_AGE = "eval.hierarchy.ruleIndex.maxAgeSeconds";
+    private long ruleIndexMaxAge = 60 * 1000l;
+    private volatile HierarchyRuleIndex ruleIndex;
+    private volatile long ruleIndexBuildTime = 0l;
+
+    /**
+     * The sakai.properties setting which controls how long (in seconds) the snapshot of the
+     * hierarchy tree is trusted before it is rebuilt (nodes may be changed by other servers in the cluster)
+     */
+    public static final String SETTING_TREE_SNAPSHOT_MAX_AGE = "eval.hierarchy.treeSnapshot.maxAgeSeconds";
+    private long treeSnapshotMaxAge = 60 * 1000l;
+    private volatile HierarchyTreeSnapshot treeSnapshot;
+    private volatile long treeSnapshotBuildTime = 0l;
+
 
     /**
      * Place any code that should run when this class is initialized by spring here
@@ -132,6 +158,11 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
         }
         
         cache = memoryService.getCache(CACHE_NAME);
+        groupTitlesCache = memoryService.getCache(GROUP_TITLES_CACHE_NAME);
+        Integer maxAgeSeconds = externalLogic.getConfigurationSetting(SETTING_RULE_INDEX_MAX_AGE, 60);
+        ruleIndexMaxAge = maxAgeSeconds * 1000l;
+        maxAgeSeconds = externalLogic.getConfigurationSetting(SETTING_TREE_SNAPSHOT_MAX_AGE, 60);
+        treeSnapshotMaxAge = maxAgeSeconds * 1000l;
     }
 
     /*
@@ -252,6 +283,7 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
         checkNodeExists( nodeID );
 
         externalLogic.assignNodeRule( ruleText, qualifier, option, nodeID );
+        resetRuleIndex();
     }
 
     /*
@@ -261,6 +293,7 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
     public void removeNodeRule( Long ruleID )
     {
         externalLogic.removeNodeRule( ruleID );
+        resetRuleIndex();
     }
 
     /*
@@ -273,6 +306,7 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
         checkNodeExists( nodeID );
 
         externalLogic.removeAllRulesForNode( nodeID );
+        resetRuleIndex();
     }
 
     /*
@@ -285,6 +319,7 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
         checkNodeExists( nodeID );
 
         externalLogic.updateNodeRule( ruleID, ruleText, qualifier, option, nodeID );
+        resetRuleIndex();
     }
 
     /*
@@ -382,6 +417,7 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
      */
     public EvalHierarchyNode addNode(String parentNodeId) {
         HierarchyNode node = hierarchyService.addNode(HIERARCHY_ID, parentNodeId);
+        resetTreeSnapshot();
         return makeEvalNode(node);
     }
 
@@ -398,9 +434,11 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
         }
 
         HierarchyNode node = hierarchyService.removeNode(nodeId);
+        resetTreeSnapshot();
 
         // Remove all hierarchy rules associated with this node
         externalLogic.removeAllRulesForNode( Long.parseLong( nodeId ) );
+        resetRuleIndex();
 
         // cleanup related data
         List<EvalTemplateItem> l = dao.findBySearch(EvalTemplateItem.class, new Search("hierarchyNodeId", nodeId) );
@@ -420,6 +458,7 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
      */
     public EvalHierarchyNode updateNodeData(String nodeId, String title, String description) {
         HierarchyNode node = hierarchyService.saveNodeMetaData(nodeId, title, description, null);
+        resetTreeSnapshot();
         return makeEvalNode(node);
     }
 
@@ -430,8 +469,11 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
      */
     public Set<EvalHierarchyNode> getChildNodes(String nodeId, boolean directOnly) {
         Set<EvalHierarchyNode> eNodes = new HashSet<>();
+        HierarchyTreeSnapshot snapshot = evalHierarchyProvider == null ? getTreeSnapshot() : null;
         if (evalHierarchyProvider != null) {
             eNodes = evalHierarchyProvider.getChildNodes(nodeId, directOnly);
+        } else if (snapshot != null && snapshot.contains(nodeId)) {
+            eNodes = snapshot.getChildNodes(nodeId, directOnly);
         } else {
             Set<HierarchyNode> nodes = hierarchyService.getChildNodes(nodeId, directOnly);
             for (HierarchyNode node : nodes) {
@@ -507,7 +549,10 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
 
         // Support for resolving eval groups based on hierarchy node rules.
         // Hierarchy rules should be obeyed regardless of if an external provider is present or not (supplemental)
-        s.addAll( getEvalGroupsForNodeSectionAware( nodeId ) );
+        Set<String> sectionAware = getEvalGroupsForNodesSectionAware( new String[] {nodeId} ).get( nodeId );
+        if (sectionAware != null) {
+            s.addAll( sectionAware );
+        }
 
         return s;
     }
@@ -524,49 +569,91 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
 
             // Support for resolving eval groups based on hierarchy node rules.
             // Hierarchy rules should be obeyed regardless of if an external provider is present or not (supplemental)
-            for( String nodeID : nodeIds )
-            {
-                Set<String> evalGroupsForNodeSectionAware = getEvalGroupsForNodeSectionAware(nodeID);
-                if (!evalGroupsForNodeSectionAware.isEmpty()) {
-                    m.put(nodeID, evalGroupsForNodeSectionAware);
-                }
-            }
+            m.putAll( getEvalGroupsForNodesSectionAware( nodeIds ) );
         }
         return m;
     }
 
     /**
      * Utility method to extract common (section aware) behaviour.
+     * Resolves the groups for all the nodes at once: the {@link EvalGroupNodes} are fetched in one search,
+     * the rules come from the rule index and each distinct rule pattern is only queried once
      * 
-     * @param nodeID
-     * @return 
+     * @param nodeIDs the ids of the nodes to resolve
+     * @return a map of nodeID -> eval group ids, nodes without any groups are not included
      */
-    private Set<String> getEvalGroupsForNodeSectionAware( String nodeID )
+    private Map<String, Set<String>> getEvalGroupsForNodesSectionAware( String[] nodeIDs )
     {
-        Set<String> groups = new HashSet<>();
-        try
+        Map<String, Set<String>> nodeGroups = new HashMap<>();
+        if( nodeIDs.length == 0 )
         {
-            EvalGroupNodes egn = getEvalGroupNodeByNodeId(nodeID);
-            if (egn != null) {
-                groups = new HashSet<>(egn.getEvalGroups());
+            return nodeGroups;
+        }
+
+        for( EvalGroupNodes egn : getEvalGroupNodesByNodeId( nodeIDs ) )
+        {
+            if( !nodeGroups.containsKey( egn.getNodeId() ) )
+            {
+                nodeGroups.put( egn.getNodeId(), new HashSet<>() );
+            }
+            nodeGroups.get( egn.getNodeId() ).addAll( egn.getEvalGroups() );
+        }
+
+        // gather up the rules for all the nodes so each pattern is only looked up once
+        HierarchyRuleIndex index = getRuleIndex();
+        Map<String, List<HierarchyNodeRule>> nodeRules = new HashMap<>();
+        Set<String> siteTitles = new HashSet<>();
+        Set<String> sectionTitles = new HashSet<>();
+        for( String nodeID : nodeIDs )
+        {
+            try
+            {
+                List<HierarchyNodeRule> rules = index.getRulesForNode( Long.parseLong( nodeID ) );
+                nodeRules.put( nodeID, rules );
+                for( HierarchyNodeRule rule : rules )
+                {
+                    if( EvalConstants.HIERARCHY_RULE_SECTION.equals( rule.getOption() ) )
+                    {
+                        sectionTitles.add( rule.getRule() );
+                    }
+                    else
+                    {
+                        siteTitles.add( rule.getRule() );
+                    }
+                }
             }
+            catch( NumberFormatException ex ) { log.warn(ex.getLocalizedMessage(), ex ); }
+        }
 
-            List<HierarchyNodeRule> rules = getRulesByNodeID( Long.parseLong( nodeID ) );
-            for( HierarchyNodeRule rule : rules )
+        Map<String, Set<String>> siteMatches = dao.getAllSiteIDsMatchingSiteTitles( siteTitles );
+        Map<String, Set<String>> sectionMatches = dao.getAllSiteIDsMatchingSectionTitles( sectionTitles );
+        for( Map.Entry<String, List<HierarchyNodeRule>> entry : nodeRules.entrySet() )
+        {
+            for( HierarchyNodeRule rule : entry.getValue() )
             {
+                Set<String> matches;
                 if( EvalConstants.HIERARCHY_RULE_SECTION.equals( rule.getOption() ) )
                 {
-                    groups.addAll( dao.getAllSiteIDsMatchingSectionTitle( rule.getRule() ) );
+                    matches = sectionMatches.get( rule.getRule() );
                 }
                 else
                 {
-                    groups.addAll( dao.getAllSiteIDsMatchingSiteTitle( rule.getRule() ) );
+                    matches = siteMatches.get( rule.getRule() );
+                }
+                if( matches != null && !matches.isEmpty() )
+                {
+                    if( !nodeGroups.containsKey( entry.getKey() ) )
+                    {
+                        nodeGroups.put( entry.getKey(), new HashSet<>() );
+                    }
+                    nodeGroups.get( entry.getKey() ).addAll( matches );
                 }
             }
         }
-        catch( NumberFormatException ex ) { log.warn(ex.getLocalizedMessage(), ex ); }
 
-        return groups;
+        // keep the old behaviour of not including nodes which have no groups
+        nodeGroups.values().removeIf( Set::isEmpty );
+        return nodeGroups;
     }
 
     public Map<String, Integer> countEvalGroupsForNodes(String[] nodeIds) {
@@ -619,50 +706,20 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
             isGroupIDSectionBased = true;
         }
 
-        try
+        List<String> titles = getGroupTitles( siteID, isGroupIDSectionBased );
+        if( titles != null )
         {
-            Site site = siteService.getSite( siteID );
-            List<HierarchyNodeRule> rules = externalLogic.getAllRules();
-            Map<String, Set<String>> realmSectionIDs = new HashMap<>();
-            for( HierarchyNodeRule rule : rules )
+            HierarchyNodeRule rule = getRuleIndex().findRule( titles.get( 0 ), titles.subList( 1, titles.size() ), isGroupIDSectionBased );
+            if( rule != null )
             {
-                String rawRuleText = removeQualifierFromRuleText( rule.getRule() );
-                String qualifier = determineQualifierFromRuleText( rule.getRule() );
-
-                // If the rule is section based and so is the group ID...
-                if( EvalConstants.HIERARCHY_RULE_SECTION.equals( rule.getOption() ) && isGroupIDSectionBased )
-                {
-                    // Get the sections of the site, if necessary
-                    String realmID = siteService.siteReference( site.getId() );
-                    if( !realmSectionIDs.containsKey( realmID ) )
-                    {
-                        realmSectionIDs.put( realmID, authzGroupService.getProviderIds( realmID ) );
-                    }
-
-                    for( String sectionID : realmSectionIDs.get( realmID ) )
-                    {
-                        Section section = courseManagementService.getSection( sectionID );
-                        if( siteOrSectionTitleSatisfiesRule( section.getTitle(), qualifier, rawRuleText ) )
-                        {
-                            nodeID = rule.getNodeID().toString();
-                        }
-                    }
-                }
-
-                // Otherwise it's a site based rule...
-                else
-                {
-                    if( siteOrSectionTitleSatisfiesRule( site.getTitle(), qualifier, rawRuleText ) )
-                    {
-                        nodeID = rule.getNodeID().toString();
-                    }
-                }
+                nodeID = rule.getNodeID().toString();
             }
         }
-        catch ( IdUnusedException ex ) { log.debug("IdUnusedException looking up site ID", ex); }
-        catch ( IdNotFoundException ex ) { log.warn( "Could not find site or section by ID", ex ); }
 
-        if (StringUtils.isNotBlank(nodeID)) {
+        HierarchyTreeSnapshot snapshot = evalHierarchyProvider == null ? getTreeSnapshot() : null;
+        if (StringUtils.isNotBlank(nodeID) && snapshot != null && snapshot.contains(nodeID)) {
+            hierarchyNodes.addAll( snapshot.getAncestors(nodeID, true) );
+        } else if (StringUtils.isNotBlank(nodeID)) {
             HierarchyNode currentNode = hierarchyService.getNodeById(nodeID);
             Set<HierarchyNode> parents = hierarchyService.getParentNodes(nodeID, false);
             parents.add(currentNode);
@@ -677,24 +734,118 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
     }
 
     /**
-     * Utility method to determine if a site or section title satisfies a given rule's
-     * qualifier and rule text.
+     * Get the compiled index of all hierarchy rules, rebuilding it if the rules were changed
+     * or the index is older than the configured max age
+     * 
+     * @return the current {@link HierarchyRuleIndex}
+     */
+    private HierarchyRuleIndex getRuleIndex()
+    {
+        HierarchyRuleIndex index = ruleIndex;
+        long now = System.currentTimeMillis();
+        if( index == null || now - ruleIndexBuildTime > ruleIndexMaxAge )
+        {
+            List<HierarchyNodeRule> rules = externalLogic.getAllRules();
+            index = new HierarchyRuleIndex( rules );
+            ruleIndex = index;
+            ruleIndexBuildTime = now;
+            log.debug( "Rebuilt the hierarchy rule index with " + index.size() + " rules" );
+        }
+        return index;
+    }
+
+    /**
+     * Forces the hierarchy rule index to be rebuilt on the next lookup,
+     * must be called whenever the rules are changed
+     */
+    private void resetRuleIndex()
+    {
+        ruleIndex = null;
+    }
+
+    /**
+     * Get the snapshot of the evaluation hierarchy, rebuilding it if the hierarchy was changed
+     * or the snapshot is older than the configured max age
+     * 
+     * @return the current {@link HierarchyTreeSnapshot} OR null if the hierarchy has no root node yet
+     * (callers then use the {@link HierarchyService} for each node)
+     */
+    private HierarchyTreeSnapshot getTreeSnapshot()
+    {
+        HierarchyTreeSnapshot snapshot = treeSnapshot;
+        long now = System.currentTimeMillis();
+        if( snapshot == null || now - treeSnapshotBuildTime > treeSnapshotMaxAge )
+        {
+            HierarchyNode root = hierarchyService.getRootNode( HIERARCHY_ID );
+            if( root == null )
+            {
+                treeSnapshot = null;
+                return null;
+            }
+            List<EvalHierarchyNode> allNodes = new ArrayList<>();
+            allNodes.add( makeEvalNode( root ) );
+            for( HierarchyNode node : hierarchyService.getChildNodes( root.id, false ) )
+            {
+                allNodes.add( makeEvalNode( node ) );
+            }
+            snapshot = new HierarchyTreeSnapshot( root.id, allNodes );
+            treeSnapshot = snapshot;
+            treeSnapshotBuildTime = now;
+            log.debug( "Rebuilt the hierarchy tree snapshot with " + snapshot.size() + " nodes" );
+        }
+        return snapshot;
+    }
+
+    /**
+     * Forces the hierarchy tree snapshot to be rebuilt on the next use,
+     * must be called whenever nodes are added, removed or changed
+     */
+    private void resetTreeSnapshot()
+    {
+        treeSnapshot = null;
+    }
+
+    /**
+     * Get the title of a site and (optionally) the titles of all sections provided to it,
+     * the titles are cached since they are needed every time the rules are resolved for a group
      * 
-     * @param siteOrSectionTitle the site or section title to compare
-     * @param ruleQualifier the qualifier of the rule (is, starts with, ends with or contains)
-     * @param ruleText the actual text of the rule to be obeyed
-     * @return true if the site or section title satisfies the rule; false otherwise
+     * @param siteID the id of a site
+     * @param includeSections if true then the section titles are also returned
+     * @return the list of titles (the site title is first, followed by any section titles) OR null if the site does not exist
      */
-    private boolean siteOrSectionTitleSatisfiesRule( String siteOrSectionTitle, String ruleQualifier, String ruleText )
+    @SuppressWarnings("unchecked")
+    private List<String> getGroupTitles( String siteID, boolean includeSections )
     {
-        // If the qualifier is 'contains' and the title contains the raw rule text, OR
-        // the qualifier is 'ends with' and the title ends with the raw rule text, OR
-        // the qualifier is 'starts with' and the title starts with the raw rule text, OR
-        // the qualifier is 'is' and the title equals the raw rule text, grab the node ID of the rule
-        return (EvalConstants.HIERARCHY_QUALIFIER_CONTAINS.equals( ruleQualifier ) && siteOrSectionTitle.contains( ruleText ))
-                            || (EvalConstants.HIERARCHY_QUALIFIER_ENDS_WITH.equals( ruleQualifier ) && siteOrSectionTitle.endsWith( ruleText ))
-                            || (EvalConstants.HIERARCHY_QUALIFIER_STARTS_WITH.equals( ruleQualifier) && siteOrSectionTitle.startsWith( ruleText ))
-                            || (EvalConstants.HIERARCHY_QUALIFIER_IS.equals( ruleQualifier ) && siteOrSectionTitle.equals( ruleText ));
+        String key = siteID + (includeSections ? ":sections" : ":site");
+        ArrayList<String> titles = (ArrayList<String>) groupTitlesCache.get( key );
+        if( titles != null )
+        {
+            return titles;
+        }
+
+        try
+        {
+            Site site = siteService.getSite( siteID );
+            titles = new ArrayList<>();
+            titles.add( site.getTitle() );
+            if( includeSections )
+            {
+                String realmID = siteService.siteReference( site.getId() );
+                for( String sectionID : authzGroupService.getProviderIds( realmID ) )
+                {
+                    try
+                    {
+                        Section section = courseManagementService.getSection( sectionID );
+                        titles.add( section.getTitle() );
+                    }
+                    catch( IdNotFoundException ex ) { log.warn( "Could not find section by ID: " + sectionID, ex ); }
+                }
+            }
+            groupTitlesCache.put( key, titles );
+        }
+        catch( IdUnusedException ex ) { log.debug( "IdUnusedException looking up site ID", ex ); }
+
+        return titles;
     }
 
     /* (non-Javadoc)
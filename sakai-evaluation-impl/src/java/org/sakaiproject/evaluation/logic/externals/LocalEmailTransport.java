@@ -0,0 +1,176 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.externals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.internet.InternetAddress;
+
+/**
+ * A stand-in transport which does not talk to a mail relay at all, the messages are kept in memory
+ * and (optionally) written out as .eml files to a directory so the email jobs can be run and their
+ * throughput measured offline<br/>
+ * A fixed latency can be added to every message to stand in for the round trip to a real relay
+ */
+public class LocalEmailTransport implements EvalEmailTransport {
+
+    /**
+     * A message handed to this transport
+     */
+    public static class SentEmail {
+        public final String from;
+        public final String[] recipients;
+        public final String subject;
+        public final String message;
+
+        SentEmail(String from, String[] recipients, String subject, String message) {
+            this.from = from;
+            this.recipients = recipients;
+            this.subject = subject;
+            this.message = message;
+        }
+    }
+
+    private final File directory;
+    private final long latencyMillis;
+    private final int maxKept;
+
+    private final List<SentEmail> sent = new ArrayList<>();
+    private final AtomicLong messageCount = new AtomicLong();
+    private final AtomicLong recipientCount = new AtomicLong();
+
+    /**
+     * Keep every message in memory with no added latency
+     */
+    public LocalEmailTransport() {
+        this(null, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param directory (OPTIONAL) write every message to a .eml file in this directory (created if needed), null to only keep them in memory
+     * @param latencyMillis time to wait for every message to stand in for a real relay (0 for none)
+     * @param maxKept the most messages to keep in memory (0 to keep none and only count them),
+     * large benchmark runs should keep only a few
+     */
+    public LocalEmailTransport(File directory, long latencyMillis, int maxKept) {
+        if (directory != null && ! directory.isDirectory() && ! directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create the email directory: " + directory);
+        }
+        this.directory = directory;
+        this.latencyMillis = Math.max(0, latencyMillis);
+        this.maxKept = Math.max(0, maxKept);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.externals.EvalEmailTransport#send(javax.mail.internet.InternetAddress, javax.mail.internet.InternetAddress[], java.lang.String, java.lang.String, java.util.List)
+     */
+    public void send(InternetAddress from, InternetAddress[] recipients, String subject, String message, List<String> headers) {
+        if (recipients == null || recipients.length == 0) {
+            throw new IllegalArgumentException("There must be at least one recipient");
+        }
+        if (latencyMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while sending email (" + subject + ")", e);
+            }
+        }
+        String[] addresses = new String[recipients.length];
+        for (int i = 0; i < recipients.length; i++) {
+            addresses[i] = recipients[i].getAddress();
+        }
+        long number = messageCount.incrementAndGet();
+        recipientCount.addAndGet(addresses.length);
+
+        if (directory != null) {
+            write(new File(directory, "eval-email-" + number + ".eml"), from.toString(), addresses, subject, message, headers);
+        }
+        synchronized (sent) {
+            if (sent.size() < maxKept) {
+                sent.add(new SentEmail(from.getAddress(), addresses, subject, message));
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.externals.EvalEmailTransport#close()
+     */
+    public void close() {
+        // nothing is held open
+    }
+
+    /**
+     * @return a copy of the messages kept so far (in the order they were sent)
+     */
+    public List<SentEmail> getSentEmails() {
+        synchronized (sent) {
+            return new ArrayList<>(sent);
+        }
+    }
+
+    /**
+     * @return the number of messages sent so far
+     */
+    public long getMessageCount() {
+        return messageCount.get();
+    }
+
+    /**
+     * @return the number of recipients sent to so far (over all messages)
+     */
+    public long getRecipientCount() {
+        return recipientCount.get();
+    }
+
+    /**
+     * Forget all messages and reset the counts
+     */
+    public void clear() {
+        synchronized (sent) {
+            sent.clear();
+            messageCount.set(0);
+            recipientCount.set(0);
+        }
+    }
+
+    private void write(File file, String from, String[] recipients, String subject, String message, List<String> headers) {
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8)) {
+            writer.write("From: " + from + "\r\n");
+            writer.write("To: " + from + "\r\n");
+            writer.write("Bcc: " + String.join(", ", recipients) + "\r\n");
+            writer.write("Subject: " + subject + "\r\n");
+            if (headers != null) {
+                for (String header : headers) {
+                    writer.write(header + "\r\n");
+                }
+            }
+            writer.write("Content-Type: text/plain; charset=UTF-8\r\n\r\n");
+            writer.write(message);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write email (" + subject + ") to " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+}
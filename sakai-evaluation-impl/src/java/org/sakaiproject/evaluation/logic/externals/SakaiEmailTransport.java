@@ -0,0 +1,54 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.externals;
+
+import java.util.List;
+
+import javax.mail.internet.InternetAddress;
+
+import org.sakaiproject.email.api.EmailService;
+
+/**
+ * The default transport, sends every message through the Sakai {@link EmailService}
+ * (which opens a connection to the mail relay for each message)
+ */
+public class SakaiEmailTransport implements EvalEmailTransport {
+
+    private final EmailService emailService;
+
+    public SakaiEmailTransport(EmailService emailService) {
+        if (emailService == null) {
+            throw new IllegalArgumentException("emailService cannot be null");
+        }
+        this.emailService = emailService;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.externals.EvalEmailTransport#send(javax.mail.internet.InternetAddress, javax.mail.internet.InternetAddress[], java.lang.String, java.lang.String, java.util.List)
+     */
+    public void send(InternetAddress from, InternetAddress[] recipients, String subject, String message, List<String> headers) {
+        // added to ensure non-blank TO header: http://bugs.sakaiproject.org/jira/browse/EVALSYS-724
+        emailService.sendMail(from, recipients, subject, message,
+                new InternetAddress[] {from}, new InternetAddress[] {from}, headers);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.externals.EvalEmailTransport#close()
+     */
+    public void close() {
+        // nothing is held open
+    }
+
+}
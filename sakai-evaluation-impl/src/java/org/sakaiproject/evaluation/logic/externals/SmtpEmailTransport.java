@@ -0,0 +1,236 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.externals;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sends the messages straight to an SMTP relay over a small pool of connections which are kept open
+ * and reused across the messages of an email job, instead of the connect/helo/quit for every message
+ * which the Sakai email service does<br/>
+ * A connection is retired after a set number of messages (most relays limit this) or when it has been
+ * idle too long, a message which fails on a reused connection is retried once on a fresh connection
+ * since the relay may have dropped the connection while it sat in the pool
+ */
+@Slf4j
+public class SmtpEmailTransport implements EvalEmailTransport {
+
+    private final Session session;
+    private final String username;
+    private final String password;
+    private final int messagesPerConnection;
+    private final long idleMillis;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private volatile boolean closed = false;
+
+    /**
+     * @param host the SMTP relay host
+     * @param port the SMTP relay port (0 or less for the default)
+     * @param username (OPTIONAL) the user to authenticate as, null for no authentication
+     * @param password (OPTIONAL) the password for the user
+     * @param maxConnections the most connections to have open at once (at least 1),
+     * senders wait for a free connection beyond this
+     * @param messagesPerConnection the most messages to send on one connection before reconnecting (0 for no limit)
+     * @param idleSeconds close pooled connections which have not been used for this long (0 for no limit)
+     */
+    public SmtpEmailTransport(String host, int port, String username, String password,
+            int maxConnections, int messagesPerConnection, int idleSeconds) {
+        if (host == null || "".equals(host)) {
+            throw new IllegalArgumentException("host must be set");
+        }
+        Properties props = new Properties();
+        props.put("mail.transport.protocol", "smtp");
+        props.put("mail.smtp.host", host);
+        if (port > 0) {
+            props.put("mail.smtp.port", Integer.toString(port));
+        }
+        if (username != null) {
+            props.put("mail.smtp.auth", "true");
+        }
+        this.session = Session.getInstance(props);
+        this.username = username;
+        this.password = password;
+        this.permits = new Semaphore(Math.max(1, maxConnections), true);
+        this.messagesPerConnection = Math.max(0, messagesPerConnection);
+        this.idleMillis = Math.max(0, idleSeconds) * 1000l;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.externals.EvalEmailTransport#send(javax.mail.internet.InternetAddress, javax.mail.internet.InternetAddress[], java.lang.String, java.lang.String, java.util.List)
+     */
+    public void send(InternetAddress from, InternetAddress[] recipients, String subject, String message, List<String> headers) {
+        if (closed) {
+            throw new IllegalStateException("This email transport has been closed");
+        }
+        MimeMessage mimeMessage;
+        try {
+            mimeMessage = makeMessage(from, subject, message, headers);
+        } catch (MessagingException e) {
+            throw new IllegalArgumentException("Could not create email message (" + subject + "): " + e.getMessage(), e);
+        }
+
+        permits.acquireUninterruptibly();
+        try {
+            PooledConnection connection = idle.pollFirst();
+            boolean reused = connection != null;
+            if (reused && connection.isStale()) {
+                connection.close();
+                connection = null;
+                reused = false;
+            }
+            try {
+                if (connection == null) {
+                    connection = connect();
+                }
+                connection.send(mimeMessage, recipients);
+            } catch (MessagingException e) {
+                if (connection != null) {
+                    connection.close();
+                    connection = null;
+                }
+                if (! reused) {
+                    throw new RuntimeException("Failed to send email (" + subject + ") to " + recipients.length + " recipients: " + e.getMessage(), e);
+                }
+                // the relay probably dropped the pooled connection, try once more on a new one
+                log.debug("Pooled SMTP connection failed, retrying on a new connection: " + e);
+                try {
+                    connection = connect();
+                    connection.send(mimeMessage, recipients);
+                } catch (MessagingException e2) {
+                    if (connection != null) {
+                        connection.close();
+                        connection = null;
+                    }
+                    throw new RuntimeException("Failed to send email (" + subject + ") to " + recipients.length + " recipients: " + e2.getMessage(), e2);
+                }
+            }
+            release(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.externals.EvalEmailTransport#close()
+     */
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return the number of connections currently open and waiting in the pool
+     */
+    public int getIdleConnectionCount() {
+        return idle.size();
+    }
+
+    private MimeMessage makeMessage(InternetAddress from, String subject, String message, List<String> headers) throws MessagingException {
+        MimeMessage mimeMessage = new MimeMessage(session);
+        mimeMessage.setFrom(from);
+        // the recipients only go on the envelope - http://bugs.sakaiproject.org/jira/browse/EVALSYS-724
+        mimeMessage.setRecipient(Message.RecipientType.TO, from);
+        mimeMessage.setReplyTo(new InternetAddress[] {from});
+        mimeMessage.setSubject(subject, "UTF-8");
+        mimeMessage.setText(message, "UTF-8");
+        mimeMessage.setSentDate(new Date());
+        if (headers != null) {
+            for (String header : headers) {
+                int colon = header.indexOf(':');
+                if (colon > 0) {
+                    mimeMessage.addHeader(header.substring(0, colon).trim(), header.substring(colon + 1).trim());
+                }
+            }
+        }
+        mimeMessage.saveChanges();
+        return mimeMessage;
+    }
+
+    private PooledConnection connect() throws MessagingException {
+        Transport transport = session.getTransport("smtp");
+        if (username != null) {
+            transport.connect(username, password);
+        } else {
+            transport.connect();
+        }
+        return new PooledConnection(transport);
+    }
+
+    private void release(PooledConnection connection) {
+        if (closed
+                || (messagesPerConnection > 0 && connection.sent >= messagesPerConnection)) {
+            connection.close();
+        } else {
+            // most recently used first so the extra connections go idle and get retired
+            idle.offerFirst(connection);
+        }
+        PooledConnection oldest;
+        while ((oldest = idle.peekLast()) != null && oldest.isIdle()
+                && idle.removeLastOccurrence(oldest)) {
+            oldest.close();
+        }
+    }
+
+    private class PooledConnection {
+        final Transport transport;
+        int sent = 0;
+        long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Transport transport) {
+            this.transport = transport;
+        }
+
+        void send(MimeMessage message, InternetAddress[] recipients) throws MessagingException {
+            transport.sendMessage(message, recipients);
+            sent++;
+            lastUsed = System.currentTimeMillis();
+        }
+
+        boolean isIdle() {
+            return idleMillis > 0 && System.currentTimeMillis() - lastUsed > idleMillis;
+        }
+
+        boolean isStale() {
+            return isIdle() || ! transport.isConnected();
+        }
+
+        void close() {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                log.debug("Failure closing SMTP connection: " + e);
+            }
+        }
+    }
+
+}
@@ -16,25 +16,48 @@ package org.sakaiproject.evaluation.logic.imports;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
-import org.jdom2.Document;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.hibernate.exception.ConstraintViolationException;
 import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
-import org.jdom2.xpath.XPath;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
 import org.sakaiproject.content.api.ContentHostingService;
 import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.dao.EvaluationDao;
+import org.sakaiproject.evaluation.jobmonitor.JobStatusReporter;
+import org.sakaiproject.evaluation.jobmonitor.LoggingJobStatusReporter;
 import org.sakaiproject.evaluation.logic.EvalAuthoringService;
 import org.sakaiproject.evaluation.logic.EvalCommonLogic;
 import org.sakaiproject.evaluation.logic.EvalEvaluationService;
@@ -42,6 +65,8 @@ import org.sakaiproject.evaluation.logic.EvalEvaluationSetupService;
 import org.sakaiproject.evaluation.model.EvalAssignGroup;
 import org.sakaiproject.evaluation.model.EvalEmailTemplate;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
+import org.sakaiproject.evaluation.model.EvalImportCheckpoint;
+import org.sakaiproject.evaluation.model.EvalImportHash;
 import org.sakaiproject.evaluation.model.EvalItem;
 import org.sakaiproject.evaluation.model.EvalScale;
 import org.sakaiproject.evaluation.model.EvalTemplate;
@@ -49,10 +74,14 @@ import org.sakaiproject.evaluation.model.EvalTemplateItem;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.InUseException;
 import org.sakaiproject.exception.PermissionException;
-import org.sakaiproject.exception.ServerOverloadException;
 import org.sakaiproject.exception.TypeException;
+import org.sakaiproject.genericdao.api.search.Order;
+import org.sakaiproject.genericdao.api.search.Restriction;
+import org.sakaiproject.genericdao.api.search.Search;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.tool.api.Session;
 import org.sakaiproject.tool.api.SessionManager;
+import org.springframework.dao.DataIntegrityViolationException;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -80,6 +109,36 @@ public class EvalImportImpl implements EvalImport {
     private final String EVENT_ASSIGNGROUP_SAVE =     "eval.assigngroup.import";
     private final String EVENT_ASSIGNGROUP_UPDATE =   "eval.assigngroup.import.update";
 
+    /**
+     * The number of elements to read from the XML data and prefetch at once
+     */
+    public static final String SETTING_BATCH_SIZE = "eval.import.batchSize";
+    public static final int DEFAULT_BATCH_SIZE = 200;
+    /**
+     * The number of worker threads saving chunks, 1 to save everything in the importing thread
+     */
+    public static final String SETTING_WORKER_THREADS = "eval.import.threads";
+    public static final int DEFAULT_WORKER_THREADS = 4;
+    /**
+     * The number of times a chunk is retried in a single transaction before its elements are saved one at a time
+     */
+    public static final String SETTING_CHUNK_RETRIES = "eval.import.chunkRetries";
+    public static final int DEFAULT_CHUNK_RETRIES = 1;
+    /**
+     * The number of times a chunk is retried because another chunk saved the same import hash first,
+     * these do not count towards the chunk retries since the next attempt reads and updates that hash
+     */
+    public static final int MAX_CHUNK_CONFLICTS = 3;
+    /**
+     * If true then the progress of each stage is checkpointed so an interrupted import of the same file
+     * resumes from where it got to
+     */
+    public static final String SETTING_CHECKPOINTS = "eval.import.checkpoints";
+    /**
+     * If true then elements which are the same as when their entity was last imported are skipped
+     */
+    public static final String SETTING_SKIP_UNCHANGED = "eval.import.skipUnchanged";
+
     //Spring injection
     private ContentHostingService contentHostingService;
     public void setContentHostingService(ContentHostingService contentHostingService) {
@@ -111,28 +170,65 @@ public class EvalImportImpl implements EvalImport {
     public void setSessionManager(SessionManager sessionManager) {
         this.sessionManager = sessionManager;
     }
+    private ThreadLocalManager threadLocalManager;
+    public void setThreadLocalManager(ThreadLocalManager threadLocalManager) {
+        this.threadLocalManager = threadLocalManager;
+    }
+    private EvaluationDao dao;
+    public void setDao(EvaluationDao dao) {
+        this.dao = dao;
+    }
+    private JobStatusReporter jobStatusReporter;
+    public void setJobStatusReporter(JobStatusReporter jobStatusReporter) {
+        this.jobStatusReporter = jobStatusReporter;
+    }
 
     private Calendar cal;
     private SimpleDateFormat formatter;
     private String currentUserId;
-    private int numPersisted;
+    private AtomicInteger numPersisted;
+    private int batchSize;
+    private int workerThreads;
+    private int chunkRetries;
+    private String jobId;
+    private String fileHash;
+    private boolean skipUnchanged;
+    private XMLInputFactory xmlInputFactory;
+    /**
+     * Saves the chunks of the serial stages one at a time in file order, null if there is no worker pool
+     */
+    private ExecutorService serialExecutor;
+
+    /**
+     * The eid caches and messages of the chunk being processed by the current thread
+     */
+    private final ThreadLocal<ImportChunkContext> chunkContext = new ThreadLocal<>();
 
     // error messages during processing to surface to UI 
     // TODO collecting parameter pattern
-    private List<String> messages = new ArrayList<>();
+    private List<String> messages = Collections.synchronizedList(new ArrayList<>());
 
     public void init() {
 
     }
     public EvalImportImpl() {
         currentUserId = null;
-        numPersisted = 0;
+        numPersisted = new AtomicInteger();
+        batchSize = DEFAULT_BATCH_SIZE;
+        workerThreads = DEFAULT_WORKER_THREADS;
+        chunkRetries = DEFAULT_CHUNK_RETRIES;
+        xmlInputFactory = XMLInputFactory.newInstance();
+        // no DTDs or external entities in the import data
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
         formatter = new SimpleDateFormat("MM/dd/yyyy hh:mm:ss");
         cal = Calendar.getInstance();
     }
 
     /**
-     * Parse and save or update evaluation data found in an XML ContentResource
+     * Parse and save or update evaluation data found in an XML ContentResource,
+     * the XML is streamed so only a few chunks of elements are held in memory at a time
      * 
      * @param id The Reference id of the ContentResource
      * @param userId
@@ -144,9 +240,19 @@ public class EvalImportImpl implements EvalImport {
             //TODO add to audit trail
         }
         currentUserId = userId;
+        batchSize = Math.max(1, commonLogic.getConfigurationSetting(SETTING_BATCH_SIZE, DEFAULT_BATCH_SIZE));
+        workerThreads = Math.max(1, commonLogic.getConfigurationSetting(SETTING_WORKER_THREADS, DEFAULT_WORKER_THREADS));
+        chunkRetries = Math.max(0, commonLogic.getConfigurationSetting(SETTING_CHUNK_RETRIES, DEFAULT_CHUNK_RETRIES));
+        skipUnchanged = commonLogic.getConfigurationSetting(SETTING_SKIP_UNCHANGED, Boolean.TRUE);
+        boolean checkpoints = commonLogic.getConfigurationSetting(SETTING_CHECKPOINTS, Boolean.TRUE);
+        fileHash = null;
+        if (jobStatusReporter == null) {
+            jobStatusReporter = new LoggingJobStatusReporter();
+        }
+        jobId = jobStatusReporter.reportStarted("EvalImport");
         ContentResource resource;
-        Document doc;
-        InputStream in = null;
+        boolean failed = false;
+        ExecutorService executor = null;
 
         //TODO getTime() of start and add to audit trail
         try {
@@ -154,39 +260,48 @@ public class EvalImportImpl implements EvalImport {
 
             //object types not in the XML file will just be ignored during the load
             resource = contentHostingService.getResource(id);
-            in = resource.streamContent();
-            SAXBuilder builder = new SAXBuilder();
-            builder.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-            doc = builder.build(in);
-
-            //save in this order for db referential integrity
-            saveOrUpdateScales(doc);
-            saveOrUpdateItems(doc);
-            saveOrUpdateTemplates(doc);
-            saveOrUpdateTemplateItems(doc);
-            saveOrUpdateEvaluations(doc);
-            saveOrUpdateAssignGroups(doc);
-        }
-        catch (JDOMException jde) {
-            log.error("There was a problem parsing the XML data. " + jde);
-            messages.add("There was a problem parsing the XML data. " + jde);
-            //TODO add to audit trail
+            if (checkpoints) {
+                // the same file uploaded again gets the same checkpoints
+                fileHash = hashContent(resource);
+            }
+
+            if (workerThreads > 1) {
+                final AtomicInteger threadCount = new AtomicInteger();
+                ThreadFactory threadFactory = (Runnable r) -> {
+                    Thread t = new Thread(r, "eval-import-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                };
+                executor = Executors.newFixedThreadPool(workerThreads, threadFactory);
+                serialExecutor = Executors.newSingleThreadExecutor(threadFactory);
+            }
 
-        } catch (PermissionException | IdUnusedException | TypeException | ServerOverloadException | IOException e) {
+            /*
+             * save in dependency order for db referential integrity, the stages in each wave
+             * only depend on the waves before them so they run at the same time
+             */
+            boolean complete = runStages(resource, executor, scaleStage(), templateStage());
+            complete &= runStages(resource, executor, itemStage(), evaluationStage());
+            complete &= runStages(resource, executor, templateItemStage(), assignGroupStage());
+            if (complete && fileHash != null) {
+                // nothing left to resume, running the file again relies on the content hashes
+                removeCheckpoints(fileHash);
+            }
+        }
+        catch (PermissionException | IdUnusedException | TypeException e) {
+            failed = true;
             log.error("There was a problem loading the XML data. " + e);
             messages.add("There was a problem loading the XML data. " + e);
+            jobStatusReporter.reportError(jobId, true, "load", e.toString());
             //TODO add to audit trail
         }
         finally {
-            // close the input stream
-            if(in != null) {
-                try {
-                    in.close();
-                } catch (IOException ioe) {
-                    log.error("Unable to close input stream. " + id + " " + ioe);
-                    messages.add("Unable to close input stream. " + id + " " + ioe);
-                    //TODO add to audit trail
-                }
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            if (serialExecutor != null) {
+                serialExecutor.shutdownNow();
+                serialExecutor = null;
             }
             //remove the FilePickerHelper attachment that was created
             if(id != null) {
@@ -201,34 +316,25 @@ public class EvalImportImpl implements EvalImport {
                 }
             }
         }
+        jobStatusReporter.reportFinished(jobId, failed, "finished", 
+                numPersisted.get() + " saved/updated, " + messages.size() + " messages");
         //TODO getTime() of finish and add to audit trail
         return messages;
     }
 
     /**
      * Save new or update existing EvalScales
-     * 
-     * @param doc the Document created from the XML ContentResource
      */
-    protected void saveOrUpdateScales(Document doc) {
-        String eid = null;
-        String event;
-        EvalScale scale;
-        int scalesSaved = 0;
-        try {
-            XPath docsPath = XPath.newInstance("/EVAL_DATA/EVAL_SCALES/EVAL_SCALE");
-            List scales = docsPath.selectNodes(doc);
-            if(log.isInfoEnabled())
-            {
-                log.info(scales.size() + " scales in XML document");
-            }
-            //TODO add to audit trail
-
-            for(Iterator iter = scales.iterator(); iter.hasNext();) {
-                try {
-                    Element element = (Element)iter.next();
-                    eid = element.getChildText("EID");
-                    scale = authoringService.getScaleByEid(eid);
+    protected ImportStage scaleStage() {
+        return new ImportStage("EVAL_SCALES", "EVAL_SCALE", "EvalScale", 
+                (context, chunk) -> {
+                    context.prefetch(EvalScale.class, getChildTexts(chunk, "EID"), context.scalesByEid, EvalScale::getEid, true);
+                },
+                this::findScale,
+                element -> {
+                    String eid = element.getChildText("EID");
+                    String event;
+                    EvalScale scale = findScale(eid);
                     if(scale == null) {
                         //create new
                         scale = newScale(element);
@@ -242,66 +348,25 @@ public class EvalImportImpl implements EvalImport {
 
                     //save or update
                     authoringService.saveScale(scale, currentUserId);
-                    commonLogic.registerEntityEvent(event, scale);
-                    scalesSaved++;
-
-                    //ping session to keep it alive
-                    numPersisted++;
-                    if(numPersisted % 100 == 0) {
-                        Session session = sessionManager.getCurrentSession();
-                        session.setActive();
-                    }
-                }
-                catch(Exception e) {
-                    log.warn("EvalScale with eid '" + eid + "' was not saved/updated in the database " + e);
-                    messages.add("EvalScale with eid '" + eid + "' was not saved/updated in the database " + e);
-                    //TODO add to audit trail
-                }
-            }
-            if(log.isInfoEnabled())
-            {
-                log.info(getTime() + " " + scalesSaved + " EvalScales saved/updated");
-            }
-            //TODO add to audit trail
-        }
-        catch (JDOMException jde) {
-            log.error("There was an error parsing the XML data. " + jde);
-            messages.add("There was an error parsing the XML data. " + jde);
-            //TODO add to audit trail
-        }
-        catch(Exception e) {
-            log.error("There was a problem loading EvalScales. " + e);
-            messages.add("There was a problem loading EvalScales. " + e);
-            //TODO add to audit trail
-        }
+                    getChunkContext().scalesByEid.put(eid, scale);
+                    registerEvent(event, scale);
+                });
     }
 
     /**
      * Save new or update existing EvalItems
-     * 
-     * @param doc the Document created from the XML ContentResource
      */
-    protected void saveOrUpdateItems(Document doc) {
-        String eid = null;
-        String event;
-        EvalItem item;
-        int itemsSaved = 0;
-
-        //TODO getTime() of start and add to audit trail
-        try {
-            XPath docsPath = XPath.newInstance("/EVAL_DATA/EVAL_ITEMS/EVAL_ITEM");
-            List items = docsPath.selectNodes(doc);
-            if(log.isInfoEnabled())
-            {
-                log.info(items.size() + " items in XML document");
-            }
-            //TODO add to audit trail
-
-            for(Iterator iter = items.iterator(); iter.hasNext();) {
-                try {
-                    Element element = (Element)iter.next();
-                    eid = element.getChildText("EID");
-                    item = authoringService.getItemByEid(eid);
+    protected ImportStage itemStage() {
+        return new ImportStage("EVAL_ITEMS", "EVAL_ITEM", "EvalItem", 
+                (context, chunk) -> {
+                    context.prefetch(EvalScale.class, getChildTexts(chunk, "SCALE_EID"), context.scalesByEid, EvalScale::getEid, true);
+                    context.prefetch(EvalItem.class, getChildTexts(chunk, "EID"), context.itemsByEid, EvalItem::getEid, true);
+                },
+                this::findItem,
+                element -> {
+                    String eid = element.getChildText("EID");
+                    String event;
+                    EvalItem item = findItem(eid);
                     if(item == null) {
                         //create new
                         item = newItem(element);
@@ -315,71 +380,28 @@ public class EvalImportImpl implements EvalImport {
 
                     //save or update
                     authoringService.saveItem(item, currentUserId);
-                    commonLogic.registerEntityEvent(event, item);
-                    itemsSaved++;
-
-                    //ping session to keep it alive
-                    numPersisted++;
-                    if(numPersisted % 100 == 0) {
-                        Session session = sessionManager.getCurrentSession();
-                        session.setActive();
-                    }
-                }
-                catch(Exception e) {
-                    log.warn("EvalItem with eid '" + eid + "' was not saved/updated in the database " + e);
-                    messages.add("EvalItem with eid '" + eid + "' was not saved/updated in the database " + e);
-                    //TODO add to audit trail
-                }
-            }
-            if(log.isInfoEnabled())
-            {
-                log.info(getTime() + " " + itemsSaved + " EvalItems saved/updated");
-            }
-            //TODO add to audit trail
-        }
-        catch (JDOMException jde) {
-            log.error("There was an error parsing the XML data. " + jde);
-            messages.add("There was an error parsing the XML data. " + jde);
-            //TODO add to audit trail
-        }
-        catch(Exception e) {
-            log.error("There was a problem loading EvalItems. " + e);
-            messages.add("There was a problem loading EvalItems. " + e);
-            //TODO add to audit trail
-        }
-        //TODO getTime() of finish and add to audit trail
+                    getChunkContext().itemsByEid.put(eid, item);
+                    registerEvent(event, item);
+                });
     }
 
     /**
      * Save new or update existing EvalTemplates
-     * 
-     * @param doc the Document created from the XML ContentResource
      */
-    protected void saveOrUpdateTemplates(Document doc) {
-        String eid = null;
-        String event;
-        EvalTemplate template;
-        int templatesSaved = 0;
-
-        //TODO getTime() of start and add to audit trail
-        try {
-            XPath docsPath = XPath.newInstance("/EVAL_DATA/EVAL_TEMPLATES/EVAL_TEMPLATE");
-            /*
-             * Use {@link #canCreateTemplate(String)} or {@link #canControlTemplate(String, Long)}
-             * to check if user can save template and avoid exceptions
-             */
-            List items = docsPath.selectNodes(doc);
-            if(log.isInfoEnabled())
-            {
-                log.info(items.size() + " templates in XML document");
-            }
-            //TODO add to audit trail
-
-            for(Iterator iter = items.iterator(); iter.hasNext();) {
-                try {
-                    Element element = (Element)iter.next();
-                    eid = element.getChildText("EID");
-                    template = authoringService.getTemplateByEid(eid);
+    protected ImportStage templateStage() {
+        /*
+         * Use {@link #canCreateTemplate(String)} or {@link #canControlTemplate(String, Long)}
+         * to check if user can save template and avoid exceptions
+         */
+        return new ImportStage("EVAL_TEMPLATES", "EVAL_TEMPLATE", "EvalTemplate", 
+                (context, chunk) -> {
+                    context.prefetch(EvalTemplate.class, getChildTexts(chunk, "EID"), context.templatesByEid, EvalTemplate::getEid, false);
+                },
+                this::findTemplate,
+                element -> {
+                    String eid = element.getChildText("EID");
+                    String event;
+                    EvalTemplate template = findTemplate(eid);
                     if(template == null) {
                         //create new
                         template = newTemplate(element);
@@ -392,66 +414,28 @@ public class EvalImportImpl implements EvalImport {
                     }
 
                     authoringService.saveTemplate(template, currentUserId);
-                    commonLogic.registerEntityEvent(event, template);
-                    templatesSaved++;
-
-                    //ping session to keep it alive
-                    numPersisted++;
-                    if(numPersisted % 100 == 0) {
-                        Session session = sessionManager.getCurrentSession();
-                        session.setActive();
-                    }
-                }
-                catch(Exception e) {
-                    log.warn("EvalTemplate with eid '" + eid + "' was not saved/updated in the database " + e);
-                    messages.add("EvalTemplate with eid '" + eid + "' was not saved/updated in the database " + e);
-                    //TODO add to audit trail
-                }
-            }
-            if(log.isInfoEnabled())
-            {
-                log.info(getTime() + " " + templatesSaved + " EvalTemplates saved/updated");
-            }
-            //TODO add to audit trail
-        } 
-        catch (JDOMException jde) {
-            log.error("There was an error parsing the XML data. " + jde);
-            messages.add("There was an error parsing the XML data. " + jde);
-            //TODO add to audit trail
-        }
-        catch(Exception e) {
-            log.error("There was a problem loading EvalTemplates. " + e);
-            messages.add("There was a problem loading EvalTemplates. " + e);
-            //TODO add to audit trail
-        }
-        //TODO getTime() of finish and add to audit trail
+                    getChunkContext().templatesByEid.put(eid, template);
+                    registerEvent(event, template);
+                });
     }
 
     /**
      * Save new or update existing EvalTemplateItems
-     * 
-     * @param doc the Document created from the XML ContentResource
      */
-    protected void saveOrUpdateTemplateItems(Document doc) {
-        String eid = null;
-        String event;
-        int templateItemsSaved = 0;
-        try {
-            XPath docsPath = XPath.newInstance("/EVAL_DATA/EVAL_TEMPLATEITEMS/EVAL_TEMPLATEITEM");
-            List items = docsPath.selectNodes(doc);
-            if(log.isInfoEnabled())
-            {
-                log.info(items.size() + " template items in XML document");
-            }
-            //TODO add to audit trail
-
-            for(Iterator iter = items.iterator(); iter.hasNext();) {
-                try {
-                    Element element = (Element)iter.next();
-                    eid = element.getChildText("EID");
+    protected ImportStage templateItemStage() {
+        ImportStage stage = new ImportStage("EVAL_TEMPLATEITEMS", "EVAL_TEMPLATEITEM", "EvalTemplateItem", 
+                (context, chunk) -> {
+                    context.prefetch(EvalTemplate.class, getChildTexts(chunk, "TEMPLATE_EID"), context.templatesByEid, EvalTemplate::getEid, false);
+                    context.prefetch(EvalItem.class, getChildTexts(chunk, "ITEM_EID"), context.itemsByEid, EvalItem::getEid, true);
+                    context.prefetch(EvalTemplateItem.class, getChildTexts(chunk, "EID"), context.templateItemsByEid, EvalTemplateItem::getEid, true);
+                },
+                this::findTemplateItem,
+                element -> {
+                    String eid = element.getChildText("EID");
+                    String event;
                     String templateEid = element.getChildText("TEMPLATE_EID");
-                    EvalTemplate template = authoringService.getTemplateByEid(templateEid);
-                    EvalTemplateItem templateItem = authoringService.getTemplateItemByEid(eid);
+                    EvalTemplate template = findTemplate(templateEid);
+                    EvalTemplateItem templateItem = findTemplateItem(eid);
                     if(template != null && templateItem == null) {
                         //create new
                         templateItem = newTemplateItem(element);
@@ -463,73 +447,33 @@ public class EvalImportImpl implements EvalImport {
                         event = EVENT_TEMPLATEITEM_UPDATE;
                     }
                     authoringService.saveTemplateItem(templateItem, currentUserId);
-                    commonLogic.registerEntityEvent(event, templateItem);
-                    templateItemsSaved++;
-
-                    //ping session to keep it alive
-                    numPersisted++;
-                    if(numPersisted % 100 == 0) {
-                        Session session = sessionManager.getCurrentSession();
-                        session.setActive();
-                    }
-                }
-                catch(Exception e) {
-                    log.warn(e.getLocalizedMessage(), e);
-                    if(eid != null)
-                    {
-                        log.warn("EvalTemplateItem with eid '" + eid + "' was not saved/updated in the database " + e);
-                    }
-                    messages.add("EvalTemplateItem with eid '" + eid + "' was not saved/updated in the database " + e);
-                    //TODO add to audit trail
-                }
-            }
-            if(log.isInfoEnabled())
-            {
-                log.info(getTime() + " " + templateItemsSaved + " EvalTemplateItems saved/updated");
-            }
-        } 
-        catch (JDOMException jde) {
-            log.error("There was an error parsing the XML data. " + jde);
-            messages.add("There was an error parsing the XML data. " + jde);
-            //TODO add to audit trail
-        }
-        catch(Exception e) {
-            log.error("There was a problem loading EvalTemplateItems. " + e);
-            messages.add("There was a problem loading EvalTemplateItems. " + e);
-            //TODO add to audit trail
-        }
+                    getChunkContext().templateItemsByEid.put(eid, templateItem);
+                    registerEvent(event, templateItem);
+                });
+        // new template items are put at the end of their template (by counting the items in it)
+        // so two transactions saving items for the same template would give them the same display order
+        stage.serial = true;
+        return stage;
     }
 
     /**
      * Save new or update existing EvalEvaluations
-     * 
-     * @param doc the Document created from the XML ContentResource
      */
-    private void saveOrUpdateEvaluations(Document doc) {
-        String eid = null;
-        String event;
-        EvalEvaluation evaluation;
-        int evaluationsSaved = 0;
-
-        //TODO getTime() of start and add to audit trail
-        try {
-            XPath docsPath = XPath.newInstance("/EVAL_DATA/EVAL_EVALUATIONS/EVAL_EVALUATION");
-            /*
-             * Use {@link #canCreateTemplate(String)} or {@link #canControlTemplate(String, Long)}
-             * to check if user can save template and avoid exceptions
-             */
-            List evals = docsPath.selectNodes(doc);
-            if(log.isInfoEnabled())
-            {
-                log.info(evals.size() + " evaluationSetupService in XML document");
-            }
-            //TODO add to audit trail
-
-            for(Iterator iter = evals.iterator(); iter.hasNext();) {
-                try {
-                    Element element = (Element)iter.next();
-                    eid = element.getChildText("EID");
-                    evaluation = evaluationService.getEvaluationByEid(eid);
+    protected ImportStage evaluationStage() {
+        /*
+         * Use {@link #canCreateTemplate(String)} or {@link #canControlTemplate(String, Long)}
+         * to check if user can save template and avoid exceptions
+         */
+        return new ImportStage("EVAL_EVALUATIONS", "EVAL_EVALUATION", "EvalEvaluation", 
+                (context, chunk) -> {
+                    // evaluations are looked up through the service so they get fixed up
+                    context.prefetch(EvalTemplate.class, getChildTexts(chunk, "TEMPLATE_EID"), context.templatesByEid, EvalTemplate::getEid, false);
+                },
+                this::findEvaluation,
+                element -> {
+                    String eid = element.getChildText("EID");
+                    String event;
+                    EvalEvaluation evaluation = findEvaluation(eid);
                     if(evaluation == null) {
                         //create new
                         evaluation = newEvaluation(element);
@@ -544,122 +488,820 @@ public class EvalImportImpl implements EvalImport {
 
                     //save or update
                     evalEvaluationsLogic.saveEvaluation(evaluation, currentUserId, false);
-                    commonLogic.registerEntityEvent(event, evaluation);
-                    evaluationsSaved++;
-
-                    //ping session to keep it alive
-                    numPersisted++;
-                    if(numPersisted % 100 == 0) {
-                        Session session = sessionManager.getCurrentSession();
-                        session.setActive(); 
+                    getChunkContext().evaluationsByEid.put(eid, evaluation);
+                    registerEvent(event, evaluation);
+                });
+    }
+
+    /**
+     * Save new or update existing EvalAssignGroups
+     */
+    protected ImportStage assignGroupStage() {
+        return new ImportStage("EVAL_ASSIGN_GROUPS", "EVAL_ASSIGN_GROUP", "EvalAssignGroup", 
+                (context, chunk) -> {
+                    context.prefetch(EvalAssignGroup.class, getChildTexts(chunk, "EID"), context.assignGroupsByEid, EvalAssignGroup::getEid, false);
+                },
+                this::findAssignGroup,
+                element -> {
+                    String eid = element.getChildText("EID");
+                    String event;
+                    EvalAssignGroup evalAssignGroup = findAssignGroup(eid);
+                    if(evalAssignGroup == null) {
+                        //create new
+                        evalAssignGroup = newAssignGroup(element);
+                        event = EVENT_ASSIGNGROUP_SAVE;
+                    }
+                    else
+                    {
+                        //update existing
+                        setAssignGroupProperties(element, evalAssignGroup);
+                        event = EVENT_ASSIGNGROUP_UPDATE;
                     }
+
+                    //save or update
+                    evaluationSetupService.saveAssignGroup(evalAssignGroup, currentUserId);
+                    getChunkContext().assignGroupsByEid.put(eid, evalAssignGroup);
+                    registerEvent(event, evalAssignGroup);
+                });
+    }
+
+    /**
+     * Saves or updates one element of the XML data
+     */
+    protected interface ElementSaver {
+        void saveOrUpdate(Element element) throws Exception;
+    }
+
+    /**
+     * One type of element in the XML data (e.g. /EVAL_DATA/EVAL_SCALES/EVAL_SCALE) and how to save it
+     */
+    protected static class ImportStage {
+        final String sectionName;
+        final String elementName;
+        final String typeName;
+        final BiConsumer<ImportChunkContext, List<Element>> prefetch;
+        final Function<String, ?> finder;
+        final ElementSaver saver;
+        final AtomicInteger found = new AtomicInteger();
+        final AtomicInteger saved = new AtomicInteger();
+        final AtomicInteger unchanged = new AtomicInteger();
+        /**
+         * if true then the chunks of this stage are saved one at a time in file order,
+         * for entities where saving one depends on the ones saved before it
+         */
+        boolean serial = false;
+        /**
+         * the checkpoint of this stage for the file being imported, null if the import is not checkpointed
+         */
+        EvalImportCheckpoint checkpoint;
+        /**
+         * the elements before this index have been committed (or were committed by an earlier run)
+         */
+        int committedTo = 0;
+        // start index -> end index of the chunks committed after a chunk which is not committed yet
+        private final Map<Integer, Integer> committedChunks = new HashMap<>();
+        /**
+         * @param sectionName the name of the element holding the elements (e.g. EVAL_SCALES)
+         * @param elementName the name of the elements to save (e.g. EVAL_SCALE)
+         * @param typeName the type name for messages (e.g. EvalScale)
+         * @param prefetch loads everything a chunk refers to into the eid caches of the chunk
+         * @param finder finds the existing entity for an eid (null if there is none)
+         * @param saver saves or updates a single element
+         */
+        ImportStage(String sectionName, String elementName, String typeName,
+                BiConsumer<ImportChunkContext, List<Element>> prefetch, Function<String, ?> finder, ElementSaver saver) {
+            this.sectionName = sectionName;
+            this.elementName = elementName;
+            this.typeName = typeName;
+            this.prefetch = prefetch;
+            this.finder = finder;
+            this.saver = saver;
+        }
+
+        /**
+         * Record that a chunk was committed, chunks can finish in any order so the committed
+         * index only moves on when all the chunks before it are committed as well
+         *
+         * @param start the index of the first element of the chunk
+         * @param end the index after the last element of the chunk
+         * @return true if the committed index moved on
+         */
+        synchronized boolean chunkCommitted(int start, int end) {
+            committedChunks.put(start, end);
+            boolean moved = false;
+            Integer next;
+            while ((next = committedChunks.remove(committedTo)) != null) {
+                committedTo = next;
+                moved = true;
+            }
+            return moved;
+        }
+    }
+
+    /**
+     * Run a wave of independent stages, the elements of each stage are streamed from the XML data in chunks
+     * and the chunks are processed on the worker pool (or in this thread if there is no pool),
+     * the chunks of a serial stage are processed one at a time in file order by the serial worker,
+     * this returns when every chunk of every stage has been processed (the barrier before the next wave)
+     * 
+     * @param resource the XML ContentResource
+     * @param executor the worker pool, null to process the chunks in this thread
+     * @param stages the stages to run, none of these may depend on each other
+     * @return true if every element of every stage was committed
+     */
+    protected boolean runStages(ContentResource resource, ExecutorService executor, ImportStage... stages) {
+        // limit the chunks waiting for a worker so the reading does not get too far ahead
+        Semaphore inFlight = new Semaphore(workerThreads * 2);
+        List<Future<?>> futures = new ArrayList<>();
+        Set<ImportStage> readStages = new HashSet<>();
+        for (ImportStage stage : stages) {
+            loadCheckpoint(stage);
+            if (stage.checkpoint != null && stage.checkpoint.getComplete()) {
+                log.info(stage.typeName + "s were all committed by an earlier import of this file, skipping them");
+                readStages.add(stage);
+                continue;
+            }
+            ExecutorService stageExecutor = stage.serial ? serialExecutor : executor;
+            boolean read = readChunks(resource, stage, (start, chunk) -> {
+                if (stageExecutor == null) {
+                    processChunk(stage, start, chunk);
+                } else {
+                    inFlight.acquireUninterruptibly();
+                    futures.add( stageExecutor.submit(() -> {
+                        // each chunk gets its own session for the importing user, like a Sakai job thread
+                        Session session = sessionManager.startSession();
+                        sessionManager.setCurrentSession(session);
+                        try {
+                            session.setUserId(currentUserId);
+                            processChunk(stage, start, chunk);
+                        } finally {
+                            session.invalidate();
+                            if (threadLocalManager != null) {
+                                // nothing is left for the next task run by this pooled thread
+                                threadLocalManager.clear();
+                            }
+                            inFlight.release();
+                        }
+                    }) );
                 }
-                catch (Exception e) {
-                    log.warn("EvalEvaluation with eid '" + eid + "' was not saved/updated in the database " + e);
-                    messages.add("EvalEvaluation with eid '" + eid + "' was not saved/updated in the database " + e);
-                    //TODO add to audit trail
+                //ping session to keep it alive
+                Session session = sessionManager.getCurrentSession();
+                session.setActive();
+            });
+            if (read) {
+                readStages.add(stage);
+            }
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the import to finish", e);
+            } catch (ExecutionException e) {
+                log.error("There was a problem processing an import chunk. " + e.getCause());
+                messages.add("There was a problem processing an import chunk. " + e.getCause());
+            }
+        }
+        boolean complete = true;
+        for (ImportStage stage : stages) {
+            if (stage.checkpoint != null && ! stage.checkpoint.getComplete()
+                    && readStages.contains(stage) && stage.committedTo == stage.found.get()) {
+                saveCheckpoint(stage, true);
+            }
+            complete &= readStages.contains(stage) && stage.committedTo == stage.found.get();
+            jobStatusReporter.reportProgress(jobId, stage.typeName, progress(stage));
+            if(log.isInfoEnabled())
+            {
+                log.info(stage.found + " " + stage.typeName + "s in XML document");
+                log.info(getTime() + " " + stage.saved + " " + stage.typeName + "s saved/updated, " 
+                        + stage.unchanged + " unchanged");
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * @return the progress of a stage for the job status
+     */
+    private String progress(ImportStage stage) {
+        return stage.found + " read, " + stage.saved + " saved/updated, " + stage.unchanged + " unchanged";
+    }
+
+    /**
+     * Stream through the XML data and pass the elements of one stage to the handler in chunks of the batch size,
+     * the elements before the committed index of the stage are skipped
+     * 
+     * @param resource the XML ContentResource
+     * @param stage the stage to read the elements for
+     * @param chunkHandler handles each chunk, it gets the index of the first element in the chunk and the chunk
+     * @return true if all of the XML data was read
+     */
+    protected boolean readChunks(ContentResource resource, ImportStage stage, BiConsumer<Integer, List<Element>> chunkHandler) {
+        InputStream in = null;
+        XMLStreamReader reader = null;
+        try {
+            in = resource.streamContent();
+            reader = xmlInputFactory.createXMLStreamReader(in);
+            List<Element> chunk = new ArrayList<>(batchSize);
+            int resumeFrom = stage.committedTo;
+            int chunkStart = 0;
+            int depth = 0;
+            boolean inData = false;
+            boolean inSection = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (depth == 1) {
+                        inData = "EVAL_DATA".equals(name);
+                    } else if (depth == 2) {
+                        inSection = inData && stage.sectionName.equals(name);
+                    } else if (depth == 3 && inSection && stage.elementName.equals(name)) {
+                        int index = stage.found.getAndIncrement();
+                        if (index < resumeFrom) {
+                            skipElement(reader);
+                        } else {
+                            if (chunk.isEmpty()) {
+                                chunkStart = index;
+                            }
+                            chunk.add( readElement(reader) );
+                        }
+                        depth--; // the reader is now at the end of the element
+                        if (chunk.size() >= batchSize) {
+                            chunkHandler.accept(chunkStart, chunk);
+                            chunk = new ArrayList<>(batchSize);
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
                 }
             }
-            if(log.isInfoEnabled()) {
-                log.info(getTime() + " " + evaluationsSaved + " EvalEvaluations saved/updated");
+            if (! chunk.isEmpty()) {
+                chunkHandler.accept(chunkStart, chunk);
             }
-            //TODO add to audit trail
+            return true;
         }
-        catch (JDOMException jde) {
-            log.error("There was an error parsing the XML data. " + jde);
-            messages.add("There was an error parsing the XML data. " + jde);
+        catch (XMLStreamException xse) {
+            log.error("There was an error parsing the XML data. " + xse);
+            messages.add("There was an error parsing the XML data. " + xse);
+            jobStatusReporter.reportError(jobId, false, stage.typeName, xse.toString());
             //TODO add to audit trail
         }
         catch(Exception e) {
-            log.error("There was a problem loading EvalEvaluations. " + e);
-            messages.add("There was a problem loading EvalEvaluations. " + e);
+            log.error("There was a problem loading " + stage.typeName + "s. " + e);
+            messages.add("There was a problem loading " + stage.typeName + "s. " + e);
+            jobStatusReporter.reportError(jobId, false, stage.typeName, e.toString());
             //TODO add to audit trail
         }
+        finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException xse) {
+                    log.warn("Unable to close XML reader. " + xse);
+                }
+            }
+            // close the input stream
+            if(in != null) {
+                try {
+                    in.close();
+                } catch (IOException ioe) {
+                    log.error("Unable to close input stream. " + resource.getId() + " " + ioe);
+                    messages.add("Unable to close input stream. " + resource.getId() + " " + ioe);
+                    //TODO add to audit trail
+                }
+            }
+        }
+        return false;
     }
 
     /**
-     * Save new or update existing EvalAssignGroups
+     * Skip the element the reader is at (and everything inside it) without building it,
+     * the reader is left at the end of the element
      * 
-     * @param doc the Document created from the XML ContentResource
+     * @param reader an XML reader positioned at a START_ELEMENT
+     * @throws XMLStreamException
      */
-    private void saveOrUpdateAssignGroups(Document doc) {
-        //TODO getTime() of start and add to audit trail
+    protected static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
 
-        String eid = null;
-        String event;
-        int assignGroupsSaved = 0;
-        EvalAssignGroup evalAssignGroup;
+    /**
+     * Save one chunk of elements in a single transaction, if that fails it is retried (up to the configured
+     * number of retries) and then each element is saved on its own so one bad element only loses itself,
+     * the checkpoint of the stage only moves past chunks which were committed without any failures,
+     * a chunk which lost a race with another chunk to insert the same import hash is retried as a conflict
+     * 
+     * @param stage the stage the chunk is from
+     * @param start the index of the first element of the chunk in the stage
+     * @param chunk the elements
+     */
+    protected void processChunk(ImportStage stage, int start, List<Element> chunk) {
+        int attempt = 0;
+        int conflicts = 0;
+        while (attempt <= chunkRetries) {
+            ImportChunkContext context = new ImportChunkContext();
+            try {
+                dao.invokeTransactionalAccess(() -> saveChunk(context, stage, chunk, true));
+                // only keep the messages and events from the attempt which was committed
+                messages.addAll(context.messages);
+                context.postEvents();
+                chunkProcessed(stage, start, chunk, context, true);
+                return;
+            } catch (Exception e) {
+                if (isConstraintViolation(e) && conflicts < MAX_CHUNK_CONFLICTS) {
+                    // the next attempt has a new context so it reads the row the other chunk inserted and updates it
+                    conflicts++;
+                    log.info("Chunk of " + chunk.size() + " " + stage.typeName + "s conflicted with another chunk, retrying. " + e);
+                } else {
+                    attempt++;
+                    log.warn("Chunk of " + chunk.size() + " " + stage.typeName + "s was not saved (attempt " + attempt + "). " + e);
+                }
+            }
+        }
+        ImportChunkContext context = new ImportChunkContext();
+        saveChunk(context, stage, chunk, false);
+        messages.addAll(context.messages);
+        // each element was committed on its own, the context only has the events of the ones which were saved
+        context.postEvents();
+        chunkProcessed(stage, start, chunk, context, context.saved + context.unchanged == chunk.size());
+    }
+
+    /**
+     * Update the counts and the checkpoint for a processed chunk
+     */
+    private void chunkProcessed(ImportStage stage, int start, List<Element> chunk, ImportChunkContext context, boolean committed) {
+        stage.saved.addAndGet(context.saved);
+        stage.unchanged.addAndGet(context.unchanged);
+        numPersisted.addAndGet(context.saved);
+        if (committed && stage.chunkCommitted(start, start + chunk.size()) && stage.checkpoint != null) {
+            saveCheckpoint(stage, false);
+        }
+        jobStatusReporter.reportProgress(jobId, stage.typeName, progress(stage));
+    }
+
+    /**
+     * Load the checkpoint of a stage for the file being imported (or make a new one),
+     * the elements the checkpoint says were committed are not read again
+     * 
+     * @param stage the stage
+     */
+    protected void loadCheckpoint(ImportStage stage) {
+        if (fileHash == null) {
+            return;
+        }
+        List<EvalImportCheckpoint> checkpoints = dao.findBySearch(EvalImportCheckpoint.class, new Search( new Restriction[] {
+                new Restriction("fileHash", fileHash),
+                new Restriction("stage", stage.typeName)
+        }) );
+        if (checkpoints.isEmpty()) {
+            stage.checkpoint = new EvalImportCheckpoint(fileHash, stage.typeName, 0, false);
+        } else {
+            stage.checkpoint = checkpoints.get(0);
+            stage.committedTo = stage.checkpoint.getElementIndex();
+            if (stage.checkpoint.getComplete()) {
+                stage.found.set(stage.committedTo);
+            } else if (stage.committedTo > 0) {
+                log.info("Resuming the import of " + stage.typeName + "s after element " + stage.committedTo);
+                messages.add("Resumed the import of " + stage.typeName + "s after element " + stage.committedTo);
+            }
+        }
+    }
+
+    /**
+     * Save the committed index of a stage in its checkpoint,
+     * a checkpoint which cannot be saved only means more of the file is processed again if it is resumed
+     * 
+     * @param stage the stage
+     * @param complete true if every element of the stage has been committed
+     */
+    protected void saveCheckpoint(ImportStage stage, boolean complete) {
+        synchronized (stage) {
+            EvalImportCheckpoint checkpoint = stage.checkpoint;
+            checkpoint.setElementIndex(stage.committedTo);
+            checkpoint.setComplete(complete);
+            checkpoint.setLastModified(new Date());
+            try {
+                dao.save(checkpoint);
+            } catch (RuntimeException e) {
+                log.warn("Unable to save the import checkpoint for " + stage.typeName + "s at element " + stage.committedTo + ". " + e);
+            }
+        }
+    }
+
+    /**
+     * Remove all the checkpoints for a file
+     * 
+     * @param fileHash the content hash of the file
+     */
+    protected void removeCheckpoints(String fileHash) {
         try {
-            XPath docsPath = XPath.newInstance("/EVAL_DATA/EVAL_ASSIGN_GROUPS/EVAL_ASSIGN_GROUP");
-            /*
-             * Use {@link #canCreateTemplate(String)} or {@link #canControlTemplate(String, Long)}
-             * to check if user can save template and avoid exceptions
-             */
-            List evalAssignGroups = docsPath.selectNodes(doc);
-            if(log.isInfoEnabled())
-            {
-                log.info(evalAssignGroups .size() + " EvalAssignGroups in XML document");
+            List<EvalImportCheckpoint> checkpoints = dao.findBySearch(EvalImportCheckpoint.class, 
+                    new Search("fileHash", fileHash));
+            if (! checkpoints.isEmpty()) {
+                dao.deleteSet(new HashSet<>(checkpoints));
             }
-            //TODO add to audit trail
+        } catch (RuntimeException e) {
+            log.warn("Unable to remove the import checkpoints for " + fileHash + ". " + e);
+        }
+    }
 
-            for(Iterator iter = evalAssignGroups .iterator(); iter.hasNext();) {
+    /**
+     * @param resource the XML ContentResource
+     * @return the SHA-256 hash of the content of the resource OR null if it cannot be read
+     */
+    protected String hashContent(ContentResource resource) {
+        InputStream in = null;
+        try {
+            in = resource.streamContent();
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return toHex(digest.digest());
+        } catch (Exception e) {
+            log.warn("Unable to hash the XML data, the import will not be checkpointed. " + e);
+            return null;
+        } finally {
+            if (in != null) {
                 try {
-                    Element element = (Element)iter.next();
-                    eid = element.getChildText("EID");
-                    evalAssignGroup = evaluationService.getAssignGroupByEid(eid);
+                    in.close();
+                } catch (IOException ioe) {
+                    log.warn("Unable to close input stream. " + resource.getId() + " " + ioe);
+                }
+            }
+        }
+    }
 
-                    //TODO remove: testing
-                    //					String evalGroupId = element.getChildText("PROVIDER_ID");
-                    //					Set userIds = commonLogic.getUserIdsForEvalGroup(evalGroupId, EvalConstants.PERM_TAKE_EVALUATION);
-                    //					userIds = commonLogic.getUserIdsForEvalGroup(evalGroupId, EvalConstants.PERM_BE_EVALUATED);
-                    //TODO remove: testing
+    /**
+     * @param element an element of the XML data
+     * @return the SHA-256 hash of the element (and everything inside it)
+     */
+    protected static String hashElement(Element element) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String xml = new XMLOutputter(Format.getRawFormat()).outputString(element);
+            return toHex(digest.digest(xml.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
 
-                    if(evalAssignGroup == null) {
-                        //create new
-                        evalAssignGroup = newAssignGroup(element);
-                        event = EVENT_ASSIGNGROUP_SAVE;
-                    }
-                    else
-                    {
-                        //update existing
-                        setAssignGroupProperties(element, evalAssignGroup);
-                        event = EVENT_ASSIGNGROUP_UPDATE;
-                    }
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0x0f, 16));
+            sb.append(Character.forDigit(b & 0x0f, 16));
+        }
+        return sb.toString();
+    }
 
-                    //save or update
-                    evaluationSetupService.saveAssignGroup(evalAssignGroup, currentUserId);
-                    commonLogic.registerEntityEvent(event, evalAssignGroup);
-                    assignGroupsSaved++;
-
-                    //ping session to keep it alive
-                    numPersisted++;
-                    if(numPersisted % 100 == 0) {
-                        Session session = sessionManager.getCurrentSession();
-                        session.setActive(); 
+    /**
+     * Prefetch and save the elements in a chunk
+     * 
+     * @param context the caches and messages for this chunk
+     * @param stage the stage the chunk is from
+     * @param chunk the elements
+     * @param failFast if true then the first failure is thrown (to roll back the chunk),
+     * otherwise failures are recorded in the messages and the rest of the elements are still saved,
+     * the numbers of elements saved and skipped as unchanged are recorded in the context
+     */
+    private void saveChunk(ImportChunkContext context, ImportStage stage, List<Element> chunk, boolean failFast) {
+        chunkContext.set(context);
+        try {
+            try {
+                stage.prefetch.accept(context, chunk);
+                if (skipUnchanged) {
+                    context.prefetchHashes(stage.typeName, getChildTexts(chunk, "EID"));
+                }
+            } catch (RuntimeException e) {
+                if (failFast) {
+                    throw e;
+                }
+                // anything not prefetched is looked up one at a time
+                log.warn("Unable to prefetch a chunk of " + chunk.size() + " " + stage.typeName + "s. " + e);
+            }
+            Set<EvalImportHash> changedHashes = new HashSet<>();
+            for (Element element : chunk) {
+                String eid = element.getChildText("EID");
+                try {
+                    String hash = null;
+                    if (skipUnchanged && eid != null) {
+                        hash = hashElement(element);
+                        EvalImportHash importHash = context.findHash(stage.typeName, eid);
+                        if (importHash != null && hash.equals(importHash.getContentHash())
+                                && stage.finder.apply(eid) != null) {
+                            // same as the last time it was imported and still there
+                            context.unchanged++;
+                            continue;
+                        }
+                    }
+                    stage.saver.saveOrUpdate(element);
+                    context.saved++;
+                    if (hash != null) {
+                        EvalImportHash importHash = context.updateHash(stage.typeName, eid, hash);
+                        if (failFast) {
+                            changedHashes.add(importHash);
+                        } else {
+                            saveHash(context, importHash);
+                        }
                     }
                 }
                 catch(Exception e) {
-                    log.warn("EvalAssignGroup with eid '" + eid + "' was not saved/updated in the database " + e);
-                    messages.add("EvalAssignGroup with eid '" + eid + "' was not saved/updated in the database " + e);
+                    if (failFast) {
+                        throw new RuntimeException(stage.typeName + " with eid '" + eid + "' was not saved/updated in the database " + e, e);
+                    }
+                    log.warn(stage.typeName + " with eid '" + eid + "' was not saved/updated in the database " + e);
+                    addMessage(stage.typeName + " with eid '" + eid + "' was not saved/updated in the database " + e);
                     //TODO add to audit trail
                 }
+            }
+            if (! changedHashes.isEmpty()) {
+                // in the same transaction as the entities
+                dao.saveSet(changedHashes);
+            }
+        } finally {
+            chunkContext.remove();
+        }
+    }
 
+    /**
+     * Save an import hash on its own, if another chunk inserted the hash for the same entity first
+     * then that row is read again and updated instead
+     */
+    private void saveHash(ImportChunkContext context, EvalImportHash importHash) {
+        try {
+            dao.save(importHash);
+        } catch (RuntimeException e) {
+            if (importHash.getId() != null || ! isConstraintViolation(e)) {
+                throw e;
             }
-            if(log.isInfoEnabled()) {
-                log.info(getTime() + " " + assignGroupsSaved + " EvalAssignGroups saved/updated");
+            context.hashesByEid.remove(importHash.getEid());
+            EvalImportHash existing = context.updateHash(importHash.getEntityType(), importHash.getEid(), importHash.getContentHash());
+            if (existing.getId() == null) {
+                throw e;
             }
-            //TODO add to audit trail
+            dao.save(existing);
         }
-        catch (JDOMException jde) {
-            log.error("There was an error parsing the XML data. " + jde);
-            messages.add("There was an error parsing the XML data. " + jde);
-            //TODO add to audit trail
+    }
+
+    /**
+     * @return true if the exception (or one of its causes) is a database constraint violation
+     */
+    protected static boolean isConstraintViolation(Throwable t) {
+        while (t != null) {
+            if (t instanceof DataIntegrityViolationException
+                    || t instanceof ConstraintViolationException
+                    || t instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+            t = t.getCause() == t ? null : t.getCause();
         }
-        catch(Exception e) {
-            log.error("There was a problem loading EvalAssignGroups. " + e);
-            messages.add("There was a problem loading EvalAssignGroups. " + e);
-            //TODO add to audit trail
+        return false;
+    }
+
+    /**
+     * Read the element the reader is at (and everything inside it) into a detached JDOM Element,
+     * the reader is left at the end of the element
+     * 
+     * @param reader an XML reader positioned at a START_ELEMENT
+     * @return the Element
+     * @throws XMLStreamException
+     */
+    protected static Element readElement(XMLStreamReader reader) throws XMLStreamException {
+        Element element = new Element(reader.getLocalName());
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                element.addContent( readElement(reader) );
+            } else if (event == XMLStreamConstants.CHARACTERS 
+                    || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                element.addContent( reader.getText() );
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        return element;
+    }
+
+    /**
+     * @return the set of the (non-blank) texts of the named child in all the elements
+     */
+    private Set<String> getChildTexts(List<Element> elements, String childName) {
+        Set<String> texts = new HashSet<>();
+        for (Element element : elements) {
+            String text = element.getChildText(childName);
+            if (text != null && text.trim().length() > 0) {
+                texts.add(text);
+            }
+        }
+        return texts;
+    }
+
+    /**
+     * The eid caches and messages for one chunk, a chunk is processed by a single thread and the
+     * entities in the caches belong to the transaction of that chunk so they are never shared
+     */
+    protected class ImportChunkContext {
+        // eid -> entity (null if there is none), filled by the prefetch for the chunk
+        final Map<String, EvalScale> scalesByEid = new HashMap<>();
+        final Map<String, EvalItem> itemsByEid = new HashMap<>();
+        final Map<String, EvalTemplate> templatesByEid = new HashMap<>();
+        final Map<String, EvalTemplateItem> templateItemsByEid = new HashMap<>();
+        final Map<String, EvalEvaluation> evaluationsByEid = new HashMap<>();
+        final Map<String, EvalAssignGroup> assignGroupsByEid = new HashMap<>();
+        // eid -> the content hash the entity was last imported from (null if there is none)
+        final Map<String, EvalImportHash> hashesByEid = new HashMap<>();
+        final List<String> messages = new ArrayList<>();
+        // event name and entity of each entity saved, posted once the chunk is committed
+        final List<Object[]> events = new ArrayList<>();
+        int saved = 0;
+        int unchanged = 0;
+
+        /**
+         * Post the events of the entities saved in this chunk, events cannot be rolled back
+         * so this is only done after the chunk is committed
+         */
+        void postEvents() {
+            for (Object[] event : events) {
+                commonLogic.registerEntityEvent((String) event[0], (Serializable) event[1]);
+            }
+            events.clear();
         }
+
+        /**
+         * Fetch all the entities with these eids which are not already cached in a single query,
+         * eids which are not found are cached as null so they are not looked up again
+         * 
+         * @param type the entity type
+         * @param eids the eids to fetch
+         * @param cache the map of eid -> entity to put them in
+         * @param eidGetter gets the eid from an entity
+         * @param uniqueOnly if true then an eid which matches more than one entity is treated as not found
+         * (the same as the single eid lookups for this type)
+         */
+        <T> void prefetch(Class<T> type, Set<String> eids, Map<String, T> cache, 
+                Function<T, String> eidGetter, boolean uniqueOnly) {
+            eids.removeAll(cache.keySet());
+            if (eids.isEmpty()) {
+                return;
+            }
+            for (String eid : eids) {
+                cache.put(eid, null);
+            }
+            Set<String> duplicates = new HashSet<>();
+            List<T> entities = dao.findBySearch(type, new Search("eid", eids.toArray(new String[eids.size()])));
+            for (T entity : entities) {
+                String eid = eidGetter.apply(entity);
+                if (cache.get(eid) != null) {
+                    duplicates.add(eid);
+                } else {
+                    cache.put(eid, entity);
+                }
+            }
+            if (uniqueOnly) {
+                for (String eid : duplicates) {
+                    cache.put(eid, null);
+                }
+            }
+        }
+
+        /**
+         * Fetch the content hashes of the entities of this type with these eids in a single query
+         */
+        void prefetchHashes(String entityType, Set<String> eids) {
+            eids.removeAll(hashesByEid.keySet());
+            if (eids.isEmpty()) {
+                return;
+            }
+            for (String eid : eids) {
+                hashesByEid.put(eid, null);
+            }
+            List<EvalImportHash> hashes = dao.findBySearch(EvalImportHash.class, new Search( new Restriction[] {
+                    new Restriction("entityType", entityType),
+                    new Restriction("eid", eids.toArray(new String[eids.size()]))
+            }) );
+            for (EvalImportHash hash : hashes) {
+                hashesByEid.put(hash.getEid(), hash);
+            }
+        }
+
+        /**
+         * @return the hash record for this entity (null if there is none), there is at most one
+         * because of the unique key on the entity type and eid
+         */
+        EvalImportHash findHash(String entityType, String eid) {
+            return find(hashesByEid, eid, (String e) -> {
+                List<EvalImportHash> hashes = dao.findBySearch(EvalImportHash.class, new Search( new Restriction[] {
+                        new Restriction("entityType", entityType),
+                        new Restriction("eid", e)
+                }, new Order("id")) );
+                return hashes.isEmpty() ? null : hashes.get(0);
+            });
+        }
+
+        /**
+         * @return the (new or updated) hash record for an entity which was just saved
+         */
+        EvalImportHash updateHash(String entityType, String eid, String contentHash) {
+            EvalImportHash importHash = findHash(entityType, eid);
+            if (importHash == null) {
+                importHash = new EvalImportHash(entityType, eid, contentHash);
+                hashesByEid.put(eid, importHash);
+            } else {
+                importHash.setContentHash(contentHash);
+                importHash.setLastModified(new Date());
+            }
+            return importHash;
+        }
+
+        <T> T find(Map<String, T> cache, String eid, Function<String, T> lookup) {
+            if (eid == null) {
+                return null;
+            }
+            if (! cache.containsKey(eid)) {
+                cache.put(eid, lookup.apply(eid));
+            }
+            return cache.get(eid);
+        }
+    }
+
+    /**
+     * @return the context of the chunk this thread is working on (a new empty one if there is none)
+     */
+    private ImportChunkContext getChunkContext() {
+        ImportChunkContext context = chunkContext.get();
+        if (context == null) {
+            context = new ImportChunkContext();
+        }
+        return context;
+    }
+
+    /**
+     * Register an event for a saved entity, the events for a chunk are only posted if the chunk is committed
+     */
+    private void registerEvent(String eventName, Serializable entity) {
+        ImportChunkContext context = chunkContext.get();
+        if (context == null) {
+            commonLogic.registerEntityEvent(eventName, entity);
+        } else {
+            context.events.add(new Object[] {eventName, entity});
+        }
+    }
+
+    /**
+     * Add a message for the UI, messages for a chunk are only kept if the chunk is saved
+     */
+    private void addMessage(String message) {
+        ImportChunkContext context = chunkContext.get();
+        if (context == null) {
+            messages.add(message);
+        } else {
+            context.messages.add(message);
+        }
+    }
+
+    private EvalScale findScale(String eid) {
+        ImportChunkContext context = getChunkContext();
+        return context.find(context.scalesByEid, eid, authoringService::getScaleByEid);
+    }
+
+    private EvalItem findItem(String eid) {
+        ImportChunkContext context = getChunkContext();
+        return context.find(context.itemsByEid, eid, authoringService::getItemByEid);
+    }
+
+    private EvalTemplate findTemplate(String eid) {
+        ImportChunkContext context = getChunkContext();
+        return context.find(context.templatesByEid, eid, authoringService::getTemplateByEid);
+    }
+
+    private EvalTemplateItem findTemplateItem(String eid) {
+        ImportChunkContext context = getChunkContext();
+        return context.find(context.templateItemsByEid, eid, authoringService::getTemplateItemByEid);
+    }
+
+    private EvalEvaluation findEvaluation(String eid) {
+        ImportChunkContext context = getChunkContext();
+        return context.find(context.evaluationsByEid, eid, evaluationService::getEvaluationByEid);
+    }
+
+    private EvalAssignGroup findAssignGroup(String eid) {
+        ImportChunkContext context = getChunkContext();
+        return context.find(context.assignGroupsByEid, eid, evaluationService::getAssignGroupByEid);
     }
 
     /**
@@ -738,7 +1380,7 @@ public class EvalImportImpl implements EvalImport {
                 }
                 catch(NumberFormatException e) {
                     log.warn("There was a problem with DISPLAY_ORDER involving EvalTemplateItem with eid '" + eid + "'. " + e);
-                    messages.add("There was a problem with DISPLAY_ORDER involving EvalTemplateItem with eid '" + eid + "'. " + e);
+                    addMessage("There was a problem with DISPLAY_ORDER involving EvalTemplateItem with eid '" + eid + "'. " + e);
                     //TODO add to audit trail
                 }
             }
@@ -757,7 +1399,7 @@ public class EvalImportImpl implements EvalImport {
                 }
                 catch(NumberFormatException e) {
                     log.warn("There was a problem with BLOCK_ID involving EvalTemplateItem with eid '" + eid + "'. " + e);
-                    messages.add("There was a problem with BLOCK_ID involving EvalTemplateItem with eid '" + eid + "'. " + e);
+                    addMessage("There was a problem with BLOCK_ID involving EvalTemplateItem with eid '" + eid + "'. " + e);
                     //TODO add to audit trail
                 }
             }
@@ -767,9 +1409,9 @@ public class EvalImportImpl implements EvalImport {
                     blockParent = Boolean.TRUE;
             }
             String itemEid = element.getChildText("ITEM_EID");
-            EvalItem item = authoringService.getItemByEid(itemEid);
+            EvalItem item = findItem(itemEid);
             String templateEid = element.getChildText("TEMPLATE_EID");
-            EvalTemplate template = authoringService.getTemplateByEid(templateEid);
+            EvalTemplate template = findTemplate(templateEid);
 
             Integer displayRows = null;
             EvalScale scale;
@@ -786,13 +1428,13 @@ public class EvalImportImpl implements EvalImport {
                     scale = item.getScale();
                     if(scale == null) {
                         log.warn("EvalScale is null for EvalTemplateItem with eid '" + eid + "' for EvalTemplate '" + template.getTitle());
-                        messages.add("EvalScale is null for EvalTemplateItem with eid '" + eid + "' for EvalTemplate '" + template.getTitle());
+                        addMessage("EvalScale is null for EvalTemplateItem with eid '" + eid + "' for EvalTemplate '" + template.getTitle());
                         //TODO add to audit trail
                     }
                 }
                 else {
                     log.warn("item is null for templateItem with eid '" + eid + "' for template '" + template.getTitle());
-                    messages.add("EvalItem is null for EvalTemplateItem with eid '" + eid + "' for EvalTemplate '" + template.getTitle());
+                    addMessage("EvalItem is null for EvalTemplateItem with eid '" + eid + "' for EvalTemplate '" + template.getTitle());
                     //TODO add to audit trail
                 }
                 String displayRowsString = element.getChildText("DISPLAY_ROWS");
@@ -802,7 +1444,7 @@ public class EvalImportImpl implements EvalImport {
                     }
                     catch(NumberFormatException e) {
                         log.warn("There was a problem with DISPLAY_ROWS involving EvalTemplateItem with eid '" + eid + "'. " + e);
-                        messages.add("There was a problem with DISPLAY_ROWS involving EvalTemplateItem with eid '" + eid + "'. " + e);
+                        addMessage("There was a problem with DISPLAY_ROWS involving EvalTemplateItem with eid '" + eid + "'. " + e);
                         //TODO add to audit trail
                     }
                 }
@@ -843,7 +1485,7 @@ public class EvalImportImpl implements EvalImport {
                 }
                 catch(NumberFormatException e) {
                     log.warn("There was a problem with DISPLAY_ORDER involving EvalTemplateItem with eid '" + eid + "'. " + e);
-                    messages.add("There was a problem with DISPLAY_ORDER involving EvalTemplateItem with eid '" + eid + "'. " + e);
+                    addMessage("There was a problem with DISPLAY_ORDER involving EvalTemplateItem with eid '" + eid + "'. " + e);
                     //TODO add to audit trail
                 }
             }
@@ -864,7 +1506,7 @@ public class EvalImportImpl implements EvalImport {
                 }
                 catch(NumberFormatException e) {
                     log.warn("There was a problem with BLOCK_ID involving EvalTemplateItem with eid '" + eid + "'. " + e);
-                    messages.add("There was a problem with BLOCK_ID involving EvalTemplateItem with eid '" + eid + "'. " + e);
+                    addMessage("There was a problem with BLOCK_ID involving EvalTemplateItem with eid '" + eid + "'. " + e);
                     //TODO add to audit trail
                 }
             }
@@ -878,11 +1520,11 @@ public class EvalImportImpl implements EvalImport {
             evalTemplateItem.setBlockParent(blockParent);
 
             String itemEid = element.getChildText("ITEM_EID");
-            EvalItem item = authoringService.getItemByEid(itemEid);
+            EvalItem item = findItem(itemEid);
             evalTemplateItem.setItem(item);
 
             String templateEid = element.getChildText("TEMPLATE_EID");
-            EvalTemplate template = authoringService.getTemplateByEid(templateEid);
+            EvalTemplate template = findTemplate(templateEid);
             evalTemplateItem.setTemplate(template);
 
             String itemCategory = item.getCategory();
@@ -903,7 +1545,7 @@ public class EvalImportImpl implements EvalImport {
                     }
                     catch(NumberFormatException e) {
                         log.warn("There was a problem with DISPLAY_ROWS involving EvalTemplateItem with eid '" + eid + "'. " + e);
-                        messages.add("There was a problem with DISPLAY_ROWS involving EvalTemplateItem with eid '" + eid + "'. " + e);
+                        addMessage("There was a problem with DISPLAY_ROWS involving EvalTemplateItem with eid '" + eid + "'. " + e);
                         //TODO add to audit trail
                     }
                 }
@@ -949,7 +1591,7 @@ public class EvalImportImpl implements EvalImport {
                 {
                     log.warn("No options were found for EvalScale with eid '" + eid + "' " + title);
                 }
-                messages.add("No options were found for EvalScale with eid '" + eid + "' " + title);
+                addMessage("No options were found for EvalScale with eid '" + eid + "' " + title);
                 //TODO add to audit trail
             }
             String owner = element.getChildText("OWNER");
@@ -1020,7 +1662,7 @@ public class EvalImportImpl implements EvalImport {
                 {
                     log.warn("No options were found for EvalScale with eid '" + scale.getEid() + "' " + scale.getTitle());
                 }
-                messages.add("No options were found for EvalScale with eid '" + scale.getEid() + "' " + scale.getTitle());
+                addMessage("No options were found for EvalScale with eid '" + scale.getEid() + "' " + scale.getTitle());
                 //TODO add to audit trail
             }
         }
@@ -1052,7 +1694,7 @@ public class EvalImportImpl implements EvalImport {
                 }
                 catch(NumberFormatException e) {
                     log.warn("There was a problem with DISPLAY_ROWS involving EvalItem with eid '" + eid + "'. " + e);
-                    messages.add("There was a problem with DISPLAY_ROWS involving EvalItem with eid '" + eid + "'. " + e);
+                    addMessage("There was a problem with DISPLAY_ROWS involving EvalItem with eid '" + eid + "'. " + e);
                     //TODO add to audit trail
                 }
             }
@@ -1067,16 +1709,16 @@ public class EvalImportImpl implements EvalImport {
                 String scaleEid = element.getChildText("SCALE_EID");
                 if(scaleEid != null && scaleEid.trim().length() != 0)
                 {
-                    scale = authoringService.getScaleByEid(scaleEid);
+                    scale = findScale(scaleEid);
                     if(scale == null) {
                         log.warn("EvalScale is null for EvalItem with eid '" + eid + "' " + element.getChildText("ITEM_TEXT"));
-                        messages.add("EvalScale is null for EvalItem with eid '" + eid + "' " + element.getChildText("ITEM_TEXT"));
+                        addMessage("EvalScale is null for EvalItem with eid '" + eid + "' " + element.getChildText("ITEM_TEXT"));
                         //TODO add to audit trail
                     }
                 }
                 else {
                     log.warn("Could not get EvalScale by eid for EvalItem with eid '" + eid + "' " + element.getChildText("ITEM_TEXT"));
-                    messages.add("Could not get EvalScale by eid for EvalItem with eid '" + eid + "' " + element.getChildText("ITEM_TEXT"));
+                    addMessage("Could not get EvalScale by eid for EvalItem with eid '" + eid + "' " + element.getChildText("ITEM_TEXT"));
                     //TODO add to audit trail
                 }
             }
@@ -1131,7 +1773,7 @@ public class EvalImportImpl implements EvalImport {
                 }
                 catch(NumberFormatException e) {
                     log.warn("There was a problem with DISPLAY_ROWS involving EvalItem with eid '" + item.getEid() + "'. " + e);
-                    messages.add("There was a problem with DISPLAY_ROWS involving EvalItem with eid '" + item.getEid() + "'. " + e);
+                    addMessage("There was a problem with DISPLAY_ROWS involving EvalItem with eid '" + item.getEid() + "'. " + e);
                     //TODO add to audit trail
                 }
             }
@@ -1153,19 +1795,19 @@ public class EvalImportImpl implements EvalImport {
                 String scaleEid = element.getChildText("SCALE_EID");
                 if(scaleEid != null && scaleEid.trim().length() != 0)
                 {
-                    EvalScale scale = authoringService.getScaleByEid(scaleEid);
+                    EvalScale scale = findScale(scaleEid);
                     if(scale != null) {
                         item.setScale(scale);
                     }
                     else {
                         log.warn("Could not get EvalScale with eid '" + scaleEid + "' for EvalItem with eid '" + item.getEid() + "' " + item.getItemText());
-                        messages.add("Could not get EvalScale with eid '" + scaleEid + "' for EvalItem with eid '" + item.getEid() + "' " + item.getItemText());
+                        addMessage("Could not get EvalScale with eid '" + scaleEid + "' for EvalItem with eid '" + item.getEid() + "' " + item.getItemText());
                         //TODO add to audit trail
                     }
                 }
                 else {
                     log.warn("Could not get EvalScale by eid for EvalItem with eid '" + item.getEid() + "' " + item.getItemText());
-                    messages.add("Could not get EvalScale by eid for EvalItem with eid '" + item.getEid() + "' " + item.getItemText());
+                    addMessage("Could not get EvalScale by eid for EvalItem with eid '" + item.getEid() + "' " + item.getItemText());
                     //TODO add to audit trail
                 }
             }
@@ -1187,19 +1829,19 @@ public class EvalImportImpl implements EvalImport {
             eid = element.getChildText("EID");
             if(eid == null || "".equals(eid)) {
                 log.warn("EvalAssignGroup was not saved/updated in the database, because eid was missing.");
-                messages.add("EvalAsignGroup was not saved/updated in the database, because eid was missing.");
+                addMessage("EvalAsignGroup was not saved/updated in the database, because eid was missing.");
                 //TODO add to audit trail
             }
             String providerId = element.getChildText("PROVIDER_ID");
             if(providerId == null || "".equals(providerId)) {
                 log.warn("EvalAssignGroup with eid '" + eid + "' was not saved/updated in the database, because provider id was missing.");
-                messages.add("EvalAssignGroup with eid '" + eid + "' was not saved/updated in the database, because provider id was missing.");
+                addMessage("EvalAssignGroup with eid '" + eid + "' was not saved/updated in the database, because provider id was missing.");
                 //TODO add to audit trail
             }
             String owner = element.getChildText("OWNER");
             String groupType = element.getChildText("GROUP_TYPE");
             String evalEid = element.getChildText("EVAL_EVALUATION_EID");
-            EvalEvaluation evaluation = evaluationService.getEvaluationByEid(evalEid);
+            EvalEvaluation evaluation = findEvaluation(evalEid);
             Boolean instructorApproval = element.getChildText("INSTRUCTOR_APPROVAL").trim().equals("1") ? Boolean.TRUE : Boolean.FALSE;
             Boolean instructorsViewResults = element.getChildText("INSTRUCTOR_VIEW_RESULTS").trim().equals("1") ? Boolean.TRUE : Boolean.FALSE;
             Boolean studentsViewResults = element.getChildText("STUDENT_VIEW_RESULTS").trim().equals("1") ? Boolean.TRUE : Boolean.FALSE;
@@ -1229,7 +1871,7 @@ public class EvalImportImpl implements EvalImport {
             Boolean instructorApproval = element.getChildText("INSTRUCTOR_APPROVAL").trim().equals("1") ? Boolean.TRUE : Boolean.FALSE;
             Boolean instructorsViewResults = element.getChildText("INSTRUCTOR_VIEW_RESULTS").trim().equals("1") ? Boolean.TRUE : Boolean.FALSE;
             Boolean studentsViewResults = element.getChildText("STUDENT_VIEW_RESULTS").trim().equals("1") ? Boolean.TRUE : Boolean.FALSE;
-            EvalEvaluation evaluation = evaluationService.getEvaluationByEid(element.getChildText("EVALUATION_EID"));
+            EvalEvaluation evaluation = findEvaluation(element.getChildText("EVALUATION_EID"));
             evalAssignGroup.setEvaluation(evaluation);
             evalAssignGroup.setEvalGroupType(element.getChildText(element.getChildText("GROUP_TYPE")));
             evalAssignGroup.setEvalGroupId(element.getChildText(element.getChildText("PROVIDER_ID")));
@@ -1257,14 +1899,14 @@ public class EvalImportImpl implements EvalImport {
             eid = element.getChildText("EID");
             if(eid == null || "".equals(eid)) {
                 log.warn("EvalEvaluation was not saved/updated in the database, because eid was missing.");
-                messages.add("EvalEvaluation was not saved/updated in the database, because eid was missing.");
+                addMessage("EvalEvaluation was not saved/updated in the database, because eid was missing.");
                 //TODO add to audit trail
             }
             /*
 			String providerId = element.getChildText("PROVIDER_ID");
 			if(providerId == null || "".equals(providerId)) {
 				log.warn("EvalEvaluation with eid '" + eid + "' was not saved/updated in the database, because provider id was missing.");
-				messages.add("EvalEvaluation with eid '" + eid + "' was not saved/updated in the database, because provider id was missing.");
+				addMessage("EvalEvaluation with eid '" + eid + "' was not saved/updated in the database, because provider id was missing.");
 				//TODO add to audit trail
 			}
              */
@@ -1278,7 +1920,7 @@ public class EvalImportImpl implements EvalImport {
             Date instructorsDate = getDate(element.getChildText("INSTRUCTORS_DATE"));
             EvalEmailTemplate availableEmailTemplate = evaluationService.getDefaultEmailTemplate(element.getChildText("AVAILABLE_EMAIL_TEMPLATE"));
             EvalEmailTemplate reminderEmailTemplate = evaluationService.getDefaultEmailTemplate(element.getChildText("REMINDER_EMAIL_TEMPLATE"));
-            EvalTemplate template = authoringService.getTemplateByEid(element.getChildText("TEMPLATE_EID"));
+            EvalTemplate template = findTemplate(element.getChildText("TEMPLATE_EID"));
             String instructions = element.getChildText("INSTRUCTIONS");
             if( instructions == null || instructions.trim().equals("")){
                 instructions = null;
@@ -1295,7 +1937,7 @@ public class EvalImportImpl implements EvalImport {
                 }
                 catch(NumberFormatException e) {
                     log.warn("There was a problem with REMINDER_DAYS involving EvalEvaluation with eid '" + eid + "'. " + e);
-                    messages.add("There was a problem with REMINDER_DAYS involving EvalEvaluation with eid '" + eid + "'. " + e);
+                    addMessage("There was a problem with REMINDER_DAYS involving EvalEvaluation with eid '" + eid + "'. " + e);
                     //TODO add to audit trail
                 }
             }
@@ -1338,7 +1980,7 @@ public class EvalImportImpl implements EvalImport {
             eid = element.getChildText("EID");
             if(eid == null || "".equals(eid)) {
                 log.warn("EvalEvaluation was not saved/updated in the database, because eid was missing.");
-                messages.add("EvalEvaluation was not saved/updated in the database, because eid was missing.");
+                addMessage("EvalEvaluation was not saved/updated in the database, because eid was missing.");
                 throw new IllegalArgumentException("Eid missing for EvalEvaluation");
                 //TODO add to audit trail
             }
@@ -1346,7 +1988,7 @@ public class EvalImportImpl implements EvalImport {
 			String providerId = element.getChildText("PROVIDER_ID");
 			if(providerId == null || "".equals(providerId)) {
 				log.warn("EvalEvaluation with eid '" + eid + "' was not saved/updated in the database, because provider id was missing.");
-				messages.add("EvalEvaluation with eid '" + eid + "' was not saved/updated in the database, because provider id was missing.");
+				addMessage("EvalEvaluation with eid '" + eid + "' was not saved/updated in the database, because provider id was missing.");
 				throw new IllegalArgumentException("Provider Id missing for EvalEvaluation with eid '" + eid + "'");
 				//TODO add to audit trail
 			}
@@ -1377,7 +2019,7 @@ public class EvalImportImpl implements EvalImport {
 
             evaluation.setAvailableEmailTemplate(evaluationService.getDefaultEmailTemplate(element.getChildText("AVAILABLE_EMAIL_TEMPLATE")));
             evaluation.setReminderEmailTemplate(evaluationService.getDefaultEmailTemplate(element.getChildText("REMINDER_EMAIL_TEMPLATE")));
-            evaluation.setTemplate(authoringService.getTemplateByEid(element.getChildText("TEMPLATE_EID")));
+            evaluation.setTemplate(findTemplate(element.getChildText("TEMPLATE_EID")));
 
             String instructions = element.getChildText("INSTRUCTIONS");
             if( instructions == null || instructions.trim().equals("")){
@@ -1399,7 +2041,7 @@ public class EvalImportImpl implements EvalImport {
                 }
                 catch(NumberFormatException e) {
                     log.warn("There was a problem with REMINDER_DAYS involving EvalEvaluation with eid '" + eid + "'. " + e);
-                    messages.add("There was a problem with REMINDER_DAYS involving EvalEvaluation with eid '" + eid + "'. " + e);
+                    addMessage("There was a problem with REMINDER_DAYS involving EvalEvaluation with eid '" + eid + "'. " + e);
                     //TODO add to audit trail
                 }
             }
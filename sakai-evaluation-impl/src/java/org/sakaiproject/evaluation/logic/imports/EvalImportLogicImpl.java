@@ -104,6 +104,8 @@ public class EvalImportLogicImpl implements EvalImportLogic {
 				.withIdentity("EvalImportJob", Scheduler.DEFAULT_GROUP)
 				.usingJobData("ID", id)
 				.usingJobData("CURRENT_USER", commonLogic.getCurrentUserId())
+				// run again if the node goes down, the import resumes from its checkpoints
+				.requestRecovery()
 				.build();
 		
 		//job name + group should be unique
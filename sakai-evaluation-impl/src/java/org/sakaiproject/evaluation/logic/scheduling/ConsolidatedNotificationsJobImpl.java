@@ -101,11 +101,12 @@ public class ConsolidatedNotificationsJobImpl implements ConsolidatedNotificatio
 		String serverId = this.externalLogic.getServerId();
 		Boolean gotLock = lockManager.obtainLock(LOCK_CONSOLIDATED_EMAIL_JOB, serverId, TWO_HOURS);
 		if(gotLock != null && gotLock) {
+			String jobId = null;
 			try {
 				
 				Date beginTime = new Date();
 			
-				String jobId = this.jobStatusReporter.reportStarted("Email");
+				jobId = this.jobStatusReporter.reportStarted(JOB_NAME);
 				this.jobStatusReporter.reportProgress(jobId, "server-id", serverId);
 				
 				Boolean sendAvailableEmails = (Boolean) this.evalSettings.get(EvalSettings.CONSOLIDATED_EMAIL_NOTIFY_AVAILABLE);
@@ -167,37 +168,41 @@ public class ConsolidatedNotificationsJobImpl implements ConsolidatedNotificatio
 							cal.set(Calendar.SECOND, 0);
 						}
 						this.evalSettings.set(EvalSettings.NEXT_REMINDER_DATE, cal.getTime());
-						
-						Date endTime = new Date();
-						
-						//"FINISHED" "summary" The email job took <elapsed-time> seconds to run. It kicked off at <begin-time> and ended at <begin-time>.
-						
-						StringBuilder buf = new StringBuilder();
-						DateFormat df = DateFormat.getTimeInstance();
-						long seconds = endTime.getTime() - beginTime.getTime();
-						long milliseconds = seconds % 1000;
-						seconds = seconds / 1000;
-						
-						buf.append("The email job took ");
-						buf.append(seconds);
-						buf.append(".");
-						if(milliseconds < 10) {
-							buf.append("00");
-						} else if (milliseconds < 100) {
-							buf.append("0");
-						}
-						buf.append(milliseconds);
-						buf.append(" seconds to run. It kicked off at ");
-						buf.append(df.format(beginTime));
-						buf.append(" and ended at ");
-						buf.append(df.format(endTime));
-						buf.append(".");
-						
-						jobStatusReporter.reportFinished(jobId, false, "finished", buf.toString());
 					}
 				}
+				
+				Date endTime = new Date();
+				
+				//"FINISHED" "summary" The email job took <elapsed-time> seconds to run. It kicked off at <begin-time> and ended at <begin-time>.
+				
+				StringBuilder buf = new StringBuilder();
+				DateFormat df = DateFormat.getTimeInstance();
+				long seconds = endTime.getTime() - beginTime.getTime();
+				long milliseconds = seconds % 1000;
+				seconds = seconds / 1000;
+				
+				buf.append("The email job took ");
+				buf.append(seconds);
+				buf.append(".");
+				if(milliseconds < 10) {
+					buf.append("00");
+				} else if (milliseconds < 100) {
+					buf.append("0");
+				}
+				buf.append(milliseconds);
+				buf.append(" seconds to run. It kicked off at ");
+				buf.append(df.format(beginTime));
+				buf.append(" and ended at ");
+				buf.append(df.format(endTime));
+				buf.append(".");
+				
+				jobStatusReporter.reportFinished(jobId, false, "finished", buf.toString());
 			} catch(Exception e) {
 				log.warn("Error processing email job",e);
+				if(jobId != null) {
+					// the progress of the run is kept as failed
+					jobStatusReporter.reportFinished(jobId, true, "error", e.toString());
+				}
 			} finally {
 				// this server must release lock
 				lockManager.releaseLock(LOCK_CONSOLIDATED_EMAIL_JOB, serverId);
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A text template which is processed in two stages, used when the same template is sent many times
+ * with only a few values changing (e.g. once per group of an evaluation)<br/>
+ * The template is processed once by {@link TextTemplateLogicUtils} with the shared values and a marker
+ * in place of each slot value, the output is then split into the fixed text and the slots so
+ * {@link #fill(Map)} only has to join strings<br/>
+ * The template can only be split like this when the slot values are only written out as they are
+ * (${Name}), if a slot is used anywhere else (e.g. in an if or with a ?builtin) then every fill
+ * processes the whole template instead, so the output is always the same as processing the template directly
+ */
+public class PreparedTextTemplate {
+
+    private static final char MARKER_START = '\uE000';
+    private static final char MARKER_END = '\uE001';
+
+    private final String textTemplate;
+    private final Map<String, String> sharedValues;
+    private final List<String> slotNames;
+    // null if the template could not be split
+    private final String[] fixedText;
+    private final int[] slots;
+
+    /**
+     * @param textTemplate a freemarker/velocity style text template (see {@link TextTemplateLogicUtils#processTextTemplate(String, Map)})
+     * @param sharedValues the replacement values which are the same for every fill
+     * @param slotNames the names of the replacement values which are given to each fill
+     */
+    public PreparedTextTemplate(String textTemplate, Map<String, String> sharedValues, Collection<String> slotNames) {
+        if (textTemplate == null || textTemplate.equals("")) {
+            throw new IllegalArgumentException("The textTemplate cannot be null or empty string");
+        }
+        this.textTemplate = textTemplate;
+        this.sharedValues = new HashMap<>(sharedValues);
+        this.slotNames = new ArrayList<>(slotNames);
+
+        List<String> fixed = new ArrayList<>();
+        List<Integer> found = new ArrayList<>();
+        boolean split = false;
+        if (onlyWritesSlots()) {
+            Map<String, String> values = new HashMap<>(sharedValues);
+            for (int i = 0; i < this.slotNames.size(); i++) {
+                values.put(this.slotNames.get(i), MARKER_START + Integer.toString(i) + MARKER_END);
+            }
+            split = split(TextTemplateLogicUtils.processTextTemplate(textTemplate, values), fixed, found);
+        }
+
+        if (split) {
+            this.fixedText = fixed.toArray(new String[fixed.size()]);
+            this.slots = new int[found.size()];
+            for (int i = 0; i < this.slots.length; i++) {
+                this.slots[i] = found.get(i);
+            }
+        } else {
+            this.fixedText = null;
+            this.slots = null;
+        }
+    }
+
+    /**
+     * @param slotValues the values for the slots (a missing slot is treated like a missing replacement value)
+     * @return the processed template, this is the same as processing the template with the shared and slot values
+     */
+    public String fill(Map<String, String> slotValues) {
+        if (fixedText == null || ! slotValues.keySet().containsAll(slotNames)) {
+            Map<String, String> values = new HashMap<>(sharedValues);
+            values.putAll(slotValues);
+            return TextTemplateLogicUtils.processTextTemplate(textTemplate, values);
+        }
+        String[] values = new String[slotNames.size()];
+        int length = 0;
+        for (String text : fixedText) {
+            length += text.length();
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = slotValues.get(slotNames.get(i));
+            if (values[i] == null) {
+                values[i] = "";
+            }
+            length += values[i].length();
+        }
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < slots.length; i++) {
+            sb.append(fixedText[i]);
+            sb.append(values[slots[i]]);
+        }
+        sb.append(fixedText[fixedText.length - 1]);
+        return sb.toString();
+    }
+
+    /**
+     * @return true if the template was split into the fixed text and slots,
+     * false if every fill processes the whole template
+     */
+    public boolean isPrepared() {
+        return fixedText != null;
+    }
+
+    /**
+     * Split the processed template into the fixed text around the slot markers
+     * @return true if the markers were all found intact, false otherwise
+     */
+    private boolean split(String output, List<String> fixed, List<Integer> found) {
+        int pos = 0;
+        int start;
+        while ((start = output.indexOf(MARKER_START, pos)) >= 0) {
+            int end = output.indexOf(MARKER_END, start);
+            if (end < 0) {
+                return false;
+            }
+            int slot;
+            try {
+                slot = Integer.parseInt(output.substring(start + 1, end));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (slot < 0 || slot >= slotNames.size()) {
+                return false;
+            }
+            String text = output.substring(pos, start);
+            if (text.indexOf(MARKER_END) >= 0) {
+                return false;
+            }
+            fixed.add(text);
+            found.add(slot);
+            pos = end + 1;
+        }
+        String text = output.substring(pos);
+        if (text.indexOf(MARKER_END) >= 0) {
+            return false;
+        }
+        fixed.add(text);
+        return true;
+    }
+
+    /**
+     * @return true if every use of a slot name in the template is a plain ${Name}
+     * (and the markers cannot be confused with the shared values)
+     */
+    private boolean onlyWritesSlots() {
+        for (String value : sharedValues.values()) {
+            if (value != null && (value.indexOf(MARKER_START) >= 0 || value.indexOf(MARKER_END) >= 0)) {
+                return false;
+            }
+        }
+        for (String name : slotNames) {
+            String written = "${" + name + "}";
+            int pos = 0;
+            while ((pos = textTemplate.indexOf(name, pos)) >= 0) {
+                boolean partOfName = (pos > 0 && Character.isJavaIdentifierPart(textTemplate.charAt(pos - 1)))
+                        || (pos + name.length() < textTemplate.length() && Character.isJavaIdentifierPart(textTemplate.charAt(pos + name.length())));
+                if (! partOfName && ! textTemplate.startsWith(written, pos - 2)) {
+                    return false;
+                }
+                pos += name.length();
+            }
+        }
+        return true;
+    }
+
+}
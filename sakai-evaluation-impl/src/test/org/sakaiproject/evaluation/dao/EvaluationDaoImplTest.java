@@ -14,18 +14,27 @@
  */
 package org.sakaiproject.evaluation.dao;
 
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
+import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.logic.model.EvalSavedAnswer;
 import org.sakaiproject.evaluation.model.EvalAdhocGroup;
 import org.sakaiproject.evaluation.model.EvalAnswer;
 import org.sakaiproject.evaluation.model.EvalAssignGroup;
@@ -70,6 +79,54 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
 
     protected static final long MILLISECONDS_PER_DAY = 24L * 60L * 60L * 1000L;
 
+    /**
+     * The site and section tables live outside the evaluation schema so they are created here
+     * (outside of any test transaction) for the site title matching tests
+     */
+    @BeforeClass
+    public static void createSiteTables() throws Exception {
+        executeSql("CREATE TABLE SAKAI_SITE (SITE_ID VARCHAR(99) NOT NULL, TITLE VARCHAR(99))",
+                "CREATE TABLE SAKAI_REALM (REALM_KEY INTEGER NOT NULL, REALM_ID VARCHAR(255) NOT NULL)",
+                "CREATE TABLE SAKAI_REALM_PROVIDER (REALM_KEY INTEGER NOT NULL, PROVIDER_ID VARCHAR(200) NOT NULL)",
+                "CREATE TABLE CM_MEMBER_CONTAINER_T (ENTERPRISE_ID VARCHAR(255) NOT NULL, CLASS_DISCR VARCHAR(100) NOT NULL, TITLE VARCHAR(255))",
+                "INSERT INTO SAKAI_SITE VALUES ('site-bio-101', 'BIO 101 Fall')",
+                "INSERT INTO SAKAI_SITE VALUES ('site-bio-102', 'BIO 102 Fall')",
+                "INSERT INTO SAKAI_SITE VALUES ('site-chem-101', 'CHEM 101 Spring')",
+                "INSERT INTO SAKAI_REALM VALUES (1, '/site/site-bio-101')",
+                "INSERT INTO SAKAI_REALM VALUES (2, '/site/site-chem-101')",
+                "INSERT INTO SAKAI_REALM VALUES (3, '/site/site-chem-101/group/lab')",
+                "INSERT INTO SAKAI_REALM_PROVIDER VALUES (1, 'BIO101-001')",
+                "INSERT INTO SAKAI_REALM_PROVIDER VALUES (2, 'CHEM101-001')",
+                "INSERT INTO SAKAI_REALM_PROVIDER VALUES (3, 'CHEM101-002')",
+                "INSERT INTO CM_MEMBER_CONTAINER_T VALUES ('BIO101-001', 'org.sakaiproject.coursemanagement.impl.SectionCmImpl', 'BIO 101 Lecture')",
+                "INSERT INTO CM_MEMBER_CONTAINER_T VALUES ('CHEM101-001', 'org.sakaiproject.coursemanagement.impl.SectionCmImpl', 'CHEM 101 Lecture')",
+                "INSERT INTO CM_MEMBER_CONTAINER_T VALUES ('CHEM101-002', 'org.sakaiproject.coursemanagement.impl.SectionCmImpl', 'CHEM 101 Lab')");
+    }
+
+    @AfterClass
+    public static void dropSiteTables() throws Exception {
+        executeSql("DROP TABLE SAKAI_SITE", "DROP TABLE SAKAI_REALM",
+                "DROP TABLE SAKAI_REALM_PROVIDER", "DROP TABLE CM_MEMBER_CONTAINER_T");
+    }
+
+    /**
+     * Run statements against the test database on a connection of their own (auto committed)
+     */
+    private static void executeSql(String... statements) throws Exception {
+        Properties props = new Properties();
+        try (InputStream in = EvaluationDaoImplTest.class.getResourceAsStream("/hibernate.properties")) {
+            props.load(in);
+        }
+        Class.forName(props.getProperty("hibernate.connection.driver_class"));
+        try (Connection connection = DriverManager.getConnection(props.getProperty("hibernate.connection.url"),
+                props.getProperty("hibernate.connection.username"), props.getProperty("hibernate.connection.password"));
+                Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+
     // run this before each test starts
     @Before
     public void onSetUpBeforeTransaction() throws Exception {
@@ -292,6 +349,67 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
 
     }
 
+    @Test
+    public void testGetParticipantUserIdsByGroup() {
+        Long evaluationId = etdl.evaluationActiveUntaken.getId();
+        evaluationDao.save( new EvalAssignUser(EvalTestDataLoad.USER_ID_4, etdl.evaluationActiveUntaken, EvalTestDataLoad.SITE1_REF, EvalTestDataLoad.MAINT_USER_ID) );
+        evaluationDao.save( new EvalAssignUser(EvalTestDataLoad.USER_ID_5, etdl.evaluationActiveUntaken, EvalTestDataLoad.SITE1_REF, EvalTestDataLoad.MAINT_USER_ID) );
+        evaluationDao.save( new EvalAssignUser(EvalTestDataLoad.USER_ID_5, etdl.evaluationActiveUntaken, EvalTestDataLoad.SITE2_REF, EvalTestDataLoad.MAINT_USER_ID) );
+
+        // a saved response and a completed response
+        EvalResponse r1 = new EvalResponse(EvalTestDataLoad.USER_ID_4, EvalTestDataLoad.SITE1_REF, etdl.evaluationActiveUntaken, new Date(), null, null);
+        r1.setAnswers( new HashSet<>() );
+        evaluationDao.save(r1);
+        EvalResponse r2 = new EvalResponse(EvalTestDataLoad.USER_ID_5, EvalTestDataLoad.SITE1_REF, etdl.evaluationActiveUntaken, etdl.yesterday, new Date(), null);
+        r2.setAnswers( new HashSet<>() );
+        evaluationDao.save(r2);
+
+        Map<String, Set<String>> groupUserIds = evaluationDao.getParticipantUserIdsByGroup(evaluationId, EvalConstants.EVAL_INCLUDE_NONTAKERS);
+        Assert.assertNotNull(groupUserIds);
+        // USER_ID_5 responded in site1 but not in site2
+        Assert.assertTrue(groupUserIds.get(EvalTestDataLoad.SITE2_REF).contains(EvalTestDataLoad.USER_ID_5));
+        Assert.assertFalse(groupUserIds.get(EvalTestDataLoad.SITE1_REF).contains(EvalTestDataLoad.USER_ID_5));
+        Assert.assertFalse(groupUserIds.get(EvalTestDataLoad.SITE1_REF).contains(EvalTestDataLoad.USER_ID_4));
+
+        groupUserIds = evaluationDao.getParticipantUserIdsByGroup(evaluationId, EvalConstants.EVAL_INCLUDE_IN_PROGRESS);
+        Assert.assertEquals(1, groupUserIds.size());
+        Assert.assertEquals(Collections.singleton(EvalTestDataLoad.USER_ID_4), groupUserIds.get(EvalTestDataLoad.SITE1_REF));
+
+        groupUserIds = evaluationDao.getParticipantUserIdsByGroup(evaluationId, EvalConstants.EVAL_INCLUDE_RESPONDENTS);
+        Assert.assertEquals(1, groupUserIds.size());
+        Assert.assertEquals(Collections.singleton(EvalTestDataLoad.USER_ID_5), groupUserIds.get(EvalTestDataLoad.SITE1_REF));
+
+        // must match getting the participants one group at a time
+        String[] includeConstants = new String[] {EvalConstants.EVAL_INCLUDE_ALL, EvalConstants.EVAL_INCLUDE_NONTAKERS,
+                EvalConstants.EVAL_INCLUDE_IN_PROGRESS, EvalConstants.EVAL_INCLUDE_RESPONDENTS};
+        String[] evalGroupIds = new String[] {EvalTestDataLoad.SITE1_REF, EvalTestDataLoad.SITE2_REF};
+        for (String includeConstant : includeConstants) {
+            groupUserIds = evaluationDao.getParticipantUserIdsByGroup(evaluationId, includeConstant);
+            for (String evalGroupId : evalGroupIds) {
+                Set<String> expected = new HashSet<>();
+                List<EvalAssignUser> l = evaluationDao.getParticipantsForEval(evaluationId, null, new String[] {evalGroupId}, 
+                        null, null, includeConstant, null);
+                for (EvalAssignUser eau : l) {
+                    expected.add(eau.getUserId());
+                }
+                Set<String> userIds = groupUserIds.get(evalGroupId);
+                Assert.assertEquals(includeConstant + ":" + evalGroupId, expected, userIds == null ? new HashSet<String>() : new HashSet<>(userIds));
+            }
+        }
+
+        // no users at all
+        groupUserIds = evaluationDao.getParticipantUserIdsByGroup(etdl.evaluationActive.getId(), EvalConstants.EVAL_INCLUDE_IN_PROGRESS);
+        Assert.assertNotNull(groupUserIds);
+        Assert.assertEquals(0, groupUserIds.size());
+
+        try {
+            evaluationDao.getParticipantUserIdsByGroup(null, EvalConstants.EVAL_INCLUDE_ALL);
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
     @Test
     public void testGetEvalsUserCanTake() {
         // get ones we can take
@@ -1749,6 +1867,7 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
         List<Map<String,Object>> mapping1 = this.evaluationDao.getConsolidatedEmailMapping(true, 100, 0);
         Assert.assertNotNull(mapping1);
         Assert.assertEquals(1, mapping1.size());
+        markSent(true, mapping1);
         int deletions1 = this.evaluationDao.resetConsolidatedEmailRecipients();
         Assert.assertEquals(1, deletions1);
 
@@ -1767,6 +1886,7 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
         List<Map<String,Object>> mapping3 = this.evaluationDao.getConsolidatedEmailMapping(true, 100, 0);
         Assert.assertNotNull(mapping3);
         Assert.assertEquals(1, mapping3.size());
+        markSent(true, mapping3);
         int deletions3 = this.evaluationDao.resetConsolidatedEmailRecipients();
         Assert.assertEquals(1, deletions3);
 
@@ -1785,6 +1905,7 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
         List<Map<String,Object>> mapping5 = this.evaluationDao.getConsolidatedEmailMapping(false, 100, 0);
         Assert.assertNotNull(mapping5);
         Assert.assertEquals(1, mapping5.size());
+        markSent(false, mapping5);
         int deletions5 = this.evaluationDao.resetConsolidatedEmailRecipients();
         Assert.assertEquals(1, deletions5);
 
@@ -1803,13 +1924,15 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
         List<Map<String,Object>> mapping7 = this.evaluationDao.getConsolidatedEmailMapping(false, 100, 0);
         Assert.assertNotNull(mapping7);
         Assert.assertEquals(1, mapping7.size());
+        markSent(false, mapping7);
         int deletions7 = this.evaluationDao.resetConsolidatedEmailRecipients();
         Assert.assertEquals(1, deletions7);
 
         // if we search for evals needing reminders as if it were tomorrow, we should find 1
         int count8 = this.evaluationDao.selectConsolidatedEmailRecipients(false, (Date) null, true, new Date(System.currentTimeMillis() + MILLISECONDS_PER_DAY), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
         Assert.assertEquals(1,count8);
-        List<EvalEmailProcessingData> list = evaluationDao.findBySearch(EvalEmailProcessingData.class, new Search());
+        List<EvalEmailProcessingData> list = evaluationDao.findBySearch(EvalEmailProcessingData.class, 
+                new Search("processingStatus", EvalEmailProcessingData.STATUS_DUE));
         Assert.assertNotNull(list);
         Assert.assertEquals(1,list.size());
 
@@ -1838,6 +1961,101 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
         Assert.assertEquals(0, mapping9.size());
     }
 
+    @Test
+    public void testUpdateConsolidatedEmailRecipients() {
+        Long evaluationId = etdl.evaluationActiveUntaken.getId();
+        Search queued = new Search("evalId", evaluationId);
+
+        // the queue is filled from the assignments the first time it is used
+        Assert.assertEquals(1, this.evaluationDao.selectConsolidatedEmailRecipients(true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE));
+        Assert.assertEquals(1, this.evaluationDao.resetConsolidatedEmailRecipients());
+        // the evaluator is queued for the available and the reminder template and stays queued
+        List<EvalEmailProcessingData> list = evaluationDao.findBySearch(EvalEmailProcessingData.class, queued);
+        Assert.assertEquals(2, list.size());
+        for (EvalEmailProcessingData eepd : list) {
+            Assert.assertNull(eepd.getProcessingStatus());
+        }
+
+        // nothing changes when the queue is up to date
+        Assert.assertEquals(0, this.evaluationDao.updateConsolidatedEmailRecipients(null));
+        Assert.assertEquals(0, this.evaluationDao.updateConsolidatedEmailRecipients(evaluationId));
+        Assert.assertEquals(2, evaluationDao.countBySearch(EvalEmailProcessingData.class, queued));
+
+        // new evaluators are added
+        evaluationDao.save( new EvalAssignUser(EvalTestDataLoad.USER_ID_4, etdl.evaluationActiveUntaken, EvalTestDataLoad.SITE1_REF, EvalTestDataLoad.MAINT_USER_ID) );
+        Assert.assertEquals(2, this.evaluationDao.updateConsolidatedEmailRecipients(evaluationId));
+        Assert.assertEquals(4, evaluationDao.countBySearch(EvalEmailProcessingData.class, queued));
+        Assert.assertEquals(2, this.evaluationDao.selectConsolidatedEmailRecipients(true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE));
+        Assert.assertEquals(2, this.evaluationDao.resetConsolidatedEmailRecipients());
+
+        // users who complete the evaluation leave the queue
+        Assert.assertEquals(1, this.evaluationDao.completeConsolidatedEmailRecipient(evaluationId, EvalTestDataLoad.SITE1_REF, EvalTestDataLoad.USER_ID_4));
+        Assert.assertEquals(2, evaluationDao.countBySearch(EvalEmailProcessingData.class, queued));
+        EvalAssignUser eau = evaluationDao.findOneBySearch(EvalAssignUser.class, 
+                new Search(new String[] {"userId", "evaluation.id"}, new Object[] {EvalTestDataLoad.USER_ID_4, evaluationId}));
+        Assert.assertNotNull(eau.getCompletedDate());
+        Assert.assertEquals(0, this.evaluationDao.updateConsolidatedEmailRecipients(evaluationId));
+        Assert.assertEquals(1, this.evaluationDao.selectConsolidatedEmailRecipients(true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE));
+        this.evaluationDao.resetConsolidatedEmailRecipients();
+
+        // closed evaluations leave the queue
+        EvalEvaluation eval = evaluationDao.findById(EvalEvaluation.class, evaluationId);
+        eval.setState(EvalConstants.EVALUATION_STATE_CLOSED);
+        evaluationDao.update(eval);
+        Assert.assertEquals(0, this.evaluationDao.updateConsolidatedEmailRecipients(evaluationId));
+        Assert.assertEquals(0, evaluationDao.countBySearch(EvalEmailProcessingData.class, queued));
+
+        try {
+            this.evaluationDao.completeConsolidatedEmailRecipient(evaluationId, null, EvalTestDataLoad.USER_ID_4);
+            Assert.fail("Should have thrown an exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
+    /**
+     * Mark the users in the mapping as sent the same way the email logic does after sending
+     */
+    private void markSent(boolean sendingAvailableEmails, List<Map<String,Object>> mapping) {
+        for (Map<String,Object> entry : mapping) {
+            Long templateId = (Long) entry.get(EvalConstants.KEY_EMAIL_TEMPLATE_ID);
+            String userId = (String) entry.get(EvalConstants.KEY_USER_ID);
+            evaluationDao.markConsolidatedEmailsSent(sendingAvailableEmails, templateId, Collections.singletonList(userId));
+        }
+    }
+
+    @Test
+    public void testMarkConsolidatedEmailsSent() {
+        int count = this.evaluationDao.selectConsolidatedEmailRecipients(true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
+        Assert.assertEquals(1, count);
+        List<Map<String,Object>> mapping = this.evaluationDao.getConsolidatedEmailMapping(true, 100, 0);
+        Assert.assertEquals(1, mapping.size());
+        Long templateId = (Long) mapping.get(0).get(EvalConstants.KEY_EMAIL_TEMPLATE_ID);
+        String userId = (String) mapping.get(0).get(EvalConstants.KEY_USER_ID);
+
+        // reading the mapping does not mark anything so the same users are found again
+        this.evaluationDao.resetConsolidatedEmailRecipients();
+        count = this.evaluationDao.selectConsolidatedEmailRecipients(true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
+        Assert.assertEquals(1, count);
+
+        // only the given users and template are marked
+        Assert.assertEquals(0, this.evaluationDao.markConsolidatedEmailsSent(true, templateId, new ArrayList<String>()));
+        Assert.assertEquals(0, this.evaluationDao.markConsolidatedEmailsSent(true, templateId, Collections.singletonList("invalid-user")));
+        Assert.assertEquals(0, this.evaluationDao.markConsolidatedEmailsSent(true, templateId + 1000, Collections.singletonList(userId)));
+        Assert.assertEquals(1, this.evaluationDao.markConsolidatedEmailsSent(true, templateId, Arrays.asList(userId, userId, "invalid-user")));
+
+        this.evaluationDao.resetConsolidatedEmailRecipients();
+        count = this.evaluationDao.selectConsolidatedEmailRecipients(true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
+        Assert.assertEquals(0, count);
+
+        try {
+            this.evaluationDao.markConsolidatedEmailsSent(true, null, Collections.singletonList(userId));
+            Assert.fail("Should have thrown an exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
     /**
      * testResponsesSavedInProgress checks to see how many responses have been saved but not submitted
      * for both active and inactive evaluations.  This depends on evaluations being open or closed and 
@@ -1870,8 +2088,162 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
         Assert.assertEquals(evalClosedResponses.get(0).getId(), responseInactive.getId());
     }
 
+    @Test
+    public void testGetAllSiteIDsMatchingSiteTitles() {
+        Map<String, Set<String>> matches = evaluationDao.getAllSiteIDsMatchingSiteTitles(
+                Arrays.asList("BIO%", "%101%", "CHEM%", "HIST%", "BIO%"));
+        Assert.assertNotNull(matches);
+        // every distinct title is a key, even the ones without matching sites
+        Assert.assertEquals(4, matches.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("site-bio-101", "site-bio-102")), matches.get("BIO%"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("site-bio-101", "site-chem-101")), matches.get("%101%"));
+        Assert.assertEquals(Collections.singleton("site-chem-101"), matches.get("CHEM%"));
+        Assert.assertTrue(matches.get("HIST%").isEmpty());
+
+        // same as the single title version
+        Assert.assertEquals(matches.get("BIO%"), evaluationDao.getAllSiteIDsMatchingSiteTitle("BIO%"));
+        Assert.assertTrue(evaluationDao.getAllSiteIDsMatchingSiteTitle("HIST%").isEmpty());
+
+        Assert.assertTrue(evaluationDao.getAllSiteIDsMatchingSiteTitles(new ArrayList<String>()).isEmpty());
+        Assert.assertTrue(evaluationDao.getAllSiteIDsMatchingSiteTitles(null).isEmpty());
+    }
+
+    @Test
+    public void testGetAllSiteIDsMatchingSectionTitles() {
+        Map<String, Set<String>> matches = evaluationDao.getAllSiteIDsMatchingSectionTitles(
+                Arrays.asList("%Lecture", "CHEM%", "%Lab", "HIST%"));
+        Assert.assertNotNull(matches);
+        Assert.assertEquals(4, matches.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("/site/site-bio-101", "/site/site-chem-101")), matches.get("%Lecture"));
+        // the group realms are skipped
+        Assert.assertEquals(Collections.singleton("/site/site-chem-101"), matches.get("CHEM%"));
+        Assert.assertTrue(matches.get("%Lab").isEmpty());
+        Assert.assertTrue(matches.get("HIST%").isEmpty());
+
+        Assert.assertEquals(matches.get("CHEM%"), evaluationDao.getAllSiteIDsMatchingSectionTitle("CHEM%"));
+        Assert.assertTrue(evaluationDao.getAllSiteIDsMatchingSectionTitles(new ArrayList<String>()).isEmpty());
+    }
+
+    @Test
+    public void testSaveResponseAnswers() {
+        // versions are whole seconds like the ones made by the delivery service
+        Date version = new Date((System.currentTimeMillis() / 1000l) * 1000l - 60000l);
+        EvalResponse response = new EvalResponse(EvalTestDataLoad.USER_ID, EvalTestDataLoad.SITE1_REF, 
+                etdl.evaluationActiveUntaken, new Date());
+        response.setLastModified(version);
+        evaluationDao.save(response);
+
+        // new answers are added
+        Date version2 = new Date(version.getTime() + 1000l);
+        List<EvalAnswer> saveAnswers = new ArrayList<>();
+        saveAnswers.add( new EvalAnswer(null, etdl.templateItem1P, etdl.item1, null, null, 1) );
+        saveAnswers.add( new EvalAnswer(null, etdl.templateItem1P, etdl.item1, EvalTestDataLoad.MAINT_USER_ID, 
+                EvalConstants.ITEM_CATEGORY_INSTRUCTOR, 2) );
+        saveAnswers.add( new EvalAnswer(null, etdl.templateItem3A, etdl.item3, null, null, "text") );
+        Assert.assertTrue( evaluationDao.saveResponseAnswers(response.getId(), version, version2, 
+                saveAnswers, new ArrayList<EvalAnswer>()) );
+        List<EvalAnswer> saved = evaluationDao.findBySearch(EvalAnswer.class, new Search("response.id", response.getId()));
+        Assert.assertEquals(3, saved.size());
+        for (EvalAnswer answer : saved) {
+            Assert.assertEquals(version2, answer.getLastModified());
+        }
+        Long answerId = findAnswer(saved, etdl.templateItem1P.getId(), null).getId();
+
+        // a changed answer is updated in place, matched by template item and associated id
+        Date version3 = new Date(version2.getTime() + 1000l);
+        saveAnswers.clear();
+        saveAnswers.add( new EvalAnswer(null, etdl.templateItem1P, etdl.item1, null, null, 3) );
+        Assert.assertTrue( evaluationDao.saveResponseAnswers(response.getId(), version2, version3, 
+                saveAnswers, new ArrayList<EvalAnswer>()) );
+        saved = evaluationDao.findBySearch(EvalAnswer.class, new Search("response.id", response.getId()));
+        Assert.assertEquals(3, saved.size());
+        EvalAnswer answer = findAnswer(saved, etdl.templateItem1P.getId(), null);
+        Assert.assertEquals(answerId, answer.getId());
+        Assert.assertEquals(Integer.valueOf(3), answer.getNumeric());
+        Assert.assertEquals(version3, answer.getLastModified());
+        answer = findAnswer(saved, etdl.templateItem1P.getId(), EvalTestDataLoad.MAINT_USER_ID);
+        Assert.assertEquals(Integer.valueOf(2), answer.getNumeric());
+        Assert.assertEquals(version2, answer.getLastModified());
+
+        // saving against an old version changes nothing
+        saveAnswers.clear();
+        saveAnswers.add( new EvalAnswer(null, etdl.templateItem1P, etdl.item1, null, null, 5) );
+        saveAnswers.add( new EvalAnswer(null, etdl.templateItem2A, etdl.item2, null, null, 5) );
+        List<EvalAnswer> removeAnswers = new ArrayList<>();
+        removeAnswers.add( new EvalAnswer(null, etdl.templateItem3A, etdl.item3) );
+        Assert.assertFalse( evaluationDao.saveResponseAnswers(response.getId(), version2, 
+                new Date(version3.getTime() + 1000l), saveAnswers, removeAnswers) );
+        saved = evaluationDao.findBySearch(EvalAnswer.class, new Search("response.id", response.getId()));
+        Assert.assertEquals(3, saved.size());
+        Assert.assertEquals(Integer.valueOf(3), findAnswer(saved, etdl.templateItem1P.getId(), null).getNumeric());
+
+        // removed answers are deleted, removing one which was never saved is ignored
+        Date version4 = new Date(version3.getTime() + 1000l);
+        removeAnswers.add( new EvalAnswer(null, etdl.templateItem2A, etdl.item2) );
+        Assert.assertTrue( evaluationDao.saveResponseAnswers(response.getId(), version3, version4, 
+                new ArrayList<EvalAnswer>(), removeAnswers) );
+        saved = evaluationDao.findBySearch(EvalAnswer.class, new Search("response.id", response.getId()));
+        Assert.assertEquals(2, saved.size());
+        Assert.assertNull(findAnswer(saved, etdl.templateItem3A.getId(), null));
+
+        // invalid response
+        Assert.assertFalse( evaluationDao.saveResponseAnswers(EvalTestDataLoad.INVALID_LONG_ID, version4, 
+                new Date(version4.getTime() + 1000l), saveAnswers, removeAnswers) );
+    }
+
+    @Test
+    public void testGetSavedAnswersForResponse() {
+        List<EvalSavedAnswer> answers = evaluationDao.getSavedAnswersForResponse(etdl.response2.getId());
+        Assert.assertNotNull(answers);
+        Assert.assertEquals(2, answers.size());
+        for (EvalSavedAnswer answer : answers) {
+            if (etdl.answer2_2A.getId().equals(answer.getAnswerId())) {
+                Assert.assertEquals(etdl.templateItem2A.getId(), answer.getTemplateItemId());
+                Assert.assertNull(answer.getAssociatedType());
+                Assert.assertNull(answer.getAssociatedId());
+                Assert.assertEquals(EvalTestDataLoad.ANSWER_SCALED_ONE, answer.getNumeric());
+                Assert.assertNull(answer.getText());
+            } else if (etdl.answer2_5A.getId().equals(answer.getAnswerId())) {
+                Assert.assertEquals(etdl.templateItem5A.getId(), answer.getTemplateItemId());
+                Assert.assertEquals(EvalConstants.ITEM_CATEGORY_INSTRUCTOR, answer.getAssociatedType());
+                Assert.assertEquals(EvalTestDataLoad.MAINT_USER_ID, answer.getAssociatedId());
+                Assert.assertEquals(EvalTestDataLoad.ANSWER_TEXT, answer.getText());
+            } else {
+                Assert.fail("Unexpected answer: " + answer);
+            }
+        }
+
+        // the multiple answers and the comment are included
+        EvalResponse response = new EvalResponse(EvalTestDataLoad.USER_ID, EvalTestDataLoad.SITE1_REF, 
+                etdl.evaluationActiveUntaken, new Date());
+        evaluationDao.save(response);
+        EvalAnswer multiple = new EvalAnswer(response, etdl.templateItem1P, etdl.item1, null, null, null, null, 
+                ":1:3:", "a comment");
+        evaluationDao.save(multiple);
+        answers = evaluationDao.getSavedAnswersForResponse(response.getId());
+        Assert.assertEquals(1, answers.size());
+        Assert.assertEquals(multiple.getId(), answers.get(0).getAnswerId());
+        Assert.assertEquals(":1:3:", answers.get(0).getMultiAnswerCode());
+        Assert.assertEquals("a comment", answers.get(0).getComment());
+
+        // no answers
+        Assert.assertTrue(evaluationDao.getSavedAnswersForResponse(etdl.response6.getId()).isEmpty());
+        Assert.assertTrue(evaluationDao.getSavedAnswersForResponse(EvalTestDataLoad.INVALID_LONG_ID).isEmpty());
+    }
+
     /**
      * Add anything that supports the unit tests below here
      */
 
+    private EvalAnswer findAnswer(List<EvalAnswer> answers, Long templateItemId, String associatedId) {
+        for (EvalAnswer answer : answers) {
+            if (templateItemId.equals(answer.getTemplateItem().getId())
+                    && (associatedId == null ? answer.getAssociatedId() == null : associatedId.equals(answer.getAssociatedId()))) {
+                return answer;
+            }
+        }
+        return null;
+    }
+
+
 }
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.jobmonitor;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.logic.BaseTestEvalLogic;
+import org.sakaiproject.evaluation.model.EvalJobMetric;
+
+/**
+ * Testing the job progress reporting
+ */
+public class MetricsJobStatusReporterTest extends BaseTestEvalLogic {
+
+   private static final long ONE_DAY = 24L * 60L * 60L * 1000L;
+
+   private TestReporter reporter;
+
+   /**
+    * Uses a clock the test controls
+    */
+   private static class TestReporter extends MetricsJobStatusReporter {
+      long now = 1000000L;
+
+      @Override
+      protected long currentTimeMillis() {
+         return now;
+      }
+   }
+
+   @Before
+   public void onSetUpBeforeTransaction() throws Exception {
+      super.onSetUpBeforeTransaction();
+
+      reporter = new TestReporter();
+      reporter.setDao(evaluationDao);
+      reporter.setCommonLogic(commonLogic);
+      // samples every 30 seconds, rate over the last 5 minutes
+      reporter.init();
+   }
+
+   @Test
+   public void testReportCounts() {
+      String jobId = reporter.reportStarted("Email");
+      Assert.assertTrue(jobId.startsWith("Email"));
+
+      // the first counts of a phase are always written
+      reporter.reportCounts(jobId, "reminders", 1000, 0, 0, 0);
+      List<EvalJobMetric> metrics = reporter.getJobMetrics(jobId);
+      Assert.assertEquals(1, metrics.size());
+      Assert.assertEquals(EvalConstants.JOB_METRIC_STATUS_RUNNING, metrics.get(0).getStatus());
+      Assert.assertEquals(Integer.valueOf(1000), metrics.get(0).getTotalCount());
+      Assert.assertNull(metrics.get(0).getRate());
+      Assert.assertNull(metrics.get(0).getEtaSeconds());
+
+      // not written again until the sample interval has passed
+      reporter.now += 10000L;
+      reporter.reportCounts(jobId, "reminders", 1000, 100, 98, 2);
+      Assert.assertEquals(1, reporter.getJobMetrics(jobId).size());
+
+      reporter.now += 20000L;
+      reporter.reportCounts(jobId, "reminders", 1000, 300, 295, 5);
+      metrics = reporter.getJobMetrics(jobId);
+      Assert.assertEquals(2, metrics.size());
+      EvalJobMetric metric = metrics.get(1);
+      Assert.assertEquals(Integer.valueOf(300), metric.getProcessedCount());
+      Assert.assertEquals(Integer.valueOf(295), metric.getSentCount());
+      Assert.assertEquals(Integer.valueOf(5), metric.getErrorCount());
+      Assert.assertEquals(10.0d, metric.getRate(), 0.001d);
+      Assert.assertEquals(Long.valueOf(70L), metric.getEtaSeconds());
+
+      // the rate only covers the recent counts
+      reporter.now += 400000L;
+      reporter.reportCounts(jobId, "reminders", 1000, 500, 490, 10);
+      metric = reporter.getJobMetrics(jobId).get(2);
+      Assert.assertEquals(0.5d, metric.getRate(), 0.001d);
+      Assert.assertEquals(Long.valueOf(1000L), metric.getEtaSeconds());
+
+      // a new phase finishes the last one
+      reporter.now += 1000L;
+      reporter.reportProgress(jobId, "sendingAnnouncements", "0");
+      reporter.reportCounts(jobId, "announcements", 0, 0, 0, 0);
+      metrics = reporter.getJobMetrics(jobId);
+      Assert.assertEquals(5, metrics.size());
+      Assert.assertEquals("reminders", metrics.get(3).getPhase());
+      Assert.assertEquals(EvalConstants.JOB_METRIC_STATUS_FINISHED, metrics.get(3).getStatus());
+      Assert.assertNull(metrics.get(3).getEtaSeconds());
+      Assert.assertEquals("announcements", metrics.get(4).getPhase());
+      Assert.assertNull(metrics.get(4).getTotalCount());
+
+      reporter.now += 1000L;
+      reporter.reportFinished(jobId, false, "finished", "The email job took 432 seconds to run.");
+      metrics = reporter.getLatestJobMetrics("Email");
+      Assert.assertEquals(2, metrics.size());
+      Assert.assertEquals("reminders", metrics.get(0).getPhase());
+      Assert.assertEquals(Integer.valueOf(500), metrics.get(0).getProcessedCount());
+      Assert.assertEquals("announcements", metrics.get(1).getPhase());
+      Assert.assertEquals(EvalConstants.JOB_METRIC_STATUS_FINISHED, metrics.get(1).getStatus());
+      Assert.assertEquals("The email job took 432 seconds to run.", metrics.get(1).getDetail());
+
+      // a run which failed before counting anything is still recorded
+      reporter.now += 60000L;
+      String failedJobId = reporter.reportStarted("Email");
+      Assert.assertFalse(jobId.equals(failedJobId));
+      reporter.reportFinished(failedJobId, true, "error", "java.lang.RuntimeException: boom");
+      metrics = reporter.getLatestJobMetrics("Email");
+      Assert.assertEquals(1, metrics.size());
+      Assert.assertEquals("error", metrics.get(0).getPhase());
+      Assert.assertEquals(EvalConstants.JOB_METRIC_STATUS_FAILED, metrics.get(0).getStatus());
+
+      Assert.assertTrue(reporter.getLatestJobMetrics("Other").isEmpty());
+      Assert.assertTrue(reporter.getJobMetrics("Email-0").isEmpty());
+   }
+
+   @Test
+   public void testRemoveOldJobMetrics() {
+      String jobId = reporter.reportStarted("Email");
+      reporter.reportCounts(jobId, "reminders", 10, 10, 10, 0);
+      reporter.reportFinished(jobId, false, "finished", "done");
+      Assert.assertEquals(2, reporter.getJobMetrics(jobId).size());
+
+      // kept for 30 days
+      reporter.now += 29L * ONE_DAY;
+      reporter.reportStarted("Email");
+      Assert.assertEquals(2, reporter.getJobMetrics(jobId).size());
+
+      reporter.now += 2L * ONE_DAY;
+      reporter.reportStarted("Email");
+      Assert.assertTrue(reporter.getJobMetrics(jobId).isEmpty());
+   }
+
+}
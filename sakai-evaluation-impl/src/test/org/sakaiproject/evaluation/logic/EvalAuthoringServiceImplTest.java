@@ -17,6 +17,7 @@ package org.sakaiproject.evaluation.logic;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Assert;
@@ -3001,6 +3002,62 @@ public class EvalAuthoringServiceImplTest extends BaseTestEvalLogic {
       }
    }
 
+   /**
+    * Test method for {@link org.sakaiproject.evaluation.logic.EvalAuthoringServiceImpl#copyTemplates(java.lang.Long[], java.lang.String, boolean, boolean)}.
+    */
+   @Test
+   public void testCopyTemplates() {
+      Map<Long, Long> copiedIds;
+
+      // copy several templates with all children at once
+      Long[] templateIds = new Long[] {etdl.templateUser.getId(), etdl.templatePublic.getId(), etdl.templateUnused.getId()};
+      copiedIds = authoringService.copyTemplates(templateIds, EvalTestDataLoad.MAINT_USER_ID, true, true);
+      Assert.assertNotNull(copiedIds);
+      Assert.assertEquals(3, copiedIds.size());
+      Assert.assertArrayEquals(templateIds, copiedIds.keySet().toArray(new Long[3]));
+
+      for (Long originalId : templateIds) {
+         EvalTemplate original = (EvalTemplate) evaluationDao.findById(EvalTemplate.class, originalId);
+         EvalTemplate copy = (EvalTemplate) evaluationDao.findById(EvalTemplate.class, copiedIds.get(originalId));
+         Assert.assertNotNull(copy);
+         Assert.assertNotSame(original.getId(), copy.getId());
+         Assert.assertEquals(original.getId(), copy.getCopyOf());
+         Assert.assertEquals(original.getTitle() + " (copy)", copy.getTitle());
+         Assert.assertEquals(EvalTestDataLoad.MAINT_USER_ID, copy.getOwner());
+         Assert.assertEquals(true, copy.isHidden());
+         Assert.assertEquals(EvalConstants.SHARING_PRIVATE, copy.getSharing());
+
+         // make sure the template items copied into the right template
+         Assert.assertEquals(original.getTemplateItems().size(), copy.getTemplateItems().size());
+         List<EvalTemplateItem> originalTIs = TemplateItemUtils.makeTemplateItemsList(original.getTemplateItems());
+         List<EvalTemplateItem> copyTIs = TemplateItemUtils.makeTemplateItemsList(copy.getTemplateItems());
+         for (int i = 0; i < originalTIs.size(); i++) {
+            EvalTemplateItem originalTI = originalTIs.get(i);
+            EvalTemplateItem copyTI = copyTIs.get(i);
+            Assert.assertNotSame(originalTI.getId(), copyTI.getId());
+            Assert.assertEquals(copy.getId(), copyTI.getTemplate().getId());
+            Assert.assertEquals(originalTI.getDisplayOrder(), copyTI.getDisplayOrder());
+            Assert.assertEquals(originalTI.getItem().getId(), copyTI.getItem().getCopyOf());
+         }
+      }
+
+      // check that invalid templateid causes death
+      try {
+         authoringService.copyTemplates(new Long[] {etdl.templateUser.getId(), EvalTestDataLoad.INVALID_LONG_ID},
+               EvalTestDataLoad.MAINT_USER_ID, true, true);
+         Assert.fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         Assert.assertNotNull(e);
+      }
+
+      try {
+         authoringService.copyTemplates(new Long[] {}, EvalTestDataLoad.MAINT_USER_ID, true, true);
+         Assert.fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         Assert.assertNotNull(e);
+      }
+   }
+
 
    @Test
    public void testGetItemsUsingScale() {
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.evaluation.dao.EvaluationDao;
+import org.sakaiproject.evaluation.logic.exceptions.ResponseSaveException;
+import org.sakaiproject.evaluation.logic.externals.EvalSecurityChecksImpl;
+import org.sakaiproject.evaluation.model.EvalAnswer;
+import org.sakaiproject.evaluation.model.EvalResponse;
+import org.sakaiproject.evaluation.test.EvalTestDataLoad;
+import org.sakaiproject.evaluation.test.mocks.MockExternalHierarchyLogic;
+import org.sakaiproject.genericdao.api.search.Search;
+
+/**
+ * Testing that bursts of autosaves for a response are coalesced into fewer writes
+ */
+public class EvalDeliveryAutosaveTest extends BaseTestEvalLogic {
+
+    private EvalDeliveryServiceImpl deliveryService;
+    private final AtomicInteger writes = new AtomicInteger();
+
+    @Before
+    public void onSetUpBeforeTransaction() throws Exception {
+        super.onSetUpBeforeTransaction();
+
+        EvalSettings settings = (EvalSettings) applicationContext.getBean("org.sakaiproject.evaluation.logic.EvalSettings");
+        EvalSecurityChecksImpl securityChecks =
+            (EvalSecurityChecksImpl) applicationContext.getBean("org.sakaiproject.evaluation.logic.externals.EvalSecurityChecks");
+        EvalEvaluationService evaluationService = (EvalEvaluationService) applicationContext.getBean("org.sakaiproject.evaluation.logic.EvalEvaluationService");
+
+        EvalAuthoringServiceImpl authoringServiceImpl = new EvalAuthoringServiceImpl();
+        authoringServiceImpl.setDao(evaluationDao);
+        authoringServiceImpl.setCommonLogic(commonLogic);
+        authoringServiceImpl.setSettings(settings);
+        authoringServiceImpl.setSecurityChecks(securityChecks);
+
+        // counts the answer writes and passes everything to the real dao
+        final EvaluationDao dao = evaluationDao;
+        EvaluationDao countingDao = (EvaluationDao) Proxy.newProxyInstance(EvaluationDao.class.getClassLoader(),
+                new Class<?>[] {EvaluationDao.class}, (proxy, method, args) -> {
+                    if ("saveResponseAnswers".equals(method.getName())) {
+                        writes.incrementAndGet();
+                    }
+                    try {
+                        return method.invoke(dao, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+
+        deliveryService = new EvalDeliveryServiceImpl();
+        deliveryService.setDao(countingDao);
+        deliveryService.setCommonLogic(commonLogic);
+        deliveryService.setHierarchyLogic(new MockExternalHierarchyLogic());
+        deliveryService.setEvaluationService(evaluationService);
+        deliveryService.setSettings(settings);
+        deliveryService.setAuthoringService(authoringServiceImpl);
+    }
+
+    private List<EvalAnswer> makeAnswers(int numeric) {
+        List<EvalAnswer> answers = new ArrayList<>();
+        answers.add( new EvalAnswer(null, etdl.templateItem1P, etdl.item1, null, null, numeric) );
+        return answers;
+    }
+
+    private Integer getSavedNumeric(Long responseId) {
+        List<EvalAnswer> saved = evaluationDao.findBySearch(EvalAnswer.class, new Search("response.id", responseId));
+        Assert.assertEquals(1, saved.size());
+        return saved.get(0).getNumeric();
+    }
+
+    /**
+     * Test method for {@link EvalDeliveryServiceImpl#saveResponseAnswers(Long, long, List, String)}.
+     */
+    @Test
+    public void testSaveResponseAnswersCoalesced() {
+        // versions are whole seconds like the ones made by the delivery service
+        Date version = new Date((System.currentTimeMillis() / 1000l) * 1000l - 60000l);
+        EvalResponse response = new EvalResponse(EvalTestDataLoad.USER_ID, EvalTestDataLoad.SITE1_REF,
+                etdl.evaluationActiveUntaken, new Date());
+        response.setLastModified(version);
+        evaluationDao.save(response);
+        Long responseId = response.getId();
+
+        // the client sends all the answers on every autosave, only the first one writes
+        int saves = 0;
+        long current = deliveryService.saveResponseAnswers(responseId, version.getTime(), makeAnswers(1), EvalTestDataLoad.USER_ID);
+        saves++;
+        Assert.assertTrue(current > version.getTime());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(current, deliveryService.saveResponseAnswers(responseId, current, makeAnswers(1), EvalTestDataLoad.USER_ID));
+            saves++;
+        }
+        Assert.assertEquals(1, writes.get());
+        Assert.assertEquals(Integer.valueOf(1), getSavedNumeric(responseId));
+
+        // a changed answer is written
+        long before = current;
+        current = deliveryService.saveResponseAnswers(responseId, current, makeAnswers(2), EvalTestDataLoad.USER_ID);
+        saves++;
+        Assert.assertTrue(current > before);
+        Assert.assertEquals(2, writes.get());
+
+        // saves made against the same version before the new one came back are merged into the last write
+        Assert.assertEquals(current, deliveryService.saveResponseAnswers(responseId, before, makeAnswers(2), EvalTestDataLoad.USER_ID));
+        saves++;
+        Assert.assertEquals(2, writes.get());
+        long merged = deliveryService.saveResponseAnswers(responseId, before, makeAnswers(3), EvalTestDataLoad.USER_ID);
+        saves++;
+        Assert.assertTrue(merged > current);
+        Assert.assertEquals(3, writes.get());
+        Assert.assertEquals(Integer.valueOf(3), getSavedNumeric(responseId));
+
+        Assert.assertTrue("Expected fewer writes (" + writes.get() + ") than saves (" + saves + ")", writes.get() < saves);
+
+        // a version older than the last write is still stale
+        try {
+            deliveryService.saveResponseAnswers(responseId, version.getTime(), makeAnswers(4), EvalTestDataLoad.USER_ID);
+            Assert.fail("Should have thrown exception");
+        } catch (ResponseSaveException e) {
+            Assert.assertEquals(ResponseSaveException.TYPE_STALE_RESPONSE, e.type);
+        }
+        Assert.assertEquals(Integer.valueOf(3), getSavedNumeric(responseId));
+    }
+
+}
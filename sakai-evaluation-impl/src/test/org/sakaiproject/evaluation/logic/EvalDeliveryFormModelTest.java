@@ -0,0 +1,212 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.evaluation.beans.EvalBeanUtils;
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.logic.externals.EvalSecurityChecksImpl;
+import org.sakaiproject.evaluation.model.EvalAssignGroup;
+import org.sakaiproject.evaluation.test.EvalTestDataLoad;
+import org.sakaiproject.evaluation.test.mocks.MockEvalJobLogic;
+import org.sakaiproject.evaluation.test.mocks.MockExternalHierarchyLogic;
+import org.sakaiproject.evaluation.utils.EvalFormModel;
+import org.sakaiproject.evaluation.utils.TemplateItemDataList;
+import org.sakaiproject.evaluation.utils.TemplateItemDataList.DataTemplateItem;
+
+/**
+ * Testing the evaluation forms shared by everyone taking an evaluation in a group
+ */
+public class EvalDeliveryFormModelTest extends BaseTestEvalLogic {
+
+    private EvalDeliveryServiceImpl deliveryService;
+    private EvalEvaluationSetupServiceImpl evaluationSetupService;
+    private EvalEvaluationService evaluationService;
+
+    @Before
+    public void onSetUpBeforeTransaction() throws Exception {
+        super.onSetUpBeforeTransaction();
+
+        EvalSettings settings = (EvalSettings) applicationContext.getBean("org.sakaiproject.evaluation.logic.EvalSettings");
+        EvalSecurityChecksImpl securityChecks =
+            (EvalSecurityChecksImpl) applicationContext.getBean("org.sakaiproject.evaluation.logic.externals.EvalSecurityChecks");
+        EvalBeanUtils evalBeanUtils = (EvalBeanUtils) applicationContext.getBean(EvalBeanUtils.class.getName());
+        evaluationService = (EvalEvaluationService) applicationContext.getBean("org.sakaiproject.evaluation.logic.EvalEvaluationService");
+        MockExternalHierarchyLogic hierarchyLogic = new MockExternalHierarchyLogic();
+
+        EvalAuthoringServiceImpl authoringServiceImpl = new EvalAuthoringServiceImpl();
+        authoringServiceImpl.setDao(evaluationDao);
+        authoringServiceImpl.setCommonLogic(commonLogic);
+        authoringServiceImpl.setSettings(settings);
+        authoringServiceImpl.setSecurityChecks(securityChecks);
+
+        deliveryService = new EvalDeliveryServiceImpl();
+        deliveryService.setDao(evaluationDao);
+        deliveryService.setCommonLogic(commonLogic);
+        deliveryService.setHierarchyLogic(hierarchyLogic);
+        deliveryService.setEvaluationService(evaluationService);
+        deliveryService.setSettings(settings);
+        deliveryService.setAuthoringService(authoringServiceImpl);
+
+        EvalEmailsLogicImpl emailsLogic = new EvalEmailsLogicImpl();
+        emailsLogic.setCommonLogic(commonLogic);
+        emailsLogic.setEvaluationService(evaluationService);
+        emailsLogic.setSettings(settings);
+
+        evaluationSetupService = new EvalEvaluationSetupServiceImpl();
+        evaluationSetupService.setDao(evaluationDao);
+        evaluationSetupService.setCommonLogic(commonLogic);
+        evaluationSetupService.setHierarchyLogic(hierarchyLogic);
+        evaluationSetupService.setSettings(settings);
+        evaluationSetupService.setSecurityChecks(securityChecks);
+        evaluationSetupService.setEvaluationService(evaluationService);
+        evaluationSetupService.setEvalJobLogic(new MockEvalJobLogic());
+        evaluationSetupService.setEmails(emailsLogic);
+        evaluationSetupService.setAuthoringService(authoringServiceImpl);
+        evaluationSetupService.setEvalBeanUtils(evalBeanUtils);
+        evaluationSetupService.setDeliveryService(deliveryService);
+    }
+
+    /**
+     * Test method for {@link org.sakaiproject.evaluation.logic.EvalDeliveryServiceImpl#getEvaluationFormModel(Long, String)}.
+     */
+    @Test
+    public void testGetEvaluationFormModel() {
+        Long evaluationId = etdl.evaluationActive.getId();
+        EvalFormModel form = deliveryService.getEvaluationFormModel(evaluationId, EvalTestDataLoad.SITE1_REF);
+        Assert.assertNotNull(form);
+        Assert.assertEquals(evaluationId, form.getEvaluationId());
+        Assert.assertEquals(EvalTestDataLoad.SITE1_REF, form.getEvalGroupId());
+        Assert.assertFalse(form.getDataTemplateItems().isEmpty());
+        Assert.assertFalse(form.getAnswerableTemplateItemIds().isEmpty());
+
+        // the same form is shared until it is cleared
+        Assert.assertSame(form, deliveryService.getEvaluationFormModel(evaluationId, EvalTestDataLoad.SITE1_REF));
+        Assert.assertNotSame(form, deliveryService.getEvaluationFormModel(evaluationId, EvalTestDataLoad.SITE2_REF));
+        deliveryService.clearEvaluationFormModels(evaluationId);
+        EvalFormModel rebuilt = deliveryService.getEvaluationFormModel(evaluationId, EvalTestDataLoad.SITE1_REF);
+        Assert.assertNotSame(form, rebuilt);
+        Assert.assertEquals(form.getAnswerableTemplateItemIds(), rebuilt.getAnswerableTemplateItemIds());
+
+        // clearing one evaluation leaves the others
+        EvalFormModel other = deliveryService.getEvaluationFormModel(etdl.evaluationNew.getId(), EvalTestDataLoad.SITE1_REF);
+        deliveryService.clearEvaluationFormModels(evaluationId);
+        Assert.assertSame(other, deliveryService.getEvaluationFormModel(etdl.evaluationNew.getId(), EvalTestDataLoad.SITE1_REF));
+        Assert.assertNotSame(rebuilt, deliveryService.getEvaluationFormModel(evaluationId, EvalTestDataLoad.SITE1_REF));
+
+        // a changed evaluation gets a new form
+        form = deliveryService.getEvaluationFormModel(evaluationId, EvalTestDataLoad.SITE1_REF);
+        evaluationService.getEvaluationById(evaluationId).setLastModified(new Date(form.getVersion() + 1000));
+        Assert.assertNotSame(form, deliveryService.getEvaluationFormModel(evaluationId, EvalTestDataLoad.SITE1_REF));
+
+        // the form cannot be changed
+        try {
+            form.getAnswerableTemplateItemIds().clear();
+            Assert.fail("Should have thrown exception");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertNotNull(e);
+        }
+        try {
+            form.getDataTemplateItems().clear();
+            Assert.fail("Should have thrown exception");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertNotNull(e);
+        }
+
+        // invalid evaluation
+        try {
+            deliveryService.getEvaluationFormModel(EvalTestDataLoad.INVALID_LONG_ID, EvalTestDataLoad.SITE1_REF);
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
+    /**
+     * Changing the assignments of an evaluation must drop its cached forms
+     */
+    @Test
+    public void testFormModelClearedOnAssignmentChange() {
+        Long evaluationId = etdl.evaluationNew.getId();
+        EvalAssignGroup assignGroup = new EvalAssignGroup(EvalTestDataLoad.MAINT_USER_ID, EvalTestDataLoad.SITE1_REF,
+                EvalConstants.GROUP_TYPE_SITE, etdl.evaluationNew, Boolean.FALSE, Boolean.TRUE, Boolean.FALSE);
+        evaluationDao.save(assignGroup);
+
+        EvalFormModel form = deliveryService.getEvaluationFormModel(evaluationId, EvalTestDataLoad.SITE1_REF);
+        Assert.assertSame(form, deliveryService.getEvaluationFormModel(evaluationId, EvalTestDataLoad.SITE1_REF));
+        EvalFormModel other = deliveryService.getEvaluationFormModel(etdl.evaluationActive.getId(), EvalTestDataLoad.SITE1_REF);
+
+        evaluationSetupService.deleteAssignGroup(assignGroup.getId(), EvalTestDataLoad.MAINT_USER_ID);
+        Assert.assertNotSame(form, deliveryService.getEvaluationFormModel(evaluationId, EvalTestDataLoad.SITE1_REF));
+        Assert.assertSame(other, deliveryService.getEvaluationFormModel(etdl.evaluationActive.getId(), EvalTestDataLoad.SITE1_REF));
+    }
+
+    /**
+     * Each request works with its own copy of the shared form
+     */
+    @Test
+    public void testMakeTemplateItemDataList() throws Exception {
+        final EvalFormModel form = deliveryService.getEvaluationFormModel(etdl.evaluationActive.getId(), EvalTestDataLoad.SITE1_REF);
+        final List<String> expectedKeys = new ArrayList<>();
+        for (DataTemplateItem dti : form.getDataTemplateItems()) {
+            expectedKeys.add(dti.getKey());
+        }
+
+        TemplateItemDataList tidl = form.makeTemplateItemDataList();
+        Assert.assertNotSame(tidl, form.makeTemplateItemDataList());
+        List<DataTemplateItem> dtis = tidl.getFlatListOfDataTemplateItems(true);
+        Assert.assertEquals(expectedKeys.size(), dtis.size());
+        for (int i = 0; i < dtis.size(); i++) {
+            Assert.assertEquals(expectedKeys.get(i), dtis.get(i).getKey());
+            // the template items are copies so changing them does not change the form
+            Assert.assertNotSame(form.getDataTemplateItems().get(i).templateItem, dtis.get(i).templateItem);
+        }
+        Boolean usesComment = form.getDataTemplateItems().get(0).templateItem.getUsesComment();
+        dtis.get(0).templateItem.setUsesComment(! usesComment);
+        Assert.assertEquals(usesComment, form.getDataTemplateItems().get(0).templateItem.getUsesComment());
+
+        // many requests at once all see the same form
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(() -> {
+                    List<String> keys = new ArrayList<>();
+                    for (DataTemplateItem dti : form.makeTemplateItemDataList().getFlatListOfDataTemplateItems(true)) {
+                        keys.add(dti.getKey());
+                        dti.getBlockChildren();
+                    }
+                    return keys;
+                }));
+            }
+            for (Future<List<String>> result : results) {
+                Assert.assertEquals(expectedKeys, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
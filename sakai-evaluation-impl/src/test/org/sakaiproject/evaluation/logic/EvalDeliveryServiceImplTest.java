@@ -14,6 +14,7 @@
  */
 package org.sakaiproject.evaluation.logic;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -25,6 +26,8 @@ import org.junit.Test;
 import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.logic.exceptions.ResponseSaveException;
 import org.sakaiproject.evaluation.logic.externals.EvalSecurityChecksImpl;
+import org.sakaiproject.evaluation.logic.model.EvalSavedAnswer;
+import org.sakaiproject.evaluation.logic.model.EvalSavedAnswers;
 import org.sakaiproject.evaluation.model.EvalAnswer;
 import org.sakaiproject.evaluation.model.EvalAssignGroup;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
@@ -33,6 +36,7 @@ import org.sakaiproject.evaluation.test.EvalTestDataLoad;
 import org.sakaiproject.evaluation.test.mocks.MockEvalJobLogic;
 import org.sakaiproject.evaluation.test.mocks.MockExternalHierarchyLogic;
 import org.sakaiproject.evaluation.utils.TemplateItemUtils;
+import org.sakaiproject.genericdao.api.search.Search;
 
 
 /**
@@ -341,6 +345,47 @@ public class EvalDeliveryServiceImplTest extends BaseTestEvalLogic {
 
     }
 
+    /**
+     * Test method for {@link org.sakaiproject.evaluation.logic.EvalDeliveryServiceImpl#getSavedAnswersForResponse(java.lang.Long)}.
+     */
+    @Ignore
+    @Test
+    public void testGetSavedAnswersForResponse() {
+        EvalSavedAnswers answers = deliveryService.getSavedAnswersForResponse( etdl.response2.getId() );
+        Assert.assertNotNull(answers);
+        Assert.assertEquals(2, answers.size());
+
+        EvalSavedAnswer answer = answers.get(etdl.templateItem2A.getId(), null, null);
+        Assert.assertNotNull(answer);
+        Assert.assertEquals(etdl.answer2_2A.getId(), answer.getAnswerId());
+        Assert.assertEquals(EvalTestDataLoad.ANSWER_SCALED_ONE, answer.getNumeric());
+        Assert.assertFalse(answer.isNA());
+        // course associations are the same as none
+        Assert.assertEquals(answer, answers.get(etdl.templateItem2A.getId(), EvalConstants.ITEM_CATEGORY_COURSE, "anything"));
+
+        answer = answers.get(etdl.templateItem5A.getId(), EvalConstants.ITEM_CATEGORY_INSTRUCTOR, EvalTestDataLoad.MAINT_USER_ID);
+        Assert.assertNotNull(answer);
+        Assert.assertEquals(etdl.answer2_5A.getId(), answer.getAnswerId());
+        Assert.assertEquals(EvalTestDataLoad.ANSWER_TEXT, answer.getText());
+        Assert.assertEquals(TemplateItemUtils.makeTemplateItemAnswerKey(etdl.templateItem5A.getId(), 
+                EvalConstants.ITEM_CATEGORY_INSTRUCTOR, EvalTestDataLoad.MAINT_USER_ID), answer.getKey());
+        Assert.assertNull(answers.get(etdl.templateItem5A.getId(), EvalConstants.ITEM_CATEGORY_INSTRUCTOR, EvalTestDataLoad.USER_ID));
+        Assert.assertNull(answers.get(etdl.templateItem5A.getId(), null, null));
+
+        // no answers
+        answers = deliveryService.getSavedAnswersForResponse( etdl.response6.getId() );
+        Assert.assertTrue(answers.isEmpty());
+        answers = deliveryService.getSavedAnswersForResponse( EvalTestDataLoad.INVALID_LONG_ID );
+        Assert.assertTrue(answers.isEmpty());
+
+        try {
+            deliveryService.getSavedAnswersForResponse(null);
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
     /**
      * Test method for {@link org.sakaiproject.evaluation.logic.EvalDeliveryServiceImpl#getEvalAnswers(java.lang.Long, java.lang.Long)}.
      */
@@ -815,4 +860,64 @@ public class EvalDeliveryServiceImplTest extends BaseTestEvalLogic {
 
     }
 
+    /**
+     * Test method for {@link org.sakaiproject.evaluation.logic.EvalDeliveryServiceImpl#saveResponseAnswers(Long, long, java.util.List, String)}.
+     */
+    @Ignore
+    @Test
+    public void testSaveResponseAnswers() {
+        EvalResponse response = new EvalResponse( EvalTestDataLoad.USER_ID, EvalTestDataLoad.SITE1_REF, 
+                etdl.evaluationActiveUntaken, new Date());
+        deliveryService.saveResponse( response, EvalTestDataLoad.USER_ID);
+        long version = response.getLastModified().getTime();
+
+        // add an answer
+        List<EvalAnswer> answers = new ArrayList<>();
+        answers.add( new EvalAnswer( null, etdl.templateItem1P, etdl.item1, null, null, 1) );
+        long version2 = deliveryService.saveResponseAnswers(response.getId(), version, answers, EvalTestDataLoad.USER_ID);
+        Assert.assertTrue(version2 > version);
+        List<EvalAnswer> saved = evaluationDao.findBySearch(EvalAnswer.class, new Search("response.id", response.getId()));
+        Assert.assertEquals(1, saved.size());
+        Assert.assertEquals(Integer.valueOf(1), saved.get(0).getNumeric());
+
+        // change the same answer, it is updated and not added again
+        answers.clear();
+        answers.add( new EvalAnswer( null, etdl.templateItem1P, etdl.item1, null, null, 3) );
+        long version3 = deliveryService.saveResponseAnswers(response.getId(), version2, answers, EvalTestDataLoad.USER_ID);
+        saved = evaluationDao.findBySearch(EvalAnswer.class, new Search("response.id", response.getId()));
+        Assert.assertEquals(1, saved.size());
+        Assert.assertEquals(Integer.valueOf(3), saved.get(0).getNumeric());
+
+        // saving against an old version fails
+        try {
+            deliveryService.saveResponseAnswers(response.getId(), version2, answers, EvalTestDataLoad.USER_ID);
+            Assert.fail("Should have thrown exception");
+        } catch (ResponseSaveException e) {
+            Assert.assertEquals(ResponseSaveException.TYPE_STALE_RESPONSE, e.type);
+        }
+
+        // a blank answer removes the saved one
+        answers.clear();
+        answers.add( new EvalAnswer( null, etdl.templateItem1P, etdl.item1) );
+        deliveryService.saveResponseAnswers(response.getId(), version3, answers, EvalTestDataLoad.USER_ID);
+        saved = evaluationDao.findBySearch(EvalAnswer.class, new Search("response.id", response.getId()));
+        Assert.assertEquals(0, saved.size());
+
+        // another user cannot save answers
+        try {
+            deliveryService.saveResponseAnswers(response.getId(), version3, answers, EvalTestDataLoad.STUDENT_USER_ID);
+            Assert.fail("Should have thrown exception");
+        } catch (SecurityException e) {
+            Assert.assertNotNull(e);
+        }
+
+        // invalid response
+        try {
+            deliveryService.saveResponseAnswers(EvalTestDataLoad.INVALID_LONG_ID, version, answers, EvalTestDataLoad.USER_ID);
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
 }
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.test.EvalTestDataLoad;
+
+/**
+ * Testing the durable email outbox
+ */
+public class EvalEmailOutboxImplTest extends BaseTestEvalLogic {
+
+   private static final String FROM = "helpdesk@institution.edu";
+   private static final String[] USERS = { EvalTestDataLoad.USER_ID, EvalTestDataLoad.STUDENT_USER_ID };
+
+   private TestOutbox outbox;
+
+   /**
+    * Records the emails instead of sending them and fails while failing is set
+    */
+   private static class TestOutbox extends EvalEmailOutboxImpl {
+      boolean failing = false;
+      final List<String[]> sent = new ArrayList<>();
+
+      @Override
+      protected void sendEmails(String from, String[] toUserIds, String subject, String message, String deliveryOption) {
+         if (failing) {
+            throw new RuntimeException("Mail server is down");
+         }
+         sent.add(toUserIds);
+      }
+
+      @Override
+      protected long getRetryDelay(int attempts) {
+         // retry on the next run
+         return 0;
+      }
+   }
+
+   @Before
+   public void onSetUpBeforeTransaction() throws Exception {
+      super.onSetUpBeforeTransaction();
+
+      EvalSettings settings = (EvalSettings) applicationContext.getBean("org.sakaiproject.evaluation.logic.EvalSettings");
+      outbox = new TestOutbox();
+      outbox.setDao(evaluationDao);
+      outbox.setCommonLogic(commonLogic);
+      outbox.setSettings(settings);
+      // disabled by default so this does not start the background sender
+      outbox.init();
+   }
+
+   @Test
+   public void testQueueEmails() {
+      Assert.assertFalse(outbox.isEnabled());
+      Long evaluationId = etdl.evaluationActive.getId();
+
+      String[] queued = outbox.queueEmails(FROM, USERS, "subject", "message",
+            evaluationId, EvalConstants.EMAIL_TEMPLATE_REMINDER, "1");
+      Assert.assertEquals(2, queued.length);
+
+      // the same notification is only queued once
+      queued = outbox.queueEmails(FROM, USERS, "subject", "message",
+            evaluationId, EvalConstants.EMAIL_TEMPLATE_REMINDER, "1");
+      Assert.assertEquals(0, queued.length);
+      queued = outbox.queueEmails(FROM, new String[] { EvalTestDataLoad.MAINT_USER_ID, EvalTestDataLoad.USER_ID }, "subject", "message",
+            evaluationId, EvalConstants.EMAIL_TEMPLATE_REMINDER, "1");
+      Assert.assertEquals(1, queued.length);
+
+      // but is queued again for a new round
+      queued = outbox.queueEmails(FROM, USERS, "subject", "message",
+            evaluationId, EvalConstants.EMAIL_TEMPLATE_REMINDER, "2");
+      Assert.assertEquals(2, queued.length);
+
+      Map<String, Number> metrics = outbox.getOutboxMetrics();
+      Assert.assertEquals(5L, metrics.get(EvalEmailOutbox.METRIC_PENDING));
+      Assert.assertEquals(0L, metrics.get(EvalEmailOutbox.METRIC_SENT));
+
+      // identical emails are sent together
+      Assert.assertEquals(5, outbox.sendQueuedEmails());
+      Assert.assertEquals(1, outbox.sent.size());
+      Assert.assertEquals(5, outbox.sent.get(0).length);
+
+      metrics = outbox.getOutboxMetrics();
+      Assert.assertEquals(0L, metrics.get(EvalEmailOutbox.METRIC_PENDING));
+      Assert.assertEquals(5L, metrics.get(EvalEmailOutbox.METRIC_SENT));
+      Assert.assertEquals(5L, metrics.get(EvalEmailOutbox.METRIC_SENT_SINCE_STARTUP));
+
+      // nothing left to send
+      Assert.assertEquals(0, outbox.sendQueuedEmails());
+
+      try {
+         outbox.queueEmails(FROM, USERS, "subject", "message", evaluationId, null, "1");
+         Assert.fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         Assert.assertNotNull(e);
+      }
+   }
+
+   @Test
+   public void testRetryAndDeadLetter() {
+      Long evaluationId = etdl.evaluationActive.getId();
+      outbox.queueEmails(FROM, USERS, "subject", "message", evaluationId, EvalConstants.EMAIL_TEMPLATE_AVAILABLE, "1");
+
+      outbox.failing = true;
+      // tried as a group then for each user, the emails stay in the outbox
+      Assert.assertEquals(0, outbox.sendQueuedEmails());
+      Map<String, Number> metrics = outbox.getOutboxMetrics();
+      Assert.assertEquals(2L, metrics.get(EvalEmailOutbox.METRIC_PENDING));
+      Assert.assertEquals(2L, metrics.get(EvalEmailOutbox.METRIC_RETRIES_SINCE_STARTUP));
+
+      // given up on after 8 attempts
+      for (int i = 1; i < 8; i++) {
+         Assert.assertEquals(0, outbox.sendQueuedEmails());
+      }
+      metrics = outbox.getOutboxMetrics();
+      Assert.assertEquals(0L, metrics.get(EvalEmailOutbox.METRIC_PENDING));
+      Assert.assertEquals(2L, metrics.get(EvalEmailOutbox.METRIC_FAILED));
+      Assert.assertEquals(2L, metrics.get(EvalEmailOutbox.METRIC_DEAD_LETTERS_SINCE_STARTUP));
+      Assert.assertEquals(0, outbox.sendQueuedEmails());
+
+      // failed emails still count as queued
+      Assert.assertEquals(0, outbox.queueEmails(FROM, USERS, "subject", "message",
+            evaluationId, EvalConstants.EMAIL_TEMPLATE_AVAILABLE, "1").length);
+
+      // retried once requeued
+      outbox.failing = false;
+      Assert.assertEquals(0, outbox.retryFailedEmails(evaluationId + 1000));
+      Assert.assertEquals(2, outbox.retryFailedEmails(evaluationId));
+      Assert.assertEquals(2, outbox.sendQueuedEmails());
+      metrics = outbox.getOutboxMetrics();
+      Assert.assertEquals(0L, metrics.get(EvalEmailOutbox.METRIC_FAILED));
+      Assert.assertEquals(2L, metrics.get(EvalEmailOutbox.METRIC_SENT));
+   }
+
+   @Test
+   public void testGetRetryDelay() {
+      EvalEmailOutboxImpl plain = new EvalEmailOutboxImpl();
+      long first = plain.getRetryDelay(1);
+      Assert.assertTrue(first >= 60000 && first <= 66001);
+      long second = plain.getRetryDelay(2);
+      Assert.assertTrue(second >= 120000 && second <= 132001);
+      // capped at 6 hours
+      long last = plain.getRetryDelay(40);
+      Assert.assertTrue(last >= 21600000 && last <= 23760001);
+   }
+
+   @Test
+   public void testMakeIdempotencyKey() {
+      String key = EvalEmailOutboxImpl.makeIdempotencyKey(1L, EvalConstants.EMAIL_TEMPLATE_REMINDER, "2", "user");
+      Assert.assertEquals("1/Reminder/2/user", key);
+      Assert.assertEquals("null/Created//user", EvalEmailOutboxImpl.makeIdempotencyKey(null, EvalConstants.EMAIL_TEMPLATE_CREATED, null, "user"));
+
+      StringBuilder longUser = new StringBuilder();
+      for (int i = 0; i < 300; i++) {
+         longUser.append('u');
+      }
+      key = EvalEmailOutboxImpl.makeIdempotencyKey(1L, EvalConstants.EMAIL_TEMPLATE_REMINDER, "2", longUser.toString());
+      Assert.assertTrue(key.length() <= 255);
+      Assert.assertTrue(key.startsWith("sha256:"));
+      Assert.assertEquals(key, EvalEmailOutboxImpl.makeIdempotencyKey(1L, EvalConstants.EMAIL_TEMPLATE_REMINDER, "2", longUser.toString()));
+   }
+
+}
@@ -14,11 +14,18 @@
  */
 package org.sakaiproject.evaluation.logic;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.logic.model.EvalUser;
 import org.sakaiproject.evaluation.model.EvalEmailTemplate;
 import org.sakaiproject.evaluation.test.EvalTestDataLoad;
 import org.sakaiproject.evaluation.test.mocks.MockEvalExternalLogic;
@@ -244,4 +251,41 @@ public class EvalEmailsLogicImplTest extends BaseTestEvalLogic {
    // TODO Assert.fail("Not yet implemented");
    }
 
+   /**
+    * Test method for {@link org.sakaiproject.evaluation.logic.EvalEmailsLogicImpl.ConsolidatedEmailContext}.
+    */
+	@Test
+   public void testConsolidatedEmailContext() {
+      EvalEmailsLogicImpl.ConsolidatedEmailContext context = emailsLogic.new ConsolidatedEmailContext(true);
+      Assert.assertTrue(context.sendingAvailableEmails);
+      Assert.assertNotNull(context.from);
+      Assert.assertNotNull(context.inProgressEvaluationOwners);
+
+      // templates and date formats are only loaded once per run
+      EvalEmailTemplate template = context.getTemplate(etdl.emailTemplate1.getId());
+      Assert.assertNotNull(template);
+      Assert.assertEquals(etdl.emailTemplate1.getId(), template.getId());
+      Assert.assertSame(template, context.getTemplate(etdl.emailTemplate1.getId()));
+      Assert.assertSame(context.getDateFormat(Locale.US), context.getDateFormat(Locale.US));
+      Assert.assertNotSame(context.getDateFormat(Locale.US), context.getDateFormat(Locale.FRANCE));
+
+      // users are loaded a page at a time
+      List<Map<String,Object>> userMap = new ArrayList<>();
+      for (String userId : new String[] {EvalTestDataLoad.USER_ID, EvalTestDataLoad.STUDENT_USER_ID, EvalTestDataLoad.USER_ID}) {
+         Map<String,Object> entry = new HashMap<>();
+         entry.put(EvalConstants.KEY_USER_ID, userId);
+         userMap.add(entry);
+      }
+      context.loadUsers(userMap);
+      EvalUser user = context.getUser(EvalTestDataLoad.USER_ID);
+      Assert.assertNotNull(user);
+      Assert.assertEquals(EvalTestDataLoad.USER_ID, user.userId);
+      Assert.assertSame(user, context.getUser(EvalTestDataLoad.USER_ID));
+      Assert.assertEquals(EvalTestDataLoad.STUDENT_USER_ID, context.getUser(EvalTestDataLoad.STUDENT_USER_ID).userId);
+      Assert.assertEquals(Locale.US, context.getLocale(EvalTestDataLoad.USER_ID));
+
+      // users not in the page are still found
+      Assert.assertEquals(EvalTestDataLoad.MAINT_USER_ID, context.getUser(EvalTestDataLoad.MAINT_USER_ID).userId);
+   }
+
 }
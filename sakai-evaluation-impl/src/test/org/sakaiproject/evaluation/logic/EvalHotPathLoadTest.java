@@ -0,0 +1,196 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.evaluation.logic.externals.EvalSecurityChecksImpl;
+import org.sakaiproject.evaluation.model.EvalAssignUser;
+import org.sakaiproject.evaluation.model.EvalEvaluation;
+import org.sakaiproject.evaluation.test.EvalLoadDriver;
+import org.sakaiproject.evaluation.test.EvalSyntheticDataLoad;
+import org.sakaiproject.evaluation.test.mocks.MockExternalHierarchyLogic;
+import org.sakaiproject.evaluation.utils.TemplateItemDataList;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+
+/**
+ * Load test for the hot paths when taking evaluations and sending emails, this runs against
+ * a large synthetic data set (see {@link EvalSyntheticDataLoad}) and reports the throughput and
+ * latency percentiles of each path (see {@link EvalLoadDriver})<br/>
+ * This is skipped unless the system property eval.loadtest=true is set, e.g.<br/>
+ * <pre>
+ * mvn test -Dtest=EvalHotPathLoadTest -Deval.loadtest=true -Deval.loadtest.report=target/loadtest.tsv -Deval.loadtest.label=mychange
+ * </pre>
+ * The sizes can be changed with the system properties eval.loadtest.evaluations, eval.loadtest.groups,
+ * eval.loadtest.students, eval.loadtest.items and the runs with eval.loadtest.threads,
+ * eval.loadtest.operations and eval.loadtest.warmup<br/>
+ * <b>NOTE:</b> this does not run inside the test transaction since the worker threads
+ * need to see the data, each call gets its own transaction like it would in the real services,
+ * so the synthetic data (and the saved responses) are removed again after the test
+ */
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class EvalHotPathLoadTest extends BaseTestEvalLogic {
+
+    private EvalEvaluationService evaluationService;
+    private EvalDeliveryServiceImpl deliveryService;
+    private EvalAuthoringServiceImpl authoringService;
+    private EvalEmailsLogicImpl emailsLogic;
+
+    private EvalSyntheticDataLoad data;
+    private EvalLoadDriver driver;
+    private int threads;
+    private int operations;
+    private int warmup;
+
+    @Before
+    public void onSetUpBeforeTransaction() throws Exception {
+        Assume.assumeTrue("Load test is only run when eval.loadtest=true", Boolean.getBoolean("eval.loadtest"));
+        super.onSetUpBeforeTransaction();
+
+        EvalSettings settings = (EvalSettings) applicationContext.getBean("org.sakaiproject.evaluation.logic.EvalSettings");
+        EvalSecurityChecksImpl securityChecks =
+            (EvalSecurityChecksImpl) applicationContext.getBean("org.sakaiproject.evaluation.logic.externals.EvalSecurityChecks");
+        evaluationService = (EvalEvaluationService) applicationContext.getBean("org.sakaiproject.evaluation.logic.EvalEvaluationService");
+        if (settings == null || securityChecks == null || evaluationService == null) {
+            throw new NullPointerException("Services could not be retrieved from spring context");
+        }
+
+        authoringService = new EvalAuthoringServiceImpl();
+        authoringService.setDao(evaluationDao);
+        authoringService.setCommonLogic(commonLogic);
+        authoringService.setSettings(settings);
+        authoringService.setSecurityChecks(securityChecks);
+
+        emailsLogic = new EvalEmailsLogicImpl();
+        emailsLogic.setCommonLogic(commonLogic);
+        emailsLogic.setEvaluationService(evaluationService);
+        emailsLogic.setSettings(settings);
+
+        deliveryService = new EvalDeliveryServiceImpl();
+        deliveryService.setDao(evaluationDao);
+        deliveryService.setCommonLogic(commonLogic);
+        deliveryService.setHierarchyLogic( new MockExternalHierarchyLogic() );
+        deliveryService.setEvaluationService(evaluationService);
+        deliveryService.setSettings(settings);
+        deliveryService.setAuthoringService(authoringService);
+        deliveryService.setEmailsLogic(emailsLogic);
+
+        data = new EvalSyntheticDataLoad(Integer.getInteger("eval.loadtest.evaluations", 5),
+                Integer.getInteger("eval.loadtest.groups", 20),
+                Integer.getInteger("eval.loadtest.students", 30),
+                Integer.getInteger("eval.loadtest.items", 10));
+        data.load(evaluationDao, etdl.scale1);
+
+        threads = Integer.getInteger("eval.loadtest.threads", 8);
+        operations = Integer.getInteger("eval.loadtest.operations", 2000);
+        warmup = Integer.getInteger("eval.loadtest.warmup", 50);
+        driver = new EvalLoadDriver(System.getProperty("eval.loadtest.label", "local"),
+                System.getProperty("eval.loadtest.report"), warmup);
+    }
+
+    @After
+    public void tearDown() {
+        // nothing here is rolled back so remove the data to leave the shared database as it was
+        if (data != null) {
+            evaluationDao.invokeTransactionalAccess(() -> data.unload(evaluationDao));
+        }
+    }
+
+    /**
+     * Runs all the hot paths in order, the responses saved in the save run are used by the report runs
+     */
+    @Test
+    public void testHotPaths() {
+        final int groups = data.groupCount;
+        final int students = data.studentCount;
+        final int evaluations = data.evaluationCount;
+
+        // participants for an eval group (this is behind most of the other paths)
+        EvalLoadDriver.Result result = driver.run("getParticipantsForEval", threads, operations, (int i) -> {
+            int n = Math.abs(i);
+            EvalEvaluation evaluation = data.evaluations.get(n % evaluations);
+            String evalGroupId = data.evalGroupIds.get((n / evaluations) % groups);
+            List<EvalAssignUser> participants = evaluationService.getParticipantsForEval(evaluation.getId(), null,
+                    new String[] {evalGroupId}, EvalAssignUser.TYPE_EVALUATOR, null, null, null);
+            if (participants.size() != students) {
+                throw new IllegalStateException("Expected " + students + " participants but found " + participants.size());
+            }
+        });
+        Assert.assertEquals(0, result.errors);
+
+        // can take checks (done on every take evaluation page view and save)
+        result = driver.run("canTakeEvaluation", threads, operations, (int i) -> {
+            int n = Math.abs(i);
+            int g = (n / evaluations) % groups;
+            EvalEvaluation evaluation = data.evaluations.get(n % evaluations);
+            String userId = data.getStudentId(g, (n / (evaluations * groups)) % students);
+            if (! evaluationService.canTakeEvaluation(userId, evaluation.getId(), data.evalGroupIds.get(g))) {
+                throw new IllegalStateException("User (" + userId + ") should be able to take evaluation " + evaluation.getId());
+            }
+        });
+        Assert.assertEquals(0, result.errors);
+
+        // saving complete responses, each response is a different student/group/evaluation,
+        // the warmup uses the ones at the end so the measured saves never collide with them
+        final int combinations = evaluations * groups * students;
+        int saves = Math.min(operations, combinations - warmup);
+        Assume.assumeTrue("Not enough students for the response saving run", saves > 0);
+        result = driver.run("saveResponse", threads, saves, (int i) -> {
+            int n = i < 0 ? combinations + i : i;
+            EvalEvaluation evaluation = data.evaluations.get(n % evaluations);
+            int g = (n / evaluations) % groups;
+            int k = (n / (evaluations * groups)) % students;
+            evaluationDao.invokeTransactionalAccess(() ->
+                deliveryService.saveResponse(data.makeResponse(evaluation, g, k), data.getStudentId(g, k)) );
+        });
+        Assert.assertEquals(0, result.errors);
+
+        // report building for an evaluation and group (all the answers and template items)
+        result = driver.run("buildReport", threads, Math.max(1, operations / 10), (int i) -> {
+            int n = Math.abs(i);
+            EvalEvaluation evaluation = data.evaluations.get(n % evaluations);
+            String evalGroupId = data.evalGroupIds.get((n / evaluations) % groups);
+            evaluationDao.invokeTransactionalAccess(() -> {
+                TemplateItemDataList tidl = new TemplateItemDataList(evaluation.getId(), new String[] {evalGroupId},
+                        authoringService, deliveryService, null);
+                if (tidl.getTemplateItemsCount() != data.itemCount) {
+                    throw new IllegalStateException("Expected " + data.itemCount + " items but found " + tidl.getTemplateItemsCount());
+                }
+            });
+        });
+        Assert.assertEquals(0, result.errors);
+
+        // mapping all the participants of an evaluation to emails (the mock does not send anything),
+        // this is done from one thread so it measures a single job run
+        result = driver.run("sendEvalAvailable", 1, Math.max(1, evaluations), (int i) -> {
+            EvalEvaluation evaluation = data.evaluations.get(Math.abs(i) % evaluations);
+            evaluationDao.invokeTransactionalAccess(() -> {
+                String[] sent = emailsLogic.sendEvalAvailableNotifications(evaluation.getId(), false);
+                if (sent.length < groups * students) {
+                    throw new IllegalStateException("Expected " + (groups * students) + " emails but sent " + sent.length);
+                }
+            });
+        });
+        Assert.assertEquals(0, result.errors);
+    }
+
+}
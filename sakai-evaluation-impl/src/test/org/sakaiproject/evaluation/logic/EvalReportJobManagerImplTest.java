@@ -0,0 +1,201 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.logic.model.EvalReportJob;
+import org.sakaiproject.evaluation.model.EvalEvaluation;
+import org.sakaiproject.evaluation.test.EvalTestDataLoad;
+
+/**
+ * Testing the background report jobs
+ */
+public class EvalReportJobManagerImplTest extends BaseTestEvalLogic {
+
+   private static final String REPORT = "report contents";
+
+   private TestJobManager jobManager;
+
+   /**
+    * Writes a fixed report instead of running the exporters, waits until released
+    * and fails while failing is set
+    */
+   private static class TestJobManager extends EvalReportJobManagerImpl {
+      final CountDownLatch release = new CountDownLatch(1);
+      final AtomicInteger generated = new AtomicInteger();
+      volatile boolean failing = false;
+
+      @Override
+      protected void generateReport(String userId, String userEid, EvalEvaluation evaluation, String[] groupIds,
+            String evaluateeId, String exportType, OutputStream out) {
+         generated.incrementAndGet();
+         try {
+            release.await(10, TimeUnit.SECONDS);
+            if (failing) {
+               throw new IllegalStateException("Exporter failed");
+            }
+            out.write(REPORT.getBytes(StandardCharsets.UTF_8));
+         } catch (InterruptedException | IOException e) {
+            throw new RuntimeException(e);
+         }
+      }
+   }
+
+   @Before
+   public void onSetUpBeforeTransaction() throws Exception {
+      super.onSetUpBeforeTransaction();
+
+      EvalEvaluationService evaluationService = (EvalEvaluationService) applicationContext.getBean("org.sakaiproject.evaluation.logic.EvalEvaluationService");
+      jobManager = new TestJobManager();
+      jobManager.setCommonLogic(commonLogic);
+      jobManager.setEvaluationService(evaluationService);
+      jobManager.init();
+   }
+
+   @After
+   public void tearDown() {
+      jobManager.release.countDown();
+      jobManager.destroy();
+      externalLogic.setCurrentUserId(EvalTestDataLoad.USER_ID);
+   }
+
+   /**
+    * Wait for a job to complete, fail or be cancelled
+    */
+   private EvalReportJob waitForJob(String jobId) throws InterruptedException {
+      for (int i = 0; i < 200; i++) {
+         EvalReportJob job = jobManager.getReportJob(jobId);
+         if (job.finished != null) {
+            return job;
+         }
+         Thread.sleep(50);
+      }
+      Assert.fail("Report job did not finish: " + jobId);
+      return null;
+   }
+
+   @Test
+   public void testSubmitReportJob() throws Exception {
+      Long evaluationId = etdl.evaluationClosed.getId();
+      String jobId = jobManager.submitReportJob(evaluationId, new String[] {"b", "a"}, null, EvalEvaluationService.CSV_RESULTS_REPORT);
+      Assert.assertNotNull(jobId);
+      EvalReportJob job = jobManager.getReportJob(jobId);
+      Assert.assertEquals(evaluationId, job.evaluationId);
+      Assert.assertEquals(EvalTestDataLoad.USER_ID, job.userId);
+      Assert.assertNull(job.finished);
+      Assert.assertTrue(EvalConstants.REPORT_JOB_STATUS_QUEUED.equals(job.status)
+            || EvalConstants.REPORT_JOB_STATUS_RUNNING.equals(job.status));
+      Assert.assertNull(jobManager.getReportJobArtifact(jobId));
+
+      // the same request (in any group order) shares the job while it is running
+      Assert.assertEquals(jobId, jobManager.submitReportJob(evaluationId, new String[] {"a", "b"}, null, EvalEvaluationService.CSV_RESULTS_REPORT));
+      // a different request does not
+      String otherId = jobManager.submitReportJob(evaluationId, new String[] {"a", "b"}, null, EvalEvaluationService.XLS_RESULTS_REPORT);
+      Assert.assertFalse(jobId.equals(otherId));
+
+      jobManager.release.countDown();
+      job = waitForJob(jobId);
+      Assert.assertEquals(EvalConstants.REPORT_JOB_STATUS_COMPLETE, job.status);
+      Assert.assertNull(job.message);
+      Assert.assertEquals(REPORT.length(), job.bytesWritten);
+      File artifact = jobManager.getReportJobArtifact(jobId);
+      Assert.assertNotNull(artifact);
+      Assert.assertEquals(REPORT, new String(Files.readAllBytes(artifact.toPath()), StandardCharsets.UTF_8));
+      waitForJob(otherId);
+      Assert.assertEquals(2, jobManager.generated.get());
+
+      // the finished report is reused instead of being generated again
+      Assert.assertEquals(jobId, jobManager.submitReportJob(evaluationId, new String[] {"a", "b"}, null, EvalEvaluationService.CSV_RESULTS_REPORT));
+      Assert.assertEquals(2, jobManager.generated.get());
+
+      // only the user who asked for the report (or an admin) can see it
+      externalLogic.setCurrentUserId(EvalTestDataLoad.STUDENT_USER_ID);
+      try {
+         jobManager.getReportJob(jobId);
+         Assert.fail("Should have thrown exception");
+      } catch (SecurityException e) {
+         Assert.assertNotNull(e.getMessage());
+      }
+      externalLogic.setCurrentUserId(EvalTestDataLoad.ADMIN_USER_ID);
+      Assert.assertNotNull(jobManager.getReportJob(jobId));
+      Assert.assertNull(jobManager.getReportJob("invalid-job-id"));
+
+      try {
+         jobManager.submitReportJob(evaluationId, null, null, "invalid-type");
+         Assert.fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         Assert.assertNotNull(e.getMessage());
+      }
+      try {
+         jobManager.submitReportJob(EvalTestDataLoad.INVALID_LONG_ID, null, null, EvalEvaluationService.CSV_RESULTS_REPORT);
+         Assert.fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         Assert.assertNotNull(e.getMessage());
+      }
+   }
+
+   @Test
+   public void testFailedReportJob() throws Exception {
+      Long evaluationId = etdl.evaluationClosed.getId();
+      jobManager.failing = true;
+      jobManager.release.countDown();
+      String jobId = jobManager.submitReportJob(evaluationId, null, null, EvalEvaluationService.CSV_RESULTS_REPORT);
+      EvalReportJob job = waitForJob(jobId);
+      Assert.assertEquals(EvalConstants.REPORT_JOB_STATUS_FAILED, job.status);
+      Assert.assertEquals("Exporter failed", job.message);
+      Assert.assertNull(jobManager.getReportJobArtifact(jobId));
+      Assert.assertFalse(jobManager.cancelReportJob(jobId));
+
+      // a failed job is not reused
+      jobManager.failing = false;
+      String retryId = jobManager.submitReportJob(evaluationId, null, null, EvalEvaluationService.CSV_RESULTS_REPORT);
+      Assert.assertFalse(jobId.equals(retryId));
+      Assert.assertEquals(EvalConstants.REPORT_JOB_STATUS_COMPLETE, waitForJob(retryId).status);
+      Assert.assertNotNull(jobManager.getReportJobArtifact(retryId));
+   }
+
+   @Test
+   public void testCancelReportJob() throws Exception {
+      Long evaluationId = etdl.evaluationClosed.getId();
+      String jobId = jobManager.submitReportJob(evaluationId, null, null, EvalEvaluationService.CSV_RESULTS_REPORT);
+      Assert.assertTrue(jobManager.cancelReportJob(jobId));
+      EvalReportJob job = jobManager.getReportJob(jobId);
+      Assert.assertEquals(EvalConstants.REPORT_JOB_STATUS_CANCELLED, job.status);
+      Assert.assertNotNull(job.finished);
+      Assert.assertFalse(jobManager.cancelReportJob(jobId));
+
+      // the cancelled job is not reused
+      jobManager.release.countDown();
+      String newId = jobManager.submitReportJob(evaluationId, null, null, EvalEvaluationService.CSV_RESULTS_REPORT);
+      Assert.assertFalse(jobId.equals(newId));
+      Assert.assertEquals(EvalConstants.REPORT_JOB_STATUS_COMPLETE, waitForJob(newId).status);
+      Assert.assertEquals(EvalConstants.REPORT_JOB_STATUS_CANCELLED, jobManager.getReportJob(jobId).status);
+      Assert.assertNull(jobManager.getReportJobArtifact(jobId));
+   }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import javax.mail.internet.InternetAddress;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sakaiproject.evaluation.logic.externals.LocalEmailTransport;
+import org.sakaiproject.evaluation.logic.externals.LocalEmailTransport.SentEmail;
+
+/**
+ * Testing the offline stand-in email transport
+ */
+public class LocalEmailTransportTest {
+
+   private static final List<String> HEADERS = Collections.singletonList("Precedence: bulk");
+
+   @Test
+   public void testSendInMemory() throws Exception {
+      LocalEmailTransport transport = new LocalEmailTransport();
+      InternetAddress from = new InternetAddress("helpdesk@institution.edu");
+      transport.send(from, new InternetAddress[] { new InternetAddress("a@institution.edu") }, "subject 1", "message 1", HEADERS);
+      transport.send(from, new InternetAddress[] { new InternetAddress("b@institution.edu"), new InternetAddress("c@institution.edu") },
+            "subject 2", "message 2", HEADERS);
+
+      Assert.assertEquals(2, transport.getMessageCount());
+      Assert.assertEquals(3, transport.getRecipientCount());
+      List<SentEmail> sent = transport.getSentEmails();
+      Assert.assertEquals(2, sent.size());
+      Assert.assertEquals("helpdesk@institution.edu", sent.get(0).from);
+      Assert.assertEquals("subject 2", sent.get(1).subject);
+      Assert.assertEquals("message 2", sent.get(1).message);
+      Assert.assertArrayEquals(new String[] {"b@institution.edu", "c@institution.edu"}, sent.get(1).recipients);
+
+      transport.clear();
+      Assert.assertEquals(0, transport.getMessageCount());
+      Assert.assertEquals(0, transport.getSentEmails().size());
+
+      try {
+         transport.send(from, new InternetAddress[0], "subject", "message", HEADERS);
+         Assert.fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         Assert.assertNotNull(e);
+      }
+   }
+
+   @Test
+   public void testSendToFiles() throws Exception {
+      File dir = Files.createTempDirectory("eval-emails").toFile();
+      try {
+         // only counted in memory, not kept
+         LocalEmailTransport transport = new LocalEmailTransport(dir, 0, 0);
+         InternetAddress from = new InternetAddress("helpdesk@institution.edu");
+         transport.send(from, new InternetAddress[] { new InternetAddress("a@institution.edu"), new InternetAddress("b@institution.edu") },
+               "subject", "message", HEADERS);
+         Assert.assertEquals(1, transport.getMessageCount());
+         Assert.assertEquals(0, transport.getSentEmails().size());
+
+         File[] files = dir.listFiles();
+         Assert.assertEquals(1, files.length);
+         String eml = new String(Files.readAllBytes(files[0].toPath()), StandardCharsets.UTF_8);
+         Assert.assertTrue(eml.contains("To: helpdesk@institution.edu\r\n"));
+         Assert.assertTrue(eml.contains("Bcc: a@institution.edu, b@institution.edu\r\n"));
+         Assert.assertTrue(eml.contains("Precedence: bulk\r\n"));
+         Assert.assertTrue(eml.endsWith("\r\n\r\nmessage"));
+      } finally {
+         for (File file : dir.listFiles()) {
+            file.delete();
+         }
+         dir.delete();
+      }
+   }
+
+}
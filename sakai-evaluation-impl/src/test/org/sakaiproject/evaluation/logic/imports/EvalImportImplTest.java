@@ -0,0 +1,554 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.imports;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jdom2.Element;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.content.api.ContentHostingService;
+import org.sakaiproject.content.api.ContentResource;
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.dao.EvaluationDao;
+import org.sakaiproject.evaluation.jobmonitor.JobStatusReporter;
+import org.sakaiproject.evaluation.logic.BaseTestEvalLogic;
+import org.sakaiproject.evaluation.logic.EvalCommonLogic;
+import org.sakaiproject.evaluation.logic.EvalAuthoringServiceImpl;
+import org.sakaiproject.evaluation.logic.EvalEvaluationService;
+import org.sakaiproject.evaluation.logic.EvalSettings;
+import org.sakaiproject.evaluation.logic.externals.EvalSecurityChecksImpl;
+import org.sakaiproject.evaluation.model.EvalImportCheckpoint;
+import org.sakaiproject.evaluation.model.EvalImportHash;
+import org.sakaiproject.evaluation.model.EvalItem;
+import org.sakaiproject.evaluation.model.EvalScale;
+import org.sakaiproject.evaluation.model.EvalTemplate;
+import org.sakaiproject.evaluation.model.EvalTemplateItem;
+import org.sakaiproject.evaluation.test.EvalTestDataLoad;
+import org.sakaiproject.genericdao.api.search.Search;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+
+/**
+ * Testing the streaming import of the XML data
+ */
+public class EvalImportImplTest extends BaseTestEvalLogic {
+
+    private static final String RESOURCE_ID = "/attachment/import-test.xml";
+
+    private EvalAuthoringServiceImpl authoringService;
+    private EvalEvaluationService evaluationService;
+    private List<String> removedResources;
+
+    /**
+     * Keeps the last progress of each stage and the finished details of the import
+     */
+    private static class TestJobStatusReporter implements JobStatusReporter {
+        final Map<String, String> progress = new HashMap<>();
+        String finished;
+        boolean failed;
+
+        public String reportStarted(String jobName) {
+            return jobName;
+        }
+        public void reportProgress(String jobId, String milestone, String detail) {
+            progress.put(milestone, detail);
+        }
+        public void reportError(String jobId, boolean jobFailed, String milestone, String detail) {
+            failed |= jobFailed;
+        }
+        public void reportFinished(String jobId, boolean jobFailed, String milestone, String detail) {
+            failed |= jobFailed;
+            finished = detail;
+        }
+    }
+
+    @Before
+    public void onSetUpBeforeTransaction() throws Exception {
+        super.onSetUpBeforeTransaction();
+
+        EvalSettings settings = (EvalSettings) applicationContext.getBean("org.sakaiproject.evaluation.logic.EvalSettings");
+        EvalSecurityChecksImpl securityChecks =
+            (EvalSecurityChecksImpl) applicationContext.getBean("org.sakaiproject.evaluation.logic.externals.EvalSecurityChecks");
+        evaluationService = (EvalEvaluationService) applicationContext.getBean("org.sakaiproject.evaluation.logic.EvalEvaluationService");
+
+        authoringService = new EvalAuthoringServiceImpl();
+        authoringService.setDao(evaluationDao);
+        authoringService.setCommonLogic(commonLogic);
+        authoringService.setSettings(settings);
+        authoringService.setSecurityChecks(securityChecks);
+
+        // the chunks are saved in the test transaction
+        externalLogic.setConfigurationSetting(EvalImportImpl.SETTING_WORKER_THREADS, 1);
+        externalLogic.setConfigurationSetting(EvalImportImpl.SETTING_BATCH_SIZE, 2);
+        removedResources = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        externalLogic.setConfigurationSetting(EvalImportImpl.SETTING_WORKER_THREADS, null);
+        externalLogic.setConfigurationSetting(EvalImportImpl.SETTING_BATCH_SIZE, null);
+        externalLogic.setConfigurationSetting(EvalImportImpl.SETTING_CHECKPOINTS, null);
+        externalLogic.setConfigurationSetting(EvalImportImpl.SETTING_SKIP_UNCHANGED, null);
+    }
+
+    @Test
+    public void testProcess() {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<EVAL_DATA>\n"
+                + "<EVAL_SCALES>\n"
+                + scale("import-scale-1", "<![CDATA[Agree & disagree]]>", "Disagree", "Neutral", "Agree")
+                // elements nested inside an element are part of it and are not imported themselves
+                + scale("import-scale-2", "Yes no", "No", "Yes").replace("</EVAL_SCALE>",
+                        "<EXTRA><EVAL_SCALE><EID>import-scale-nested</EID></EVAL_SCALE></EXTRA></EVAL_SCALE>")
+                // other elements in the section are skipped
+                + "<EVAL_NOTE><EVAL_SCALE><EID>import-scale-note</EID></EVAL_SCALE></EVAL_NOTE>\n"
+                + scale("import-scale-3", "Grade", "A", "B", "C", "D")
+                + "</EVAL_SCALES>\n"
+                // so are elements in other sections
+                + "<EVAL_OTHERS>\n" + scale("import-scale-other", "Other", "No", "Yes") + "</EVAL_OTHERS>\n"
+                + "<EVAL_ITEMS>\n"
+                + item("import-item-1", "Item one", "import-scale-1")
+                + item("import-item-2", "Item two", "import-scale-2")
+                + "</EVAL_ITEMS>\n"
+                + "<EVAL_TEMPLATES>\n"
+                + template("import-template-1", "Template one")
+                + "</EVAL_TEMPLATES>\n"
+                + "<EVAL_TEMPLATEITEMS>\n"
+                + templateItem("import-ti-1", "import-template-1", "import-item-1")
+                + templateItem("import-ti-2", "import-template-1", "import-item-2")
+                + "</EVAL_TEMPLATEITEMS>\n"
+                + "</EVAL_DATA>";
+
+        TestJobStatusReporter reporter = new TestJobStatusReporter();
+        List<String> messages = makeImport(xml, reporter).process(RESOURCE_ID, EvalTestDataLoad.ADMIN_USER_ID);
+        Assert.assertTrue(messages.toString(), messages.isEmpty());
+        Assert.assertFalse(reporter.failed);
+        Assert.assertEquals(Arrays.asList(RESOURCE_ID), removedResources);
+        Assert.assertEquals("3 read, 3 saved/updated, 0 unchanged", reporter.progress.get("EvalScale"));
+        Assert.assertEquals("2 read, 2 saved/updated, 0 unchanged", reporter.progress.get("EvalItem"));
+        Assert.assertEquals("1 read, 1 saved/updated, 0 unchanged", reporter.progress.get("EvalTemplate"));
+        Assert.assertEquals("2 read, 2 saved/updated, 0 unchanged", reporter.progress.get("EvalTemplateItem"));
+        Assert.assertEquals("0 read, 0 saved/updated, 0 unchanged", reporter.progress.get("EvalEvaluation"));
+        Assert.assertEquals("8 saved/updated, 0 messages", reporter.finished);
+
+        EvalScale scale = authoringService.getScaleByEid("import-scale-1");
+        Assert.assertNotNull(scale);
+        Assert.assertEquals("Agree & disagree", scale.getTitle());
+        Assert.assertEquals(Arrays.asList("Disagree", "Neutral", "Agree"), scale.getOptions());
+        Assert.assertEquals(Arrays.asList("No", "Yes"), authoringService.getScaleByEid("import-scale-2").getOptions());
+        Assert.assertEquals(Arrays.asList("A", "B", "C", "D"), authoringService.getScaleByEid("import-scale-3").getOptions());
+        Assert.assertNull(authoringService.getScaleByEid("import-scale-nested"));
+        Assert.assertNull(authoringService.getScaleByEid("import-scale-note"));
+        Assert.assertNull(authoringService.getScaleByEid("import-scale-other"));
+
+        EvalItem item = authoringService.getItemByEid("import-item-2");
+        Assert.assertNotNull(item);
+        Assert.assertEquals("Item two", item.getItemText());
+        Assert.assertEquals("import-scale-2", item.getScale().getEid());
+
+        EvalTemplate template = authoringService.getTemplateByEid("import-template-1");
+        Assert.assertNotNull(template);
+        List<EvalTemplateItem> templateItems = authoringService.getTemplateItemsForTemplate(template.getId(), null, null, null);
+        Assert.assertEquals(2, templateItems.size());
+        Assert.assertEquals("import-ti-1", templateItems.get(0).getEid());
+        Assert.assertEquals(Integer.valueOf(1), templateItems.get(0).getDisplayOrder());
+        Assert.assertEquals("import-item-1", templateItems.get(0).getItem().getEid());
+        Assert.assertEquals("import-ti-2", templateItems.get(1).getEid());
+        Assert.assertEquals(Integer.valueOf(2), templateItems.get(1).getDisplayOrder());
+    }
+
+    @Test
+    public void testProcessTemplateItems() {
+        // the template items of a template depend on each other so they are saved one chunk at a time
+        Assert.assertTrue(new EvalImportImpl().templateItemStage().serial);
+        Assert.assertFalse(new EvalImportImpl().assignGroupStage().serial);
+
+        String xml = "<EVAL_DATA>\n"
+                + "<EVAL_SCALES>\n" + scale("import-scale-1", "Yes no", "No", "Yes") + "</EVAL_SCALES>\n"
+                + "<EVAL_ITEMS>\n"
+                + item("import-item-1", "Item one", "import-scale-1")
+                + item("import-item-2", "Item two", "import-scale-1")
+                + item("import-item-3", "Item three", "import-scale-1")
+                + "</EVAL_ITEMS>\n"
+                + "<EVAL_TEMPLATES>\n"
+                + template("import-template-a", "Template A")
+                + template("import-template-b", "Template B")
+                + "</EVAL_TEMPLATES>\n"
+                + "<EVAL_TEMPLATEITEMS>\n"
+                // the items of both templates are spread over the chunks
+                + templateItem("import-ti-a1", "import-template-a", "import-item-1")
+                + templateItem("import-ti-b1", "import-template-b", "import-item-1")
+                + templateItem("import-ti-a2", "import-template-a", "import-item-2")
+                + templateItem("import-ti-b2", "import-template-b", "import-item-2")
+                // a new eid twice in one chunk and again in the next chunk
+                + templateItem("import-ti-dup", "import-template-b", "import-item-1")
+                + templateItem("import-ti-dup", "import-template-b", "import-item-2")
+                + templateItem("import-ti-a3", "import-template-a", "import-item-3")
+                + templateItem("import-ti-dup", "import-template-b", "import-item-3")
+                + "</EVAL_TEMPLATEITEMS>\n"
+                + "</EVAL_DATA>";
+
+        TestJobStatusReporter reporter = new TestJobStatusReporter();
+        List<String> messages = makeImport(xml, reporter).process(RESOURCE_ID, EvalTestDataLoad.ADMIN_USER_ID);
+        Assert.assertTrue(messages.toString(), messages.isEmpty());
+        Assert.assertEquals("8 read, 8 saved/updated, 0 unchanged", reporter.progress.get("EvalTemplateItem"));
+
+        List<EvalTemplateItem> templateItems = authoringService.getTemplateItemsForTemplate(
+                authoringService.getTemplateByEid("import-template-a").getId(), null, null, null);
+        Assert.assertEquals(3, templateItems.size());
+        for (int i = 0; i < templateItems.size(); i++) {
+            Assert.assertEquals("import-ti-a" + (i + 1), templateItems.get(i).getEid());
+            Assert.assertEquals(Integer.valueOf(i + 1), templateItems.get(i).getDisplayOrder());
+        }
+
+        templateItems = authoringService.getTemplateItemsForTemplate(
+                authoringService.getTemplateByEid("import-template-b").getId(), null, null, null);
+        Assert.assertEquals(3, templateItems.size());
+        Assert.assertEquals("import-ti-b1", templateItems.get(0).getEid());
+        Assert.assertEquals(Integer.valueOf(1), templateItems.get(0).getDisplayOrder());
+        Assert.assertEquals("import-ti-b2", templateItems.get(1).getEid());
+        Assert.assertEquals(Integer.valueOf(2), templateItems.get(1).getDisplayOrder());
+        // the repeated eid is saved once and then updated
+        Assert.assertEquals("import-ti-dup", templateItems.get(2).getEid());
+        Assert.assertEquals("import-item-3", templateItems.get(2).getItem().getEid());
+        Assert.assertEquals(1, evaluationDao.countBySearch(EvalTemplateItem.class, new Search("eid", "import-ti-dup")));
+    }
+
+    @Test
+    public void testProcessUnchanged() {
+        String xml = "<EVAL_DATA>\n"
+                + "<EVAL_SCALES>\n"
+                + scale("import-scale-1", "Yes no", "No", "Yes")
+                + scale("import-scale-2", "Grade", "A", "B", "C")
+                + scale("import-scale-3", "Agree", "Disagree", "Agree")
+                + "</EVAL_SCALES>\n"
+                + "<EVAL_ITEMS>\n"
+                + item("import-item-1", "Item one", "import-scale-1")
+                + item("import-item-2", "Item two", "import-scale-2")
+                + "</EVAL_ITEMS>\n"
+                + "</EVAL_DATA>";
+
+        TestJobStatusReporter reporter = new TestJobStatusReporter();
+        makeImport(xml, reporter).process(RESOURCE_ID, EvalTestDataLoad.ADMIN_USER_ID);
+        Assert.assertEquals("3 read, 3 saved/updated, 0 unchanged", reporter.progress.get("EvalScale"));
+        Assert.assertEquals("2 read, 2 saved/updated, 0 unchanged", reporter.progress.get("EvalItem"));
+        Assert.assertEquals("5 saved/updated, 0 messages", reporter.finished);
+        // nothing left to resume so the checkpoints of a complete import are removed
+        Assert.assertEquals(0, evaluationDao.countAll(EvalImportCheckpoint.class));
+        Assert.assertEquals(5, evaluationDao.countAll(EvalImportHash.class));
+
+        // the same file again changes nothing
+        reporter = new TestJobStatusReporter();
+        List<String> messages = makeImport(xml, reporter).process(RESOURCE_ID, EvalTestDataLoad.ADMIN_USER_ID);
+        Assert.assertTrue(messages.toString(), messages.isEmpty());
+        Assert.assertEquals("3 read, 0 saved/updated, 3 unchanged", reporter.progress.get("EvalScale"));
+        Assert.assertEquals("2 read, 0 saved/updated, 2 unchanged", reporter.progress.get("EvalItem"));
+        Assert.assertEquals("0 saved/updated, 0 messages", reporter.finished);
+
+        // only the changed element is saved
+        reporter = new TestJobStatusReporter();
+        makeImport(xml.replace("<TITLE>Grade</TITLE>", "<TITLE>Letter grade</TITLE>"), reporter)
+            .process(RESOURCE_ID, EvalTestDataLoad.ADMIN_USER_ID);
+        Assert.assertEquals("3 read, 1 saved/updated, 2 unchanged", reporter.progress.get("EvalScale"));
+        Assert.assertEquals("2 read, 0 saved/updated, 2 unchanged", reporter.progress.get("EvalItem"));
+        Assert.assertEquals("Letter grade", authoringService.getScaleByEid("import-scale-2").getTitle());
+        Assert.assertEquals(5, evaluationDao.countAll(EvalImportHash.class));
+
+        // everything is saved again when unchanged elements are not skipped
+        externalLogic.setConfigurationSetting(EvalImportImpl.SETTING_SKIP_UNCHANGED, Boolean.FALSE);
+        reporter = new TestJobStatusReporter();
+        makeImport(xml, reporter).process(RESOURCE_ID, EvalTestDataLoad.ADMIN_USER_ID);
+        Assert.assertEquals("3 read, 3 saved/updated, 0 unchanged", reporter.progress.get("EvalScale"));
+        Assert.assertEquals("2 read, 2 saved/updated, 0 unchanged", reporter.progress.get("EvalItem"));
+        Assert.assertEquals("Grade", authoringService.getScaleByEid("import-scale-2").getTitle());
+    }
+
+    @Test
+    public void testProcessResume() throws Exception {
+        String xml = "<EVAL_DATA>\n"
+                + "<EVAL_SCALES>\n"
+                + scale("import-scale-1", "Yes no", "No", "Yes")
+                + scale("import-scale-2", "Grade", "A", "B", "C")
+                + scale("import-scale-3", "Agree", "Disagree", "Agree")
+                + "</EVAL_SCALES>\n"
+                + "<EVAL_ITEMS>\n"
+                + item("import-item-1", "Item one", "import-scale-3")
+                + "</EVAL_ITEMS>\n"
+                + "<EVAL_TEMPLATES>\n"
+                + template("import-template-1", "Template one")
+                + "</EVAL_TEMPLATES>\n"
+                + "</EVAL_DATA>";
+
+        // an earlier import of this file committed the first two scales and all the templates
+        String fileHash = String.format("%064x", new BigInteger(1, 
+                MessageDigest.getInstance("SHA-256").digest(xml.getBytes(StandardCharsets.UTF_8))));
+        evaluationDao.save( new EvalImportCheckpoint(fileHash, "EvalScale", 2, false) );
+        evaluationDao.save( new EvalImportCheckpoint(fileHash, "EvalTemplate", 1, true) );
+
+        TestJobStatusReporter reporter = new TestJobStatusReporter();
+        List<String> messages = makeImport(xml, reporter).process(RESOURCE_ID, EvalTestDataLoad.ADMIN_USER_ID);
+        Assert.assertEquals(Arrays.asList("Resumed the import of EvalScales after element 2"), messages);
+        Assert.assertEquals("3 read, 1 saved/updated, 0 unchanged", reporter.progress.get("EvalScale"));
+        Assert.assertEquals("1 read, 0 saved/updated, 0 unchanged", reporter.progress.get("EvalTemplate"));
+        Assert.assertEquals("1 read, 1 saved/updated, 0 unchanged", reporter.progress.get("EvalItem"));
+        Assert.assertEquals("2 saved/updated, 1 messages", reporter.finished);
+
+        // the elements before the checkpoints were not read again
+        Assert.assertNull(authoringService.getScaleByEid("import-scale-1"));
+        Assert.assertNull(authoringService.getScaleByEid("import-scale-2"));
+        Assert.assertNotNull(authoringService.getScaleByEid("import-scale-3"));
+        Assert.assertNull(authoringService.getTemplateByEid("import-template-1"));
+        Assert.assertEquals("import-scale-3", authoringService.getItemByEid("import-item-1").getScale().getEid());
+        Assert.assertEquals(0, evaluationDao.countBySearch(EvalImportCheckpoint.class, new Search("fileHash", fileHash)));
+
+        // a file which is not checkpointed reads everything
+        externalLogic.setConfigurationSetting(EvalImportImpl.SETTING_CHECKPOINTS, Boolean.FALSE);
+        evaluationDao.save( new EvalImportCheckpoint(fileHash, "EvalScale", 2, false) );
+        reporter = new TestJobStatusReporter();
+        makeImport(xml, reporter).process(RESOURCE_ID, EvalTestDataLoad.ADMIN_USER_ID);
+        Assert.assertEquals("3 read, 2 saved/updated, 1 unchanged", reporter.progress.get("EvalScale"));
+        Assert.assertEquals("1 read, 1 saved/updated, 0 unchanged", reporter.progress.get("EvalTemplate"));
+        Assert.assertNotNull(authoringService.getScaleByEid("import-scale-1"));
+        Assert.assertNotNull(authoringService.getTemplateByEid("import-template-1"));
+    }
+
+    @Test
+    public void testProcessChunkEvents() {
+        String xml = "<EVAL_DATA>\n"
+                + "<EVAL_SCALES>\n"
+                + scale("import-scale-1", "Yes no", "No", "Yes")
+                + scale("import-scale-2", "Grade", "A", "B", "C")
+                + "</EVAL_SCALES>\n"
+                + "</EVAL_DATA>";
+        externalLogic.setConfigurationSetting(EvalImportImpl.SETTING_SKIP_UNCHANGED, Boolean.FALSE);
+
+        // the first chunk transaction fails after its entities were saved, like a failed commit
+        AtomicInteger transactions = new AtomicInteger();
+        EvaluationDao failingDao = stub(EvaluationDao.class, (proxy, method, args) -> {
+            try {
+                Object result = method.invoke(evaluationDao, args);
+                if ("invokeTransactionalAccess".equals(method.getName()) && transactions.incrementAndGet() == 1) {
+                    throw new IllegalStateException("commit failed");
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+        List<String> events = new ArrayList<>();
+        EvalCommonLogic countingLogic = stub(EvalCommonLogic.class, (proxy, method, args) -> {
+            if ("registerEntityEvent".equals(method.getName())) {
+                events.add((String) args[0]);
+                return null;
+            }
+            try {
+                return method.invoke(commonLogic, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+
+        TestJobStatusReporter reporter = new TestJobStatusReporter();
+        EvalImportImpl evalImport = makeImport(xml, reporter);
+        evalImport.setDao(failingDao);
+        evalImport.setCommonLogic(countingLogic);
+        evalImport.process(RESOURCE_ID, EvalTestDataLoad.ADMIN_USER_ID);
+        Assert.assertEquals(2, transactions.get());
+        Assert.assertEquals("2 read, 2 saved/updated, 0 unchanged", reporter.progress.get("EvalScale"));
+        // only the events of the committed attempt are posted
+        Assert.assertEquals(2, events.size());
+    }
+
+    @Test
+    public void testChunkCommitted() {
+        EvalImportImpl.ImportStage stage = new EvalImportImpl().scaleStage();
+        // chunks can finish in any order, the committed index only moves past a run of committed chunks
+        Assert.assertFalse(stage.chunkCommitted(2, 4));
+        Assert.assertEquals(0, stage.committedTo);
+        Assert.assertFalse(stage.chunkCommitted(6, 8));
+        Assert.assertTrue(stage.chunkCommitted(0, 2));
+        Assert.assertEquals(4, stage.committedTo);
+        Assert.assertTrue(stage.chunkCommitted(4, 6));
+        Assert.assertEquals(8, stage.committedTo);
+        Assert.assertTrue(stage.chunkCommitted(8, 9));
+        Assert.assertEquals(9, stage.committedTo);
+    }
+
+    @Test
+    public void testProcessInvalidXml() {
+        String xml = "<EVAL_DATA><EVAL_SCALES>" + scale("import-scale-bad", "Bad", "No", "Yes") + "<EVAL_SCALE>";
+        TestJobStatusReporter reporter = new TestJobStatusReporter();
+        List<String> messages = makeImport(xml, reporter).process(RESOURCE_ID, EvalTestDataLoad.ADMIN_USER_ID);
+        Assert.assertFalse(messages.isEmpty());
+        Assert.assertTrue(messages.get(0), messages.get(0).startsWith("There was an error parsing the XML data."));
+        // the resource is removed even when it cannot be read
+        Assert.assertEquals(Arrays.asList(RESOURCE_ID), removedResources);
+    }
+
+    @Test
+    public void testReadElement() throws Exception {
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(
+                "<A><B>one<C>two</C></B><B/><D>three</D></A>"));
+        reader.nextTag();
+        Element element = EvalImportImpl.readElement(reader);
+        Assert.assertEquals(XMLStreamConstants.END_ELEMENT, reader.getEventType());
+        Assert.assertEquals("A", reader.getLocalName());
+        Assert.assertEquals("A", element.getName());
+        Assert.assertEquals(2, element.getChildren("B").size());
+        Assert.assertEquals("one", element.getChildren("B").get(0).getTextTrim());
+        Assert.assertEquals("two", element.getChild("B").getChildText("C"));
+        Assert.assertEquals("", element.getChildren("B").get(1).getText());
+        Assert.assertEquals("three", element.getChildText("D"));
+    }
+
+    @Test
+    public void testSkipElement() throws Exception {
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(
+                "<A><B><B><C>one</C></B></B><D>two</D></A>"));
+        reader.nextTag();
+        reader.nextTag();
+        Assert.assertEquals("B", reader.getLocalName());
+        EvalImportImpl.skipElement(reader);
+        // left at the end of the outer B
+        Assert.assertEquals(XMLStreamConstants.END_ELEMENT, reader.getEventType());
+        Assert.assertEquals("B", reader.getLocalName());
+        reader.nextTag();
+        Assert.assertEquals("D", reader.getLocalName());
+        Assert.assertEquals("two", EvalImportImpl.readElement(reader).getText());
+    }
+
+    /**
+     * Add anything that supports the unit tests below here
+     */
+
+    /**
+     * @return an import of the xml data with stubs for the content and sessions
+     */
+    private EvalImportImpl makeImport(String xml, JobStatusReporter reporter) {
+        byte[] content = xml.getBytes(StandardCharsets.UTF_8);
+        ContentResource resource = stub(ContentResource.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getId": return RESOURCE_ID;
+                case "streamContent": return new ByteArrayInputStream(content);
+                default: return null;
+            }
+        });
+        ContentHostingService contentHostingService = stub(ContentHostingService.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getResource": return resource;
+                case "removeResource":
+                    removedResources.add((String) args[0]);
+                    return null;
+                default: return null;
+            }
+        });
+        Session session = stub(Session.class, (proxy, method, args) -> null);
+        SessionManager sessionManager = stub(SessionManager.class, (proxy, method, args) ->
+            "getCurrentSession".equals(method.getName()) || "startSession".equals(method.getName()) ? session : null);
+
+        EvalImportImpl evalImport = new EvalImportImpl();
+        evalImport.setContentHostingService(contentHostingService);
+        evalImport.setSessionManager(sessionManager);
+        evalImport.setCommonLogic(commonLogic);
+        evalImport.setDao(evaluationDao);
+        evalImport.setAuthoringService(authoringService);
+        evalImport.setEvaluationService(evaluationService);
+        evalImport.setJobStatusReporter(reporter);
+        return evalImport;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(EvalImportImplTest.class.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        switch (method.getName()) {
+                            case "equals": return proxy == args[0];
+                            case "hashCode": return System.identityHashCode(proxy);
+                            default: return type.getSimpleName() + " stub";
+                        }
+                    }
+                    return handler.invoke(proxy, method, args);
+                });
+    }
+
+    private static String scale(String eid, String title, String... options) {
+        StringBuilder sb = new StringBuilder("<EVAL_SCALE><EID>").append(eid).append("</EID>")
+                .append("<OWNER>").append(EvalTestDataLoad.ADMIN_USER_ID).append("</OWNER>")
+                .append("<TITLE>").append(title).append("</TITLE>")
+                .append("<SHARING>").append(EvalConstants.SHARING_PRIVATE).append("</SHARING>")
+                .append("<LOCKED>0</LOCKED><EXPERT>0</EXPERT><EXPERT_DESCRIPTION/><IDEAL/>")
+                .append("<EVAL_SCALE_OPTIONS>");
+        for (int i = 0; i < options.length; i++) {
+            sb.append("<EVAL_SCALE_OPTION><SCALE_OPTION_INDEX>").append(i).append("</SCALE_OPTION_INDEX>")
+                .append("<SCALE_OPTION>").append(options[i]).append("</SCALE_OPTION></EVAL_SCALE_OPTION>");
+        }
+        return sb.append("</EVAL_SCALE_OPTIONS></EVAL_SCALE>\n").toString();
+    }
+
+    private static String item(String eid, String text, String scaleEid) {
+        return "<EVAL_ITEM><EID>" + eid + "</EID>"
+                + "<OWNER>" + EvalTestDataLoad.ADMIN_USER_ID + "</OWNER>"
+                + "<ITEM_TEXT>" + text + "</ITEM_TEXT><DESCRIPTION/>"
+                + "<SHARING>" + EvalConstants.SHARING_PRIVATE + "</SHARING>"
+                + "<CLASSIFICATION>" + EvalConstants.ITEM_TYPE_SCALED + "</CLASSIFICATION>"
+                + "<LOCKED>0</LOCKED><EXPERT>0</EXPERT><EXPERT_DESCRIPTION/><USES_NA>0</USES_NA><DISPLAY_ROWS/>"
+                + "<SCALE_DISPLAY_SETTING>" + EvalConstants.ITEM_SCALE_DISPLAY_FULL + "</SCALE_DISPLAY_SETTING>"
+                + "<SCALE_EID>" + scaleEid + "</SCALE_EID>"
+                + "<CATEGORY>" + EvalConstants.ITEM_CATEGORY_COURSE + "</CATEGORY></EVAL_ITEM>\n";
+    }
+
+    private static String template(String eid, String title) {
+        return "<EVAL_TEMPLATE><EID>" + eid + "</EID>"
+                + "<OWNER>" + EvalTestDataLoad.ADMIN_USER_ID + "</OWNER>"
+                + "<TYPE>" + EvalConstants.TEMPLATE_TYPE_STANDARD + "</TYPE>"
+                + "<TITLE>" + title + "</TITLE><DESCR/>"
+                + "<SHARING>" + EvalConstants.SHARING_PRIVATE + "</SHARING>"
+                + "<LOCKED>0</LOCKED><EXPERT>0</EXPERT><EXPERTDESCR/></EVAL_TEMPLATE>\n";
+    }
+
+    private static String templateItem(String eid, String templateEid, String itemEid) {
+        return "<EVAL_TEMPLATEITEM><EID>" + eid + "</EID>"
+                + "<OWNER>" + EvalTestDataLoad.ADMIN_USER_ID + "</OWNER>"
+                + "<RESULTS_SHARING>" + EvalConstants.SHARING_PUBLIC + "</RESULTS_SHARING>"
+                + "<HIERARCHY_LEVEL>" + EvalConstants.HIERARCHY_LEVEL_TOP + "</HIERARCHY_LEVEL>"
+                + "<HIERARCHY_NODE_ID>" + EvalConstants.HIERARCHY_NODE_ID_NONE + "</HIERARCHY_NODE_ID>"
+                + "<DISPLAY_ORDER/><USES_NA>0</USES_NA><BLOCK_ID/><BLOCK_PARENT/>"
+                + "<ITEM_EID>" + itemEid + "</ITEM_EID>"
+                + "<TEMPLATE_EID>" + templateEid + "</TEMPLATE_EID>"
+                + "<SCALE_DISPLAY_SETTING>" + EvalConstants.ITEM_SCALE_DISPLAY_FULL + "</SCALE_DISPLAY_SETTING>"
+                + "<DISPLAY_ROWS/></EVAL_TEMPLATEITEM>\n";
+    }
+
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Runs an operation many times on a number of threads and measures the latency of every call,
+ * used by the load tests to get throughput and percentile latencies for the hot paths<br/>
+ * Each run does some warmup calls first (not measured) and then the measured calls,
+ * the results are logged as one line per run in the same format every time so they can be
+ * compared across builds, they are also appended to a file if a report file is set
+ */
+@Slf4j
+public class EvalLoadDriver {
+
+    /**
+     * A single call to measure
+     */
+    public interface Operation {
+        /**
+         * @param iteration the number of this call (0 to operations-1),
+         * every number is used exactly once per run (warmup calls use negative numbers)
+         * @throws Exception if the call fails, this is counted as an error
+         */
+        void run(int iteration) throws Exception;
+    }
+
+    /**
+     * The measurements from one run
+     */
+    public static class Result {
+        public final String name;
+        public final int threads;
+        public final int operations;
+        public final int errors;
+        public final long elapsedNanos;
+        private final long[] latencies;
+
+        Result(String name, int threads, int errors, long elapsedNanos, long[] latencies) {
+            this.name = name;
+            this.threads = threads;
+            this.operations = latencies.length;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+            Arrays.sort(this.latencies);
+        }
+
+        /**
+         * @return the number of calls completed per second (including the failed ones)
+         */
+        public double getThroughput() {
+            return elapsedNanos <= 0 ? 0d : operations * 1000000000d / elapsedNanos;
+        }
+
+        /**
+         * @param percentile the percentile (e.g. 50, 99, 99.9)
+         * @return the latency in ms at that percentile (nearest rank)
+         */
+        public double getPercentileMillis(double percentile) {
+            if (latencies.length == 0) {
+                return 0d;
+            }
+            int rank = (int) Math.ceil(percentile / 100d * latencies.length);
+            rank = Math.max(1, Math.min(latencies.length, rank));
+            return latencies[rank - 1] / 1000000d;
+        }
+
+        /**
+         * @return the mean latency in ms
+         */
+        public double getMeanMillis() {
+            if (latencies.length == 0) {
+                return 0d;
+            }
+            long total = 0;
+            for (long latency : latencies) {
+                total += latency;
+            }
+            return total / (double) latencies.length / 1000000d;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-28s threads=%3d ops=%6d errors=%4d ops/s=%10.1f mean=%8.2fms p50=%8.2fms p90=%8.2fms p99=%8.2fms max=%8.2fms",
+                    name, threads, operations, errors, getThroughput(), getMeanMillis(), getPercentileMillis(50),
+                    getPercentileMillis(90), getPercentileMillis(99), getPercentileMillis(100));
+        }
+
+        /**
+         * @return the result as tab separated values (see {@link #REPORT_HEADER})
+         */
+        public String toReportLine() {
+            return String.format(Locale.US, "%s\t%d\t%d\t%d\t%.1f\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f",
+                    name, threads, operations, errors, getThroughput(), getMeanMillis(), getPercentileMillis(50),
+                    getPercentileMillis(90), getPercentileMillis(99), getPercentileMillis(100));
+        }
+    }
+
+    public final static String REPORT_HEADER = "label\tname\tthreads\tops\terrors\tops/s\tmean_ms\tp50_ms\tp90_ms\tp99_ms\tmax_ms";
+
+    private final String label;
+    private final String reportFile;
+    private final int warmup;
+    private final List<Result> results = new ArrayList<>();
+
+    /**
+     * @param label a label for this set of runs (e.g. the commit or build being measured), written with each report line
+     * @param reportFile (OPTIONAL) a file to append the tab separated results to, null to only log them
+     * @param warmup the number of unmeasured calls to make before each run
+     */
+    public EvalLoadDriver(String label, String reportFile, int warmup) {
+        this.label = label;
+        this.reportFile = reportFile;
+        this.warmup = warmup;
+    }
+
+    /**
+     * Run the operation the given number of times across the given number of threads
+     *
+     * @param name the name of the operation for the results
+     * @param threads the number of threads to call the operation from
+     * @param operations the total number of measured calls to make
+     * @param operation the call to measure
+     * @return the results of this run
+     */
+    public Result run(String name, int threads, int operations, final Operation operation) {
+        if (threads <= 0 || operations <= 0) {
+            throw new IllegalArgumentException("threads and operations must be greater than 0");
+        }
+        for (int i = 1; i <= warmup; i++) {
+            try {
+                operation.run(-i);
+            } catch (Exception e) {
+                // warmup failures show up again in the measured run
+            }
+        }
+
+        final long[] latencies = new long[operations];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            futures.add( executor.submit(() -> {
+                int iteration;
+                while ((iteration = next.getAndIncrement()) < operations) {
+                    long callStart = System.nanoTime();
+                    try {
+                        operation.run(iteration);
+                    } catch (Exception e) {
+                        if (errors.incrementAndGet() == 1) {
+                            log.warn("Load test operation (" + name + ") failed: " + e, e);
+                        }
+                    }
+                    latencies[iteration] = System.nanoTime() - callStart;
+                }
+            }) );
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Load test run (" + name + ") was interrupted: " + e, e);
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Result result = new Result(name, threads, errors.get(), elapsed, latencies);
+        results.add(result);
+        log.info(result.toString());
+        if (reportFile != null) {
+            writeReport(result);
+        }
+        return result;
+    }
+
+    /**
+     * @return all the results from the runs so far in the order they ran
+     */
+    public List<Result> getResults() {
+        return results;
+    }
+
+    private void writeReport(Result result) {
+        boolean header = ! new File(reportFile).exists();
+        try (PrintWriter out = new PrintWriter(new FileWriter(reportFile, true))) {
+            if (header) {
+                out.println(REPORT_HEADER);
+            }
+            out.println(label + "\t" + result.toReportLine());
+        } catch (IOException e) {
+            log.warn("Could not write the load test report to " + reportFile + ": " + e);
+        }
+    }
+
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.dao.EvaluationDao;
+import org.sakaiproject.evaluation.model.EvalAnswer;
+import org.sakaiproject.evaluation.model.EvalAssignGroup;
+import org.sakaiproject.evaluation.model.EvalAssignUser;
+import org.sakaiproject.evaluation.model.EvalEvaluation;
+import org.sakaiproject.evaluation.model.EvalItem;
+import org.sakaiproject.evaluation.model.EvalResponse;
+import org.sakaiproject.evaluation.model.EvalScale;
+import org.sakaiproject.evaluation.model.EvalTemplate;
+import org.sakaiproject.evaluation.model.EvalTemplateItem;
+import org.sakaiproject.genericdao.api.search.Search;
+
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Generates a large synthetic data set for load testing, unlike {@link EvalTestDataLoad}
+ * the data is shaped by the sizes given and is not meant to be asserted against item by item<br/>
+ * This makes:<br/>
+ * 1 template with the given number of scaled items (course category, all using the given scale)<br/>
+ * the given number of active evaluations which use that template<br/>
+ * the given number of groups, every evaluation is assigned to every group (instructor approved)<br/>
+ * 1 instructor (evaluatee) and the given number of students (evaluators) in every group,
+ * the students are different in every group<br/>
+ * <br/>
+ * The group and user ids all start with {@link #ID_PREFIX} so they will not collide with the test data
+ */
+@Slf4j
+public class EvalSyntheticDataLoad {
+
+    public final static String ID_PREFIX = "synthetic-";
+    public final static String OWNER_ID = ID_PREFIX + "admin";
+
+    public final int evaluationCount;
+    public final int groupCount;
+    public final int studentCount;
+    public final int itemCount;
+
+    public EvalTemplate template;
+    public final List<EvalTemplateItem> templateItems = new ArrayList<>();
+    public final List<EvalEvaluation> evaluations = new ArrayList<>();
+    public final List<String> evalGroupIds = new ArrayList<>();
+
+    /**
+     * @param evaluationCount number of evaluations (N)
+     * @param groupCount number of groups (M), every evaluation is assigned to all of them
+     * @param studentCount number of students (K) in each group
+     * @param itemCount number of items (Q) in the template
+     */
+    public EvalSyntheticDataLoad(int evaluationCount, int groupCount, int studentCount, int itemCount) {
+        if (evaluationCount <= 0 || groupCount <= 0 || studentCount <= 0 || itemCount <= 0) {
+            throw new IllegalArgumentException("All the synthetic data sizes must be greater than 0");
+        }
+        this.evaluationCount = evaluationCount;
+        this.groupCount = groupCount;
+        this.studentCount = studentCount;
+        this.itemCount = itemCount;
+        for (int g = 0; g < groupCount; g++) {
+            evalGroupIds.add("/site/" + ID_PREFIX + g);
+        }
+    }
+
+    /**
+     * Save all the synthetic data, each kind of entity is saved as one set
+     *
+     * @param dao the evaluation dao
+     * @param scale a saved scale to use for all the items
+     */
+    public void load(EvaluationDao dao, EvalScale scale) {
+        long start = System.currentTimeMillis();
+        Date yesterday = new Date(start - 24l * 60 * 60 * 1000);
+        Date nextWeek = new Date(start + 7l * 24 * 60 * 60 * 1000);
+        Date viewDate = new Date(start + 8l * 24 * 60 * 60 * 1000);
+
+        template = new EvalTemplate(OWNER_ID, EvalConstants.TEMPLATE_TYPE_STANDARD,
+                "Synthetic template", "description",
+                EvalConstants.SHARING_PRIVATE, Boolean.FALSE, null,
+                null, Boolean.TRUE, false);
+        dao.save(template);
+
+        Set<EvalItem> items = new HashSet<>();
+        for (int q = 0; q < itemCount; q++) {
+            EvalItem item = new EvalItem(OWNER_ID, "Synthetic item " + q, EvalConstants.SHARING_PRIVATE,
+                    EvalConstants.ITEM_TYPE_SCALED, Boolean.FALSE);
+            item.setScale(scale);
+            item.setScaleDisplaySetting(EvalConstants.ITEM_SCALE_DISPLAY_COMPACT);
+            item.setCategory(EvalConstants.ITEM_CATEGORY_COURSE);
+            item.setLocked(Boolean.TRUE);
+            items.add(item);
+
+            EvalTemplateItem templateItem = new EvalTemplateItem(OWNER_ID, template,
+                    item, q + 1, EvalConstants.ITEM_CATEGORY_COURSE, EvalConstants.HIERARCHY_LEVEL_TOP,
+                    EvalConstants.HIERARCHY_NODE_ID_NONE, null,
+                    EvalConstants.ITEM_SCALE_DISPLAY_COMPACT, Boolean.FALSE, false, false, null, null, null);
+            templateItems.add(templateItem);
+        }
+        dao.saveSet(items);
+        dao.saveSet(new HashSet<>(templateItems));
+
+        Set<EvalEvaluation> evals = new HashSet<>();
+        for (int n = 0; n < evaluationCount; n++) {
+            EvalEvaluation evaluation = new EvalEvaluation(EvalConstants.EVALUATION_TYPE_EVALUATION, OWNER_ID,
+                    "Synthetic eval " + n, null,
+                    yesterday, nextWeek, nextWeek, viewDate, false, null, false, null,
+                    EvalConstants.EVALUATION_STATE_ACTIVE, EvalConstants.SHARING_VISIBLE, EvalConstants.INSTRUCTOR_REQUIRED,
+                    0, EvalTestDataLoad.EVAL_FROM_EMAIL, null, null, null,
+                    template, null, Boolean.TRUE, Boolean.FALSE, Boolean.FALSE,
+                    Boolean.TRUE, EvalConstants.EVALUATION_AUTHCONTROL_AUTH_REQ, null, null);
+            evaluations.add(evaluation);
+            evals.add(evaluation);
+        }
+        dao.saveSet(evals);
+
+        List<EvalAssignGroup> assignGroups = new ArrayList<>();
+        for (EvalEvaluation evaluation : evaluations) {
+            for (String evalGroupId : evalGroupIds) {
+                assignGroups.add( new EvalAssignGroup(OWNER_ID, evalGroupId, EvalConstants.GROUP_TYPE_SITE,
+                        evaluation, Boolean.TRUE, Boolean.TRUE, Boolean.FALSE) );
+            }
+        }
+        dao.saveSet(new HashSet<>(assignGroups));
+
+        // assign users are only unique by user, group and type so save them one evaluation at a time
+        int assignUserCount = 0;
+        for (EvalEvaluation evaluation : evaluations) {
+            Set<EvalAssignUser> assignUsers = new HashSet<>();
+            for (EvalAssignGroup assignGroup : assignGroups) {
+                if (assignGroup.getEvaluation() != evaluation) {
+                    continue;
+                }
+                int g = evalGroupIds.indexOf(assignGroup.getEvalGroupId());
+                assignUsers.add( new EvalAssignUser(getInstructorId(g), assignGroup.getEvalGroupId(), OWNER_ID,
+                        EvalAssignUser.TYPE_EVALUATEE, EvalAssignUser.STATUS_LINKED,
+                        evaluation, assignGroup.getId()) );
+                for (int k = 0; k < studentCount; k++) {
+                    assignUsers.add( new EvalAssignUser(getStudentId(g, k), assignGroup.getEvalGroupId(), OWNER_ID,
+                            EvalAssignUser.TYPE_EVALUATOR, EvalAssignUser.STATUS_LINKED,
+                            evaluation, assignGroup.getId()) );
+                }
+            }
+            dao.saveSet(assignUsers);
+            assignUserCount += assignUsers.size();
+        }
+
+        log.info("Loaded synthetic data: " + evaluationCount + " evaluations, " + groupCount + " groups, "
+                + studentCount + " students per group, " + itemCount + " items (" + assignGroups.size()
+                + " assign groups, " + assignUserCount + " assign users) in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Remove all the synthetic data (and any responses saved for the synthetic evaluations),
+     * this needs to be called when the data was loaded outside of a rolled back transaction
+     *
+     * @param dao the evaluation dao
+     */
+    public void unload(EvaluationDao dao) {
+        if (template == null || template.getId() == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Set<EvalEvaluation> evals = new HashSet<>();
+        for (EvalEvaluation evaluation : evaluations) {
+            if (evaluation.getId() == null) {
+                continue;
+            }
+            List<Long> responseIds = dao.getResponseIds(evaluation.getId(), null, null, null);
+            if (! responseIds.isEmpty()) {
+                dao.removeResponses( responseIds.toArray(new Long[responseIds.size()]) );
+            }
+            dao.deleteSet( new HashSet<>(dao.findBySearch(EvalAssignUser.class, new Search("evaluation.id", evaluation.getId()))) );
+            dao.deleteSet( new HashSet<>(dao.findBySearch(EvalAssignGroup.class, new Search("evaluation.id", evaluation.getId()))) );
+            evals.add(evaluation);
+        }
+        dao.deleteSet(evals);
+
+        Set<EvalItem> items = new HashSet<>();
+        for (EvalTemplateItem templateItem : templateItems) {
+            items.add(templateItem.getItem());
+        }
+        dao.deleteSet(new HashSet<>(templateItems));
+        dao.deleteSet(items);
+        dao.delete(template);
+
+        log.info("Removed synthetic data in " + (System.currentTimeMillis() - start) + " ms");
+        evaluations.clear();
+        templateItems.clear();
+        template = null;
+    }
+
+    /**
+     * @param group the index of the group (0 to M-1)
+     * @return the id of the instructor in that group
+     */
+    public String getInstructorId(int group) {
+        return ID_PREFIX + "instructor-" + group;
+    }
+
+    /**
+     * @param group the index of the group (0 to M-1)
+     * @param student the index of the student in the group (0 to K-1)
+     * @return the id of the student
+     */
+    public String getStudentId(int group, int student) {
+        return ID_PREFIX + "student-" + group + "-" + student;
+    }
+
+    /**
+     * Make a complete response from a student with an answer for every item,
+     * each combination of evaluation, group and student can only have one response saved
+     *
+     * @param evaluation one of the synthetic evaluations
+     * @param group the index of the group (0 to M-1)
+     * @param student the index of the student in the group (0 to K-1)
+     * @return the response (not saved)
+     */
+    public EvalResponse makeResponse(EvalEvaluation evaluation, int group, int student) {
+        Date now = new Date();
+        EvalResponse response = new EvalResponse(getStudentId(group, student), evalGroupIds.get(group),
+                evaluation, now, now, new HashSet<>());
+        int options = templateItems.get(0).getItem().getScale().getOptionsArray().length;
+        for (int q = 0; q < templateItems.size(); q++) {
+            EvalTemplateItem templateItem = templateItems.get(q);
+            response.getAnswers().add( new EvalAnswer(response, templateItem, templateItem.getItem(),
+                    null, null, (group + student + q) % options) );
+        }
+        return response;
+    }
+
+}
@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.quartz.Job;
 import org.sakaiproject.evaluation.constant.EvalConstants;
@@ -483,7 +484,7 @@ public class MockEvalExternalLogic implements EvalExternalLogic {
         if (from == null || to == null || subject == null || message == null) {
             throw new NullPointerException("All params are required (none can be null)");
         }
-        emailsSentCounter += to.length;
+        emailsSentCounter.addAndGet(to.length);
         return to;
     }
 
@@ -492,7 +493,7 @@ public class MockEvalExternalLogic implements EvalExternalLogic {
         if (from == null || to == null || subject == null || message == null) {
             throw new NullPointerException("All params are required (none can be null)");
         }
-        emailsSentCounter += to.length;
+        emailsSentCounter.addAndGet(to.length);
         return to;
     }
 
@@ -521,7 +522,9 @@ public class MockEvalExternalLogic implements EvalExternalLogic {
     @SuppressWarnings("unchecked")
     public <T> T getConfigurationSetting(String settingName, T defaultValue) {
         T returnValue = defaultValue;
-        if (defaultValue == null) {
+        if (configurationSettings.containsKey(settingName)) {
+            returnValue = (T) configurationSettings.get(settingName);
+        } else if (defaultValue == null) {
             returnValue = (T) (settingName + ":NULL");
         }
         return returnValue;
@@ -563,7 +566,8 @@ public class MockEvalExternalLogic implements EvalExternalLogic {
 
     // testing methods
 
-    private int emailsSentCounter = 0;
+    // the emails may be sent from more than one thread
+    private final AtomicInteger emailsSentCounter = new AtomicInteger();
     /**
      * TESTING method:
      * Provides a way to determine the number of emails sent via this mock service since the service started up
@@ -571,14 +575,14 @@ public class MockEvalExternalLogic implements EvalExternalLogic {
      * @return 
      */
     public int getNumEmailsSent() {
-        return emailsSentCounter;
+        return emailsSentCounter.get();
     }
     /**
      * TESTING method:
      * Resets the emails sent test counter to 0
      */
     public void resetEmailsSentCounter() {
-        emailsSentCounter = 0;
+        emailsSentCounter.set(0);
     }
 
     private String currentUserId = EvalTestDataLoad.USER_ID;
@@ -591,6 +595,20 @@ public class MockEvalExternalLogic implements EvalExternalLogic {
         currentGroupId = evalGroupId;
     }
 
+    private Map<String, Object> configurationSettings = new HashMap<>();
+    /**
+     * TESTING method:
+     * Sets the value returned for a configuration setting instead of the default value,
+     * a null value goes back to returning the default value
+     */
+    public void setConfigurationSetting(String settingName, Object value) {
+        if (value == null) {
+            configurationSettings.remove(settingName);
+        } else {
+            configurationSettings.put(settingName, value);
+        }
+    }
+
     public <T> T getBean(Class<T> type) {
         // TODO Auto-generated method stub
         return null;
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+
+/**
+ * Testing out the {@link EvalAnswerValidator}
+ */
+public class EvalAnswerValidatorTest extends TestCase {
+
+   private static final String INSTRUCTOR = EvalConstants.ITEM_CATEGORY_INSTRUCTOR;
+   private static final String COURSE = EvalConstants.ITEM_CATEGORY_COURSE;
+
+   private EvalAnswerValidator validator;
+
+   @Override
+   protected void setUp() throws Exception {
+      // 1 and 2 are course items, 3 is repeated for 2 instructors, 4 is a header
+      validator = new EvalAnswerValidator(
+            new Long[] {1l, 2l, 3l, 3l, 4l},
+            new String[] {COURSE, COURSE, INSTRUCTOR, INSTRUCTOR, COURSE},
+            new String[] {null, null, "inst1", "inst2", null},
+            new boolean[] {true, true, true, true, false},
+            new boolean[] {true, false, true, true, false} );
+   }
+
+   private BitSet answer(Object[]... answers) {
+      BitSet answered = new BitSet(validator.size());
+      for (Object[] a : answers) {
+         int index = validator.indexOf((Long) a[0], (String) a[1], (String) a[2]);
+         if (index >= 0) {
+            answered.set(index);
+         }
+      }
+      return answered;
+   }
+
+   private List<String> missing(BitSet answered, boolean allRequireable, Map<String, Set<String>> selections) {
+      return Arrays.asList( validator.getMissingRequiredKeys(answered, allRequireable, selections) );
+   }
+
+   private static String key(Long templateItemId, String associateType, String associateId) {
+      return TemplateItemUtils.makeTemplateItemAnswerKey(templateItemId, associateType, associateId);
+   }
+
+   /**
+    * Test method for {@link EvalAnswerValidator#indexOf(Long, String, String)}
+    */
+   public void testIndexOf() {
+      assertEquals(5, validator.size());
+      assertEquals(0, validator.indexOf(1l, null, null));
+      assertEquals(0, validator.indexOf(1l, COURSE, "ignored"));
+      assertEquals(2, validator.indexOf(3l, INSTRUCTOR, "inst1"));
+      assertEquals(3, validator.indexOf(3l, INSTRUCTOR, "inst2"));
+      assertEquals(key(3l, INSTRUCTOR, "inst2"), validator.getKey(3));
+      assertEquals(key(1l, null, null), validator.getKey(0));
+
+      assertEquals(-1, validator.indexOf(3l, INSTRUCTOR, "inst3"));
+      assertEquals(-1, validator.indexOf(3l, null, null));
+      assertEquals(-1, validator.indexOf(99l, null, null));
+   }
+
+   /**
+    * Test method for {@link EvalAnswerValidator#getMissingRequiredKeys(BitSet, boolean, Map)}
+    */
+   public void testGetMissingRequiredKeys() {
+      // compulsory only
+      List<String> m = missing(answer(), false, null);
+      assertEquals(3, m.size());
+      assertTrue(m.contains(key(1l, null, null)));
+      assertTrue(m.contains(key(3l, INSTRUCTOR, "inst1")));
+      assertTrue(m.contains(key(3l, INSTRUCTOR, "inst2")));
+
+      m = missing(answer(new Object[] {1l, null, null}, new Object[] {3l, INSTRUCTOR, "inst1"}), false, null);
+      assertEquals(1, m.size());
+      assertEquals(key(3l, INSTRUCTOR, "inst2"), m.get(0));
+
+      BitSet all = answer(new Object[] {1l, null, null}, new Object[] {3l, INSTRUCTOR, "inst1"}, new Object[] {3l, INSTRUCTOR, "inst2"});
+      assertEquals(0, missing(all, false, null).size());
+
+      // all requireable (no blank answers)
+      m = missing(all, true, null);
+      assertEquals(1, m.size());
+      assertEquals(key(2l, null, null), m.get(0));
+      assertEquals(4, missing(answer(), true, new HashMap<>()).size());
+
+      // answers for things not in the form do not count
+      assertEquals(3, missing(answer(new Object[] {99l, null, null}, new Object[] {3l, INSTRUCTOR, "inst3"}), false, null).size());
+   }
+
+   public void testSelections() {
+      Map<String, Set<String>> selections = new HashMap<>();
+      selections.put(INSTRUCTOR, new HashSet<>(Arrays.asList("inst2")));
+
+      List<String> m = missing(answer(), false, selections);
+      assertEquals(2, m.size());
+      assertTrue(m.contains(key(1l, null, null)));
+      assertTrue(m.contains(key(3l, INSTRUCTOR, "inst2")));
+      assertEquals(3, missing(answer(), true, selections).size());
+
+      // the cached profile must not follow changes to the passed in map
+      selections.get(INSTRUCTOR).add("inst1");
+      assertEquals(3, missing(answer(), false, selections).size());
+      Map<String, Set<String>> same = new HashMap<>();
+      same.put(INSTRUCTOR, new HashSet<>(Arrays.asList("inst2")));
+      assertEquals(2, missing(answer(), false, same).size());
+
+      // other selection types do not affect instructor items
+      Map<String, Set<String>> other = new HashMap<>();
+      other.put(EvalConstants.ITEM_CATEGORY_ASSISTANT, new HashSet<>(Arrays.asList("ta1")));
+      assertEquals(3, missing(answer(), false, other).size());
+
+      // without the selections everything is required again
+      assertEquals(3, missing(answer(), false, null).size());
+   }
+
+   public void testInvalid() {
+      try {
+         new EvalAnswerValidator(new Long[] {1l}, new String[0], new String[0], new boolean[0], new boolean[0]);
+         fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e.getMessage());
+      }
+      try {
+         new EvalAnswerValidator(new Long[] {null}, new String[1], new String[1], new boolean[1], new boolean[1]);
+         fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e.getMessage());
+      }
+   }
+
+}
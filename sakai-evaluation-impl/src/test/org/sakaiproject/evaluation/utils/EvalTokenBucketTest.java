@@ -0,0 +1,117 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import junit.framework.TestCase;
+
+/**
+ * Testing out the {@link EvalTokenBucket}
+ */
+public class EvalTokenBucketTest extends TestCase {
+
+   private static final long SECOND = 1000000000l;
+
+   /**
+    * Uses a fake clock and moves it forward instead of sleeping
+    */
+   private static class TestBucket extends EvalTokenBucket {
+      long now = 0;
+      long slept = 0;
+      TestBucket(double permitsPerSecond, int burst) {
+         super(permitsPerSecond, burst);
+      }
+      @Override
+      protected long nanoTime() {
+         return now;
+      }
+      @Override
+      protected void sleepNanos(long nanos) {
+         slept += nanos;
+         now += nanos;
+      }
+   }
+
+   public void testAcquire() throws Exception {
+      TestBucket bucket = new TestBucket(10, 5);
+
+      // the burst is available straight away
+      for (int i = 0; i < 5; i++) {
+         assertEquals(0, bucket.acquire());
+      }
+      assertEquals(0, bucket.slept);
+
+      // then one token every 100ms
+      assertEquals(SECOND / 10, bucket.acquire());
+      assertEquals(SECOND / 10, bucket.acquire());
+      assertEquals(2 * SECOND / 10, bucket.slept);
+
+      // sending 100 more takes 10 seconds
+      bucket.slept = 0;
+      for (int i = 0; i < 100; i++) {
+         bucket.acquire();
+      }
+      assertEquals(10 * SECOND, bucket.slept);
+   }
+
+   public void testReserve() {
+      TestBucket bucket = new TestBucket(2, 1);
+      // waiting callers queue up behind each other
+      assertEquals(0, bucket.reserve());
+      assertEquals(SECOND / 2, bucket.reserve());
+      assertEquals(SECOND, bucket.reserve());
+      assertEquals(3 * SECOND / 2, bucket.reserve());
+
+      // time passing pays off the debt
+      bucket.now += 2 * SECOND;
+      assertEquals(0, bucket.reserve());
+   }
+
+   public void testIdleRefill() throws Exception {
+      TestBucket bucket = new TestBucket(1, 3);
+      for (int i = 0; i < 3; i++) {
+         bucket.acquire();
+      }
+      assertFalse(bucket.tryAcquire());
+
+      // a long idle period only builds up the burst
+      bucket.now += 60 * SECOND;
+      assertTrue(bucket.tryAcquire());
+      assertTrue(bucket.tryAcquire());
+      assertTrue(bucket.tryAcquire());
+      assertFalse(bucket.tryAcquire());
+
+      bucket.now += SECOND / 2;
+      assertFalse(bucket.tryAcquire());
+      bucket.now += SECOND / 2;
+      assertTrue(bucket.tryAcquire());
+   }
+
+   public void testFractionalRate() throws Exception {
+      // e.g. 10 emails every 60 seconds
+      TestBucket bucket = new TestBucket(10d / 60d, 1);
+      bucket.acquire();
+      assertEquals(6 * SECOND, bucket.acquire());
+   }
+
+   public void testInvalid() {
+      try {
+         new EvalTokenBucket(0, 1);
+         fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e);
+      }
+   }
+
+}
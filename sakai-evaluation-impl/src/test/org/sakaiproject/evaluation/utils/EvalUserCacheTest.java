@@ -0,0 +1,257 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.logic.model.EvalUser;
+
+/**
+ * Testing out the {@link EvalUserCache}
+ */
+public class EvalUserCacheTest extends TestCase {
+
+   /**
+    * Makes external users for all ids except the ones starting with "invalid",
+    * records every batch it is asked for and can be made to block until released
+    */
+   private static class TestLoader implements EvalUserCache.Loader {
+      final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+      volatile CountDownLatch started = null;
+      volatile CountDownLatch release = null;
+      volatile RuntimeException failure = null;
+      volatile Error error = null;
+
+      public Map<String, EvalUser> loadUsers(List<String> userIds) {
+         batches.add(new ArrayList<>(userIds));
+         if (started != null) {
+            started.countDown();
+         }
+         if (release != null) {
+            try {
+               release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+         }
+         if (failure != null) {
+            throw failure;
+         }
+         if (error != null) {
+            throw error;
+         }
+         Map<String, EvalUser> users = new HashMap<>();
+         for (String userId : userIds) {
+            if (userId.startsWith("invalid")) {
+               users.put(userId, new EvalUser(userId, EvalConstants.USER_TYPE_INVALID, null));
+            } else {
+               users.put(userId, new EvalUser(userId, EvalConstants.USER_TYPE_EXTERNAL, userId + "@institution.edu",
+                     "eid-" + userId, "Name " + userId));
+            }
+         }
+         return users;
+      }
+   }
+
+   public void testGetUser() {
+      TestLoader loader = new TestLoader();
+      EvalUserCache cache = new EvalUserCache(loader, 60000, 100, 100, 0);
+
+      EvalUser user = cache.getUser("aaa");
+      assertNotNull(user);
+      assertEquals("aaa", user.userId);
+      assertEquals("Name aaa", user.displayName);
+      assertEquals(1, cache.getLoadCount());
+
+      // cached now and callers get their own copy
+      user.displayName = "changed";
+      EvalUser again = cache.getUser("aaa");
+      assertEquals("Name aaa", again.displayName);
+      assertEquals(1, cache.getLoadCount());
+      assertEquals(1, cache.size());
+
+      // invalid users are not cached
+      user = cache.getUser("invalid1");
+      assertEquals(EvalConstants.USER_TYPE_INVALID, user.type);
+      cache.getUser("invalid1");
+      assertEquals(3, cache.getLoadCount());
+      assertEquals(1, cache.size());
+
+      // removed users are fetched again
+      cache.remove("aaa");
+      cache.getUser("aaa");
+      assertEquals(4, cache.getLoadCount());
+
+      assertNull(cache.getUser(null));
+   }
+
+   public void testGetUsers() {
+      TestLoader loader = new TestLoader();
+      EvalUserCache cache = new EvalUserCache(loader, 60000, 100, 2, 0);
+
+      cache.getUser("aaa");
+      Map<String, EvalUser> users = cache.getUsers(Arrays.asList("aaa", "bbb", "ccc", "bbb", null, "ddd"));
+      assertEquals(4, users.size());
+      assertEquals("bbb", users.get("bbb").userId);
+      // only the uncached users are fetched, in batches of the max size
+      assertEquals(3, loader.batches.size());
+      assertEquals(Arrays.asList("bbb", "ccc"), loader.batches.get(1));
+      assertEquals(Arrays.asList("ddd"), loader.batches.get(2));
+
+      users = cache.getUsers(Arrays.asList("ddd", "ccc"));
+      assertEquals(2, users.size());
+      assertEquals(3, cache.getLoadCount());
+
+      assertTrue(cache.getUsers(new ArrayList<String>()).isEmpty());
+      assertTrue(cache.getUsers(null).isEmpty());
+   }
+
+   public void testCacheLimits() throws Exception {
+      TestLoader loader = new TestLoader();
+      EvalUserCache cache = new EvalUserCache(loader, 60000, 2, 100, 0);
+      cache.getUser("aaa");
+      cache.getUser("bbb");
+      cache.getUser("aaa"); // bbb is now the least recently used
+      cache.getUser("ccc");
+      assertEquals(2, cache.size());
+      assertEquals(3, cache.getLoadCount());
+      cache.getUser("aaa");
+      assertEquals(3, cache.getLoadCount());
+      cache.getUser("bbb");
+      assertEquals(4, cache.getLoadCount());
+
+      // expired users are fetched again
+      cache = new EvalUserCache(loader, 1, 100, 100, 0);
+      cache.getUser("aaa");
+      Thread.sleep(10);
+      cache.getUser("aaa");
+      assertEquals(2, cache.getLoadCount());
+
+      // cache can be disabled
+      cache = new EvalUserCache(loader, 0, 100, 100, 0);
+      cache.getUser("aaa");
+      cache.getUser("aaa");
+      assertEquals(2, cache.getLoadCount());
+      assertEquals(0, cache.size());
+   }
+
+   public void testLoaderFailure() {
+      TestLoader loader = new TestLoader();
+      EvalUserCache cache = new EvalUserCache(loader, 60000, 100, 100, 0);
+      loader.failure = new IllegalStateException("directory is down");
+      try {
+         cache.getUser("aaa");
+         fail("Should have thrown exception");
+      } catch (IllegalStateException e) {
+         assertEquals("directory is down", e.getMessage());
+      }
+
+      // nothing is left behind so the next lookup fetches again
+      loader.failure = null;
+      assertEquals("aaa", cache.getUser("aaa").userId);
+      assertEquals(2, cache.getLoadCount());
+   }
+
+   public void testLoaderError() throws Exception {
+      final TestLoader loader = new TestLoader();
+      final EvalUserCache cache = new EvalUserCache(loader, 60000, 100, 100, 0);
+      loader.started = new CountDownLatch(1);
+      loader.release = new CountDownLatch(1);
+      loader.error = new Error("directory client broke");
+
+      ExecutorService executor = Executors.newFixedThreadPool(3);
+      try {
+         // the first lookup blocks in the loader and the others wait for it
+         List<Future<EvalUser>> futures = new ArrayList<>();
+         futures.add( executor.submit(() -> cache.getUser("aaa")) );
+         assertTrue(loader.started.await(10, TimeUnit.SECONDS));
+         futures.add( executor.submit(() -> cache.getUser("aaa")) );
+         futures.add( executor.submit(() -> cache.getUser("aaa")) );
+         Thread.sleep(200);
+         loader.release.countDown();
+
+         // everyone is released with the error instead of waiting forever
+         for (Future<EvalUser> future : futures) {
+            try {
+               future.get(10, TimeUnit.SECONDS);
+               fail("Should have thrown exception");
+            } catch (ExecutionException e) {
+               assertSame(loader.error, e.getCause());
+            }
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+
+      // nothing is left behind so the next lookup fetches again
+      loader.started = null;
+      loader.release = null;
+      loader.error = null;
+      assertEquals("aaa", cache.getUser("aaa").userId);
+      assertEquals(2, cache.getLoadCount());
+   }
+
+   public void testCoalescing() throws Exception {
+      final TestLoader loader = new TestLoader();
+      final EvalUserCache cache = new EvalUserCache(loader, 60000, 100, 100, 0);
+      loader.started = new CountDownLatch(1);
+      loader.release = new CountDownLatch(1);
+
+      ExecutorService executor = Executors.newFixedThreadPool(6);
+      try {
+         // the first lookup blocks in the loader
+         List<Future<EvalUser>> futures = new ArrayList<>();
+         futures.add( executor.submit(() -> cache.getUser("aaa")) );
+         assertTrue(loader.started.await(10, TimeUnit.SECONDS));
+
+         // these all arrive while the first fetch is running
+         futures.add( executor.submit(() -> cache.getUser("aaa")) );
+         futures.add( executor.submit(() -> cache.getUser("aaa")) );
+         futures.add( executor.submit(() -> cache.getUser("bbb")) );
+         futures.add( executor.submit(() -> cache.getUser("ccc")) );
+         futures.add( executor.submit(() -> cache.getUser("bbb")) );
+         Thread.sleep(200);
+         loader.release.countDown();
+
+         String[] expected = {"aaa", "aaa", "aaa", "bbb", "ccc", "bbb"};
+         for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], futures.get(i).get(10, TimeUnit.SECONDS).userId);
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+
+      // the same user was fetched once and the single lookups made during the first fetch went together
+      assertEquals(2, loader.batches.size());
+      assertEquals(Arrays.asList("aaa"), loader.batches.get(0));
+      assertEquals(2, loader.batches.get(1).size());
+      assertTrue(loader.batches.get(1).containsAll(Arrays.asList("bbb", "ccc")));
+   }
+
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.logic.model.HierarchyNodeRule;
+
+/**
+ * Testing out the {@link HierarchyRuleIndex}
+ */
+public class HierarchyRuleIndexTest extends TestCase {
+
+   private HierarchyNodeRule makeRule(long nodeId, String rule, String option) {
+      return new HierarchyNodeRule(nodeId, rule, option);
+   }
+
+   /**
+    * Test method for {@link HierarchyRuleIndex#findRule(String, java.util.Collection, boolean)}.
+    */
+   public void testFindRule() {
+      List<HierarchyNodeRule> rules = new ArrayList<>();
+      rules.add( makeRule(1l, "MATH%", EvalConstants.HIERARCHY_RULE_SITE) );
+      rules.add( makeRule(2l, "%FALL 2016", EvalConstants.HIERARCHY_RULE_SITE) );
+      rules.add( makeRule(3l, "%LAB%", EvalConstants.HIERARCHY_RULE_SITE) );
+      rules.add( makeRule(4l, "CHEM 101", EvalConstants.HIERARCHY_RULE_SITE) );
+      rules.add( makeRule(5l, "%SEC 01%", EvalConstants.HIERARCHY_RULE_SECTION) );
+      HierarchyRuleIndex index = new HierarchyRuleIndex(rules);
+      assertEquals(5, index.size());
+
+      List<String> noSections = Collections.emptyList();
+
+      // each qualifier
+      assertEquals(Long.valueOf(1), index.findRule("MATH 200", noSections, false).getNodeID());
+      assertEquals(Long.valueOf(2), index.findRule("HIST 100 FALL 2016", noSections, false).getNodeID());
+      assertEquals(Long.valueOf(3), index.findRule("PHYS LAB A", noSections, false).getNodeID());
+      assertEquals(Long.valueOf(4), index.findRule("CHEM 101", noSections, false).getNodeID());
+
+      // no match
+      assertNull(index.findRule("CHEM 1010", noSections, false));
+      assertNull(index.findRule("HIST MATH", noSections, false));
+      assertNull(index.findRule("", noSections, false));
+
+      // the last matching rule wins
+      assertEquals(Long.valueOf(3), index.findRule("MATH LAB FALL 2016", noSections, false).getNodeID());
+      assertEquals(Long.valueOf(2), index.findRule("MATH 200 FALL 2016", noSections, false).getNodeID());
+
+      // section rules only apply to section titles when the group is section based
+      List<String> sections = Arrays.asList("HIST SEC 02", "HIST SEC 01");
+      assertEquals(Long.valueOf(5), index.findRule("HIST 100", sections, true).getNodeID());
+      assertEquals(Long.valueOf(5), index.findRule("HIST SEC 01", noSections, false).getNodeID());
+      assertNull(index.findRule("HIST SEC 01", noSections, true));
+      assertNull(index.findRule("HIST 100", sections, false));
+
+      // overlapping contains patterns (automaton failure links)
+      rules = new ArrayList<>();
+      rules.add( makeRule(1l, "%C%", EvalConstants.HIERARCHY_RULE_SITE) );
+      rules.add( makeRule(2l, "%ABCD%", EvalConstants.HIERARCHY_RULE_SITE) );
+      rules.add( makeRule(3l, "%BCX%", EvalConstants.HIERARCHY_RULE_SITE) );
+      index = new HierarchyRuleIndex(rules);
+      assertEquals(Long.valueOf(3), index.findRule("ABCX", noSections, false).getNodeID());
+      assertEquals(Long.valueOf(2), index.findRule("XABCD", noSections, false).getNodeID());
+      assertEquals(Long.valueOf(1), index.findRule("ABC", noSections, false).getNodeID());
+      assertNull(index.findRule("ABD", noSections, false));
+
+      // empty index
+      index = new HierarchyRuleIndex(new ArrayList<HierarchyNodeRule>());
+      assertNull(index.findRule("MATH 200", noSections, false));
+      assertEquals(0, index.getRulesForNode(1l).size());
+
+      try {
+         new HierarchyRuleIndex(null);
+         fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e);
+      }
+   }
+
+   /**
+    * Test method for {@link HierarchyRuleIndex#getRulesForNode(Long)}.
+    */
+   public void testGetRulesForNode() {
+      List<HierarchyNodeRule> rules = new ArrayList<>();
+      rules.add( makeRule(1l, "MATH%", EvalConstants.HIERARCHY_RULE_SITE) );
+      rules.add( makeRule(2l, "%FALL 2016", EvalConstants.HIERARCHY_RULE_SITE) );
+      rules.add( makeRule(1l, "%SEC 01%", EvalConstants.HIERARCHY_RULE_SECTION) );
+      HierarchyRuleIndex index = new HierarchyRuleIndex(rules);
+
+      List<HierarchyNodeRule> l = index.getRulesForNode(1l);
+      assertEquals(2, l.size());
+      assertEquals("MATH%", l.get(0).getRule());
+      assertEquals("%SEC 01%", l.get(1).getRule());
+
+      assertEquals(1, index.getRulesForNode(2l).size());
+      assertEquals(0, index.getRulesForNode(3l).size());
+      assertEquals(0, index.getRulesForNode(null).size());
+   }
+
+}
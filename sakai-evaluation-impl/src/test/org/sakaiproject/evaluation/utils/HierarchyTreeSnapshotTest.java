@@ -0,0 +1,157 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.sakaiproject.evaluation.logic.model.EvalHierarchyNode;
+
+/**
+ * Testing out the {@link HierarchyTreeSnapshot}
+ */
+public class HierarchyTreeSnapshotTest extends TestCase {
+
+   private Map<String, EvalHierarchyNode> nodes;
+
+   /**
+    * Makes a node and links it to its (already created) direct parents,
+    * all parent and child ids are filled in like the hierarchy service does
+    */
+   private EvalHierarchyNode makeNode(String id, String... parentIds) {
+      EvalHierarchyNode node = new EvalHierarchyNode(id, "title " + id, null);
+      node.directParentNodeIds = new HashSet<>(Arrays.asList(parentIds));
+      node.parentNodeIds = new HashSet<>();
+      node.directChildNodeIds = new HashSet<>();
+      node.childNodeIds = new HashSet<>();
+      for (String parentId : parentIds) {
+         EvalHierarchyNode parent = nodes.get(parentId);
+         parent.directChildNodeIds.add(id);
+         node.parentNodeIds.add(parentId);
+         node.parentNodeIds.addAll(parent.parentNodeIds);
+      }
+      for (String ancestorId : node.parentNodeIds) {
+         nodes.get(ancestorId).childNodeIds.add(id);
+      }
+      nodes.put(id, node);
+      return node;
+   }
+
+   private List<String> ids(List<EvalHierarchyNode> l) {
+      List<String> ids = new ArrayList<>();
+      for (EvalHierarchyNode node : l) {
+         ids.add(node.id);
+      }
+      return ids;
+   }
+
+   private Set<String> ids(Set<EvalHierarchyNode> s) {
+      Set<String> ids = new HashSet<>();
+      for (EvalHierarchyNode node : s) {
+         ids.add(node.id);
+      }
+      return ids;
+   }
+
+   @Override
+   protected void setUp() throws Exception {
+      nodes = new HashMap<>();
+      makeNode("root");
+      makeNode("college1", "root");
+      makeNode("college2", "root");
+      makeNode("dept1", "college1");
+      makeNode("dept2", "college1");
+      makeNode("program1", "dept1");
+      makeNode("dept3", "college2");
+   }
+
+   public void testTree() {
+      HierarchyTreeSnapshot tree = new HierarchyTreeSnapshot("root", nodes.values());
+      assertEquals(7, tree.size());
+      assertEquals("root", tree.getRootId());
+      assertTrue(tree.contains("dept2"));
+      assertFalse(tree.contains("invalid"));
+      assertEquals("title dept1", tree.getNode("dept1").title);
+      assertNull(tree.getNode("invalid"));
+
+      assertEquals(0, tree.getDepth("root"));
+      assertEquals(1, tree.getDepth("college2"));
+      assertEquals(3, tree.getDepth("program1"));
+      assertEquals(-1, tree.getDepth("invalid"));
+
+      assertTrue(tree.isDescendant("root", "program1"));
+      assertTrue(tree.isDescendant("college1", "program1"));
+      assertTrue(tree.isDescendant("dept1", "program1"));
+      assertFalse(tree.isDescendant("college2", "program1"));
+      assertFalse(tree.isDescendant("program1", "dept1"));
+      assertFalse(tree.isDescendant("dept1", "dept1"));
+      assertFalse(tree.isDescendant("invalid", "dept1"));
+
+      assertEquals(Arrays.asList("root", "college1", "dept1", "program1"), ids(tree.getAncestors("program1", true)));
+      assertEquals(Arrays.asList("root", "college1", "dept1"), ids(tree.getAncestors("program1", false)));
+      assertEquals(Arrays.asList("root"), ids(tree.getAncestors("root", true)));
+      assertEquals(0, tree.getAncestors("root", false).size());
+      assertEquals(0, tree.getAncestors("invalid", true).size());
+
+      assertEquals(new HashSet<>(Arrays.asList("dept1", "dept2")), ids(tree.getChildNodes("college1", true)));
+      assertEquals(new HashSet<>(Arrays.asList("dept1", "dept2", "program1")), ids(tree.getChildNodes("college1", false)));
+      assertEquals(6, tree.getChildNodes("root", false).size());
+      assertEquals(0, tree.getChildNodes("program1", false).size());
+      assertEquals(0, tree.getChildNodes("invalid", false).size());
+   }
+
+   public void testMultipleParents() {
+      makeNode("shared", "dept2", "dept3");
+      HierarchyTreeSnapshot tree = new HierarchyTreeSnapshot("root", nodes.values());
+      assertEquals(8, tree.size());
+
+      assertTrue(tree.isDescendant("college1", "shared"));
+      assertTrue(tree.isDescendant("college2", "shared"));
+      assertTrue(tree.isDescendant("dept3", "shared"));
+      assertFalse(tree.isDescendant("dept1", "shared"));
+
+      List<String> ancestors = ids(tree.getAncestors("shared", true));
+      assertEquals(6, ancestors.size());
+      assertEquals("root", ancestors.get(0));
+      assertEquals("shared", ancestors.get(5));
+
+      assertTrue(ids(tree.getChildNodes("college2", false)).contains("shared"));
+      assertTrue(ids(tree.getChildNodes("college1", false)).contains("shared"));
+   }
+
+   public void testInvalid() {
+      try {
+         new HierarchyTreeSnapshot("missing", nodes.values());
+         fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e);
+      }
+
+      try {
+         new HierarchyTreeSnapshot(null, nodes.values());
+         fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e);
+      }
+   }
+
+}
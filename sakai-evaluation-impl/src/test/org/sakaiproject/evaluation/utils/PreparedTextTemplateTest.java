@@ -0,0 +1,166 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sakaiproject.evaluation.constant.EvalEmailConstants;
+
+import junit.framework.TestCase;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Testing the two stage template processing, the output must always match
+ * {@link TextTemplateLogicUtils#processTextTemplate(String, Map)}
+ */
+@Slf4j
+public class PreparedTextTemplateTest extends TestCase {
+
+   private static final List<String> SLOTS = Arrays.asList("EvalGroupTitle", "URLtoTakeEval");
+
+   private Map<String, String> makeShared() {
+      Map<String, String> shared = new HashMap<>();
+      shared.put("EvalTitle", "Fall feedback");
+      shared.put("EvalDueDate", "Dec 1, 2026");
+      shared.put("HelpdeskEmail", "helpdesk@institution.edu");
+      shared.put("URLtoSystem", "http://localhost:8080/portal");
+      shared.put("ShowOptInText", "true");
+      return shared;
+   }
+
+   private Map<String, String> makeGroup(int i) {
+      Map<String, String> group = new HashMap<>();
+      group.put("EvalGroupTitle", "Group " + i);
+      group.put("URLtoTakeEval", "http://localhost:8080/direct/eval-assigngroup/" + i);
+      return group;
+   }
+
+   private String direct(String template, Map<String, String> shared, Map<String, String> group) {
+      Map<String, String> values = new HashMap<>(shared);
+      values.putAll(group);
+      return TextTemplateLogicUtils.processTextTemplate(template, values);
+   }
+
+   public void testFill() {
+      Map<String, String> shared = makeShared();
+      String template = EvalEmailConstants.EMAIL_AVAILABLE_DEFAULT_TEXT;
+      PreparedTextTemplate prepared = new PreparedTextTemplate(template, shared, SLOTS);
+      assertTrue(prepared.isPrepared());
+      for (int i = 0; i < 5; i++) {
+         assertEquals(direct(template, shared, makeGroup(i)), prepared.fill(makeGroup(i)));
+      }
+
+      // an empty slot value
+      Map<String, String> group = makeGroup(1);
+      group.put("EvalGroupTitle", "");
+      assertEquals(direct(template, shared, group), prepared.fill(group));
+
+      // values which look like template markup are not processed again
+      group.put("EvalGroupTitle", "${EvalTitle} <#if x>");
+      assertEquals(direct(template, shared, group), prepared.fill(group));
+
+      // shared values in ifs are fine
+      template = "<#if ShowOptInText == \"true\">Opt in to ${EvalTitle} for ${EvalGroupTitle}</#if>";
+      prepared = new PreparedTextTemplate(template, shared, SLOTS);
+      assertTrue(prepared.isPrepared());
+      assertEquals("Opt in to Fall feedback for Group 3", prepared.fill(makeGroup(3)));
+
+      // no slots at all
+      template = "Just ${EvalTitle}";
+      prepared = new PreparedTextTemplate(template, shared, SLOTS);
+      assertTrue(prepared.isPrepared());
+      assertEquals("Just Fall feedback", prepared.fill(makeGroup(3)));
+   }
+
+   public void testFillUnprepared() {
+      Map<String, String> shared = makeShared();
+
+      // a slot used in an if
+      String template = "<#if EvalGroupTitle == \"\">No group<#else>${EvalGroupTitle}</#if> ${EvalTitle}";
+      PreparedTextTemplate prepared = new PreparedTextTemplate(template, shared, SLOTS);
+      assertFalse(prepared.isPrepared());
+      Map<String, String> group = makeGroup(2);
+      assertEquals("Group 2 Fall feedback", prepared.fill(group));
+      group.put("EvalGroupTitle", "");
+      assertEquals("No group Fall feedback", prepared.fill(group));
+
+      // a slot with a builtin
+      template = "${EvalGroupTitle?upper_case}";
+      prepared = new PreparedTextTemplate(template, shared, SLOTS);
+      assertFalse(prepared.isPrepared());
+      assertEquals("GROUP 2", prepared.fill(makeGroup(2)));
+
+      // missing slot values fail like a missing replacement value
+      template = "${EvalGroupTitle} ${EvalTitle}";
+      prepared = new PreparedTextTemplate(template, shared, SLOTS);
+      assertTrue(prepared.isPrepared());
+      try {
+         prepared.fill(new HashMap<String, String>());
+         fail("Should have thrown exception");
+      } catch (RuntimeException e) {
+         assertNotNull(e.getMessage());
+      }
+
+      try {
+         new PreparedTextTemplate("", shared, SLOTS);
+         fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e.getMessage());
+      }
+   }
+
+   /**
+    * Compares processing the available email for 5000 groups directly and with the prepared template,
+    * only run when the system property eval.loadtest=true is set, e.g.<br/>
+    * mvn test -Dtest=PreparedTextTemplateTest -Deval.loadtest=true
+    */
+   public void testBenchmark() {
+      if (! Boolean.getBoolean("eval.loadtest")) {
+         return;
+      }
+      int groups = Integer.getInteger("eval.loadtest.groups", 5000);
+      Map<String, String> shared = makeShared();
+      String template = EvalEmailConstants.EMAIL_AVAILABLE_DEFAULT_TEXT;
+
+      // warm up both
+      for (int i = 0; i < 200; i++) {
+         direct(template, shared, makeGroup(i));
+         new PreparedTextTemplate(template, shared, SLOTS).fill(makeGroup(i));
+      }
+
+      long start = System.nanoTime();
+      long length = 0;
+      for (int i = 0; i < groups; i++) {
+         length += direct(template, shared, makeGroup(i)).length();
+      }
+      long directNanos = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      long preparedLength = 0;
+      PreparedTextTemplate prepared = new PreparedTextTemplate(template, shared, SLOTS);
+      for (int i = 0; i < groups; i++) {
+         preparedLength += prepared.fill(makeGroup(i)).length();
+      }
+      long preparedNanos = System.nanoTime() - start;
+
+      assertEquals(length, preparedLength);
+      log.info("Rendered the available email for " + groups + " groups: direct " + (directNanos / 1000000)
+            + " ms, prepared " + (preparedNanos / 1000000) + " ms (" + (directNanos / Math.max(1, preparedNanos)) + "x)");
+   }
+
+}
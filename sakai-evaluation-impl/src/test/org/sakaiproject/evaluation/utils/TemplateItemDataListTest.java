@@ -187,4 +187,60 @@ public class TemplateItemDataListTest extends TestCase {
 
    }
 
+   /**
+    * Test method for {@link org.sakaiproject.evaluation.utils.TemplateItemDataList#TemplateItemDataList(TemplateItemDataList)}.
+    */
+   public void testCopyTemplateItemDataList() {
+      EvalTestDataLoad etdl = new EvalTestDataLoad(null);
+      etdl.templateItem2A.setId(102l);
+      etdl.templateItem3A.setId(103l);
+      etdl.templateItem5A.setId(105l);
+      List<EvalTemplateItem> testList = new ArrayList<>();
+      testList.add(etdl.templateItem2A); // course
+      testList.add(etdl.templateItem3A); // course
+      testList.add(etdl.templateItem5A); // instructor
+      Map<String, List<String>> associates = new HashMap<>();
+      List<String> associateIds = new ArrayList<>();
+      associateIds.add(EvalTestDataLoad.MAINT_USER_ID);
+      associateIds.add(EvalTestDataLoad.ADMIN_USER_ID);
+      associates.put(EvalConstants.ITEM_CATEGORY_INSTRUCTOR, associateIds);
+      TemplateItemDataList original = new TemplateItemDataList(testList, null, associates, null);
+
+      TemplateItemDataList copy = new TemplateItemDataList(original);
+      assertEquals(original.getTemplateItemsCount(), copy.getTemplateItemsCount());
+      assertEquals(original.getTemplateItemGroupsCount(), copy.getTemplateItemGroupsCount());
+      assertEquals(original.getAssociateTypes(), copy.getAssociateTypes());
+      for (int i = 0; i < original.getTemplateItemGroupsCount(); i++) {
+         assertEquals(original.getTemplateItemGroups().get(i).associateType, copy.getTemplateItemGroups().get(i).associateType);
+         assertEquals(original.getTemplateItemGroups().get(i).associateId, copy.getTemplateItemGroups().get(i).associateId);
+      }
+      List<DataTemplateItem> originalList = original.getFlatListOfDataTemplateItems(true);
+      List<DataTemplateItem> copyList = copy.getFlatListOfDataTemplateItems(true);
+      assertEquals(originalList.size(), copyList.size());
+      for (int i = 0; i < originalList.size(); i++) {
+         DataTemplateItem originalDti = originalList.get(i);
+         DataTemplateItem copyDti = copyList.get(i);
+         assertEquals(originalDti.getKey(), copyDti.getKey());
+         assertEquals(originalDti.templateItem.getId(), copyDti.templateItem.getId());
+         // the template items are not shared but the items are
+         assertNotSame(originalDti.templateItem, copyDti.templateItem);
+         assertSame(originalDti.templateItem.getItem(), copyDti.templateItem.getItem());
+      }
+
+      // changes to the copy stay in the copy
+      copy.getTemplateItem(102l).setUsesComment(true);
+      copy.getTemplateItem(102l).childTemplateItems = new ArrayList<>();
+      assertFalse(original.getTemplateItem(102l).getUsesComment());
+      assertNull(original.getTemplateItem(102l).childTemplateItems);
+      copy.getAssociates().get(EvalConstants.ITEM_CATEGORY_INSTRUCTOR).clear();
+      assertEquals(2, original.getAssociates().get(EvalConstants.ITEM_CATEGORY_INSTRUCTOR).size());
+
+      try {
+         new TemplateItemDataList((TemplateItemDataList) null);
+         fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e.getMessage());
+      }
+   }
+
 }
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.model.EvalItem;
+import org.sakaiproject.evaluation.model.EvalTemplateItem;
+
+/**
+ * Testing out the {@link TemplateItemIndex}
+ */
+public class TemplateItemIndexTest extends TestCase {
+
+   private EvalTemplateItem makeTemplateItem(long id, String classification, int displayOrder, Boolean blockParent, Long blockId) {
+      EvalItem item = new EvalItem("owner", "item " + id, EvalConstants.SHARING_PRIVATE, classification, false);
+      EvalTemplateItem templateItem = new EvalTemplateItem("owner", null, item, displayOrder,
+            EvalConstants.ITEM_CATEGORY_COURSE, EvalConstants.HIERARCHY_LEVEL_TOP, EvalConstants.HIERARCHY_NODE_ID_NONE);
+      templateItem.setId(id);
+      templateItem.setBlockParent(blockParent);
+      templateItem.setBlockId(blockId);
+      return templateItem;
+   }
+
+   private List<Long> ids(List<EvalTemplateItem> l) {
+      List<Long> ids = new ArrayList<>();
+      for (EvalTemplateItem templateItem : l) {
+         ids.add(templateItem.getId());
+      }
+      return ids;
+   }
+
+   /**
+    * Test method for {@link TemplateItemIndex#TemplateItemIndex(List)}
+    */
+   public void testIndex() {
+      List<EvalTemplateItem> items = new ArrayList<>();
+      items.add( makeTemplateItem(5l, EvalConstants.ITEM_TYPE_SCALED, 3, null, null) );
+      items.add( makeTemplateItem(4l, EvalConstants.ITEM_TYPE_SCALED, 2, false, 2l) );
+      items.add( makeTemplateItem(1l, EvalConstants.ITEM_TYPE_HEADER, 1, null, null) );
+      items.add( makeTemplateItem(2l, EvalConstants.ITEM_TYPE_BLOCK_PARENT, 2, true, null) );
+      items.add( makeTemplateItem(3l, EvalConstants.ITEM_TYPE_SCALED, 1, false, 2l) );
+      // child of a block which is not in the list
+      items.add( makeTemplateItem(6l, EvalConstants.ITEM_TYPE_SCALED, 1, false, 99l) );
+
+      TemplateItemIndex index = new TemplateItemIndex(items);
+      assertEquals(6, index.getTemplateItems().size());
+      assertSame(items.get(3), index.getTemplateItem(2l));
+      assertNull(index.getTemplateItem(100l));
+
+      assertEquals(ids(TemplateItemUtils.getNonChildItems(items)), ids(index.getNonChildItems()));
+      assertEquals(3, index.getNonChildItems().size());
+      assertEquals(Long.valueOf(1l), index.getNonChildItems().get(0).getId());
+
+      assertEquals(ids(TemplateItemUtils.getParentItems(items)), ids(index.getParentItems()));
+      assertEquals(1, index.getParentItems().size());
+
+      assertEquals(ids(TemplateItemUtils.getChildItems(items, 2l)), ids(index.getChildItems(2l)));
+      assertEquals(Long.valueOf(3l), index.getChildItems(2l).get(0).getId());
+      assertEquals(Long.valueOf(4l), index.getChildItems(2l).get(1).getId());
+      assertEquals(1, index.getChildItems(99l).size());
+      assertEquals(0, index.getChildItems(5l).size());
+
+      // the orphan is kept at the end
+      List<EvalTemplateItem> ordered = TemplateItemUtils.orderTemplateItems(index, false);
+      assertEquals(6, ordered.size());
+      assertEquals(Long.valueOf(6l), ordered.get(5).getId());
+
+      try {
+         index.getNonChildItems().clear();
+         fail("Should have thrown exception");
+      } catch (UnsupportedOperationException e) {
+         assertNotNull(e);
+      }
+   }
+
+   /**
+    * Large template (5000 items) with lots of blocks, checks the indexed ordering matches
+    * the block structure found by scanning the list for each parent
+    */
+   public void testLargeTemplate() {
+      List<EvalTemplateItem> items = new ArrayList<>();
+      long id = 1;
+      int displayOrder = 1;
+      for (int b = 0; b < 500; b++) {
+         long parentId = id++;
+         items.add( makeTemplateItem(parentId, EvalConstants.ITEM_TYPE_BLOCK_PARENT, displayOrder++, true, null) );
+         for (int c = 0; c < 8; c++) {
+            items.add( makeTemplateItem(id++, EvalConstants.ITEM_TYPE_SCALED, c + 1, false, parentId) );
+         }
+         items.add( makeTemplateItem(id++, EvalConstants.ITEM_TYPE_SCALED, displayOrder++, null, null) );
+      }
+      assertEquals(5000, items.size());
+      List<EvalTemplateItem> shuffled = new ArrayList<>(items);
+      Collections.shuffle(shuffled, new Random(1234));
+
+      TemplateItemIndex index = new TemplateItemIndex(shuffled);
+      assertEquals(1000, index.getNonChildItems().size());
+      assertEquals(500, index.getParentItems().size());
+      for (EvalTemplateItem parent : index.getParentItems()) {
+         assertEquals(ids(TemplateItemUtils.getChildItems(shuffled, parent.getId())), ids(index.getChildItems(parent.getId())));
+      }
+
+      List<EvalTemplateItem> ordered = TemplateItemUtils.orderTemplateItems(shuffled, false);
+      assertEquals(ids(items), ids(ordered));
+
+      assertEquals(4500, TemplateItemUtils.getAnswerableTemplateItems(index).size());
+   }
+
+}
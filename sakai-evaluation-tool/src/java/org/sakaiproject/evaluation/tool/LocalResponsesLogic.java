@@ -20,6 +20,7 @@ import java.util.Map;
 
 import org.sakaiproject.evaluation.logic.EvalCommonLogic;
 import org.sakaiproject.evaluation.logic.EvalDeliveryService;
+import org.sakaiproject.evaluation.logic.model.EvalSavedAnswers;
 import org.sakaiproject.evaluation.model.EvalAnswer;
 import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.utils.EvalUtils;
@@ -85,6 +86,17 @@ public class LocalResponsesLogic {
         return map;
     }
 
+    /**
+     * Get the saved answers for the given response without loading the response and its answers,
+     * use this when only the saved values (or answer ids) are needed
+     * 
+     * @param responseId the response we want to get the answers for
+     * @return the saved answers, looked up by template item and the associated type and id
+     */
+    public EvalSavedAnswers getSavedAnswers(Long responseId) {
+        return responsesLogic.getSavedAnswersForResponse(responseId);
+    }
+
     /**
      * Create a new response for this 
      * @param evaluationId
@@ -18,6 +18,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+import org.sakaiproject.evaluation.logic.model.EvalSavedAnswer;
+import org.sakaiproject.evaluation.logic.model.EvalSavedAnswers;
 import org.sakaiproject.evaluation.model.EvalAnswer;
 import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.tool.LocalResponsesLogic;
@@ -28,6 +30,9 @@ import uk.org.ponder.beanutil.BeanLocator;
 /**
  * This is the OTP bean used to locate Answers. The OTP path key is 
  * actually the ID of the enclosed ITEM, not that of the Answer itself!
+ * <br/>
+ * When it is made from the saved answers (for rendering) the answers it delivers are
+ * copies of the saved values which are not attached to a response, nothing is saved from them
  * 
  * @author Will Humphries (whumphri@vt.edu)
  * @author Aaron Zeckoski (aaron@caret.cam.ac.uk)
@@ -51,16 +56,34 @@ public class AnswersBeanLocator implements BeanLocator {
         loadMap(response.getAnswers());
     }
 
+    /**
+     * Make a locator which only delivers the saved values of the answers,
+     * this does not load the response or its answers
+     * 
+     * @param savedAnswers the saved answers of the response
+     */
+    public AnswersBeanLocator(EvalSavedAnswers savedAnswers) {
+        if (savedAnswers == null) {
+            throw new IllegalArgumentException("savedAnswers cannot be null to create an AnswersBeanLocator");
+        }
+        loadSavedAnswers(savedAnswers);
+    }
+
     public Object locateBean(String path) {
         EvalAnswer togo = delivered.get(path);
         // no answer has been created for this item-response pairing, so we'll make
         // one. we don't use the new prefix, because the producer has no way of knowing
         // if an answer has been created for the given item, even if a response exists.
         if (togo == null) {
-            if (path.startsWith(NEW_PREFIX)) {
-                togo = localResponsesLogic.newAnswer(response);
+            if (response == null) {
+                // only showing the saved answers so there is nothing to attach this one to
+                togo = new EvalAnswer();
+            } else {
+                if (path.startsWith(NEW_PREFIX)) {
+                    togo = localResponsesLogic.newAnswer(response);
+                }
+                response.getAnswers().add(togo);
             }
-            response.getAnswers().add(togo);
             delivered.put(path, togo);
         }
         return togo;
@@ -85,4 +108,26 @@ public class AnswersBeanLocator implements BeanLocator {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * loads the {@link Map} with copies of the saved answers, the answers
+     * are keyed by their id like in {@link #loadMap(Set)}
+     * 
+     * @param savedAnswers the saved answers of the response
+     */
+    private void loadSavedAnswers(EvalSavedAnswers savedAnswers) {
+        for (EvalSavedAnswer saved : savedAnswers.getAnswers()) {
+            EvalAnswer answer = new EvalAnswer();
+            answer.setId(saved.getAnswerId());
+            answer.setAssociatedType(saved.getAssociatedType());
+            answer.setAssociatedId(saved.getAssociatedId());
+            answer.setNumeric(saved.getNumeric());
+            answer.setText(saved.getText());
+            answer.setMultiAnswerCode(saved.getMultiAnswerCode());
+            answer.setComment(saved.getComment());
+            answer.NA = saved.isNA();
+            answer.multipleAnswers = saved.getMultipleAnswers();
+            delivered.put(saved.getAnswerId().toString(), answer);
+        }
+    }
+
+}
@@ -21,9 +21,13 @@ import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.tool.LocalResponsesLogic;
 
 import uk.org.ponder.beanutil.BeanLocator;
+import uk.org.ponder.rsf.request.EarlyRequestParser;
 
 /**
  * Special bean locator which is used to locate other bean locators, sneaky huh?
+ * <br/>
+ * When rendering, the answers of a saved response are located from the saved answer values
+ * so the response and its answers are only loaded when the form is submitted
  * 
  * @author Aaron Zeckoski (aaron@caret.cam.ac.uk)
  */
@@ -41,13 +45,22 @@ public class ResponseAnswersBeanLocator implements BeanLocator {
       this.responseBeanLocator = responseBeanLocator;
    }
 
+   private String requestType;
+   public void setRequestType(String requestType) {
+      this.requestType = requestType;
+   }
+
    private Map<String, BeanLocator> delivered = new HashMap<>();
 
    public Object locateBean(String path) {
       BeanLocator togo = delivered.get(path);
       if (togo == null) {
-         EvalResponse parent = (EvalResponse) responseBeanLocator.locateBean(path);
-         togo = new AnswersBeanLocator(parent, localResponsesLogic);
+         if (EarlyRequestParser.RENDER_REQUEST.equals(requestType) && ! path.startsWith(NEW_PREFIX)) {
+            togo = new AnswersBeanLocator( localResponsesLogic.getSavedAnswers(Long.valueOf(path)) );
+         } else {
+            EvalResponse parent = (EvalResponse) responseBeanLocator.locateBean(path);
+            togo = new AnswersBeanLocator(parent, localResponsesLogic);
+         }
          delivered.put(path, togo);
       }
       return togo;
@@ -15,12 +15,19 @@
 package org.sakaiproject.evaluation.tool.producers;
 
 import java.text.DateFormat;
+import java.text.NumberFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
 
+import org.sakaiproject.evaluation.jobmonitor.JobMetricsReporter;
 import org.sakaiproject.evaluation.logic.EvalCommonLogic;
 import org.sakaiproject.evaluation.logic.EvalSettings;
+import org.sakaiproject.evaluation.logic.scheduling.ConsolidatedNotificationsJob;
+import org.sakaiproject.evaluation.model.EvalJobMetric;
 import org.sakaiproject.evaluation.tool.EvalToolConstants;
 import org.sakaiproject.evaluation.tool.renderers.NavBarRenderer;
 
@@ -33,6 +40,7 @@ import uk.org.ponder.rsf.components.UIForm;
 import uk.org.ponder.rsf.components.UIInitBlock;
 import uk.org.ponder.rsf.components.UIInput;
 import uk.org.ponder.rsf.components.UIMessage;
+import uk.org.ponder.rsf.components.UIOutput;
 import uk.org.ponder.rsf.components.UISelect;
 import uk.org.ponder.rsf.components.UISelectChoice;
 import uk.org.ponder.rsf.components.UISelectLabel;
@@ -74,6 +82,16 @@ public class AdministrateEmailProducer extends EvalCommonProducer {
         this.dateevolver = dateevolver;
     }
 
+    private JobMetricsReporter jobMetricsReporter;
+    public void setJobMetricsReporter(JobMetricsReporter jobMetricsReporter) {
+        this.jobMetricsReporter = jobMetricsReporter;
+    }
+
+    private Locale locale;
+    public void setLocale(Locale locale) {
+        this.locale = locale;
+    }
+
     /* (non-Javadoc)
      * @see uk.org.ponder.rsf.view.ComponentProducer#fillComponents(uk.org.ponder.rsf.components.UIContainer, uk.org.ponder.rsf.viewstate.ViewParameters, uk.org.ponder.rsf.view.ComponentChecker)
      */
@@ -223,6 +241,57 @@ public class AdministrateEmailProducer extends EvalCommonProducer {
         // this fills in the javascript call
         UIInitBlock.make(tofill, "initEvalJS", "EvalSystem.addNumericOnly", 
                 new Object[] { evalTimeToWaitSecs.getFullID(), "time-wait-errmsg"} );
+
+        makeJobMetrics(tofill);
+    }
+
+    /**
+     * Show the progress of the last consolidated email job run
+     * 
+     * @param tofill
+     */
+    private void makeJobMetrics(UIContainer tofill) {
+        List<EvalJobMetric> jobMetrics = new ArrayList<>();
+        try {
+            jobMetrics = jobMetricsReporter.getLatestJobMetrics(ConsolidatedNotificationsJob.JOB_NAME);
+        } catch (Exception e) {
+            // the page still works if the metrics table was not created yet
+            log.warn("Could not get the progress of the email job: " + e);
+        }
+        if (jobMetrics.isEmpty()) {
+            UIMessage.make(tofill, "job-metrics-none", "controlemail.jobmetrics.none");
+            return;
+        }
+
+        DateFormat df = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM, locale);
+        NumberFormat nf = NumberFormat.getNumberInstance(locale);
+        nf.setMaximumFractionDigits(1);
+        UIBranchContainer metricsTable = UIBranchContainer.make(tofill, "job-metrics-table:");
+        for (EvalJobMetric metric : jobMetrics) {
+            UIBranchContainer row = UIBranchContainer.make(metricsTable, "job-metrics-row:", metric.getPhase());
+            UIOutput.make(row, "job-metrics-phase", metric.getPhase());
+            UIMessage.make(row, "job-metrics-status", "controlemail.jobmetrics.status." + metric.getStatus());
+            UIOutput.make(row, "job-metrics-updated", df.format(metric.getSampleTime()));
+            if (metric.getTotalCount() == null) {
+                UIOutput.make(row, "job-metrics-processed", nf.format(metric.getProcessedCount()));
+            } else {
+                UIMessage.make(row, "job-metrics-processed", "controlemail.jobmetrics.processed.count",
+                        new Object[] { nf.format(metric.getProcessedCount()), nf.format(metric.getTotalCount()) });
+            }
+            UIOutput.make(row, "job-metrics-sent", nf.format(metric.getSentCount()));
+            UIOutput.make(row, "job-metrics-errors", nf.format(metric.getErrorCount()));
+            if (metric.getRate() == null) {
+                UIMessage.make(row, "job-metrics-rate", "controlemail.jobmetrics.unknown");
+            } else {
+                UIOutput.make(row, "job-metrics-rate", nf.format(metric.getRate()));
+            }
+            if (metric.getEtaSeconds() == null) {
+                UIMessage.make(row, "job-metrics-eta", "controlemail.jobmetrics.unknown");
+            } else {
+                long eta = metric.getEtaSeconds();
+                UIOutput.make(row, "job-metrics-eta", String.format("%d:%02d:%02d", eta / 3600L, (eta / 60L) % 60L, eta % 60L));
+            }
+        }
     }
 
 
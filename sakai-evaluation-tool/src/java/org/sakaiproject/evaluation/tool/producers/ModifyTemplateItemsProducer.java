@@ -38,6 +38,7 @@ import org.sakaiproject.evaluation.tool.viewparams.EvalViewParameters;
 import org.sakaiproject.evaluation.tool.viewparams.ItemViewParameters;
 import org.sakaiproject.evaluation.tool.viewparams.TemplateItemViewParameters;
 import org.sakaiproject.evaluation.tool.viewparams.TemplateViewParameters;
+import org.sakaiproject.evaluation.utils.TemplateItemIndex;
 import org.sakaiproject.evaluation.utils.TemplateItemUtils;
 
 import lombok.Setter;
@@ -163,7 +164,9 @@ public class ModifyTemplateItemsProducer extends EvalCommonProducer implements V
         	}
         }
 
-        List<EvalTemplateItem> templateItemsList = TemplateItemUtils.getNonChildItems(itemList);
+        // index the blocks once rather than scanning the whole list for every block parent
+        TemplateItemIndex itemIndex = new TemplateItemIndex(itemList);
+        List<EvalTemplateItem> templateItemsList = itemIndex.getNonChildItems();
 
         if (!showTemplateItemOnly){
 	        /*
@@ -452,7 +455,7 @@ public class ModifyTemplateItemsProducer extends EvalCommonProducer implements V
 
                 // block child items
                 if ( TemplateItemUtils.isBlockParent(templateItem) ) {
-                    List<EvalTemplateItem> childList = TemplateItemUtils.getChildItems(itemList, templateItem.getId());
+                    List<EvalTemplateItem> childList = itemIndex.getChildItems(templateItem.getId());
                     if (childList.size() > 0) {
                         UIBranchContainer blockChildren = UIBranchContainer.make(itemBranch, "block-children:", Integer.toString(blockChildNum));
                         UIMessage.make(itemBranch, "modifyblock-items-list-instructions",
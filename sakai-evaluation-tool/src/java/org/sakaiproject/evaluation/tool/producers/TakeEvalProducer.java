@@ -31,14 +31,16 @@ import javax.servlet.http.HttpServletResponse;
 import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.logic.EvalAuthoringService;
 import org.sakaiproject.evaluation.logic.EvalCommonLogic;
+import org.sakaiproject.evaluation.logic.EvalDeliveryService;
 import org.sakaiproject.evaluation.logic.EvalEvaluationService;
 import org.sakaiproject.evaluation.logic.EvalSettings;
 import org.sakaiproject.evaluation.logic.exceptions.ResponseSaveException;
 import org.sakaiproject.evaluation.logic.externals.EvalExternalLogic;
 import org.sakaiproject.evaluation.logic.externals.ExternalHierarchyLogic;
 import org.sakaiproject.evaluation.logic.model.EvalGroup;
+import org.sakaiproject.evaluation.logic.model.EvalSavedAnswer;
+import org.sakaiproject.evaluation.logic.model.EvalSavedAnswers;
 import org.sakaiproject.evaluation.logic.model.EvalUser;
-import org.sakaiproject.evaluation.model.EvalAnswer;
 import org.sakaiproject.evaluation.model.EvalAssignGroup;
 import org.sakaiproject.evaluation.model.EvalAssignUser;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
@@ -120,6 +122,11 @@ public class TakeEvalProducer extends EvalCommonProducer implements ViewParamsRe
         this.evaluationService = evaluationService;
     }
 
+    private EvalDeliveryService deliveryService;
+    public void setDeliveryService(EvalDeliveryService deliveryService) {
+        this.deliveryService = deliveryService;
+    }
+
     ItemRenderer itemRenderer;
     public void setItemRenderer(ItemRenderer itemRenderer) {
         this.itemRenderer = itemRenderer;
@@ -176,10 +183,10 @@ public class TakeEvalProducer extends EvalCommonProducer implements ViewParamsRe
     int renderedItemCount=0;
 
     /**
-     * Map of key to Answers for the current response<br/>
-     * key = templateItemId + answer.associatedType + answer.associatedId
+     * The saved answers for the current response,
+     * looked up by templateItemId + answer.associatedType + answer.associatedId
      */
-    Map<String, EvalAnswer> answerMap = new HashMap<>();
+    EvalSavedAnswers savedAnswers = new EvalSavedAnswers(new ArrayList<>());
     Map<String, String[]> savedSelections = new HashMap<>();
     /**
      * If this is a re-opened response this will contain an {@link EvalResponse}
@@ -361,9 +368,9 @@ public class TakeEvalProducer extends EvalCommonProducer implements ViewParamsRe
 
                 if (responseId != null) {
                     // load up the previous responses for this user (no need to attempt to load if the response is new, there will be no answers yet)
-                    answerMap = localResponsesLogic.getAnswersMapByTempItemAndAssociated(responseId);
+                    savedAnswers = localResponsesLogic.getSavedAnswers(responseId);
                     if (log.isDebugEnabled()) {
-                        log.debug("User ("+currentUserId+"), eval ("+evaluationId+"), previous answers map: "+answerMap);
+                        log.debug("User ("+currentUserId+"), eval ("+evaluationId+"), previous answers: "+savedAnswers);
                     }
                 }
 
@@ -421,16 +428,19 @@ public class TakeEvalProducer extends EvalCommonProducer implements ViewParamsRe
 
                 // BEGIN the complex task of rendering the evaluation items
 
-                // make the TI data structure
-                TemplateItemDataList tidl = new TemplateItemDataList(evaluationId, evalGroupId,
-                        evaluationService, authoringService, hierarchyLogic, null);
+                // get the TI data structure (a copy of the form shared by everyone taking this eval in this group)
+                TemplateItemDataList tidl = deliveryService.getEvaluationFormModel(evaluationId, evalGroupId).makeTemplateItemDataList();
                 Set<String> instructorIds = tidl.getAssociateIds(EvalConstants.ITEM_CATEGORY_INSTRUCTOR);
                 Set<String> assistantIds = tidl.getAssociateIds(EvalConstants.ITEM_CATEGORY_ASSISTANT);
                 List<String> associatedTypes = tidl.getAssociateTypes();
                 if (log.isDebugEnabled()) {
                     log.debug("TIDL: eval="+evaluationId+", group="+evalGroupId+", items="+tidl.getTemplateItemsCount()+" instructorIds: "+instructorIds+", "+" associatedTypes: "+associatedTypes);
                 }
-                
+                // fetch all the associated users in one call, the headers and selections below get them from the user cache
+                List<String> associateIds = new ArrayList<>(instructorIds);
+                associateIds.addAll(assistantIds);
+                commonLogic.getEvalUsersByIds(associateIds);
+
                 // SELECTION Code - EVALSYS-618
                 Boolean selectionsEnabled = (Boolean) evalSettings.get(EvalSettings.ENABLE_INSTRUCTOR_ASSISTANT_SELECTION);
                 String instructorSelectionOption = EvalAssignGroup.SELECTION_OPTION_ALL;
@@ -497,8 +507,8 @@ public class TakeEvalProducer extends EvalCommonProducer implements ViewParamsRe
                                 List<String> assValues = new ArrayList<>();
                                 UISelect assSelect = UISelect.makeMultiple(showSwitchGroup, uiTag + "-multiple-holder", new String[] {}, new String[] {}, selectionOTP, new String[] {});
                                 String assSelectID = assSelect.getFullID();
-                                for (String userId : selectUserIds) {
-                                    EvalUser user = commonLogic.getEvalUserById(userId);
+                                List<EvalUser> selectUsers = commonLogic.getEvalUsersByIds(new ArrayList<>(selectUserIds));
+                                for (EvalUser user : selectUsers) {
                                     assValues.add(user.userId);
                                     assLabels.add(user.displayName);
                                     UIBranchContainer row = UIBranchContainer.make(showSwitchGroup, uiTag + "-multiple-row:");
@@ -739,8 +749,7 @@ public class TakeEvalProducer extends EvalCommonProducer implements ViewParamsRe
             newAnswer = true;
         } else {
             // if the user has answered this question before, point at their response
-            String key = TemplateItemUtils.makeTemplateItemAnswerKey(templateItem.getId(), associatedType, associatedId);
-            EvalAnswer currAnswer = answerMap.get(key);
+            EvalSavedAnswer currAnswer = savedAnswers.get(templateItem.getId(), associatedType, associatedId);
             if (currAnswer == null) {
                 // this is a new answer
                 newAnswer = true;
@@ -748,7 +757,7 @@ public class TakeEvalProducer extends EvalCommonProducer implements ViewParamsRe
             } else {
                 // existing answer
                 newAnswer = false;
-                currAnswerOTP = responseAnswersOTP + responseId + "." + currAnswer.getId() + ".";
+                currAnswerOTP = responseAnswersOTP + responseId + "." + currAnswer.getAnswerId() + ".";
             }
         }
 
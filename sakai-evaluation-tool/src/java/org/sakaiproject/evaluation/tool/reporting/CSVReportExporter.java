@@ -416,7 +416,21 @@ public class CSVReportExporter implements ReportExporter {
             // 2 get DTIs for this eval from tidl
             List<DataTemplateItem> dtiList = tidl.getFlatListOfDataTemplateItems(true);
 
-            // 3 use DTIs to make the headers
+            // fetch all the associated users in one call instead of once per item and response
+            List<String> associateIds = new ArrayList<>();
+            for (DataTemplateItem dti : dtiList) {
+                if (dti.associateId != null && ! associateIds.contains(dti.associateId)) {
+                    associateIds.add(dti.associateId);
+                }
+            }
+            List<EvalUser> associateUsers = commonLogic.getEvalUsersByIds(associateIds);
+            Map<String, EvalUser> associates = new HashMap<>();
+            for (int i = 0; i < associateIds.size(); i++) {
+                associates.put(associateIds.get(i), associateUsers.get(i));
+            }
+
+            // 3 use DTIs to make the headers (and find the DTIs which are in the report)
+            List<DataTemplateItem> reportDtiList = new ArrayList<>();
             List<String> questionCatRow = new ArrayList<>();
             List<String> questionTypeRow = new ArrayList<>();
             List<String> questionTextRow = new ArrayList<>();
@@ -426,20 +440,21 @@ public class CSVReportExporter implements ReportExporter {
                   && !isCurrentUserAdmin // and currentUser is not an admin
                   && !currentUserId.equals(evalOwner) // and currentUser is not the eval creator
                   && !EvalConstants.ITEM_CATEGORY_COURSE.equals(dti.associateType) 
-                  && !currentUserId.equals(commonLogic.getEvalUserById(dti.associateId).userId) ) {
+                  && !currentUserId.equals(dti.associateId) ) {
                     //skip instructor items that aren't for the current user
                     continue;
                 }
+                reportDtiList.add(dti);
 
                 questionTypeRow.add(responseAggregator.getHeaderLabelForItemType(dti.getTemplateItemType()));
                 questionTextRow.add(commonLogic.makePlainTextFromHTML(dti.templateItem.getItem().getItemText()));
                 if (EvalConstants.ITEM_CATEGORY_INSTRUCTOR.equals(dti.associateType)) {
-                    EvalUser user = commonLogic.getEvalUserById( dti.associateId );
+                    EvalUser user = associates.get( dti.associateId );
                     String instructorMsg = messageLocator.getMessage("reporting.spreadsheet.instructor", 
                             new Object[] {user.displayName} );
                     questionCatRow.add( instructorMsg );
                 } else if (EvalConstants.ITEM_CATEGORY_ASSISTANT.equals(dti.associateType)) {
-                    EvalUser user = commonLogic.getEvalUserById( dti.associateId );
+                    EvalUser user = associates.get( dti.associateId );
                     String assistantMsg = messageLocator.getMessage("reporting.spreadsheet.ta", 
                             new Object[] {user.displayName} );
                     questionCatRow.add( assistantMsg );
@@ -470,17 +485,7 @@ public class CSVReportExporter implements ReportExporter {
             for (Long responseId : responseIds) {
                 // 6) loop over DTIs
                 List<String> nextResponseRow = new ArrayList<>();
-                for (DataTemplateItem dti : dtiList) {
-
-                    if (!instructorViewAllResults // If the eval is so configured,
-                      && !isCurrentUserAdmin // and currentUser is not an admin
-                      && !currentUserId.equals(evalOwner) // and currentUser is not the eval creator
-                      && !EvalConstants.ITEM_CATEGORY_COURSE.equals(dti.associateType) 
-                      && !currentUserId.equals(commonLogic.getEvalUserById(dti.associateId).userId) ) {
-                        //skip instructor items that aren't for the current user
-                        continue;
-                    }
-
+                for (DataTemplateItem dti : reportDtiList) {
                     EvalAnswer answer = dti.getAnswer(responseId);
                     if (answer != null) {
                         nextResponseRow.add(responseAggregator.formatForSpreadSheet(answer.getTemplateItem(), answer));
@@ -0,0 +1,297 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.tool.reporting;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.sakaiproject.evaluation.logic.EvalCommonLogic;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps generated reports as files on local disk so the same report does not have to be
+ * rebuilt from all the answers every time it is downloaded,
+ * the least recently used reports are removed once the cache is over its size or entry limit<br/>
+ * The key must identify everything the report content depends on (including the version
+ * of the evaluation data), entries are never invalidated, a changed key simply misses
+ */
+@Slf4j
+public class ReportArtifactCache {
+
+    public static final String SETTING_DIRECTORY = "eval.reports.cache.directory";
+    public static final String SETTING_MAX_BYTES = "eval.reports.cache.maxBytes";
+    public static final String SETTING_MAX_ENTRIES = "eval.reports.cache.maxEntries";
+
+    /**
+     * All the cache files are named with this prefix and suffix so only they are ever removed,
+     * the cache directory may be shared with other files
+     */
+    private static final String FILE_PREFIX = "eval-report-";
+    private static final String FILE_SUFFIX = ".cache";
+
+    /**
+     * Writes a report to a stream, called when the report is not in the cache
+     */
+    public interface ReportWriter {
+        public void write(OutputStream outputStream);
+    }
+
+    private EvalCommonLogic commonLogic;
+    public void setCommonLogic(EvalCommonLogic commonLogic) {
+        this.commonLogic = commonLogic;
+    }
+
+    private String directory = System.getProperty("java.io.tmpdir") + File.separator + "evaluation-report-cache";
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    private long maxBytes = 512l * 1024 * 1024;
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    private int maxEntries = 1000;
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    private File cacheDirectory;
+    private long totalBytes = 0;
+    /**
+     * key -> cached file in access order (least recently used first), guarded by this
+     */
+    private final LinkedHashMap<String, File> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public void init() {
+        if (commonLogic != null) {
+            directory = commonLogic.getConfigurationSetting(SETTING_DIRECTORY, directory);
+            maxBytes = commonLogic.getConfigurationSetting(SETTING_MAX_BYTES, maxBytes);
+            maxEntries = commonLogic.getConfigurationSetting(SETTING_MAX_ENTRIES, maxEntries);
+        }
+        cacheDirectory = new File(directory);
+        if (! cacheDirectory.isDirectory() && ! cacheDirectory.mkdirs()) {
+            throw new IllegalStateException("Could not create the report cache directory: " + cacheDirectory.getAbsolutePath());
+        }
+        // the index is only held in memory so anything this cache left from a previous run is unreachable
+        File[] leftovers = cacheDirectory.listFiles((File dir, String name) -> isCacheFileName(name));
+        if (leftovers != null) {
+            for (File file : leftovers) {
+                if (file.isFile() && ! file.delete()) {
+                    log.warn("Could not remove old cached report: " + file.getAbsolutePath());
+                }
+            }
+        }
+        log.info("Init report cache: dir=" + cacheDirectory.getAbsolutePath() + ", maxBytes=" + maxBytes + ", maxEntries=" + maxEntries);
+    }
+
+    /**
+     * Send a report to the output stream, from the cache if it is there,
+     * otherwise the writer generates it and it is stored in the cache as it is sent
+     *
+     * @param key the unique key for the report content
+     * @param outputStream the stream to send the report to
+     * @param writer generates the report if it is not cached
+     * @return true if the report was served from the cache
+     */
+    public boolean serve(String key, OutputStream outputStream, ReportWriter writer) {
+        File cached;
+        synchronized (this) {
+            cached = entries.get(key);
+        }
+        if (cached != null) {
+            FileChannel channel = null;
+            try {
+                channel = FileChannel.open(cached.toPath(), StandardOpenOption.READ);
+            } catch (IOException e) {
+                // evicted before we could open it (or the disk is gone), just build it again
+                log.debug("Could not open cached report (" + key + "): " + e.getMessage());
+                remove(key, cached);
+            }
+            if (channel != null) {
+                try {
+                    transfer(channel, outputStream);
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed sending cached report (" + key + "): " + e.getMessage(), e);
+                } finally {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        log.debug("Could not close cached report (" + key + "): " + e.getMessage());
+                    }
+                }
+                return true;
+            }
+        }
+
+        File file = new File(cacheDirectory, FILE_PREFIX + UUID.randomUUID().toString() + FILE_SUFFIX);
+        FileOutputStream fileOutputStream;
+        try {
+            fileOutputStream = new FileOutputStream(file);
+        } catch (IOException e) {
+            log.warn("Could not cache report (" + key + "): " + e.getMessage());
+            writer.write(outputStream);
+            return false;
+        }
+        TeeOutputStream tee = new TeeOutputStream(outputStream, fileOutputStream);
+        boolean written = false;
+        try {
+            writer.write(tee);
+            written = true;
+        } finally {
+            try {
+                fileOutputStream.close();
+            } catch (IOException e) {
+                tee.copyFailed = true;
+            }
+            if (written && ! tee.copyFailed) {
+                put(key, file);
+            } else {
+                delete(file);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of reports in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total size (in bytes) of the reports in the cache
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Sends a file using a channel transfer so the data does not pass through a java buffer when
+     * the target supports it, an open file can still be read after it is evicted and deleted
+     */
+    private void transfer(FileChannel channel, OutputStream outputStream) throws IOException {
+        WritableByteChannel target = Channels.newChannel(outputStream);
+        long size = channel.size();
+        long position = 0;
+        while (position < size) {
+            position += channel.transferTo(position, size - position, target);
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * @param name a file name
+     * @return true if the file was written by this cache
+     */
+    static boolean isCacheFileName(String name) {
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+    }
+
+    private void put(String key, File file) {
+        synchronized (this) {
+            File previous = entries.put(key, file);
+            if (previous != null) {
+                // generated twice at the same time, keep the newest
+                totalBytes -= previous.length();
+                delete(previous);
+            }
+            totalBytes += file.length();
+            Iterator<Map.Entry<String, File>> it = entries.entrySet().iterator();
+            while (it.hasNext() && (totalBytes > maxBytes || entries.size() > maxEntries)) {
+                File eldest = it.next().getValue();
+                it.remove();
+                totalBytes -= eldest.length();
+                delete(eldest);
+            }
+        }
+    }
+
+    private synchronized void remove(String key, File file) {
+        if (entries.remove(key, file)) {
+            totalBytes -= file.length();
+            delete(file);
+        }
+    }
+
+    private void delete(File file) {
+        if (file.exists() && ! file.delete()) {
+            log.warn("Could not remove cached report: " + file.getAbsolutePath());
+        }
+    }
+
+
+    /**
+     * Writes everything to the real output and to the cache file,
+     * a failure writing the cache file only stops the copy and never the real output
+     */
+    private static class TeeOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final OutputStream copy;
+        boolean copyFailed = false;
+
+        TeeOutputStream(OutputStream out, OutputStream copy) {
+            this.out = out;
+            this.copy = copy;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (! copyFailed) {
+                try {
+                    copy.write(b);
+                } catch (IOException e) {
+                    copyFailed = true;
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (! copyFailed) {
+                try {
+                    copy.write(b, off, len);
+                } catch (IOException e) {
+                    copyFailed = true;
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+}
@@ -16,11 +16,13 @@ package org.sakaiproject.evaluation.tool.reporting;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletResponse;
 
+import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.logic.EvalCommonLogic;
 import org.sakaiproject.evaluation.logic.EvalEvaluationService;
 import org.sakaiproject.evaluation.logic.ReportingPermissions;
@@ -28,6 +30,7 @@ import org.sakaiproject.evaluation.model.EvalEvaluation;
 import org.sakaiproject.evaluation.tool.viewparams.DownloadReportViewParams;
 import org.sakaiproject.evaluation.toolaccess.EvaluationAccessAPI;
 import org.sakaiproject.evaluation.toolaccess.ToolApi;
+import org.sakaiproject.evaluation.utils.EvalUtils;
 import org.springframework.context.MessageSource;
 
 import com.opencsv.CSVParser;
@@ -104,6 +107,11 @@ public class ReportExporterBean implements ToolApi {
         this.exportersMap = exportersMap;
     }
 
+    private ReportArtifactCache reportArtifactCache;
+    public void setReportArtifactCache(ReportArtifactCache reportArtifactCache) {
+        this.reportArtifactCache = reportArtifactCache;
+    }
+
     public DownloadReportViewParams processReport()
     {
         return new DownloadReportViewParams( viewID, templateID, evalID, groupIDs, fileName, newReportStyle );
@@ -156,16 +164,59 @@ public class ReportExporterBean implements ToolApi {
             + currentUserId);
       }
 
-      MyMessageLocator messageLocator = new MyMessageLocator();
-      exporter.setMessageLocator(messageLocator);
-      if (EvalEvaluationService.PDF_RESULTS_REPORT_INDIVIDUAL.equals(exportType)) {
-        exporter.buildReport(evaluation, groupIds, evaluateeId, outputStream, newReportStyle);
+      final String[] reportGroupIds = groupIds;
+      final boolean reportStyle = newReportStyle;
+      ReportArtifactCache.ReportWriter writer = (OutputStream out) -> {
+        MyMessageLocator messageLocator = new MyMessageLocator();
+        exporter.setMessageLocator(messageLocator);
+        if (EvalEvaluationService.PDF_RESULTS_REPORT_INDIVIDUAL.equals(exportType)) {
+          exporter.buildReport(evaluation, reportGroupIds, evaluateeId, out, reportStyle);
+        } else {
+          exporter.buildReport(evaluation, reportGroupIds, out, reportStyle);
+        }
+      };
+
+      String cacheKey = makeReportCacheKey(evaluation, groupIds, evaluateeId, exportType, reportStyle);
+      if (cacheKey == null) {
+        writer.write(outputStream);
       } else {
-        exporter.buildReport(evaluation, groupIds, outputStream, newReportStyle);
+        boolean cached = reportArtifactCache.serve(cacheKey, outputStream, writer);
+        if (log.isDebugEnabled()) {
+          log.debug("Report " + cacheKey + (cached ? " sent from cache" : " generated"));
+        }
       }
 
     }
 
+    /**
+     * Makes the key for a report in the report cache,
+     * reports are only cached once the evaluation is closed since the results are not changing anymore
+     * 
+     * @return the key OR null if this report should not be cached
+     */
+    private String makeReportCacheKey(EvalEvaluation evaluation, String[] groupIds, String evaluateeId, String exportType, boolean reportStyle) {
+      if (reportArtifactCache == null) {
+        return null;
+      }
+      String state = evaluationService.returnAndFixEvalState(evaluation, false);
+      if (! EvalUtils.checkStateAfter(state, EvalConstants.EVALUATION_STATE_CLOSED, true)) {
+        return null;
+      }
+      // instructor items are filtered for the viewer unless they can see everything
+      String currentUserId = commonLogic.getCurrentUserId();
+      String viewer = currentUserId;
+      if (Boolean.TRUE.equals(evaluation.getInstructorViewAllResults())
+          || currentUserId.equals(evaluation.getOwner())
+          || commonLogic.isUserAdmin(currentUserId)) {
+        viewer = "*";
+      }
+      String[] sortedGroupIds = groupIds.clone();
+      Arrays.sort(sortedGroupIds);
+      return evaluation.getId() + "|" + String.join(",", sortedGroupIds) + "|" + exportType + "|" + evaluateeId
+          + "|" + reportStyle + "|" + Locale.getDefault() + "|" + viewer
+          + "|" + evaluationService.getEvaluationDataVersion(evaluation.getId());
+    }
+
     public void init() {
       evaluationAccessAPI.setToolApi(this);
     }
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.tool.reporting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReportArtifactCacheTest {
+
+	private File directory;
+	private ReportArtifactCache cache;
+	private int builds;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("report-cache-test").toFile();
+		cache = new ReportArtifactCache();
+		cache.setDirectory(directory.getAbsolutePath());
+		cache.setMaxBytes(20);
+		cache.setMaxEntries(3);
+		cache.init();
+		builds = 0;
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private String serve(String key, final String content) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		cache.serve(key, out, (OutputStream reportOut) -> {
+			builds++;
+			try {
+				reportOut.write(content.getBytes(StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testServeFromCache() {
+		assertEquals("report A", serve("a", "report A"));
+		assertEquals(1, builds);
+		assertEquals("report A", serve("a", "changed"));
+		assertEquals(1, builds);
+		assertEquals(1, cache.size());
+		assertEquals(8, cache.getTotalBytes());
+
+		assertEquals("report B", serve("b", "report B"));
+		assertEquals(2, builds);
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testEviction() {
+		serve("a", "aaaaaaaa");
+		serve("b", "bbbbbbbb");
+		// touch a so b is the least recently used
+		serve("a", "aaaaaaaa");
+		serve("c", "cccccccc");
+		assertEquals(2, cache.size());
+		assertTrue(cache.getTotalBytes() <= 20);
+		assertEquals(3, builds);
+
+		serve("a", "aaaaaaaa");
+		assertEquals(3, builds);
+		serve("b", "bbbbbbbb");
+		assertEquals(4, builds);
+		assertEquals(2, directory.listFiles().length);
+	}
+
+	@Test
+	public void testInitOnlyRemovesCacheFiles() throws IOException {
+		serve("a", "report A");
+		File other = new File(directory, "other.txt");
+		Files.write(other.toPath(), "not a report".getBytes(StandardCharsets.UTF_8));
+		File similar = new File(directory, "eval-report-notes.txt");
+		Files.write(similar.toPath(), "not a report".getBytes(StandardCharsets.UTF_8));
+		assertEquals(3, directory.listFiles().length);
+
+		// a restart only clears the files the cache wrote
+		cache = new ReportArtifactCache();
+		cache.setDirectory(directory.getAbsolutePath());
+		cache.init();
+		assertEquals(0, cache.size());
+		assertEquals(2, directory.listFiles().length);
+		assertTrue(other.isFile());
+		assertTrue(similar.isFile());
+		assertTrue(ReportArtifactCache.isCacheFileName("eval-report-1234.cache"));
+		assertFalse(ReportArtifactCache.isCacheFileName(other.getName()));
+	}
+
+	@Test
+	public void testFailedReportNotCached() {
+		try {
+			cache.serve("a", new ByteArrayOutputStream(), (OutputStream reportOut) -> {
+				throw new SecurityException("not allowed");
+			});
+			fail("Should have thrown exception");
+		} catch (SecurityException e) {
+			assertEquals("not allowed", e.getMessage());
+		}
+		assertEquals(0, cache.size());
+		assertEquals(0, directory.listFiles().length);
+		assertFalse(cache.serve("a", new ByteArrayOutputStream(), (OutputStream reportOut) -> builds++));
+		assertEquals(1, builds);
+	}
+
+}